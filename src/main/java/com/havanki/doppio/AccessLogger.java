@@ -57,7 +57,7 @@ public class AccessLogger implements Closeable {
     if (logDir == null) {
       accessLogWriter = null;
     } else {
-      File accessLogFile = logDir.resolve("access.log").toFile();
+      File accessLogFile = logDir.resolve(ACCESS_LOG_FILE_NAME).toFile();
       accessLogWriter = new FileWriter(accessLogFile,
         StandardCharsets.UTF_8, accessLogFile.exists());
     }
@@ -79,8 +79,10 @@ public class AccessLogger implements Closeable {
     closed = true;
   }
 
+  static final String ACCESS_LOG_FILE_NAME = "access.log";
   private static final String ACCESS_LOG_FORMAT =
-    "%s - %s [%s] \"%s\" %d %s\r\n";
+    "%s - %s [%s] \"%s\" %d %s%s\r\n";
+  private static final String NOTE_FORMAT = " \"%s\"";
   static final DateTimeFormatter ACCESS_LOG_DATE_TIME_FORMATTER =
     DateTimeFormatter.ofPattern("dd/MMM/yyyy:HH:mm:ss Z")
       .withZone(ZoneId.systemDefault());
@@ -100,8 +102,48 @@ public class AccessLogger implements Closeable {
         Instant.now());
   }
 
-  synchronized void log(Socket socket, String remoteUsername, String request,
-                        int statusCode, long responseBodySize, Instant timestamp) {
+  /**
+   * Logs a successful access.
+   *
+   * @param remoteSocketAddress remote address, if known
+   * @param remoteUsername      remote username, if authenticated
+   * @param request             request text
+   * @param statusCode          response status code
+   * @param responseBodySize    the size of the response body, in bytes
+   */
+  public void log(InetSocketAddress remoteSocketAddress, String remoteUsername,
+                  String request, int statusCode, long responseBodySize) {
+    log(remoteSocketAddress, remoteUsername, request, statusCode,
+        responseBodySize, null, Instant.now());
+  }
+
+  /**
+   * Logs an access, with a note about how it was handled. The note is added
+   * to the end of the line, in quotes, after the usual fields.
+   *
+   * @param remoteSocketAddress remote address, if known
+   * @param remoteUsername      remote username, if authenticated
+   * @param request             request text
+   * @param statusCode          response status code
+   * @param responseBodySize    the size of the response body, in bytes
+   * @param note                note, or null for none
+   */
+  public void log(InetSocketAddress remoteSocketAddress, String remoteUsername,
+                  String request, int statusCode, long responseBodySize,
+                  String note) {
+    log(remoteSocketAddress, remoteUsername, request, statusCode,
+        responseBodySize, note, Instant.now());
+  }
+
+  void log(Socket socket, String remoteUsername, String request,
+           int statusCode, long responseBodySize, Instant timestamp) {
+    log((InetSocketAddress) socket.getRemoteSocketAddress(), remoteUsername,
+        request, statusCode, responseBodySize, null, timestamp);
+  }
+
+  synchronized void log(InetSocketAddress remoteSocketAddress,
+                        String remoteUsername, String request, int statusCode,
+                        long responseBodySize, String note, Instant timestamp) {
     if (closed) {
       throw new IllegalStateException("Logger is closed");
     }
@@ -110,8 +152,6 @@ public class AccessLogger implements Closeable {
     }
 
     String remoteAddress;
-    InetSocketAddress remoteSocketAddress =
-      (InetSocketAddress) socket.getRemoteSocketAddress();
     if (remoteSocketAddress != null) {
       remoteAddress = remoteSocketAddress.getHostString();
     } else {
@@ -126,9 +166,11 @@ public class AccessLogger implements Closeable {
     String responseBodySizeStr = responseBodySize > 0L ?
       Long.toString(responseBodySize) : "-";
 
+    String noteStr = note != null ? String.format(NOTE_FORMAT, note) : "";
+
     String line = String.format(ACCESS_LOG_FORMAT, remoteAddress,
                                 remoteUsername, timestampStr, request,
-                                statusCode, responseBodySizeStr);
+                                statusCode, responseBodySizeStr, noteStr);
 
     try {
       accessLogWriter.write(line);
@@ -19,18 +19,18 @@
 
 package com.havanki.doppio;
 
-import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.IOException;
-import java.io.StringReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Instant;
+import java.time.Month;
+import java.time.Year;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -41,36 +41,26 @@ import org.slf4j.LoggerFactory;
  * specification:
  *
  * gemini://gemini.circumlunar.space/docs/companion/subscription.gmi
+ *
+ * The page is scanned twice, once to find the feed title, subtitle, and
+ * updated time, which come before the entries in the feed, and once to write
+ * the entries. Lines are parsed in place, without splitting the page into
+ * strings or matching regular expressions, and the feed is written straight
+ * to its destination, so that converting even a very long index page
+ * allocates little beyond the feed itself.
  */
 public class Atomizer {
 
   private static final Logger LOG = LoggerFactory.getLogger(Atomizer.class);
 
-  private static final String FEED_TEMPLATE =
+  private static final String FEED_START =
     "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
-    "<feed xmlns=\"http://www.w3.org/2005/Atom\">\n\n" +
-    "<title>{title}</title>\n" +
-    "{subtitle}" +
-    "<link href=\"{link}\"/>\n" +
-    "<updated>{updated}</updated>\n" +
-    "<id>{id}</id>\n\n" +
-    "{entries}" +
-    "</feed>";
-
-  private static final String ENTRY_TEMPLATE =
-    "  <entry>\n" +
-    "    <title>{title}</title>\n" +
-    "    <link rel=\"alternate\" href=\"{link}\"/>\n" +
-    "    <id>{id}</id>\n" +
-    "    <updated>{updated}</updated>\n" +
-    "  </entry>\n\n";
+    "<feed xmlns=\"http://www.w3.org/2005/Atom\">\n\n";
+  private static final String FEED_END = "</feed>";
 
   private static final String DEFAULT_TITLE_FORMAT = "Feed: %s";
-
-  private static final Pattern H1_PATTERN = Pattern.compile("#([^#]+)");
-  private static final Pattern H2_PATTERN = Pattern.compile("##([^#]+)");
-  private static final Pattern ENTRY_PATTERN =
-    Pattern.compile("=>\\s*(\\S+)\\s+(\\d{4}-\\d{2}-\\d{2})(.+)");
+  private static final String ENTRY_TIME = "T12:00:00Z";
+  private static final int DATE_LENGTH = 10; // yyyy-mm-dd
 
   private final Clock clock;
 
@@ -95,125 +85,362 @@ public class Atomizer {
    * @param  feedDirUriString feed directory URI (also where the index page is)
    * @param  docContent       index page content
    * @return                  Atom feed content
-   * @throws IOException      if the page content cannot be read
    */
   public String atomize(String feedDirUriString, String docContent) {
+    StringWriter sw = new StringWriter(docContent.length() * 2 + 512);
+    try {
+      atomize(feedDirUriString, docContent, sw);
+    } catch (IOException e) {
+      // This shouldn't happen because this is writing to a string.
+      throw new IllegalStateException("Received I/O error while writing feed content", e);
+    }
+    return sw.toString();
+  }
+
+  /**
+   * Converts a Gemini index page into an Atom feed, writing the feed to an
+   * output stream in UTF-8. The stream is flushed, but not closed.
+   *
+   * @param  feedDirUriString feed directory URI (also where the index page is)
+   * @param  docContent       index page content
+   * @param  out              stream to write Atom feed content to
+   * @throws IOException      if the feed content cannot be written
+   */
+  public void atomize(String feedDirUriString, String docContent,
+                      OutputStream out) throws IOException {
+    Writer w = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+    atomize(feedDirUriString, docContent, w);
+    w.flush();
+  }
+
+  /**
+   * Converts a Gemini index page into an Atom feed, writing the feed to a
+   * writer. The writer is neither flushed nor closed.
+   *
+   * @param  feedDirUriString feed directory URI (also where the index page is)
+   * @param  docContent       index page content
+   * @param  out              writer to write Atom feed content to
+   * @throws IOException      if the feed content cannot be written
+   */
+  public void atomize(String feedDirUriString, String docContent, Writer out)
+    throws IOException {
 
     if (!feedDirUriString.endsWith("/")) {
       feedDirUriString += "/";
     }
 
-    String title = null;
-    String subtitle = null;
-    Instant updated = null;
+    // First pass: find the title, subtitle, and the most recent entry date.
+    int titleStart = -1;
+    int titleEnd = -1;
+    int subtitleStart = -1;
+    int subtitleEnd = -1;
+    int updatedStart = -1;
+    int updatedKey = -1;
 
     boolean subtitleAvailable = true;
-    List<String> entryList = new ArrayList<>();
+    EntryLine entry = new EntryLine();
 
-    try (StringReader sr = new StringReader(docContent);
-         BufferedReader br = new BufferedReader(sr)) {
-      String line;
-      while ((line = br.readLine()) != null) {
+    int len = docContent.length();
+    int lineStart = 0;
+    while (lineStart < len) {
+      int lineEnd = findLineEnd(docContent, lineStart);
+      int nextLineStart = skipLineTerminator(docContent, lineEnd);
 
-        // Ignore empty lines.
-        if (line.isBlank()) {
+      // Ignore empty lines.
+      if (isBlank(docContent, lineStart, lineEnd)) {
+        lineStart = nextLineStart;
+        continue;
+      }
+
+      // Use the first level 1 header as the feed title.
+      if (titleStart < 0 && isHeader(docContent, lineStart, lineEnd, 1)) {
+        titleStart = trimStart(docContent, lineStart + 1, lineEnd);
+        titleEnd = trimEnd(docContent, titleStart, lineEnd);
+        lineStart = nextLineStart;
+        continue;
+      }
+
+      // After the title, use the first level 2 header as the feed subtitle.
+      // Any non-header (and non-blank) lines before that candidate header
+      // means there is no subtitle.
+      if (titleStart >= 0 && subtitleAvailable) {
+        if (docContent.charAt(lineStart) != '#') {
+          subtitleAvailable = false;
+        } else if (isHeader(docContent, lineStart, lineEnd, 2)) {
+          subtitleStart = trimStart(docContent, lineStart + 2, lineEnd);
+          subtitleEnd = trimEnd(docContent, subtitleStart, lineEnd);
+          subtitleAvailable = false;
+          lineStart = nextLineStart;
           continue;
         }
+      }
 
-        // Use the first level 1 header as the feed title.
-        if (title == null) {
-          Matcher h1Matcher = H1_PATTERN.matcher(line);
-          if (h1Matcher.matches()) {
-            title = h1Matcher.group(1).trim();
-            continue;
-          }
+      // If this entry is the most recent so far, remember its date.
+      if (entry.parse(docContent, lineStart, lineEnd)) {
+        int key = dateKey(docContent, entry.dateStart);
+        if (key < 0) {
+          // It's possible to have entries with invalid dates (e.g.,
+          // 2021-01-99), so just ignore those for this calculation.
+          LOG.warn("Failed to parse update time {} for entry {}",
+                   docContent.substring(entry.dateStart,
+                                        entry.dateStart + DATE_LENGTH),
+                   docContent.substring(entry.urlStart, entry.urlEnd));
+        } else if (key > updatedKey) {
+          updatedKey = key;
+          updatedStart = entry.dateStart;
         }
+      }
+      lineStart = nextLineStart;
+    }
 
-        // After the title, use the first level 2 header as the feed subtitle.
-        // Any non-header (and non-blank) lines before that candidate header
-        // means there is no subtitle.
-        if (title != null && subtitleAvailable) {
-          if (!line.startsWith("#")) {
-            subtitleAvailable = false;
-          } else {
-            Matcher h2Matcher = H2_PATTERN.matcher(line);
-            if (h2Matcher.matches()) {
-              subtitle = h2Matcher.group(1).trim();
-              subtitleAvailable = false;
-              continue;
-            }
-          }
-        }
+    // Write the feed header.
+    out.write(FEED_START);
+    out.write("<title>");
+    if (titleStart >= 0) {
+      out.write(docContent, titleStart, titleEnd - titleStart);
+    } else {
+      out.write(String.format(DEFAULT_TITLE_FORMAT, feedDirUriString));
+    }
+    out.write("</title>\n");
+    if (subtitleStart >= 0) {
+      out.write("<subtitle>");
+      out.write(docContent, subtitleStart, subtitleEnd - subtitleStart);
+      out.write("</subtitle>\n");
+    }
+    out.write("<link href=\"");
+    out.write(feedDirUriString);
+    out.write("\"/>\n<updated>");
+    if (updatedStart >= 0) {
+      out.write(docContent, updatedStart, DATE_LENGTH);
+      out.write(ENTRY_TIME);
+    } else {
+      out.write(DateTimeFormatter.ISO_INSTANT.format(Instant.now(clock)));
+    }
+    out.write("</updated>\n<id>");
+    out.write(feedDirUriString);
+    out.write("</id>\n\n");
 
-        // For efficiency, skip any non-link lines here on out.
-        if (!line.startsWith("=>")) {
-          continue;
-        }
+    // Second pass: write the entries. Only link lines can be entries, and
+    // the title and subtitle headers never are, so there is no need to track
+    // them again.
+    lineStart = 0;
+    while (lineStart < len) {
+      int lineEnd = findLineEnd(docContent, lineStart);
+      if (entry.parse(docContent, lineStart, lineEnd)) {
+        writeEntry(out, feedDirUriString, docContent, entry);
+      }
+      lineStart = skipLineTerminator(docContent, lineEnd);
+    }
 
-        // Pick out any link lines that work as feed entries.
-        Matcher entryMatcher = ENTRY_PATTERN.matcher(line);
-        if (entryMatcher.matches()) {
-          String entryUrl = feedDirUriString + entryMatcher.group(1);
-          String iso8601Date = entryMatcher.group(2);
-          String iso8601Timestamp = iso8601Date + "T12:00:00Z";
-          String entryTitle = cleanupEntryTitle(entryMatcher.group(3));
-          String entryContent = ENTRY_TEMPLATE
-            .replace("{title}", entryTitle)
-            .replace("{link}", entryUrl)
-            .replace("{id}", entryUrl)
-            .replace("{updated}", iso8601Timestamp);
-          entryList.add(entryContent);
-
-          // If this entry is the most recent so far, remember its timestamp.
-          try {
-            Instant entryInstant =
-              DateTimeFormatter.ISO_INSTANT.parse(iso8601Timestamp, Instant::from);
-            if (updated == null || entryInstant.isAfter(updated)) {
-              updated = entryInstant;
-            }
-          } catch (DateTimeParseException e) {
-            // It's possible to have entries with invalid timestamps (e.g.,
-            // 2021-01-99), so just ignore those for this calculation.
-            LOG.warn("Failed to parse update time {} for entry {}", iso8601Timestamp, entryUrl);
-          }
+    out.write(FEED_END);
+  }
+
+  private static void writeEntry(Writer out, String feedDirUriString,
+                                 String docContent, EntryLine entry)
+    throws IOException {
+    int urlLength = entry.urlEnd - entry.urlStart;
+    out.write("  <entry>\n    <title>");
+    out.write(docContent, entry.titleStart, entry.titleEnd - entry.titleStart);
+    out.write("</title>\n    <link rel=\"alternate\" href=\"");
+    out.write(feedDirUriString);
+    out.write(docContent, entry.urlStart, urlLength);
+    out.write("\"/>\n    <id>");
+    out.write(feedDirUriString);
+    out.write(docContent, entry.urlStart, urlLength);
+    out.write("</id>\n    <updated>");
+    out.write(docContent, entry.dateStart, DATE_LENGTH);
+    out.write(ENTRY_TIME);
+    out.write("</updated>\n  </entry>\n\n");
+  }
+
+  /**
+   * The parts of a link line that works as a feed entry, that is, a line of
+   * the form "=&gt; URL yyyy-mm-dd title". Each part is given as offsets into
+   * the page content. One instance is reused for every line of a page.
+   */
+  private static final class EntryLine {
+    private int urlStart;
+    private int urlEnd;
+    private int dateStart;
+    private int titleStart;
+    private int titleEnd;
+
+    /**
+     * Parses a line as a feed entry.
+     *
+     * @param  doc   page content
+     * @param  start line start offset
+     * @param  end   line end offset (exclusive)
+     * @return       true if the line is a feed entry
+     */
+    private boolean parse(String doc, int start, int end) {
+      if (end - start < 2 || doc.charAt(start) != '=' ||
+          doc.charAt(start + 1) != '>') {
+        return false;
+      }
+      int i = start + 2;
+      while (i < end && isSpace(doc.charAt(i))) {
+        i++;
+      }
+      urlStart = i;
+      while (i < end && !isSpace(doc.charAt(i))) {
+        i++;
+      }
+      urlEnd = i;
+      if (urlEnd == urlStart) {
+        return false;
+      }
+      int spaceStart = i;
+      while (i < end && isSpace(doc.charAt(i))) {
+        i++;
+      }
+      if (i == spaceStart || end - i < DATE_LENGTH || !isDate(doc, i)) {
+        return false;
+      }
+      dateStart = i;
+      i += DATE_LENGTH;
+
+      // The date must be followed by at least one more character, and none
+      // of the rest may be a line terminator.
+      if (i == end) {
+        return false;
+      }
+      for (int j = i; j < end; j++) {
+        char c = doc.charAt(j);
+        if (c == '\u0085' || c == '\u2028' || c == '\u2029') {
+          return false;
         }
       }
-    } catch (IOException e) {
-      // This shouldn't happen because this is reading from a string.
-      throw new IllegalStateException("Received I/O error while reading page content", e);
+
+      // Clean up the title: trim whitespace on either end, then remove
+      // whitespace and punctuation from the front.
+      titleStart = trimStart(doc, i, end);
+      titleEnd = trimEnd(doc, titleStart, end);
+      while (titleStart < titleEnd &&
+             (isSpace(doc.charAt(titleStart)) ||
+              isPunct(doc.charAt(titleStart)))) {
+        titleStart++;
+      }
+      return true;
     }
+  }
 
-    if (title == null) {
-      title = DEFAULT_TITLE_FORMAT.format(feedDirUriString);
+  private static int findLineEnd(String doc, int start) {
+    int len = doc.length();
+    int i = start;
+    while (i < len) {
+      char c = doc.charAt(i);
+      if (c == '\n' || c == '\r') {
+        break;
+      }
+      i++;
     }
-    if (subtitle != null) {
-      subtitle = String.format("<subtitle>%s</subtitle>\n", subtitle);
-    } else {
-      subtitle = "";
+    return i;
+  }
+
+  private static int skipLineTerminator(String doc, int lineEnd) {
+    if (lineEnd < doc.length() && doc.charAt(lineEnd) == '\r' &&
+        lineEnd + 1 < doc.length() && doc.charAt(lineEnd + 1) == '\n') {
+      return lineEnd + 2;
     }
-    if (updated == null) {
-      updated = Instant.now(clock);
+    return lineEnd + 1;
+  }
+
+  private static boolean isBlank(String doc, int start, int end) {
+    for (int i = start; i < end; i++) {
+      if (!Character.isWhitespace(doc.charAt(i))) {
+        return false;
+      }
     }
+    return true;
+  }
 
-    String feedContent = FEED_TEMPLATE
-      .replace("{title}", title)
-      .replace("{subtitle}", subtitle)
-      .replace("{link}", feedDirUriString)
-      .replace("{id}", feedDirUriString)
-      .replace("{updated}", DateTimeFormatter.ISO_INSTANT.format(updated))
-      .replace("{entries}", entryList.stream().collect(Collectors.joining()));
-    return feedContent;
+  /**
+   * Checks if a line is a header of exactly the given level, with some text
+   * and no further '#' characters after the leading ones.
+   */
+  private static boolean isHeader(String doc, int start, int end, int level) {
+    if (end - start <= level) {
+      return false;
+    }
+    for (int i = start; i < end; i++) {
+      boolean isHash = doc.charAt(i) == '#';
+      if (isHash != (i < start + level)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static int trimStart(String doc, int start, int end) {
+    while (start < end && doc.charAt(start) <= ' ') {
+      start++;
+    }
+    return start;
+  }
+
+  private static int trimEnd(String doc, int start, int end) {
+    while (end > start && doc.charAt(end - 1) <= ' ') {
+      end--;
+    }
+    return end;
+  }
+
+  /**
+   * Checks if a character is whitespace as matched by "\s" in a regular
+   * expression.
+   */
+  private static boolean isSpace(char c) {
+    return c == ' ' || (c >= '\t' && c <= '\r');
+  }
+
+  /**
+   * Checks if a character is ASCII punctuation as matched by "\p{Punct}" in a
+   * regular expression.
+   */
+  private static boolean isPunct(char c) {
+    return (c >= '!' && c <= '/') || (c >= ':' && c <= '@') ||
+      (c >= '[' && c <= '`') || (c >= '{' && c <= '~');
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+
+  private static boolean isDate(String doc, int start) {
+    for (int i = 0; i < DATE_LENGTH; i++) {
+      char c = doc.charAt(start + i);
+      if (i == 4 || i == 7 ? c != '-' : !isDigit(c)) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
-   * Cleans up the title text for an entry.
+   * Converts a date in "yyyy-mm-dd" form into a number that sorts in date
+   * order.
    *
-   * @param  title originally read title
-   * @return       cleaned-up title
+   * @param  doc   page content
+   * @param  start date start offset
+   * @return       sortable date number, or -1 if the date is invalid
    */
-  private static String cleanupEntryTitle(String title) {
-    return title
-      .trim()  // remove whitespace on either end
-      .replaceFirst("[\\s\\p{Punct}]*", "");  // remove ws + punctuation from the front
+  private static int dateKey(String doc, int start) {
+    int year = digits(doc, start, 4);
+    int month = digits(doc, start + 5, 2);
+    int day = digits(doc, start + 8, 2);
+    if (month < 1 || month > 12 || day < 1 ||
+        day > Month.of(month).length(Year.isLeap(year))) {
+      return -1;
+    }
+    return year * 10000 + month * 100 + day;
+  }
+
+  private static int digits(String doc, int start, int count) {
+    int value = 0;
+    for (int i = start; i < start + count; i++) {
+      value = value * 10 + (doc.charAt(i) - '0');
+    }
+    return value;
   }
 }
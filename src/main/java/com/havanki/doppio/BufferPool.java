@@ -0,0 +1,90 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * A pool of equally sized byte buffers, so that buffers used for moving file
+ * content to clients are reused instead of being allocated per response. The
+ * pool holds at most a fixed number of idle buffers; when it is empty, new
+ * buffers are allocated, and when it is full, returned buffers are dropped.
+ */
+public class BufferPool {
+
+  /**
+   * The largest amount of application data that fits in one TLS record.
+   * Handing TLS this much at a time lets it fill each record.
+   */
+  public static final int TLS_RECORD_SIZE = 16384;
+
+  private final int bufferSize;
+  private final boolean direct;
+  private final BlockingQueue<ByteBuffer> idleBuffers;
+
+  /**
+   * Creates a new pool.
+   *
+   * @param bufferSize     size of each buffer
+   * @param direct         whether to allocate direct buffers
+   * @param maxIdleBuffers maximum number of idle buffers to keep
+   */
+  public BufferPool(int bufferSize, boolean direct, int maxIdleBuffers) {
+    this.bufferSize = bufferSize;
+    this.direct = direct;
+    idleBuffers = new ArrayBlockingQueue<>(maxIdleBuffers);
+  }
+
+  /**
+   * Gets a buffer from the pool, or a new one if none is idle. The buffer is
+   * cleared.
+   *
+   * @return buffer
+   */
+  public ByteBuffer acquire() {
+    ByteBuffer buffer = idleBuffers.poll();
+    if (buffer == null) {
+      return direct ? ByteBuffer.allocateDirect(bufferSize) :
+        ByteBuffer.allocate(bufferSize);
+    }
+    return buffer;
+  }
+
+  /**
+   * Returns a buffer to the pool. Do not use the buffer afterwards.
+   *
+   * @param buffer buffer
+   */
+  public void release(ByteBuffer buffer) {
+    buffer.clear();
+    idleBuffers.offer(buffer);
+  }
+
+  /**
+   * Gets the number of idle buffers in the pool.
+   *
+   * @return number of idle buffers
+   */
+  public int getIdleCount() {
+    return idleBuffers.size();
+  }
+}
@@ -0,0 +1,282 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A packed archive of a server root directory, built by {@link CapsulePacker}.
+ * The archive holds a complete response, header included, for each static
+ * resource, and an index from resource path to response. The archive is
+ * memory-mapped, so serving a resource from it involves no file system
+ * lookups at all.<p>
+ *
+ * The archive layout is:
+ *
+ * <ol>
+ * <li>the magic bytes "DOPPIOPK" and a format version (int)</li>
+ * <li>the responses, one after another</li>
+ * <li>the index: the number of entries (int), then for each entry its path,
+ *     its response header meta, the offset of its response (int), the length
+ *     of its response header (int), and the length of its response body
+ *     (int); strings are written as a length (int) followed by UTF-8
+ *     bytes</li>
+ * <li>the offset of the index (long) and the magic bytes again</li>
+ * </ol>
+ *
+ * An archive must not be modified while it is mapped. To replace it, write a
+ * new archive and rename it over the old one, as the packer does.
+ */
+public class CapsuleArchive {
+
+  static final byte[] MAGIC = "DOPPIOPK".getBytes(StandardCharsets.US_ASCII);
+  static final int VERSION = 1;
+  static final int PREAMBLE_SIZE = MAGIC.length + Integer.BYTES;
+  static final int TRAILER_SIZE = Long.BYTES + MAGIC.length;
+
+  /**
+   * A response in an archive.
+   */
+  public static class Entry {
+    private final ByteBuffer data;
+    private final String meta;
+    private final int offset;
+    private final int headerLength;
+    private final int bodyLength;
+
+    private Entry(ByteBuffer data, String meta, int offset, int headerLength,
+                  int bodyLength) {
+      this.data = data;
+      this.meta = meta;
+      this.offset = offset;
+      this.headerLength = headerLength;
+      this.bodyLength = bodyLength;
+    }
+
+    /**
+     * Gets the meta of the response header, i.e., the content type and
+     * charset.
+     *
+     * @return response header meta
+     */
+    public String getMeta() {
+      return meta;
+    }
+
+    /**
+     * Gets the complete response, header and body. Each call returns a new
+     * buffer, so callers may consume it freely.
+     *
+     * @return response
+     */
+    public ByteBuffer getResponse() {
+      return data.slice(offset, headerLength + bodyLength);
+    }
+
+    /**
+     * Gets the size of the response body.
+     *
+     * @return body size
+     */
+    public long getBodySize() {
+      return bodyLength;
+    }
+  }
+
+  private final Path file;
+  private final MappedByteBuffer data;
+  private final Map<String, Entry> entries;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  private CapsuleArchive(Path file, MappedByteBuffer data,
+                         Map<String, Entry> entries) {
+    this.file = file;
+    this.data = data;
+    this.entries = entries;
+  }
+
+  /**
+   * Opens an archive, mapping it into memory and reading its index.
+   *
+   * @param  file archive file
+   * @return      archive
+   * @throws IOException if the archive cannot be read or is not valid
+   */
+  public static CapsuleArchive open(Path file) throws IOException {
+    MappedByteBuffer data;
+    try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+      long size = channel.size();
+      if (size > Integer.MAX_VALUE) {
+        throw new IOException("Archive " + file + " is too large to map");
+      }
+      if (size < PREAMBLE_SIZE + TRAILER_SIZE) {
+        throw new IOException("Archive " + file + " is truncated");
+      }
+      data = channel.map(FileChannel.MapMode.READ_ONLY, 0L, size);
+    }
+
+    try {
+      checkMagic(file, data, 0);
+      int version = data.getInt(MAGIC.length);
+      if (version != VERSION) {
+        throw new IOException("Archive " + file + " has unsupported version " +
+                              version);
+      }
+      int trailerOffset = data.capacity() - TRAILER_SIZE;
+      checkMagic(file, data, trailerOffset + Long.BYTES);
+      long indexOffset = data.getLong(trailerOffset);
+      if (indexOffset < PREAMBLE_SIZE || indexOffset > trailerOffset) {
+        throw new IOException("Archive " + file + " has an invalid index offset");
+      }
+
+      ByteBuffer index = data.slice((int) indexOffset,
+                                    trailerOffset - (int) indexOffset);
+      int numEntries = index.getInt();
+      Map<String, Entry> entries = new HashMap<>();
+      // Many entries share the same meta, so keep just one copy of each.
+      Map<String, String> metas = new HashMap<>();
+      for (int i = 0; i < numEntries; i++) {
+        String path = getString(index);
+        String meta = metas.computeIfAbsent(getString(index), m -> m);
+        int offset = index.getInt();
+        int headerLength = index.getInt();
+        int bodyLength = index.getInt();
+        if (offset < PREAMBLE_SIZE || headerLength < 0 || bodyLength < 0 ||
+            (long) offset + headerLength + bodyLength > indexOffset) {
+          throw new IOException("Archive " + file + " has an invalid entry for " +
+                                path);
+        }
+        entries.put(path, new Entry(data, meta, offset, headerLength, bodyLength));
+      }
+      return new CapsuleArchive(file, data, entries);
+    } catch (BufferUnderflowException | IndexOutOfBoundsException e) {
+      throw new IOException("Archive " + file + " is corrupt", e);
+    }
+  }
+
+  private static void checkMagic(Path file, ByteBuffer data, int offset)
+    throws IOException {
+    byte[] magic = new byte[MAGIC.length];
+    data.get(offset, magic);
+    if (!Arrays.equals(magic, MAGIC)) {
+      throw new IOException(file + " is not an archive");
+    }
+  }
+
+  private static String getString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.getInt()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  /**
+   * Converts a request path into the form used to look up resources in an
+   * archive: relative to the root, with no leading or trailing slashes. The
+   * root itself is the empty string.
+   *
+   * @param  path request path
+   * @return      archive path
+   */
+  static String toArchivePath(String path) {
+    int start = 0;
+    int end = path.length();
+    while (start < end && path.charAt(start) == '/') {
+      start++;
+    }
+    while (end > start && path.charAt(end - 1) == '/') {
+      end--;
+    }
+    String archivePath = path.substring(start, end);
+    // Path resolution in the root directory ignores empty path segments, so
+    // do the same here.
+    while (archivePath.contains("//")) {
+      archivePath = archivePath.replace("//", "/");
+    }
+    return archivePath;
+  }
+
+  /**
+   * Gets the response for a resource. A directory has the response for its
+   * index file.
+   *
+   * @param  path request path
+   * @return      response entry, or null if the resource is not in the archive
+   */
+  public Entry get(String path) {
+    Entry entry = entries.get(toArchivePath(path));
+    if (entry == null) {
+      misses.increment();
+    } else {
+      hits.increment();
+    }
+    return entry;
+  }
+
+  /**
+   * Gets the archive file.
+   *
+   * @return archive file
+   */
+  public Path getFile() {
+    return file;
+  }
+
+  /**
+   * Gets the number of resources in the archive, including directories.
+   *
+   * @return number of resources
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the size of the archive in bytes.
+   *
+   * @return archive size
+   */
+  public long getSizeBytes() {
+    return data.capacity();
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    stats.put("archive.hits", hits.sum());
+    stats.put("archive.misses", misses.sum());
+    stats.put("archive.entries", (long) size());
+    stats.put("archive.bytes", getSizeBytes());
+  }
+}
@@ -0,0 +1,269 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemLoopException;
+import java.nio.file.FileVisitOption;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Packs the static resources under a server's root directory into a
+ * {@link CapsuleArchive}. Each resource is stored as the complete response
+ * that the server would send for it: the content type and charset are
+ * resolved, and line endings are converted, just as when serving from the
+ * root directory. Each directory with an index file is stored as well, with
+ * the response for that index file. The CGI directory is skipped.
+ */
+public class CapsulePacker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CapsulePacker.class);
+
+  private final ServerProperties serverProps;
+  private final ContentTypeResolver contentTypeResolver;
+  private final CharsetDetector charsetDetector;
+
+  /**
+   * Creates a new packer.
+   *
+   * @param serverProps server properties
+   */
+  public CapsulePacker(ServerProperties serverProps) {
+    this.serverProps = serverProps;
+    contentTypeResolver =
+      new ContentTypeResolver(serverProps.getTextGeminiSuffixes(),
+                              serverProps.getDefaultContentType());
+    charsetDetector = new CharsetDetector(serverProps.getDefaultCharset());
+  }
+
+  /**
+   * A packed response: where it is, and how long its parts are.
+   */
+  private static class PackedEntry {
+    private final String meta;
+    private final int offset;
+    private final int headerLength;
+    private final int bodyLength;
+
+    private PackedEntry(String meta, int offset, int headerLength,
+                        int bodyLength) {
+      this.meta = meta;
+      this.offset = offset;
+      this.headerLength = headerLength;
+      this.bodyLength = bodyLength;
+    }
+  }
+
+  /**
+   * Packs the root directory into an archive. The archive is written to a
+   * temporary file first and then moved into place, so that a server with
+   * the old archive mapped is not disturbed.
+   *
+   * @param  archive archive file to write
+   * @return         number of resources packed, including directories
+   * @throws IOException if the root directory cannot be read or the archive
+   *                     cannot be written
+   */
+  public int pack(Path archive) throws IOException {
+    Path root = serverProps.getRoot();
+    List<Path> files = new ArrayList<>();
+    List<Path> dirs = new ArrayList<>();
+    findResources(root, archive, files, dirs);
+    Collections.sort(files);
+    Collections.sort(dirs);
+
+    Path absoluteArchive = archive.toAbsolutePath();
+    Path tempArchive = absoluteArchive.resolveSibling(
+      "." + absoluteArchive.getFileName() + ".tmp");
+    try {
+      Map<String, PackedEntry> entries = new LinkedHashMap<>();
+      // Unlike Files.createTempFile, this leaves the archive with the usual
+      // permissions for new files, so that a server running as another user
+      // can read it.
+      OutputStream fileOut =
+        Files.newOutputStream(tempArchive, StandardOpenOption.CREATE,
+                              StandardOpenOption.TRUNCATE_EXISTING,
+                              StandardOpenOption.WRITE);
+      try (DataOutputStream out =
+           new DataOutputStream(new BufferedOutputStream(fileOut))) {
+        out.write(CapsuleArchive.MAGIC);
+        out.writeInt(CapsuleArchive.VERSION);
+
+        for (Path file : files) {
+          entries.put(toArchivePath(root, file), writeResponse(out, file));
+          checkSize(out);
+        }
+        for (Path dir : dirs) {
+          String dirPath = toArchivePath(root, dir);
+          String prefix = dirPath.isEmpty() ? "" : dirPath + "/";
+          for (String suffix : serverProps.getTextGeminiSuffixes()) {
+            PackedEntry indexEntry = entries.get(prefix + "index" + suffix);
+            if (indexEntry != null) {
+              entries.put(dirPath, indexEntry);
+              break;
+            }
+          }
+        }
+
+        long indexOffset = out.size();
+        out.writeInt(entries.size());
+        for (Map.Entry<String, PackedEntry> e : entries.entrySet()) {
+          PackedEntry entry = e.getValue();
+          writeString(out, e.getKey());
+          writeString(out, entry.meta);
+          out.writeInt(entry.offset);
+          out.writeInt(entry.headerLength);
+          out.writeInt(entry.bodyLength);
+        }
+        out.writeLong(indexOffset);
+        out.write(CapsuleArchive.MAGIC);
+        checkSize(out);
+      }
+      Files.move(tempArchive, absoluteArchive,
+                 StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+      LOG.info("Packed {} resources from {} into {}", entries.size(), root,
+               archive);
+      return entries.size();
+    } finally {
+      Files.deleteIfExists(tempArchive);
+    }
+  }
+
+  private void findResources(Path root, Path archive, List<Path> files,
+                             List<Path> dirs)
+    throws IOException {
+    Path cgiDir = serverProps.getCgiDir() != null ?
+      root.resolve(serverProps.getCgiDir()) : null;
+    Path absoluteArchive = archive.toAbsolutePath().normalize();
+    // Follow links, since the server does when serving from the root
+    // directory.
+    Files.walkFileTree(root, EnumSet.of(FileVisitOption.FOLLOW_LINKS),
+                       Integer.MAX_VALUE, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path dir,
+                                               BasicFileAttributes attrs) {
+        if (dir.equals(cgiDir)) {
+          return FileVisitResult.SKIP_SUBTREE;
+        }
+        dirs.add(dir);
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+        if (attrs.isRegularFile() &&
+            !file.toAbsolutePath().normalize().equals(absoluteArchive)) {
+          files.add(file);
+        }
+        return FileVisitResult.CONTINUE;
+      }
+
+      @Override
+      public FileVisitResult visitFileFailed(Path file, IOException e)
+        throws IOException {
+        if (e instanceof FileSystemLoopException) {
+          LOG.warn("Skipping {}, which links back to a parent directory", file);
+          return FileVisitResult.CONTINUE;
+        }
+        throw e;
+      }
+    });
+  }
+
+  private static String toArchivePath(Path root, Path file) {
+    StringBuilder sb = new StringBuilder();
+    for (Path name : root.relativize(file)) {
+      if (sb.length() > 0) {
+        sb.append('/');
+      }
+      sb.append(name.toString());
+    }
+    return sb.toString();
+  }
+
+  private PackedEntry writeResponse(DataOutputStream out, Path file)
+    throws IOException {
+    // Work out the response header just as the request handler does.
+    String contentType =
+      contentTypeResolver.getContentTypeFor(file.getFileName().toString());
+    String detectedCharset = contentType.startsWith("text/") &&
+      serverProps.isEnableCharsetDetection() ?
+      charsetDetector.detect(file.toFile()) : null;
+    String meta = RequestHandler.formatMeta(contentType, detectedCharset);
+    byte[] header = RequestHandler.formatResponseHeader(StatusCodes.SUCCESS, meta);
+
+    int offset = out.size();
+    out.write(header);
+    int bodyOffset = out.size();
+    if (serverProps.isForceCanonicalText() && contentType.startsWith("text/")) {
+      // Close the converting stream, so that a trailing carriage return is
+      // written, but leave the archive stream open.
+      try (OutputStream bodyOut =
+           new LineEndingConvertingOutputStream(new FilterOutputStream(out) {
+             @Override
+             public void close() throws IOException {
+               flush();
+             }
+           })) {
+        Files.copy(file, bodyOut);
+      }
+    } else {
+      Files.copy(file, out);
+    }
+    return new PackedEntry(meta, offset, header.length, out.size() - bodyOffset);
+  }
+
+  private static void writeString(DataOutputStream out, String s)
+    throws IOException {
+    byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+    out.writeInt(bytes.length);
+    out.write(bytes);
+  }
+
+  private static void checkSize(DataOutputStream out) throws IOException {
+    // The byte count sticks at Integer.MAX_VALUE once it overflows, and an
+    // archive that large could not be mapped anyway.
+    if (out.size() == Integer.MAX_VALUE) {
+      throw new IOException("Archive would exceed the maximum size of " +
+                            Integer.MAX_VALUE + " bytes");
+    }
+  }
+}
@@ -0,0 +1,225 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Limits how many CGI scripts run at a time, both overall and for each
+ * script, so that a burst of requests cannot start more processes than the
+ * host can bear. A request over a limit waits for a run to finish, but only
+ * for so long, and only so many requests may wait at a time; beyond that,
+ * requests are turned away, so that clients can be told to slow down.
+ */
+public class CgiLimiter {
+
+  /**
+   * Permission to run a CGI script. Close it when the script is done.
+   */
+  public final class Permit implements AutoCloseable {
+    private final Path script;
+    private boolean released;
+
+    private Permit(Path script) {
+      this.script = script;
+    }
+
+    @Override
+    public void close() {
+      if (released) {
+        return;
+      }
+      released = true;
+      release(script);
+    }
+  }
+
+  private final int maxConcurrent;
+  private final int maxConcurrentPerScript;
+  private final int maxQueued;
+  private final long queueTimeoutNanos;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition runFinished = lock.newCondition();
+  private final Map<Path, Integer> runningByScript = new HashMap<>(); // guarded by lock
+  private int running; // guarded by lock
+  private int queued; // guarded by lock
+  private final LongAdder admitted = new LongAdder();
+  private final LongAdder waited = new LongAdder();
+  private final LongAdder waitMillis = new LongAdder();
+  private final LongAdder rejected = new LongAdder();
+
+  /**
+   * Creates a new limiter.
+   *
+   * @param maxConcurrent          maximum number of scripts running at a
+   *                               time, or 0 for no limit
+   * @param maxConcurrentPerScript maximum number of runs of one script at a
+   *                               time, or 0 for no limit
+   * @param maxQueued              maximum number of requests waiting to run
+   * @param queueTimeoutMs         how long a request may wait to run, in
+   *                               milliseconds
+   */
+  public CgiLimiter(int maxConcurrent, int maxConcurrentPerScript,
+                    int maxQueued, int queueTimeoutMs) {
+    this.maxConcurrent = maxConcurrent;
+    this.maxConcurrentPerScript = maxConcurrentPerScript;
+    this.maxQueued = maxQueued;
+    this.queueTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(queueTimeoutMs);
+  }
+
+  /**
+   * Gets how long a client that is turned away should wait before trying
+   * again, which is the queue timeout rounded up to whole seconds.
+   *
+   * @return retry delay, in seconds
+   */
+  public int getRetryAfterSec() {
+    return (int) Math.max(1L, TimeUnit.NANOSECONDS.toSeconds(queueTimeoutNanos +
+                                                             999_999_999L));
+  }
+
+  /**
+   * Gets permission to run a script, waiting if a limit is reached.
+   *
+   * @param  script                 script path
+   * @return                        permit, or null if the request is turned
+   *                                away because too many requests are
+   *                                waiting already, or it waited too long
+   * @throws InterruptedIOException if interrupted while waiting
+   */
+  public Permit acquire(Path script) throws InterruptedIOException {
+    lock.lock();
+    try {
+      if (hasRoom(script)) {
+        return admit(script);
+      }
+      if (queued >= maxQueued || queueTimeoutNanos == 0L) {
+        rejected.increment();
+        return null;
+      }
+
+      queued++;
+      waited.increment();
+      long start = System.nanoTime();
+      try {
+        long remainingNanos = queueTimeoutNanos;
+        while (!hasRoom(script)) {
+          if (remainingNanos <= 0L) {
+            rejected.increment();
+            return null;
+          }
+          remainingNanos = runFinished.awaitNanos(remainingNanos);
+        }
+        return admit(script);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting to run CGI script");
+      } finally {
+        queued--;
+        waitMillis.add(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private boolean hasRoom(Path script) {
+    return (maxConcurrent == 0 || running < maxConcurrent) &&
+      (maxConcurrentPerScript == 0 ||
+       runningByScript.getOrDefault(script, 0) < maxConcurrentPerScript);
+  }
+
+  private Permit admit(Path script) {
+    running++;
+    runningByScript.merge(script, 1, Integer::sum);
+    admitted.increment();
+    return new Permit(script);
+  }
+
+  private void release(Path script) {
+    lock.lock();
+    try {
+      running--;
+      runningByScript.computeIfPresent(script, (s, n) -> n > 1 ? n - 1 : null);
+      // Waiters may be for different scripts, so wake them all to recheck.
+      runFinished.signalAll();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of scripts running now.
+   *
+   * @return number of running scripts
+   */
+  public int getRunning() {
+    lock.lock();
+    try {
+      return running;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of requests waiting to run now.
+   *
+   * @return queue depth
+   */
+  public int getQueued() {
+    lock.lock();
+    try {
+      return queued;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of requests that were turned away.
+   *
+   * @return number of rejections
+   */
+  public long getRejected() {
+    return rejected.sum();
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    stats.put("cgi.limit.running", (long) getRunning());
+    stats.put("cgi.limit.queued", (long) getQueued());
+    stats.put("cgi.limit.admitted", admitted.sum());
+    stats.put("cgi.limit.waited", waited.sum());
+    stats.put("cgi.limit.wait.millis", waitMillis.sum());
+    stats.put("cgi.limit.rejected", getRejected());
+  }
+}
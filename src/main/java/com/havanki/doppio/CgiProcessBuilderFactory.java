@@ -32,9 +32,10 @@ import java.time.OffsetDateTime;
 import java.time.ZoneOffset;
 import java.time.format.DateTimeFormatter;
 import java.time.temporal.ChronoUnit;
+import java.util.HashMap;
 import java.util.Map;
 
-import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSession;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -62,16 +63,20 @@ public class CgiProcessBuilderFactory {
    *
    * @param  resourceFile script file
    * @param  splitPaths   full path to script and extra path information
-   * @param  uri          original request URI
-   * @param  socket       client socket
-   * @param  peerCert     principal identifying peer, if any
-   * @param  serverProps  server properties
-   * @return              process builder
-   * @throws IOException  if the canonical path for the script file cannot be
-   *                      determined
+   * @param  uri           original request URI
+   * @param  remoteAddress client address, if known
+   * @param  session       TLS session
+   * @param  peerCert      principal identifying peer, if any
+   * @param  virtualHost   virtual host serving the request
+   * @param  serverProps   server properties
+   * @return               process builder
+   * @throws IOException   if the canonical path for the script file cannot be
+   *                       determined
    */
   public ProcessBuilder createCgiProcessBuilder(File resourceFile, Path[] splitPaths,
-                                                URI uri, SSLSocket socket, X509Certificate peerCert,
+                                                URI uri, InetSocketAddress remoteAddress,
+                                                SSLSession session, X509Certificate peerCert,
+                                                VirtualHost virtualHost,
                                                 ServerProperties serverProps)
     throws IOException {
     // Run the resource file as the command. Combine standard output and
@@ -83,79 +88,142 @@ public class CgiProcessBuilderFactory {
       .redirectErrorStream(true);
 
     // Set CGI environment variables.
+    pb.environment().putAll(
+      createMetaVariables("/" + virtualHost.getRoot().relativize(splitPaths[0]).toString(),
+                          splitPaths[1].toString(), uri, remoteAddress,
+                          session, peerCert, virtualHost, serverProps));
+
+    return pb;
+  }
+
+  /**
+   * Creates a {@code ProcessBuilder} for a long-lived worker process running
+   * a CGI script that supports the worker protocol. The worker's environment
+   * holds only the meta-variables that are the same for every request, and
+   * DOPPIO_WORKER; the rest come with each request. Standard error is kept
+   * apart from standard output, which carries framed responses.
+   *
+   * @param  resourceFile script file
+   * @param  virtualHost  virtual host serving the script
+   * @param  serverProps  server properties
+   * @return              process builder
+   * @throws IOException  if the canonical path for the script file cannot be
+   *                      determined
+   */
+  public ProcessBuilder createWorkerProcessBuilder(File resourceFile,
+                                                   VirtualHost virtualHost,
+                                                   ServerProperties serverProps)
+    throws IOException {
+    String command = resourceFile.getCanonicalPath();
+    ProcessBuilder pb = new ProcessBuilder()
+      .command(command)
+      .directory(resourceFile.getParentFile());
+
     Map<String, String> pbenv = pb.environment();
+    pbenv.put("DOPPIO_WORKER", CgiWorker.PROTOCOL_VERSION);
     pbenv.put("GATEWAY_INTERFACE", GATEWAY_INTERFACE);
-    String extraPath = splitPaths[1].toString();
+    pbenv.put("REQUEST_METHOD", REQUEST_METHOD);
+    pbenv.put("SERVER_NAME", virtualHost.getHost());
+    pbenv.put("SERVER_PORT", Integer.toString(serverProps.getPort()));
+    pbenv.put("SERVER_PROTOCOL", SERVER_PROTOCOL);
+    pbenv.put("SERVER_SOFTWARE",
+              String.format("%s %s", SERVER_SOFTWARE_PREFIX, Version.VERSION));
+
+    return pb;
+  }
+
+  /**
+   * Creates the CGI meta-variables for a request, which are passed to a CGI
+   * script as environment variables, or to a CGI worker or FastCGI
+   * application as request parameters.
+   *
+   * @param  scriptName    path of the script (or gateway prefix) in the URI,
+   *                       with a leading slash
+   * @param  extraPath     extra path information after the script name,
+   *                       without a leading slash, or an empty string
+   * @param  uri           original request URI
+   * @param  remoteAddress client address, if known
+   * @param  session       TLS session
+   * @param  peerCert      principal identifying peer, if any
+   * @param  virtualHost   virtual host serving the request
+   * @param  serverProps   server properties
+   * @return               map of meta-variable names to values
+   */
+  public Map<String, String> createMetaVariables(String scriptName, String extraPath,
+                                                 URI uri, InetSocketAddress remoteAddress,
+                                                 SSLSession session, X509Certificate peerCert,
+                                                 VirtualHost virtualHost,
+                                                 ServerProperties serverProps) {
+    Map<String, String> metaVars = new HashMap<>();
+    metaVars.put("GATEWAY_INTERFACE", GATEWAY_INTERFACE);
     if (!extraPath.isEmpty()) {
-      pbenv.put("PATH_INFO", "/" + extraPath);
-      pbenv.put("PATH_TRANSLATED",
-                serverProps.getRoot().resolve(extraPath).toString());
+      metaVars.put("PATH_INFO", "/" + extraPath);
+      metaVars.put("PATH_TRANSLATED",
+                   virtualHost.getRoot().resolve(extraPath).toString());
     }
-    pbenv.put("GEMINI_URL", uri.toString());     // note that this is normalized
-    pbenv.put("GEMINI_URL_PATH", uri.getPath()); // note that this is decoded
+    metaVars.put("GEMINI_URL", uri.toString());     // note that this is normalized
+    metaVars.put("GEMINI_URL_PATH", uri.getPath()); // note that this is decoded
     if (uri.getQuery() != null) {
-      pbenv.put("QUERY_STRING", uri.getQuery());
+      metaVars.put("QUERY_STRING", uri.getQuery());
     }
 
-    InetSocketAddress remoteSocketAddress =
-      (InetSocketAddress) socket.getRemoteSocketAddress();
-    if (remoteSocketAddress != null) {
-      pbenv.put("REMOTE_ADDR", remoteSocketAddress.getAddress().getHostAddress());
-      pbenv.put("REMOTE_HOST", remoteSocketAddress.getHostString());
+    if (remoteAddress != null) {
+      metaVars.put("REMOTE_ADDR", remoteAddress.getAddress().getHostAddress());
+      metaVars.put("REMOTE_HOST", remoteAddress.getHostString());
     }
 
     // Basic TLS variables
-    pbenv.put("TLS_CIPHER", socket.getSession().getCipherSuite());
-    pbenv.put("TLS_VERSION", socket.getSession().getProtocol());
-    pbenv.put("TLS_SESSION_ID", byteArrayToHexString(socket.getSession().getId()));
+    metaVars.put("TLS_CIPHER", session.getCipherSuite());
+    metaVars.put("TLS_VERSION", session.getProtocol());
+    metaVars.put("TLS_SESSION_ID", byteArrayToHexString(session.getId()));
 
     // Apache mod_ssl variables
     if (serverProps.isSetModSslCgiMetaVars()) {
-      pbenv.put("SSL_CIPHER", socket.getSession().getCipherSuite());
-      pbenv.put("SSL_PROTOCOL", socket.getSession().getProtocol());
-      pbenv.put("SSL_SESSION_ID", byteArrayToHexString(socket.getSession().getId()));
+      metaVars.put("SSL_CIPHER", session.getCipherSuite());
+      metaVars.put("SSL_PROTOCOL", session.getProtocol());
+      metaVars.put("SSL_SESSION_ID", byteArrayToHexString(session.getId()));
     }
 
     if (peerCert != null) {
-      pbenv.put("AUTH_TYPE", AUTH_TYPE);
-      pbenv.put("REMOTE_USER", peerCert.getSubjectX500Principal().getName());
+      metaVars.put("AUTH_TYPE", AUTH_TYPE);
+      metaVars.put("REMOTE_USER", peerCert.getSubjectX500Principal().getName());
       String fingerprint = fingerprint(peerCert);
       if (fingerprint != null) {
-        pbenv.put("TLS_CLIENT_HASH", fingerprint(peerCert));
+        metaVars.put("TLS_CLIENT_HASH", fingerprint(peerCert));
       }
-      pbenv.put("TLS_CLIENT_ISSUER", peerCert.getIssuerX500Principal().getName());
+      metaVars.put("TLS_CLIENT_ISSUER", peerCert.getIssuerX500Principal().getName());
       OffsetDateTime notBefore = peerCert.getNotBefore().toInstant().atOffset(ZoneOffset.UTC);
       OffsetDateTime notAfter = peerCert.getNotAfter().toInstant().atOffset(ZoneOffset.UTC);
       String remain = Long.toString(OffsetDateTime.now(ZoneOffset.UTC)
                                     .until(notAfter, ChronoUnit.DAYS));
-      pbenv.put("TLS_CLIENT_NOT_BEFORE", TIMESTAMP_FORMATTER.format(notBefore));
-      pbenv.put("TLS_CLIENT_NOT_AFTER", TIMESTAMP_FORMATTER.format(notAfter));
-      pbenv.put("TLS_CLIENT_REMAIN", remain);
-      pbenv.put("TLS_CLIENT_SERIAL", peerCert.getSerialNumber().toString());
-      pbenv.put("TLS_CLIENT_SUBJECT", peerCert.getSubjectX500Principal().getName());
-      pbenv.put("TLS_CLIENT_VERSION", Integer.toString(peerCert.getVersion()));
+      metaVars.put("TLS_CLIENT_NOT_BEFORE", TIMESTAMP_FORMATTER.format(notBefore));
+      metaVars.put("TLS_CLIENT_NOT_AFTER", TIMESTAMP_FORMATTER.format(notAfter));
+      metaVars.put("TLS_CLIENT_REMAIN", remain);
+      metaVars.put("TLS_CLIENT_SERIAL", peerCert.getSerialNumber().toString());
+      metaVars.put("TLS_CLIENT_SUBJECT", peerCert.getSubjectX500Principal().getName());
+      metaVars.put("TLS_CLIENT_VERSION", Integer.toString(peerCert.getVersion()));
 
       // More Apache mod_ssl variables
       if (serverProps.isSetModSslCgiMetaVars()) {
-        pbenv.put("SSL_CLIENT_I_DN", peerCert.getIssuerX500Principal().getName());
-        pbenv.put("SSL_CLIENT_M_SERIAL", peerCert.getSerialNumber().toString());
-        pbenv.put("SSL_CLIENT_M_VERSION", Integer.toString(peerCert.getVersion()));
-        pbenv.put("SSL_CLIENT_S_DN", peerCert.getSubjectX500Principal().getName());
-        pbenv.put("SSL_CLIENT_V_START", TIMESTAMP_FORMATTER.format(notBefore));
-        pbenv.put("SSL_CLIENT_V_END", TIMESTAMP_FORMATTER.format(notAfter));
-        pbenv.put("SSL_CLIENT_V_REMAIN", remain);
+        metaVars.put("SSL_CLIENT_I_DN", peerCert.getIssuerX500Principal().getName());
+        metaVars.put("SSL_CLIENT_M_SERIAL", peerCert.getSerialNumber().toString());
+        metaVars.put("SSL_CLIENT_M_VERSION", Integer.toString(peerCert.getVersion()));
+        metaVars.put("SSL_CLIENT_S_DN", peerCert.getSubjectX500Principal().getName());
+        metaVars.put("SSL_CLIENT_V_START", TIMESTAMP_FORMATTER.format(notBefore));
+        metaVars.put("SSL_CLIENT_V_END", TIMESTAMP_FORMATTER.format(notAfter));
+        metaVars.put("SSL_CLIENT_V_REMAIN", remain);
       }
     }
 
-    pbenv.put("REQUEST_METHOD", REQUEST_METHOD);
-    pbenv.put("SCRIPT_NAME", "/" + serverProps.getRoot().relativize(splitPaths[0]).toString());
-    pbenv.put("SERVER_NAME", serverProps.getHost());
-    pbenv.put("SERVER_PORT", Integer.toString(serverProps.getPort()));
-    pbenv.put("SERVER_PROTOCOL", SERVER_PROTOCOL);
-    pbenv.put("SERVER_SOFTWARE",
-              String.format("%s %s", SERVER_SOFTWARE_PREFIX, Version.VERSION));
+    metaVars.put("REQUEST_METHOD", REQUEST_METHOD);
+    metaVars.put("SCRIPT_NAME", scriptName);
+    metaVars.put("SERVER_NAME", virtualHost.getHost());
+    metaVars.put("SERVER_PORT", Integer.toString(serverProps.getPort()));
+    metaVars.put("SERVER_PROTOCOL", SERVER_PROTOCOL);
+    metaVars.put("SERVER_SOFTWARE",
+                 String.format("%s %s", SERVER_SOFTWARE_PREFIX, Version.VERSION));
 
-    return pb;
+    return metaVars;
   }
 
   static String byteArrayToHexString(byte[] bytes) {
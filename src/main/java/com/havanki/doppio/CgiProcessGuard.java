@@ -0,0 +1,242 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Holds a CGI process to a deadline and a limit on how much output it may
+ * write. A process that breaks either is stopped, along with every process
+ * it started, which ends its output early. A guard covers one run of a
+ * script, or one request handled by a CGI worker.
+ */
+final class CgiProcessGuard {
+
+  /**
+   * A limit that a process broke.
+   */
+  enum Breach {
+    /**
+     * The process ran for too long.
+     */
+    TIMEOUT("cgi-timeout"),
+    /**
+     * The process wrote too much output.
+     */
+    OUTPUT_LIMIT("cgi-output-limit");
+
+    private final String logNote;
+
+    Breach(String logNote) {
+      this.logNote = logNote;
+    }
+
+    /**
+     * Gets the note that marks a request stopped for this breach in the
+     * access log.
+     *
+     * @return access log note
+     */
+    String getLogNote() {
+      return logNote;
+    }
+  }
+
+  private final Process process;
+  private final long maxOutputBytes;
+  private final CompletableFuture<Void> deadline;
+  private volatile Breach breach;
+  private boolean disarmed; // guarded by this
+
+  /**
+   * Creates a new guard, starting the clock on the process.
+   *
+   * @param process        process to guard
+   * @param timeoutMs      how long the process may run, in milliseconds, or
+   *                       0 for no limit
+   * @param maxOutputBytes how much output the process may write, or 0 for no
+   *                       limit
+   */
+  CgiProcessGuard(Process process, int timeoutMs, long maxOutputBytes) {
+    this.process = process;
+    this.maxOutputBytes = maxOutputBytes;
+    deadline = timeoutMs > 0 ?
+      CompletableFuture.runAsync(() -> stop(Breach.TIMEOUT),
+                                 CompletableFuture.delayedExecutor(timeoutMs,
+                                                                   TimeUnit.MILLISECONDS)) :
+      null;
+  }
+
+  /**
+   * Wraps the process's standard output, so that reading past the output
+   * limit stops the process and ends the stream.
+   *
+   * @param  stdout process standard output
+   * @return        guarded standard output
+   */
+  InputStream guard(InputStream stdout) {
+    return new GuardedInputStream(stdout);
+  }
+
+  /**
+   * Checks whether a stream is guarded output of a process that was stopped
+   * for breaking a limit, and so may have been cut short.
+   *
+   * @param  in stream to check
+   * @return    true if the stream may have been cut short
+   */
+  static boolean isCutShort(InputStream in) {
+    return getBreach(in) != null;
+  }
+
+  /**
+   * Gets the limit broken by the process whose guarded output a stream is.
+   *
+   * @param  in stream to check
+   * @return    breached limit, or null if none was or the stream is not
+   *            guarded
+   */
+  static Breach getBreach(InputStream in) {
+    return in instanceof GuardedInputStream guarded ?
+      guarded.getGuard().getBreach() : null;
+  }
+
+  /**
+   * Gets the limit the process broke.
+   *
+   * @return breached limit, or null if none was
+   */
+  Breach getBreach() {
+    return breach;
+  }
+
+  /**
+   * Stops the clock on the process, once it has exited or, for a worker,
+   * finished its response. The process is not stopped afterwards, even if
+   * its deadline passes at the same time.
+   */
+  synchronized void disarm() {
+    disarmed = true;
+    if (deadline != null) {
+      deadline.cancel(false);
+    }
+  }
+
+  private synchronized void stop(Breach reason) {
+    if (breach != null || disarmed) {
+      return;
+    }
+    breach = reason;
+    // Find the descendants first, since they are orphaned once the process
+    // itself is gone.
+    process.descendants().forEach(ProcessHandle::destroyForcibly);
+    process.destroyForcibly();
+  }
+
+  private final class GuardedInputStream extends FilterInputStream {
+    private long bytesRead;
+
+    private GuardedInputStream(InputStream in) {
+      super(in);
+    }
+
+    private CgiProcessGuard getGuard() {
+      return CgiProcessGuard.this;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (isAtLimit()) {
+        return -1;
+      }
+      int b;
+      try {
+        b = super.read();
+      } catch (IOException e) {
+        return endIfStopped(e);
+      }
+      if (breach != null) {
+        return -1;
+      }
+      if (b != -1) {
+        bytesRead++;
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (isAtLimit()) {
+        return -1;
+      }
+      if (maxOutputBytes > 0L) {
+        len = (int) Math.min(len, maxOutputBytes - bytesRead);
+      }
+      int n;
+      try {
+        n = super.read(b, off, len);
+      } catch (IOException e) {
+        return endIfStopped(e);
+      }
+      // Stopping a process's children can let it write more before it is
+      // stopped itself, so nothing read once a limit is broken is passed on.
+      if (breach != null) {
+        return -1;
+      }
+      if (n > 0) {
+        bytesRead += n;
+      }
+      return n;
+    }
+
+    /**
+     * Treats a failure to read from a stopped process as the end of its
+     * output, since stopping it is what ended the output.
+     */
+    private int endIfStopped(IOException e) throws IOException {
+      if (breach != null) {
+        return -1;
+      }
+      throw e;
+    }
+
+    private boolean isAtLimit() {
+      if (maxOutputBytes == 0L || bytesRead < maxOutputBytes) {
+        return false;
+      }
+      // Only a process that tries to write more has broken the limit.
+      if (breach == null) {
+        try {
+          if (super.read() == -1) {
+            return true;
+          }
+        } catch (IOException e) {
+          return true;
+        }
+        stop(Breach.OUTPUT_LIMIT);
+      }
+      return true;
+    }
+  }
+}
@@ -0,0 +1,234 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-memory cache of complete responses from CGI scripts that declare how
+ * long their responses stay fresh, through a {@code Cache-Control: max-age=N}
+ * response header. Responses are keyed by script, extra path information and
+ * query string, and also by client certificate for scripts in secure
+ * domains, since those may respond differently to each client. A response is
+ * served until it expires, and the total size of cached responses is held
+ * within a byte budget by evicting the least recently used ones.
+ */
+public class CgiResponseCache {
+
+  /**
+   * A cached response.
+   */
+  public static class Entry {
+    private final int statusCode;
+    private final byte[] response;
+    private final int bodyOffset;
+    private final long expiresAtNanos;
+
+    private Entry(int statusCode, byte[] response, int bodyOffset,
+                  long expiresAtNanos) {
+      this.statusCode = statusCode;
+      this.response = response;
+      this.bodyOffset = bodyOffset;
+      this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * Gets the response status code.
+     *
+     * @return status code
+     */
+    public int getStatusCode() {
+      return statusCode;
+    }
+
+    /**
+     * Gets the complete response, header and body. Do not modify it.
+     *
+     * @return response bytes
+     */
+    public byte[] getResponse() {
+      return response;
+    }
+
+    /**
+     * Gets the size of the response body.
+     *
+     * @return response body size
+     */
+    public long getBodySize() {
+      return response.length - bodyOffset;
+    }
+
+    private boolean isExpired(long nowNanos) {
+      return nowNanos - expiresAtNanos >= 0;
+    }
+  }
+
+  private final LruByteCache<String, Entry> entries;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxBytes maximum total size of cached responses
+   */
+  public CgiResponseCache(long maxBytes) {
+    entries = new LruByteCache<>(maxBytes, entry -> entry.response.length);
+  }
+
+  /**
+   * Builds the cache key for a CGI request.
+   *
+   * @param  host                  virtual host name
+   * @param  script                resolved path of script
+   * @param  pathInfo              extra path information, or an empty string
+   * @param  query                 raw query string, or null for none
+   * @param  clientCertFingerprint fingerprint of the client certificate for
+   *                               a script in a secure domain, or null
+   * @return                       cache key
+   */
+  public static String key(String host, Path script, String pathInfo,
+                           String query, String clientCertFingerprint) {
+    StringBuilder key = new StringBuilder(128)
+      .append(host).append('\0')
+      .append(script).append('\0')
+      .append(pathInfo).append('\0');
+    if (query != null) {
+      key.append('?').append(query);
+    }
+    if (clientCertFingerprint != null) {
+      key.append('\0').append(clientCertFingerprint);
+    }
+    return key.toString();
+  }
+
+  /**
+   * Gets the largest response that may be cached.
+   *
+   * @return maximum entry size in bytes
+   */
+  public long getMaxEntryBytes() {
+    return entries.getMaxEntryBytes();
+  }
+
+  /**
+   * Gets a cached response, if there is one and it has not expired.
+   *
+   * @param  key cache key
+   * @return     cached response, or null if none is available
+   */
+  public Entry get(String key) {
+    Entry entry = entries.get(key);
+    if (entry != null && entry.isExpired(System.nanoTime())) {
+      entries.remove(key, entry);
+      entry = null;
+    }
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry;
+  }
+
+  /**
+   * Caches a response.
+   *
+   * @param key        cache key
+   * @param statusCode response status code
+   * @param response   complete response, header and body
+   * @param bodyOffset offset of body in response
+   * @param maxAgeSec  how long the response stays fresh, in seconds
+   */
+  public void put(String key, int statusCode, byte[] response, int bodyOffset,
+                  long maxAgeSec) {
+    if (response.length > getMaxEntryBytes() || maxAgeSec <= 0L) {
+      return;
+    }
+    Entry entry = new Entry(statusCode, response, bodyOffset,
+                            System.nanoTime() +
+                            TimeUnit.SECONDS.toNanos(maxAgeSec));
+    entries.put(key, entry);
+  }
+
+  /**
+   * Gets the number of requests served from the cache.
+   *
+   * @return number of hits
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of requests that could not be served from the cache.
+   *
+   * @return number of misses
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the number of responses evicted to stay within the byte budget.
+   *
+   * @return number of evictions
+   */
+  public long getEvictions() {
+    return entries.getEvictions();
+  }
+
+  /**
+   * Gets the number of cached responses, including any that have expired but
+   * not yet been dropped.
+   *
+   * @return number of entries
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the total size of cached responses.
+   *
+   * @return size in bytes
+   */
+  public long getCurrentBytes() {
+    return entries.getCurrentBytes();
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    stats.put("cgi.cache.hits", getHits());
+    stats.put("cgi.cache.misses", getMisses());
+    stats.put("cgi.cache.evictions", getEvictions());
+    stats.put("cgi.cache.entries", (long) size());
+    stats.put("cgi.cache.bytes", getCurrentBytes());
+  }
+}
@@ -19,10 +19,13 @@
 
 package com.havanki.doppio;
 
+import java.io.FilterInputStream;
 import java.io.InputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 
 import org.slf4j.Logger;
@@ -30,24 +33,43 @@ import org.slf4j.LoggerFactory;
 
 /**
  * A utility class that reads header lines in the response (output) of proper
- * CGI scripts.
+ * CGI scripts. Output is read in chunks into a buffer, and headers are parsed
+ * from it in place. Since a chunk may run past the headers into the response
+ * body, the body must then be read through {@link #getBody()}, which yields
+ * those bytes before the rest of the output. The buffer is taken from a pool
+ * shared by all readers, and is given back when the reader is closed, so close
+ * a reader only once the body has been read.
  */
-public class CgiResponseHeaderReader {
+public class CgiResponseHeaderReader implements AutoCloseable {
 
   private static final Logger LOG = LoggerFactory.getLogger(CgiResponseHeaderReader.class);
 
-  private static final String CONTENT_TYPE_PREFIX = "Content-Type:";
-  private static final int CONTENT_TYPE_PREFIX_LEN = CONTENT_TYPE_PREFIX.length();
+  private static final int INITIAL_BUFFER_SIZE = 1024;
+  private static final int MAX_HEADERS_SIZE = 64 * 1024;
 
-  private static final String STATUS_PREFIX = "Status:";
-  private static final int STATUS_PREFIX_LEN = STATUS_PREFIX.length();
+  static final BufferPool BUFFER_POOL =
+    new BufferPool(INITIAL_BUFFER_SIZE, false, 64);
 
-  private static final String LOCATION_PREFIX = "Location:";
-  private static final int LOCATION_PREFIX_LEN = LOCATION_PREFIX.length();
+  private static final byte[] CONTENT_TYPE_PREFIX = ascii("Content-Type:");
+  private static final byte[] STATUS_PREFIX = ascii("Status:");
+  private static final byte[] LOCATION_PREFIX = ascii("Location:");
+  private static final byte[] CACHE_CONTROL_PREFIX = ascii("Cache-Control:");
+  private static final String MAX_AGE_DIRECTIVE = "max-age=";
+
+  private ByteBuffer pooledBuffer;
+  private byte[] buffer;
+  private int pos;
+  private int limit;
+  private InputStream in;
+
+  private static byte[] ascii(String s) {
+    return s.getBytes(StandardCharsets.US_ASCII);
+  }
 
   /**
    * Consumes CGI response headers from the given input stream, which is
-   * expected to be the output from a CGI script.
+   * expected to be the output from a CGI script. Read the response body
+   * afterwards from {@link #getBody()}, not from the stream itself.
    *
    * @param  processStdout CGI output as an input stream
    * @return               response metadata
@@ -56,59 +78,39 @@ public class CgiResponseHeaderReader {
   public CgiResponseMetadata consumeHeaders(InputStream processStdout)
     throws IOException {
     CgiResponseMetadata responseMetadata = new CgiResponseMetadata();
+    in = processStdout;
+    if (pooledBuffer == null) {
+      pooledBuffer = BUFFER_POOL.acquire();
+      buffer = pooledBuffer.array();
+    }
+    pos = 0;
+    limit = 0;
 
-    String responseHeader;
+    // Only "\n" is detected as the end of a line, and not "\r\n". However,
+    // RFC 3875 specifies "\n" as the line ending for CGI response headers, so
+    // this is actually OK. A last line without an ending is still a header.
+    int scanned = 0;
     while (true) {
-      responseHeader = readLine(processStdout);
-      if (responseHeader == null || responseHeader.isEmpty()) {
-        break;
-      }
-      LOG.debug("Response header: {}", responseHeader);
-
-      if (responseHeader.startsWith(CONTENT_TYPE_PREFIX)) {
-        // Content-Type: <content-type>
-        responseMetadata.setContentType(responseHeader
-          .substring(CONTENT_TYPE_PREFIX_LEN).trim());
-
-      } else if (responseHeader.startsWith(STATUS_PREFIX)) {
-        // Status: <status-code>[ <reason-phrase>]
-        String statusValue = responseHeader.substring(STATUS_PREFIX_LEN).trim();
-        if (statusValue.isEmpty()) {
-          throw new IOException("Status response header has empty value");
-        }
-        String statusCodeString;
-        int spidx = statusValue.indexOf(" ");
-        if (spidx != -1) {
-          statusCodeString = statusValue.substring(0, spidx);
-        } else {
-          statusCodeString = statusValue;
-        }
-        try {
-          responseMetadata.setStatusCode(Integer.parseInt(statusCodeString));
-        } catch (NumberFormatException e) {
-          throw new IOException("Status response header has invalid status code " +
-                                statusCodeString);
+      int lineEnd = indexOfNewline(scanned);
+      if (lineEnd == -1) {
+        // Filling moves the unparsed bytes to the start of the buffer.
+        scanned = limit - pos;
+        if (!fill()) {
+          if (pos < limit) {
+            parseHeader(pos, limit, responseMetadata);
+            pos = limit;
+          }
+          break;
         }
-        if (spidx != -1) {
-          responseMetadata.setReasonPhrase(statusValue.substring(spidx + 1));
-        }
-
-      } else if (responseHeader.startsWith(LOCATION_PREFIX)) {
-        // Location: <URI>
-        String uriString = responseHeader.substring(LOCATION_PREFIX_LEN).trim();
-        if (uriString.isEmpty()) {
-          throw new IOException("Location response header has empty value");
-        }
-
-        try {
-          responseMetadata.setLocation(new URI (uriString));
-        } catch (URISyntaxException e) {
-          throw new IOException("Location response header has invalid URI " +
-                                uriString);
-        }
-      } else {
-        LOG.warn("Unsupported CGI response header: {}", responseHeader);
+        continue;
+      }
+      int lineStart = pos;
+      pos = lineEnd + 1;
+      scanned = pos;
+      if (lineEnd == lineStart) {
+        break;
       }
+      parseHeader(lineStart, lineEnd, responseMetadata);
     }
 
     // Either Content-Type (ordinary response) or Location (redirect) is
@@ -131,44 +133,232 @@ public class CgiResponseHeaderReader {
   }
 
   /**
-   * Reads a line of UTF-8 text from an input stream. This is here because after
-   * CGI response headers are read, the rest of the stream is fed to the server
-   * response, and if a normal Java buffered input stream or reader is used,
-   * it is liable to take out extra bytes from the stream that don't belong to
-   * CGI response headers, thus cutting off the beginning of the body content.
+   * Gets the response body, after the headers have been consumed. This
+   * starts with any bytes read past the headers.
    *
-   * Only "\n" is detected as the end of a line, and not "\r\n". However, RFC
-   * 3875 specifies "\n" as the line ending for CGI response headers, so this
-   * is actually OK.
+   * @return response body as an input stream
+   */
+  public InputStream getBody() {
+    return pos < limit ? new PrefixedInputStream(buffer, pos, limit, in) : in;
+  }
+
+  /**
+   * Gives the buffer back to the pool. The body from {@link #getBody()} may
+   * not be read afterwards.
+   */
+  @Override
+  public void close() {
+    if (pooledBuffer != null) {
+      BUFFER_POOL.release(pooledBuffer);
+      pooledBuffer = null;
+      buffer = null;
+    }
+  }
+
+  private int indexOfNewline(int from) {
+    for (int i = from; i < limit; i++) {
+      if (buffer[i] == '\n') {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Reads another chunk of output into the buffer, first moving unparsed
+   * bytes to its start, and growing it if a header fills it entirely.
    *
-   * @param  in          input stream
-   * @return             line of text
-   * @throws IOException if reading from the stream fails
+   * @return             false if the output has ended
+   * @throws IOException if reading fails, or the headers are too long
    */
-  private String readLine(InputStream in) throws IOException {
-    byte[] lineBytes = new byte[80];
-    int len = 0;
-    int b = 0;
-    while (true) {
-      b = in.read();
-      if (b == -1) {
-        break;
+  private boolean fill() throws IOException {
+    if (pos > 0) {
+      System.arraycopy(buffer, pos, buffer, 0, limit - pos);
+      limit -= pos;
+      pos = 0;
+    }
+    if (limit == buffer.length) {
+      if (buffer.length >= MAX_HEADERS_SIZE) {
+        throw new IOException("CGI response header is too long");
       }
-      if (b == '\n') {
-        break;
+      byte[] newBuffer = new byte[Math.min(2 * buffer.length, MAX_HEADERS_SIZE)];
+      System.arraycopy(buffer, 0, newBuffer, 0, limit);
+      buffer = newBuffer;
+    }
+    int n = in.read(buffer, limit, buffer.length - limit);
+    if (n == -1) {
+      return false;
+    }
+    limit += n;
+    return true;
+  }
+
+  private boolean startsWith(int start, int end, byte[] prefix) {
+    if (end - start < prefix.length) {
+      return false;
+    }
+    for (int i = 0; i < prefix.length; i++) {
+      if (buffer[start + i] != prefix[i]) {
+        return false;
       }
-      if (lineBytes.length < len + 1) {
-        byte[] newLineBytes = new byte[2 * lineBytes.length];
-        System.arraycopy(lineBytes, 0, newLineBytes, 0, len);
-        lineBytes = newLineBytes;
+    }
+    return true;
+  }
+
+  private String value(int start, int end) {
+    return new String(buffer, start, end - start, StandardCharsets.UTF_8).trim();
+  }
+
+  private void parseHeader(int start, int end,
+                           CgiResponseMetadata responseMetadata)
+    throws IOException {
+    if (LOG.isDebugEnabled()) {
+      LOG.debug("Response header: {}", value(start, end));
+    }
+
+    if (startsWith(start, end, CONTENT_TYPE_PREFIX)) {
+      // Content-Type: <content-type>
+      responseMetadata.setContentType(value(start + CONTENT_TYPE_PREFIX.length,
+                                            end));
+
+    } else if (startsWith(start, end, STATUS_PREFIX)) {
+      // Status: <status-code>[ <reason-phrase>]
+      String statusValue = value(start + STATUS_PREFIX.length, end);
+      if (statusValue.isEmpty()) {
+        throw new IOException("Status response header has empty value");
+      }
+      String statusCodeString;
+      int spidx = statusValue.indexOf(" ");
+      if (spidx != -1) {
+        statusCodeString = statusValue.substring(0, spidx);
+      } else {
+        statusCodeString = statusValue;
+      }
+      try {
+        responseMetadata.setStatusCode(Integer.parseInt(statusCodeString));
+      } catch (NumberFormatException e) {
+        throw new IOException("Status response header has invalid status code " +
+                              statusCodeString);
+      }
+      if (spidx != -1) {
+        responseMetadata.setReasonPhrase(statusValue.substring(spidx + 1));
+      }
+
+    } else if (startsWith(start, end, LOCATION_PREFIX)) {
+      // Location: <URI>
+      String uriString = value(start + LOCATION_PREFIX.length, end);
+      if (uriString.isEmpty()) {
+        throw new IOException("Location response header has empty value");
       }
-      lineBytes[len] = (byte) b;
-      len++;
+
+      try {
+        responseMetadata.setLocation(new URI (uriString));
+      } catch (URISyntaxException e) {
+        throw new IOException("Location response header has invalid URI " +
+                              uriString);
+      }
+    } else if (startsWith(start, end, CACHE_CONTROL_PREFIX)) {
+      // Cache-Control: <directive>[, <directive>...]
+      responseMetadata.setMaxAgeSec(parseMaxAge(value(start + CACHE_CONTROL_PREFIX.length,
+                                                      end)));
+
+    } else {
+      LOG.warn("Unsupported CGI response header: {}", value(start, end));
+    }
+  }
+
+  /**
+   * Finds the max-age directive in the value of a Cache-Control header. Other
+   * directives are ignored, except that no-store and no-cache prevent
+   * caching. An invalid max-age is logged and ignored, since caching is only
+   * an optimization.
+   *
+   * @param  value header value
+   * @return       maximum age in seconds, or null if the response may not be
+   *               cached
+   */
+  private Long parseMaxAge(String value) {
+    Long maxAgeSec = null;
+    for (String directive : value.split(",")) {
+      directive = directive.trim();
+      if (directive.equals("no-store") || directive.equals("no-cache")) {
+        return null;
+      }
+      if (directive.startsWith(MAX_AGE_DIRECTIVE)) {
+        String maxAgeString = directive.substring(MAX_AGE_DIRECTIVE.length());
+        try {
+          maxAgeSec = Long.parseLong(maxAgeString);
+        } catch (NumberFormatException e) {
+          LOG.warn("Ignoring invalid max-age in Cache-Control response header: {}",
+                   maxAgeString);
+        }
+      }
+    }
+    return maxAgeSec != null && maxAgeSec > 0L ? maxAgeSec : null;
+  }
+
+  /**
+   * An input stream that yields bytes left over in a buffer before those from
+   * an underlying stream.
+   */
+  private static final class PrefixedInputStream extends FilterInputStream {
+    private final byte[] prefix;
+    private int prefixPos;
+    private final int prefixLimit;
+
+    private PrefixedInputStream(byte[] prefix, int prefixPos, int prefixLimit,
+                                InputStream in) {
+      super(in);
+      this.prefix = prefix;
+      this.prefixPos = prefixPos;
+      this.prefixLimit = prefixLimit;
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (prefixPos < prefixLimit) {
+        return prefix[prefixPos++] & 0xff;
+      }
+      return super.read();
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (prefixPos < prefixLimit) {
+        int n = Math.min(len, prefixLimit - prefixPos);
+        System.arraycopy(prefix, prefixPos, b, off, n);
+        prefixPos += n;
+        return n;
+      }
+      return super.read(b, off, len);
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+      if (prefixPos < prefixLimit) {
+        int skipped = (int) Math.min(n, prefixLimit - prefixPos);
+        prefixPos += skipped;
+        return skipped;
+      }
+      return super.skip(n);
+    }
+
+    @Override
+    public int available() throws IOException {
+      return (prefixLimit - prefixPos) + super.available();
+    }
+
+    @Override
+    public boolean markSupported() {
+      return false;
     }
 
-    if (len == 0) {
-      return b == -1 ? null : "";
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+      long transferred = prefixLimit - prefixPos;
+      out.write(prefix, prefixPos, prefixLimit - prefixPos);
+      prefixPos = prefixLimit;
+      return transferred + in.transferTo(out);
     }
-    return new String(lineBytes, StandardCharsets.UTF_8);
   }
 }
@@ -29,6 +29,7 @@ public class CgiResponseMetadata {
   private Integer statusCode;
   private String reasonPhrase;
   private URI location;
+  private Long maxAgeSec;
 
   /**
    * Sets the content type.
@@ -101,4 +102,23 @@ public class CgiResponseMetadata {
   public URI getLocation() {
     return location;
   }
+
+  /**
+   * Sets how long the response may be cached.
+   *
+   * @param maxAgeSec maximum age, in seconds
+   */
+  public void setMaxAgeSec(Long maxAgeSec) {
+    this.maxAgeSec = maxAgeSec;
+  }
+
+  /**
+   * Gets how long the response may be cached.
+   *
+   * @return maximum age, in seconds, or null if the response may not be
+   *         cached
+   */
+  public Long getMaxAgeSec() {
+    return maxAgeSec;
+  }
 }
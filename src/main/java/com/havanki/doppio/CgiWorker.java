@@ -0,0 +1,318 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A long-lived process running a CGI script that handles one request after
+ * another. Each request is written to the process's standard input as a
+ * netstring of null-terminated meta-variable names and values, as in an SCGI
+ * request header. The process writes its CGI response to standard output as
+ * a series of netstrings, ending with an empty one. Standard error is logged.
+ */
+class CgiWorker {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CgiWorker.class);
+
+  /**
+   * The worker protocol version, passed to workers in DOPPIO_WORKER.
+   */
+  static final String PROTOCOL_VERSION = "1";
+
+  private static final int MAX_LENGTH_DIGITS = 9;
+
+  private final Process process;
+  private final Listener listener;
+  private final InputStream stdout;
+  private final OutputStream stdin;
+  private int requestsHandled;
+  private long lastUsedNanos;
+
+  /**
+   * Receives notice of responses being closed.
+   */
+  interface Listener {
+    /**
+     * Called when the stream for a response is closed.
+     *
+     * @param worker   worker
+     * @param complete true if the whole response was read, so the worker is
+     *                 ready for another request
+     */
+    void responseClosed(CgiWorker worker, boolean complete);
+  }
+
+  private CgiWorker(Process process, Listener listener) {
+    this.process = process;
+    this.listener = listener;
+    stdout = new BufferedInputStream(process.getInputStream());
+    stdin = new BufferedOutputStream(process.getOutputStream());
+    lastUsedNanos = System.nanoTime();
+  }
+
+  /**
+   * Starts a worker process.
+   *
+   * @param  pb          process builder for the worker
+   * @param  listener    listener for closed responses
+   * @return             new worker
+   * @throws IOException if the process cannot be started
+   */
+  static CgiWorker start(ProcessBuilder pb, Listener listener)
+    throws IOException {
+    Process process = pb.start();
+    Thread.ofVirtual()
+      .name("cgi-worker-stderr")
+      .start(() -> logErrors(process));
+    return new CgiWorker(process, listener);
+  }
+
+  private static void logErrors(Process process) {
+    try (BufferedReader reader =
+         new BufferedReader(new InputStreamReader(process.getErrorStream(),
+                                                  StandardCharsets.UTF_8))) {
+      String line;
+      while ((line = reader.readLine()) != null) {
+        LOG.warn("CGI worker {} error output: {}", process.pid(), line);
+      }
+    } catch (IOException e) {
+      LOG.debug("Stopped reading CGI worker error output", e);
+    }
+  }
+
+  /**
+   * Sends a request to the worker. The returned stream must be read to its
+   * end before the worker can take another request. Closing the stream
+   * notifies the listener. A worker that takes too long over the request, or
+   * writes too much in response, is stopped, and is not ready for another
+   * request.
+   *
+   * @param  params         request parameters (CGI meta-variables)
+   * @param  timeoutMs      how long the worker may take over the request, in
+   *                        milliseconds, or 0 for no limit
+   * @param  maxOutputBytes how much the worker may write in response, or 0
+   *                        for no limit
+   * @return                stream of the CGI response
+   * @throws IOException    if the request cannot be sent
+   */
+  InputStream send(Map<String, String> params, int timeoutMs,
+                   long maxOutputBytes)
+    throws IOException {
+    requestsHandled++;
+    CgiProcessGuard guard =
+      new CgiProcessGuard(process, timeoutMs, maxOutputBytes);
+    try {
+      stdin.write(encodeRequest(params));
+      stdin.flush();
+    } catch (IOException e) {
+      guard.disarm();
+      throw e;
+    }
+    return guard.guard(new ResponseStream(guard));
+  }
+
+  /**
+   * Encodes a request as a netstring of null-terminated names and values.
+   *
+   * @param  params request parameters
+   * @return        encoded request
+   */
+  static byte[] encodeRequest(Map<String, String> params) {
+    ByteArrayOutputStream headers = new ByteArrayOutputStream(1024);
+    for (Map.Entry<String, String> param : params.entrySet()) {
+      byte[] name = param.getKey().getBytes(StandardCharsets.UTF_8);
+      byte[] value = param.getValue().getBytes(StandardCharsets.UTF_8);
+      headers.write(name, 0, name.length);
+      headers.write(0);
+      headers.write(value, 0, value.length);
+      headers.write(0);
+    }
+    byte[] length = Integer.toString(headers.size())
+      .getBytes(StandardCharsets.US_ASCII);
+    ByteArrayOutputStream request =
+      new ByteArrayOutputStream(length.length + headers.size() + 2);
+    request.write(length, 0, length.length);
+    request.write(':');
+    request.writeBytes(headers.toByteArray());
+    request.write(',');
+    return request.toByteArray();
+  }
+
+  /**
+   * Gets the number of requests sent to this worker.
+   *
+   * @return number of requests
+   */
+  int getRequestsHandled() {
+    return requestsHandled;
+  }
+
+  /**
+   * Gets when this worker was last used.
+   *
+   * @return {@link System#nanoTime()} when last used
+   */
+  long getLastUsedNanos() {
+    return lastUsedNanos;
+  }
+
+  /**
+   * Marks this worker as used now.
+   */
+  void touch() {
+    lastUsedNanos = System.nanoTime();
+  }
+
+  /**
+   * Checks whether the worker process is still running.
+   *
+   * @return true if the process is alive
+   */
+  boolean isAlive() {
+    return process.isAlive();
+  }
+
+  /**
+   * Stops the worker. Its standard input is closed, which tells a well
+   * behaved worker to exit, and then the process and any processes it
+   * started are destroyed.
+   */
+  void stop() {
+    try {
+      stdin.close();
+    } catch (IOException e) {
+      LOG.debug("Failed to close CGI worker input", e);
+    }
+    process.descendants().forEach(ProcessHandle::destroyForcibly);
+    process.destroyForcibly();
+  }
+
+  /**
+   * The response to one request, read from the frames the worker writes.
+   */
+  private class ResponseStream extends InputStream {
+
+    private final CgiProcessGuard guard;
+    private int remaining;
+    private boolean complete;
+    private boolean closed;
+
+    private ResponseStream(CgiProcessGuard guard) {
+      this.guard = guard;
+    }
+
+    /**
+     * Reads up to the start of the data in the next frame, unless the
+     * response is complete.
+     *
+     * @return false if the response is complete
+     */
+    private boolean nextFrame() throws IOException {
+      while (remaining == 0 && !complete) {
+        int length = 0;
+        int digits = 0;
+        int b;
+        while ((b = stdout.read()) != ':') {
+          if (b < '0' || b > '9' || ++digits > MAX_LENGTH_DIGITS) {
+            throw b == -1 ?
+              new EOFException("CGI worker ended its response early") :
+              new IOException("CGI worker sent an invalid frame");
+          }
+          length = length * 10 + (b - '0');
+        }
+        if (length == 0) {
+          readFrameEnd();
+          complete = true;
+        } else {
+          remaining = length;
+        }
+      }
+      return !complete;
+    }
+
+    private void readFrameEnd() throws IOException {
+      int b = stdout.read();
+      if (b != ',') {
+        throw b == -1 ?
+          new EOFException("CGI worker ended its response early") :
+          new IOException("CGI worker sent an invalid frame");
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!nextFrame()) {
+        return -1;
+      }
+      int b = stdout.read();
+      if (b == -1) {
+        throw new EOFException("CGI worker ended its response early");
+      }
+      if (--remaining == 0) {
+        readFrameEnd();
+      }
+      return b;
+    }
+
+    @Override
+    public int read(byte[] buf, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!nextFrame()) {
+        return -1;
+      }
+      int n = stdout.read(buf, off, Math.min(len, remaining));
+      if (n == -1) {
+        throw new EOFException("CGI worker ended its response early");
+      }
+      remaining -= n;
+      if (remaining == 0) {
+        readFrameEnd();
+      }
+      return n;
+    }
+
+    @Override
+    public void close() {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      guard.disarm();
+      listener.responseClosed(CgiWorker.this,
+                              complete && guard.getBreach() == null);
+    }
+  }
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A pool of worker processes for one CGI script. Workers are started as
+ * they are needed, up to a limit, and kept for later requests. A worker is
+ * stopped after it has handled a given number of requests, when it fails to
+ * complete a response, when it breaks a limit on a request, or when it has
+ * been idle for too long. When every
+ * worker is busy, a request waits for one to become free.
+ */
+class CgiWorkerPool implements CgiWorker.Listener {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CgiWorkerPool.class);
+
+  private final String script;
+  private final int maxWorkers;
+  private final int maxRequestsPerWorker;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Condition workerFreed = lock.newCondition();
+  private final Deque<CgiWorker> idle = new ArrayDeque<>(); // guarded by lock
+  private int numWorkers; // guarded by lock
+  private boolean closed; // guarded by lock
+  private final LongAdder started = new LongAdder();
+  private final LongAdder recycled = new LongAdder();
+  private final LongAdder reaped = new LongAdder();
+  private final LongAdder requests = new LongAdder();
+
+  /**
+   * Creates a new pool. No workers are started until requests are made.
+   *
+   * @param script               script path, for messages
+   * @param maxWorkers           maximum number of workers
+   * @param maxRequestsPerWorker maximum number of requests for a worker to
+   *                             handle before it is replaced, or 0 for no
+   *                             limit
+   */
+  CgiWorkerPool(String script, int maxWorkers, int maxRequestsPerWorker) {
+    this.script = script;
+    this.maxWorkers = maxWorkers;
+    this.maxRequestsPerWorker = maxRequestsPerWorker;
+  }
+
+  /**
+   * Sends a request to an idle worker, starting a new one if none is idle
+   * and there is room.
+   *
+   * @param  pb             process builder for a new worker
+   * @param  params         request parameters (CGI meta-variables)
+   * @param  timeoutMs      how long the worker may take over the request, in
+   *                        milliseconds, or 0 for no limit
+   * @param  maxOutputBytes how much the worker may write in response, or 0
+   *                        for no limit
+   * @return                stream of the CGI response; close it when done,
+   *                        which frees the worker
+   * @throws IOException    if a worker cannot be started, or the request
+   *                        cannot be sent
+   */
+  InputStream send(ProcessBuilder pb, Map<String, String> params,
+                   int timeoutMs, long maxOutputBytes)
+    throws IOException {
+    CgiWorker worker = acquire(pb);
+    try {
+      InputStream response = worker.send(params, timeoutMs, maxOutputBytes);
+      requests.increment();
+      return response;
+    } catch (IOException e) {
+      discard(worker);
+      throw e;
+    }
+  }
+
+  private CgiWorker acquire(ProcessBuilder pb) throws IOException {
+    lock.lock();
+    try {
+      while (true) {
+        if (closed) {
+          throw new IOException("CGI worker pool is closed");
+        }
+        while (!idle.isEmpty()) {
+          CgiWorker worker = idle.pop();
+          if (worker.isAlive()) {
+            return worker;
+          }
+          LOG.debug("Discarding exited worker for {}", script);
+          numWorkers--;
+          worker.stop();
+        }
+        if (numWorkers < maxWorkers) {
+          numWorkers++;
+          break;
+        }
+        workerFreed.await();
+      }
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted waiting for CGI worker");
+    } finally {
+      lock.unlock();
+    }
+
+    try {
+      LOG.debug("Starting worker for {}", script);
+      CgiWorker worker = CgiWorker.start(pb, this);
+      started.increment();
+      return worker;
+    } catch (IOException | RuntimeException e) {
+      lock.lock();
+      try {
+        numWorkers--;
+        workerFreed.signal();
+      } finally {
+        lock.unlock();
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public void responseClosed(CgiWorker worker, boolean complete) {
+    if (!complete) {
+      LOG.debug("Worker for {} did not complete its response", script);
+      discard(worker);
+      return;
+    }
+    if (maxRequestsPerWorker > 0 &&
+        worker.getRequestsHandled() >= maxRequestsPerWorker) {
+      recycled.increment();
+      discard(worker);
+      return;
+    }
+    worker.touch();
+    lock.lock();
+    try {
+      if (!closed) {
+        idle.push(worker);
+        workerFreed.signal();
+        return;
+      }
+    } finally {
+      lock.unlock();
+    }
+    worker.stop();
+  }
+
+  private void discard(CgiWorker worker) {
+    worker.stop();
+    lock.lock();
+    try {
+      numWorkers--;
+      workerFreed.signal();
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Stops workers that have been idle since before a given time.
+   *
+   * @param idleSinceNanos {@link System#nanoTime()} before which a worker
+   *                       must have been last used to be stopped
+   */
+  void reap(long idleSinceNanos) {
+    List<CgiWorker> toStop = new ArrayList<>();
+    lock.lock();
+    try {
+      Iterator<CgiWorker> iter = idle.iterator();
+      while (iter.hasNext()) {
+        CgiWorker worker = iter.next();
+        if (worker.getLastUsedNanos() - idleSinceNanos < 0) {
+          iter.remove();
+          numWorkers--;
+          toStop.add(worker);
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+    for (CgiWorker worker : toStop) {
+      LOG.debug("Stopping idle worker for {}", script);
+      reaped.increment();
+      worker.stop();
+    }
+  }
+
+  /**
+   * Checks whether this pool is closed.
+   *
+   * @return true if closed
+   */
+  boolean isClosed() {
+    lock.lock();
+    try {
+      return closed;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Gets the number of workers, busy or idle.
+   *
+   * @return number of workers
+   */
+  int getNumWorkers() {
+    lock.lock();
+    try {
+      return numWorkers;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Adds statistics for this pool to a map of server statistics, summing
+   * them with those of other pools already added.
+   *
+   * @param stats map of statistic names to values
+   */
+  void addTo(Map<String, Long> stats) {
+    stats.merge("cgi.workers.requests", requests.sum(), Long::sum);
+    stats.merge("cgi.workers.started", started.sum(), Long::sum);
+    stats.merge("cgi.workers.recycled", recycled.sum(), Long::sum);
+    stats.merge("cgi.workers.reaped", reaped.sum(), Long::sum);
+    stats.merge("cgi.workers.live", (long) getNumWorkers(), Long::sum);
+  }
+
+  /**
+   * Stops every idle worker, and any busy worker once it is done.
+   */
+  void close() {
+    List<CgiWorker> toStop;
+    lock.lock();
+    try {
+      closed = true;
+      toStop = new ArrayList<>(idle);
+      idle.clear();
+      numWorkers -= toStop.size();
+      workerFreed.signalAll();
+    } finally {
+      lock.unlock();
+    }
+    for (CgiWorker worker : toStop) {
+      worker.stop();
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The pools of worker processes for CGI scripts that opt in to being run as
+ * workers. A script opts in by including the marker text
+ * {@value #WORKER_MARKER}, usually in a comment, near its start. Each such
+ * script gets its own pool, and workers left idle for too long are stopped.
+ * When a script is modified, its pool is closed, so that its workers are
+ * stopped once they are done, and a new pool runs the new script.
+ */
+public class CgiWorkerPools implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(CgiWorkerPools.class);
+
+  /**
+   * The text that marks a script as a worker.
+   */
+  public static final String WORKER_MARKER = "doppio-worker";
+  private static final int MARKER_SEARCH_LENGTH = 1024;
+
+  private final int poolSize;
+  private final int maxRequestsPerWorker;
+  private final long idleTimeoutNanos;
+  private final Map<String, ScriptPool> pools = new ConcurrentHashMap<>();
+  private final Map<String, Marker> markers = new ConcurrentHashMap<>();
+  private final Map<String, Long> retiredStats = new ConcurrentHashMap<>();
+  private final ScheduledExecutorService reaper;
+
+  private static final class Marker {
+    private final long lastModified;
+    private final boolean present;
+
+    private Marker(long lastModified, boolean present) {
+      this.lastModified = lastModified;
+      this.present = present;
+    }
+  }
+
+  private static final class ScriptPool {
+    private final long lastModified;
+    private final CgiWorkerPool pool;
+
+    private ScriptPool(long lastModified, CgiWorkerPool pool) {
+      this.lastModified = lastModified;
+      this.pool = pool;
+    }
+  }
+
+  /**
+   * Creates new pools, configured by server properties.
+   *
+   * @param serverProps server properties
+   */
+  public CgiWorkerPools(ServerProperties serverProps) {
+    poolSize = serverProps.getCgiWorkerPoolSize();
+    maxRequestsPerWorker = serverProps.getCgiWorkerMaxRequests();
+    idleTimeoutNanos =
+      TimeUnit.SECONDS.toNanos(serverProps.getCgiWorkerIdleTimeoutSec());
+    reaper = Executors.newSingleThreadScheduledExecutor(r -> {
+      Thread t = new Thread(r, "cgi-worker-reaper");
+      t.setDaemon(true);
+      return t;
+    });
+    long reapPeriodSec = Math.max(1L, serverProps.getCgiWorkerIdleTimeoutSec() / 2);
+    reaper.scheduleWithFixedDelay(this::reap, reapPeriodSec, reapPeriodSec,
+                                  TimeUnit.SECONDS);
+  }
+
+  /**
+   * Checks whether a script opts in to being run as a worker. The result is
+   * cached until the script is modified.
+   *
+   * @param  script script file
+   * @return        true if the script includes the worker marker
+   */
+  public boolean isWorkerScript(File script) {
+    long lastModified = script.lastModified();
+    Marker marker = markers.get(script.getPath());
+    if (marker != null && marker.lastModified == lastModified) {
+      return marker.present;
+    }
+    boolean present;
+    try (InputStream in = Files.newInputStream(script.toPath())) {
+      String start = new String(in.readNBytes(MARKER_SEARCH_LENGTH),
+                                StandardCharsets.ISO_8859_1);
+      present = start.contains(WORKER_MARKER);
+    } catch (IOException e) {
+      LOG.debug("Failed to check {} for worker marker", script, e);
+      present = false;
+    }
+    markers.put(script.getPath(), new Marker(lastModified, present));
+    return present;
+  }
+
+  /**
+   * Sends a request to a worker for a script. If the script has been
+   * modified since its pool was created, the pool is replaced.
+   *
+   * @param  pb             process builder for a new worker for the script
+   * @param  params         request parameters (CGI meta-variables)
+   * @param  timeoutMs      how long the worker may take over the request, in
+   *                        milliseconds, or 0 for no limit
+   * @param  maxOutputBytes how much the worker may write in response, or 0
+   *                        for no limit
+   * @return                stream of the CGI response; close it when done
+   * @throws IOException    if a worker cannot be started, or the request
+   *                        cannot be sent
+   */
+  public InputStream send(ProcessBuilder pb, Map<String, String> params,
+                          int timeoutMs, long maxOutputBytes)
+    throws IOException {
+    String script = pb.command().get(0);
+    while (true) {
+      CgiWorkerPool pool = getPool(script);
+      try {
+        return pool.send(pb, params, timeoutMs, maxOutputBytes);
+      } catch (IOException e) {
+        if (!pool.isClosed() || reaper.isShutdown()) {
+          throw e;
+        }
+        // The script changed while the request waited, so use the new pool.
+      }
+    }
+  }
+
+  private CgiWorkerPool getPool(String script) {
+    long lastModified = new File(script).lastModified();
+    while (true) {
+      ScriptPool current = pools.get(script);
+      if (current != null && current.lastModified == lastModified) {
+        return current.pool;
+      }
+      ScriptPool replacement =
+        new ScriptPool(lastModified,
+                       new CgiWorkerPool(script, poolSize,
+                                         maxRequestsPerWorker));
+      boolean replaced = current == null ?
+        pools.putIfAbsent(script, replacement) == null :
+        pools.replace(script, current, replacement);
+      if (replaced) {
+        if (current != null) {
+          LOG.debug("Script {} was modified, replacing its workers", script);
+          retire(current.pool);
+        }
+        return replacement.pool;
+      }
+    }
+  }
+
+  private void retire(CgiWorkerPool pool) {
+    pool.close();
+    // Keep the totals of the old pool, but not its live workers, which
+    // are stopped as they finish.
+    Map<String, Long> poolStats = new HashMap<>();
+    pool.addTo(poolStats);
+    poolStats.remove("cgi.workers.live");
+    poolStats.forEach((name, value) -> retiredStats.merge(name, value,
+                                                          Long::sum));
+  }
+
+  private void reap() {
+    long idleSinceNanos = System.nanoTime() - idleTimeoutNanos;
+    for (ScriptPool scriptPool : pools.values()) {
+      scriptPool.pool.reap(idleSinceNanos);
+    }
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    Map<String, Long> poolStats = new HashMap<>();
+    poolStats.put("cgi.workers.requests", 0L);
+    poolStats.put("cgi.workers.started", 0L);
+    poolStats.put("cgi.workers.recycled", 0L);
+    poolStats.put("cgi.workers.reaped", 0L);
+    poolStats.put("cgi.workers.live", 0L);
+    retiredStats.forEach((name, value) -> poolStats.merge(name, value,
+                                                          Long::sum));
+    for (ScriptPool scriptPool : pools.values()) {
+      scriptPool.pool.addTo(poolStats);
+    }
+    stats.putAll(poolStats);
+  }
+
+  /**
+   * Stops every worker.
+   */
+  @Override
+  public void close() {
+    reaper.shutdownNow();
+    for (ScriptPool scriptPool : pools.values()) {
+      scriptPool.pool.close();
+    }
+  }
+}
@@ -0,0 +1,95 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * A TLS connection from a client, over which a single request is received and
+ * a single response is sent.
+ */
+public interface ClientConnection extends Closeable {
+
+  /**
+   * Gets the TLS session for the connection. If the TLS handshake has not yet
+   * happened, this may block until it completes. If the handshake fails, the
+   * returned session is invalid.
+   *
+   * @return TLS session
+   */
+  SSLSession getSession();
+
+  /**
+   * Gets the address of the client.
+   *
+   * @return remote address, or null if not known
+   */
+  InetSocketAddress getRemoteAddress();
+
+  /**
+   * Gets an input stream for reading the request.
+   *
+   * @return input stream
+   * @throws IOException if the stream cannot be opened
+   */
+  InputStream getInputStream() throws IOException;
+
+  /**
+   * Gets an output stream for writing the response. Closing the stream ends
+   * the response and closes the connection gracefully.
+   *
+   * @return output stream
+   * @throws IOException if the stream cannot be opened
+   */
+  OutputStream getOutputStream() throws IOException;
+
+  /**
+   * Writes the rest of a file as response data, following anything already
+   * written through the output stream. Flush any buffered output before
+   * calling this. This avoids the copying and small writes of streaming the
+   * file through the output stream.
+   *
+   * @param  file file channel, positioned where response data starts
+   * @return      number of bytes written
+   * @throws IOException if the file cannot be read or the data cannot be
+   *                     written
+   */
+  long transferFrom(FileChannel file) throws IOException;
+
+  /**
+   * Writes the remaining bytes of a buffer as response data, following
+   * anything already written through the output stream. Flush any buffered
+   * output before calling this. The buffer's position is advanced past the
+   * bytes written.
+   *
+   * @param  data buffer holding response data
+   * @return      number of bytes written
+   * @throws IOException if the data cannot be written
+   */
+  long transferFrom(ByteBuffer data) throws IOException;
+}
@@ -23,9 +23,12 @@ import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.net.ServerSocket;
 import java.net.Socket;
 import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.Map;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -42,6 +45,14 @@ public class ControlRunnable implements Runnable {
    * Command to shutdown the server.
    */
   public static final String COMMAND_SHUTDOWN = "shutdown";
+  /**
+   * Command to report server statistics, one "name value" pair per line.
+   */
+  public static final String COMMAND_STATS = "stats";
+  /**
+   * Command to reload the server certificate and key.
+   */
+  public static final String COMMAND_RELOAD_CERT = "reload-cert";
 
   private final ServerSocket controlSocket;
   private final Server server;
@@ -80,6 +91,14 @@ public class ControlRunnable implements Runnable {
             shutdown = true;
             server.shutdown();
             break;
+          case COMMAND_RELOAD_CERT:
+            LOG.info("Received reload-cert command");
+            writeLine(clientSocket.getOutputStream(), reloadCertificate());
+            break;
+          case COMMAND_STATS:
+            LOG.debug("Received stats command");
+            writeStats(clientSocket.getOutputStream());
+            break;
           default:
             LOG.error("Unknown control command {}", command);
         }
@@ -94,4 +113,29 @@ public class ControlRunnable implements Runnable {
       }
     }
   }
+
+  private String reloadCertificate() {
+    try {
+      server.reloadCertificate();
+      return "ok";
+    } catch (IOException | GeneralSecurityException | IllegalStateException e) {
+      LOG.error("Failed to reload server certificate", e);
+      return "failed: " + e.getMessage();
+    }
+  }
+
+  private static void writeLine(OutputStream out, String line)
+    throws IOException {
+    out.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
+
+  private void writeStats(OutputStream out) throws IOException {
+    StringBuilder sb = new StringBuilder();
+    for (Map.Entry<String, Long> stat : server.getStats().entrySet()) {
+      sb.append(stat.getKey()).append(' ').append(stat.getValue()).append('\n');
+    }
+    out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+    out.flush();
+  }
 }
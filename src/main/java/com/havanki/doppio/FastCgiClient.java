@@ -0,0 +1,267 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A client for a long-lived FastCGI application, which serves the requests
+ * for one gateway mapping. Connections to the application are opened as
+ * they are needed, up to a limit, and kept open for later requests. Each
+ * connection carries up to a given number of requests at a time; more than
+ * one requires that the application supports multiplexing. When every
+ * connection is fully in use, a request waits for a place on one.
+ */
+public class FastCgiClient implements GatewayClient {
+
+  private static final Logger LOG = LoggerFactory.getLogger(FastCgiClient.class);
+
+  private final GatewayMapping gatewayMapping;
+  private final int maxConnections;
+  private final int maxRequestsPerConnection;
+  private final long timeoutMs;
+  private final Semaphore permits;
+  private final List<FastCgiConnection> connections = new ArrayList<>();
+  private int connectionsOpening; // guarded by connections
+  private final FastCgiConnection.Listener listener =
+    new FastCgiConnection.Listener() {
+      @Override
+      public void requestFinished(FastCgiConnection connection) {
+        permits.release();
+      }
+
+      @Override
+      public void connectionClosed(FastCgiConnection connection) {
+        synchronized (connections) {
+          connections.remove(connection);
+        }
+      }
+    };
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder connectionsOpened = new LongAdder();
+  private volatile boolean closed;
+
+  /**
+   * Creates a new client. No connections are opened until requests are
+   * made.
+   *
+   * @param gatewayMapping           gateway mapping for the application
+   * @param maxConnections           maximum number of connections
+   * @param maxRequestsPerConnection maximum number of requests at a time on
+   *                                 each connection
+   * @param timeoutMs                longest time to wait for more output for
+   *                                 a request, in milliseconds, or 0 for no
+   *                                 limit
+   */
+  public FastCgiClient(GatewayMapping gatewayMapping, int maxConnections,
+                       int maxRequestsPerConnection, long timeoutMs) {
+    this.gatewayMapping = gatewayMapping;
+    this.maxConnections = maxConnections;
+    this.maxRequestsPerConnection = maxRequestsPerConnection;
+    this.timeoutMs = timeoutMs;
+    permits = new Semaphore(maxConnections * maxRequestsPerConnection, true);
+  }
+
+  @Override
+  public String getProtocolName() {
+    return "FastCGI";
+  }
+
+  @Override
+  public GatewayMapping getGatewayMapping() {
+    return gatewayMapping;
+  }
+
+  /**
+   * Sends a request to the application. If a kept-open connection turns out
+   * to have been closed by the application, the request is tried once more
+   * on a new connection.
+   *
+   * @param  params      request parameters (CGI meta-variables)
+   * @return             stream of the application's standard output, which
+   *                     holds a CGI response; close it when done, which
+   *                     aborts the request if it has not ended
+   * @throws IOException if the request cannot be sent
+   */
+  @Override
+  public InputStream sendRequest(Map<String, String> params)
+    throws IOException {
+    if (closed) {
+      throw new IOException("FastCGI client is closed");
+    }
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted waiting for FastCGI connection");
+    }
+    boolean sent = false;
+    try {
+      for (int attempt = 0; ; attempt++) {
+        FastCgiConnection connection = null;
+        int requestId = -1;
+        synchronized (connections) {
+          while (true) {
+            for (FastCgiConnection c : connections) {
+              requestId = c.reserve();
+              if (requestId != -1) {
+                connection = c;
+                break;
+              }
+            }
+            // Holding a permit means there is room for a new connection,
+            // unless one already being opened has room for this request.
+            if (connection != null ||
+                connections.size() + connectionsOpening < maxConnections) {
+              break;
+            }
+            try {
+              connections.wait();
+            } catch (InterruptedException e) {
+              throw new InterruptedIOException("Interrupted waiting for FastCGI connection");
+            }
+          }
+          if (connection == null) {
+            connectionsOpening++;
+          }
+        }
+        if (connection == null) {
+          connection = openConnection();
+          requestId = connection.reserve();
+          if (requestId == -1) {
+            throw new IOException("FastCGI application closed new connection");
+          }
+        }
+        boolean reused = connection.isReused();
+        try {
+          InputStream response = connection.send(requestId, params);
+          sent = true;
+          requests.increment();
+          return response;
+        } catch (IOException e) {
+          if (!reused || attempt > 0) {
+            throw e;
+          }
+          LOG.debug("FastCGI connection was closed, retrying on a new one", e);
+        }
+      }
+    } finally {
+      if (!sent) {
+        permits.release();
+      }
+    }
+  }
+
+  /**
+   * Opens a new connection, after a place for it has been claimed. The
+   * connection is made without holding the lock on the connection list,
+   * which a closing connection's reader takes, and is then added to the
+   * list.
+   *
+   * @return             new connection
+   * @throws IOException if the connection cannot be opened
+   */
+  private FastCgiConnection openConnection() throws IOException {
+    FastCgiConnection connection = null;
+    try {
+      connection = FastCgiConnection.open(gatewayMapping.getAddress(),
+                                          maxRequestsPerConnection, timeoutMs,
+                                          listener);
+      connectionsOpened.increment();
+      return connection;
+    } finally {
+      synchronized (connections) {
+        connectionsOpening--;
+        // A connection that has already closed has already been dropped.
+        if (connection != null && !connection.isClosed()) {
+          connections.add(connection);
+        }
+        connections.notifyAll();
+      }
+    }
+  }
+
+  /**
+   * Gets the number of requests sent to the application.
+   *
+   * @return number of requests
+   */
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  /**
+   * Gets the number of connections opened to the application.
+   *
+   * @return number of connections opened
+   */
+  public long getConnectionsOpened() {
+    return connectionsOpened.sum();
+  }
+
+  /**
+   * Gets the number of connections currently open to the application.
+   *
+   * @return number of open connections
+   */
+  public int getOpenConnections() {
+    synchronized (connections) {
+      return connections.size();
+    }
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics, summing them with
+   * those of any other FastCGI clients already added.
+   *
+   * @param stats map of statistic names to values
+   */
+  @Override
+  public void addTo(Map<String, Long> stats) {
+    stats.merge("fastcgi.requests", getRequests(), Long::sum);
+    stats.merge("fastcgi.connections.opened", getConnectionsOpened(), Long::sum);
+    stats.merge("fastcgi.connections.open", (long) getOpenConnections(),
+                Long::sum);
+  }
+
+  /**
+   * Closes every connection to the application. Requests in progress fail.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    List<FastCgiConnection> toClose;
+    synchronized (connections) {
+      toClose = new ArrayList<>(connections);
+    }
+    for (FastCgiConnection connection : toClose) {
+      connection.close();
+    }
+  }
+}
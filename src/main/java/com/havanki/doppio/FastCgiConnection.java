@@ -0,0 +1,595 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A connection to a FastCGI application, over which one or more requests
+ * are made at a time. Each request is given an ID that is free on this
+ * connection; a reader thread takes records off the connection as they
+ * arrive and hands the standard output for each request to the stream that
+ * its caller is reading. The connection is kept open between requests.
+ */
+class FastCgiConnection implements Closeable {
+
+  private static final Logger LOG =
+    LoggerFactory.getLogger(FastCgiConnection.class);
+
+  static final int VERSION_1 = 1;
+
+  static final int BEGIN_REQUEST = 1;
+  static final int ABORT_REQUEST = 2;
+  static final int END_REQUEST = 3;
+  static final int PARAMS = 4;
+  static final int STDIN = 5;
+  static final int STDOUT = 6;
+  static final int STDERR = 7;
+
+  static final int RESPONDER = 1;
+  static final int KEEP_CONN = 1;
+
+  static final int REQUEST_COMPLETE = 0;
+  static final int CANT_MPX_CONN = 1;
+  static final int OVERLOADED = 2;
+  static final int UNKNOWN_ROLE = 3;
+
+  static final int HEADER_LENGTH = 8;
+  static final int MAX_CONTENT_LENGTH = 65535;
+  private static final int MAX_PADDING_LENGTH = 255;
+
+  /**
+   * The number of chunks of standard output that may wait for a slow reader
+   * before the connection stops reading. Since this holds up every request on
+   * the connection, it is not too small.
+   */
+  private static final int MAX_QUEUED_CHUNKS = 64;
+
+  private final SocketChannel channel;
+  private final long timeoutNanos;
+  private final Listener listener;
+  private final ReentrantLock writeLock = new ReentrantLock();
+  private final Map<Integer, ResponseStream> responses =
+    new ConcurrentHashMap<>();
+  private final Deque<Integer> freeRequestIds = new ArrayDeque<>();
+  private boolean closed; // guarded by freeRequestIds
+  private int numRequests; // guarded by freeRequestIds
+
+  /**
+   * Receives notice of requests finishing and of the connection closing.
+   */
+  interface Listener {
+    /**
+     * Called when a request finishes, successfully or not, so that its place
+     * on the connection is free again.
+     *
+     * @param connection connection
+     */
+    void requestFinished(FastCgiConnection connection);
+
+    /**
+     * Called once when the connection closes.
+     *
+     * @param connection connection
+     */
+    void connectionClosed(FastCgiConnection connection);
+  }
+
+  private FastCgiConnection(SocketChannel channel, int maxRequests,
+                            long timeoutMs, Listener listener) {
+    this.channel = channel;
+    this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+    this.listener = listener;
+    for (int i = 1; i <= maxRequests; i++) {
+      freeRequestIds.add(i);
+    }
+  }
+
+  /**
+   * Opens a connection to a FastCGI application and starts reading from it.
+   *
+   * @param  address     application address; a TCP address is resolved here
+   * @param  maxRequests maximum number of requests at a time
+   * @param  timeoutMs   longest time to wait for more output for a request,
+   *                     in milliseconds, or 0 for no limit
+   * @param  listener    listener for finished requests and closing
+   * @return             new connection
+   * @throws IOException if the connection cannot be opened
+   */
+  static FastCgiConnection open(SocketAddress address, int maxRequests,
+                                long timeoutMs, Listener listener)
+    throws IOException {
+    if (address instanceof InetSocketAddress &&
+        ((InetSocketAddress) address).isUnresolved()) {
+      InetSocketAddress isa = (InetSocketAddress) address;
+      address = new InetSocketAddress(isa.getHostString(), isa.getPort());
+    }
+    SocketChannel channel = SocketChannel.open(address);
+    FastCgiConnection connection =
+      new FastCgiConnection(channel, maxRequests, timeoutMs, listener);
+    Thread.ofVirtual()
+      .name("fastcgi-reader")
+      .start(connection::readRecords);
+    return connection;
+  }
+
+  /**
+   * Reserves a request ID on this connection.
+   *
+   * @return request ID, or -1 if the connection is busy or closed
+   */
+  int reserve() {
+    synchronized (freeRequestIds) {
+      if (closed || freeRequestIds.isEmpty()) {
+        return -1;
+      }
+      numRequests++;
+      return freeRequestIds.pop();
+    }
+  }
+
+  /**
+   * Checks if this connection has carried requests before.
+   *
+   * @return true if a request has been reserved on this connection before the
+   *         current one
+   */
+  boolean isReused() {
+    synchronized (freeRequestIds) {
+      return numRequests > 1;
+    }
+  }
+
+  /**
+   * Sends a request with a reserved ID. The request has the responder role,
+   * carries the given parameters, and has empty standard input. If the
+   * request cannot be sent, its ID is released and the connection is closed.
+   *
+   * @param  requestId reserved request ID
+   * @param  params    request parameters (CGI meta-variables)
+   * @return           stream of the application's standard output for the
+   *                   request
+   * @throws IOException if the request cannot be sent
+   */
+  InputStream send(int requestId, Map<String, String> params)
+    throws IOException {
+    ResponseStream response = new ResponseStream(requestId);
+    responses.put(requestId, response);
+    try {
+      write(encodeRequest(requestId, params));
+    } catch (IOException e) {
+      responses.remove(requestId);
+      release(requestId);
+      close();
+      throw e;
+    }
+    return response;
+  }
+
+  private void write(ByteBuffer buffer) throws IOException {
+    writeLock.lock();
+    try {
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    } finally {
+      writeLock.unlock();
+    }
+  }
+
+  /**
+   * Encodes all of the records for a request.
+   *
+   * @param  requestId request ID
+   * @param  params    request parameters
+   * @return           buffer holding records, ready to write
+   */
+  static ByteBuffer encodeRequest(int requestId, Map<String, String> params) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(1024);
+
+    byte[] beginBody = new byte[8];
+    beginBody[1] = (byte) RESPONDER;
+    beginBody[2] = (byte) KEEP_CONN;
+    writeRecord(out, BEGIN_REQUEST, requestId, beginBody, 0, beginBody.length);
+
+    ByteArrayOutputStream paramsBody = new ByteArrayOutputStream(1024);
+    for (Map.Entry<String, String> param : params.entrySet()) {
+      byte[] name = param.getKey().getBytes(StandardCharsets.UTF_8);
+      byte[] value = param.getValue().getBytes(StandardCharsets.UTF_8);
+      writeLength(paramsBody, name.length);
+      writeLength(paramsBody, value.length);
+      paramsBody.write(name, 0, name.length);
+      paramsBody.write(value, 0, value.length);
+    }
+    byte[] paramsBytes = paramsBody.toByteArray();
+    for (int off = 0; off < paramsBytes.length; off += MAX_CONTENT_LENGTH) {
+      writeRecord(out, PARAMS, requestId, paramsBytes, off,
+                  Math.min(MAX_CONTENT_LENGTH, paramsBytes.length - off));
+    }
+    writeRecord(out, PARAMS, requestId, paramsBytes, 0, 0);
+    writeRecord(out, STDIN, requestId, paramsBytes, 0, 0);
+
+    return ByteBuffer.wrap(out.toByteArray());
+  }
+
+  private static void writeLength(ByteArrayOutputStream out, int length) {
+    if (length < 128) {
+      out.write(length);
+    } else {
+      out.write((length >>> 24) | 0x80);
+      out.write(length >>> 16);
+      out.write(length >>> 8);
+      out.write(length);
+    }
+  }
+
+  private static void writeRecord(ByteArrayOutputStream out, int type,
+                                  int requestId, byte[] content, int off,
+                                  int len) {
+    // Pad content to a multiple of eight bytes, as recommended.
+    int paddingLength = (8 - (len % 8)) % 8;
+    out.write(VERSION_1);
+    out.write(type);
+    out.write(requestId >>> 8);
+    out.write(requestId);
+    out.write(len >>> 8);
+    out.write(len);
+    out.write(paddingLength);
+    out.write(0);
+    out.write(content, off, len);
+    for (int i = 0; i < paddingLength; i++) {
+      out.write(0);
+    }
+  }
+
+  private void abort(int requestId) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(HEADER_LENGTH);
+    writeRecord(out, ABORT_REQUEST, requestId, new byte[0], 0, 0);
+    try {
+      write(ByteBuffer.wrap(out.toByteArray()));
+    } catch (IOException e) {
+      LOG.debug("Failed to abort FastCGI request {}", requestId, e);
+      close();
+    }
+  }
+
+  private void release(int requestId) {
+    synchronized (freeRequestIds) {
+      if (!closed) {
+        freeRequestIds.push(requestId);
+      }
+    }
+  }
+
+  private void finish(int requestId) {
+    if (responses.remove(requestId) != null) {
+      release(requestId);
+      listener.requestFinished(this);
+    }
+  }
+
+  /**
+   * Reads records from the application until the connection closes.
+   */
+  private void readRecords() {
+    ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+    ByteBuffer content =
+      ByteBuffer.allocate(MAX_CONTENT_LENGTH + MAX_PADDING_LENGTH);
+    try {
+      while (true) {
+        header.clear();
+        if (!readFully(header, true)) {
+          break;
+        }
+        header.flip();
+        header.get(); // version
+        int type = header.get() & 0xff;
+        int requestId = header.getShort() & 0xffff;
+        int contentLength = header.getShort() & 0xffff;
+        int paddingLength = header.get() & 0xff;
+
+        content.clear().limit(contentLength + paddingLength);
+        readFully(content, false);
+        content.flip().limit(contentLength);
+
+        switch (type) {
+        case STDOUT:
+          ResponseStream response = responses.get(requestId);
+          if (response != null && contentLength > 0) {
+            byte[] chunk = new byte[contentLength];
+            content.get(chunk);
+            response.offer(chunk);
+          }
+          break;
+        case STDERR:
+          if (contentLength > 0) {
+            LOG.warn("FastCGI application error output: {}",
+                     StandardCharsets.UTF_8.decode(content).toString().trim());
+          }
+          break;
+        case END_REQUEST:
+          endRequest(requestId, content);
+          break;
+        default:
+          LOG.debug("Ignoring FastCGI record of type {}", type);
+          break;
+        }
+      }
+    } catch (IOException e) {
+      if (!isClosed()) {
+        LOG.warn("Failed to read from FastCGI application", e);
+      }
+    } catch (InterruptedException e) {
+      LOG.debug("Interrupted while reading from FastCGI application");
+    } finally {
+      close();
+    }
+  }
+
+  private void endRequest(int requestId, ByteBuffer content) {
+    ResponseStream response = responses.get(requestId);
+    if (response == null) {
+      return;
+    }
+    int appStatus = content.remaining() >= 5 ? content.getInt() : 0;
+    int protocolStatus = content.hasRemaining() ? content.get() & 0xff : 0;
+    if (appStatus != 0) {
+      LOG.warn("FastCGI application ended request with status {}", appStatus);
+    }
+    // Free the request's place before ending its stream, so that a caller
+    // that sends another request right away can reuse it.
+    finish(requestId);
+    if (protocolStatus == REQUEST_COMPLETE) {
+      response.end(null);
+    } else {
+      response.end(new IOException("FastCGI application refused request: " +
+                                   describeProtocolStatus(protocolStatus)));
+    }
+  }
+
+  private static String describeProtocolStatus(int protocolStatus) {
+    switch (protocolStatus) {
+    case CANT_MPX_CONN:
+      return "cannot multiplex connection";
+    case OVERLOADED:
+      return "overloaded";
+    case UNKNOWN_ROLE:
+      return "unknown role";
+    default:
+      return "protocol status " + protocolStatus;
+    }
+  }
+
+  private boolean readFully(ByteBuffer buffer, boolean eofAllowed)
+    throws IOException {
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer) == -1) {
+        if (eofAllowed && buffer.position() == 0) {
+          return false;
+        }
+        throw new EOFException("FastCGI application closed connection mid-record");
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Checks if this connection is closed.
+   *
+   * @return true if closed
+   */
+  boolean isClosed() {
+    synchronized (freeRequestIds) {
+      return closed;
+    }
+  }
+
+  /**
+   * Closes this connection. Any requests still in progress fail.
+   */
+  @Override
+  public void close() {
+    synchronized (freeRequestIds) {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      freeRequestIds.clear();
+    }
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.debug("Failed to close FastCGI connection", e);
+    }
+    List<Integer> requestIds = new ArrayList<>(responses.keySet());
+    for (int requestId : requestIds) {
+      ResponseStream response = responses.get(requestId);
+      if (response != null) {
+        response.end(new IOException("Connection to FastCGI application closed"));
+        finish(requestId);
+      }
+    }
+    listener.connectionClosed(this);
+  }
+
+  /**
+   * The standard output of the application for one request. Closing the
+   * stream before the request ends aborts the request, as does waiting too
+   * long for more output, which also fails the stream.
+   */
+  private class ResponseStream extends InputStream {
+
+    private final int requestId;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition changed = lock.newCondition();
+    private final Deque<byte[]> chunks = new ArrayDeque<>();
+    private byte[] current;
+    private int pos;
+    private boolean ended;
+    private IOException failure;
+    private boolean closed;
+
+    private ResponseStream(int requestId) {
+      this.requestId = requestId;
+    }
+
+    private void offer(byte[] chunk) throws InterruptedException {
+      lock.lock();
+      try {
+        while (chunks.size() >= MAX_QUEUED_CHUNKS && !closed && !ended) {
+          changed.await();
+        }
+        if (!closed && !ended) {
+          chunks.add(chunk);
+          changed.signalAll();
+        }
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    private void end(IOException failure) {
+      lock.lock();
+      try {
+        if (ended) {
+          return; // already timed out
+        }
+        ended = true;
+        this.failure = failure;
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    /**
+     * Makes the next chunk current, waiting for one to arrive if needed.
+     *
+     * @return false if the stream has ended
+     */
+    private boolean nextChunk() throws IOException {
+      if (current != null && pos < current.length) {
+        return true;
+      }
+      boolean timedOut = false;
+      lock.lock();
+      try {
+        long remainingNanos = timeoutNanos;
+        while (chunks.isEmpty() && !ended && !closed) {
+          if (timeoutNanos == 0L) {
+            changed.await();
+          } else if (remainingNanos > 0L) {
+            remainingNanos = changed.awaitNanos(remainingNanos);
+          } else {
+            timedOut = true;
+            ended = true;
+            failure = new SocketTimeoutException("Timed out waiting for FastCGI output");
+          }
+        }
+        if (closed) {
+          throw new IOException("Stream closed");
+        }
+        if (chunks.isEmpty()) {
+          if (failure != null) {
+            throw failure;
+          }
+          return false;
+        }
+        current = chunks.poll();
+        pos = 0;
+        changed.signalAll();
+        return true;
+      } catch (InterruptedException e) {
+        throw new InterruptedIOException("Interrupted waiting for FastCGI output");
+      } finally {
+        lock.unlock();
+        // The request's place is freed once the application ends it.
+        if (timedOut) {
+          abort(requestId);
+        }
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      if (!nextChunk()) {
+        return -1;
+      }
+      return current[pos++] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      if (!nextChunk()) {
+        return -1;
+      }
+      int n = Math.min(len, current.length - pos);
+      System.arraycopy(current, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public void close() {
+      boolean abort;
+      lock.lock();
+      try {
+        if (closed) {
+          return;
+        }
+        closed = true;
+        abort = !ended;
+        chunks.clear();
+        changed.signalAll();
+      } finally {
+        lock.unlock();
+      }
+      if (abort) {
+        abort(requestId);
+      }
+    }
+  }
+}
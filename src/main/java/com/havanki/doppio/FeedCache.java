@@ -0,0 +1,273 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A cache of generated Atom feeds, keyed by feed directory URI. A feed is
+ * generated again only when the last modified time or size of its page
+ * changes, so the cost of generating feeds does not grow with how often feed
+ * readers poll them. Feed directory URIs are built by
+ * {@link #feedDirUriString(String, int, String)} from server configuration
+ * rather than taken from requests, so there is at most one feed for each
+ * configured feed page, and the cache needs no size limit.
+ *
+ * When several requests find the same feed missing or out of date at once,
+ * one of them generates it, outside of any lock, and the others wait for it.
+ *
+ * When a {@link RootWatcher} reports changes to the cache, checking the page
+ * on each request may be turned off, as for the
+ * {@link StaticResponseCache}.
+ */
+public class FeedCache implements RootWatcher.Listener {
+
+  private static class Entry {
+    private final Path feedPage;
+    private final FileTime lastModifiedTime;
+    private final long fileSize;
+    private final byte[] content;
+
+    private Entry(Path feedPage, FileTime lastModifiedTime, long fileSize,
+                  byte[] content) {
+      this.feedPage = feedPage;
+      this.lastModifiedTime = lastModifiedTime;
+      this.fileSize = fileSize;
+      this.content = content;
+    }
+
+    private boolean isCurrent(BasicFileAttributes attrs) {
+      return attrs.lastModifiedTime().equals(lastModifiedTime) &&
+        attrs.size() == fileSize;
+    }
+  }
+
+  private final Atomizer atomizer;
+  private final ConcurrentMap<String, CompletableFuture<Entry>> entries =
+    new ConcurrentHashMap<>();
+  private final AtomicLong generation = new AtomicLong();
+  private volatile boolean validateOnHit = true;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder renders = new LongAdder();
+
+  /**
+   * Creates a new cache.
+   */
+  public FeedCache() {
+    this(new Atomizer());
+  }
+
+  /**
+   * Creates a new cache that generates feeds with the given atomizer. Useful
+   * for testing.
+   *
+   * @param atomizer atomizer
+   */
+  FeedCache(Atomizer atomizer) {
+    this.atomizer = atomizer;
+  }
+
+  /**
+   * Sets whether a feed page is checked for changes each time its cached
+   * feed is served. Only turn this off when changes are reported to the
+   * cache.
+   *
+   * @param validateOnHit true to check feed pages when serving
+   */
+  public void setValidateOnHit(boolean validateOnHit) {
+    this.validateOnHit = validateOnHit;
+  }
+
+  /**
+   * Builds the URI of a feed directory, where a feed and its page are
+   * served, from the virtual host serving it and the path to its feed page.
+   * The URI has no query or fragment, and includes the port only when it is
+   * not the default.
+   *
+   * @param  host     virtual host name
+   * @param  port     server port
+   * @param  feedPage path to feed page, relative to the virtual host root
+   * @return          feed directory URI
+   * @throws IllegalArgumentException if a URI cannot be built
+   */
+  static String feedDirUriString(String host, int port, String feedPage) {
+    StringBuilder feedDirPath = new StringBuilder();
+    Path feedDir = Path.of(feedPage).getParent();
+    if (feedDir != null) {
+      for (Path name : feedDir) {
+        feedDirPath.append('/').append(name);
+      }
+    }
+    try {
+      return new URI("gemini", null, host,
+                     port == ServerProperties.DEFAULT_PORT ? -1 : port,
+                     feedDirPath.toString(), null, null).toString();
+    } catch (URISyntaxException e) {
+      throw new IllegalArgumentException("Cannot build feed URI for " +
+                                         feedPage, e);
+    }
+  }
+
+  /**
+   * Gets the Atom feed for a feed page, generating it if it is not cached or
+   * the page has changed. When several requests find the same feed out of
+   * date at once, only one of them generates it.
+   *
+   * @param  feedPage         feed page file
+   * @param  feedDirUriString feed directory URI, from
+   *                          {@link #feedDirUriString(String, int, String)}
+   * @return                  Atom feed content, encoded in UTF-8; do not
+   *                          modify
+   * @throws IOException if the feed page cannot be read
+   */
+  public byte[] getFeed(Path feedPage, String feedDirUriString)
+    throws IOException {
+    while (true) {
+      // Wait for any feed being generated by another request.
+      CompletableFuture<Entry> cached = entries.get(feedDirUriString);
+      Entry entry = cached != null ? await(cached) : null;
+      if (entry != null && !entry.feedPage.equals(feedPage)) {
+        entry = null;
+      }
+      if (!validateOnHit && entry != null) {
+        hits.increment();
+        return entry.content;
+      }
+
+      // Read the generation and attributes first, so that a change made
+      // while the page is being read is noticed, either now or on the next
+      // request.
+      long startGeneration = generation.get();
+      BasicFileAttributes attrs =
+        Files.readAttributes(feedPage, BasicFileAttributes.class);
+      if (entry != null && entry.isCurrent(attrs)) {
+        hits.increment();
+        return entry.content;
+      }
+
+      CompletableFuture<Entry> rendering = new CompletableFuture<>();
+      boolean claimed = cached == null ?
+        entries.putIfAbsent(feedDirUriString, rendering) == null :
+        entries.replace(feedDirUriString, cached, rendering);
+      if (!claimed) {
+        continue; // another request is generating the feed, so wait for it
+      }
+
+      try {
+        entry = render(feedPage, attrs, feedDirUriString);
+      } catch (IOException | RuntimeException e) {
+        entries.remove(feedDirUriString, rendering);
+        rendering.completeExceptionally(e);
+        throw e;
+      }
+      rendering.complete(entry);
+      // A change reported while the page was read may have found nothing to
+      // drop, so drop what was just generated.
+      if (generation.get() != startGeneration) {
+        entries.remove(feedDirUriString, rendering);
+      }
+      return entry.content;
+    }
+  }
+
+  private static Entry await(CompletableFuture<Entry> future)
+    throws IOException {
+    try {
+      return future.join();
+    } catch (CompletionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public void pathChanged(Path path) {
+    generation.incrementAndGet();
+    // Feeds still being generated are dropped through the generation.
+    entries.values().removeIf(future -> {
+      Entry entry = future.isDone() && !future.isCompletedExceptionally() ?
+        future.join() : null;
+      return entry != null && entry.feedPage.startsWith(path);
+    });
+  }
+
+  @Override
+  public void allChanged() {
+    generation.incrementAndGet();
+    entries.clear();
+  }
+
+  private Entry render(Path feedPage, BasicFileAttributes attrs,
+                       String feedDirUriString) throws IOException {
+    String pageContent = Files.readString(feedPage, StandardCharsets.UTF_8);
+    renders.increment();
+    ByteArrayOutputStream content =
+      new ByteArrayOutputStream(pageContent.length() * 2 + 512);
+    atomizer.atomize(feedDirUriString, pageContent, content);
+    return new Entry(feedPage, attrs.lastModifiedTime(), attrs.size(),
+                     content.toByteArray());
+  }
+
+  /**
+   * Gets the number of requests served with a cached feed.
+   *
+   * @return number of hits
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of times a feed was generated.
+   *
+   * @return number of renders
+   */
+  public long getRenders() {
+    return renders.sum();
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    stats.put("feed.cache.hits", getHits());
+    stats.put("feed.cache.renders", getRenders());
+    stats.put("feed.cache.entries", (long) entries.size());
+  }
+}
@@ -0,0 +1,79 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/**
+ * A client for a long-lived application that serves the requests for one
+ * gateway mapping, and returns CGI responses for them.
+ */
+public interface GatewayClient extends Closeable {
+
+  /**
+   * Gets the name of the protocol spoken to the application, for messages.
+   *
+   * @return protocol name, e.g., "FastCGI"
+   */
+  String getProtocolName();
+
+  /**
+   * Gets the gateway mapping for the application.
+   *
+   * @return gateway mapping
+   */
+  GatewayMapping getGatewayMapping();
+
+  /**
+   * Prepares the client for requests once the server starts, for example, by
+   * connecting to the application ahead of time. The application need not
+   * be up yet, so failures here are not fatal. By default, this does
+   * nothing.
+   */
+  default void start() {
+  }
+
+  /**
+   * Sends a request to the application.
+   *
+   * @param  params      request parameters (CGI meta-variables)
+   * @return             stream of the application's response, which holds a
+   *                     CGI response; close it when done
+   * @throws IOException if the request cannot be sent
+   */
+  InputStream sendRequest(Map<String, String> params) throws IOException;
+
+  /**
+   * Adds statistics for the client to a map of server statistics, summing
+   * them with those of any other clients of the same kind already added.
+   *
+   * @param stats map of statistic names to values
+   */
+  void addTo(Map<String, Long> stats);
+
+  /**
+   * Closes the client. Requests in progress fail.
+   */
+  @Override
+  void close();
+}
@@ -0,0 +1,154 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnixDomainSocketAddress;
+import java.nio.file.Path;
+
+/**
+ * A mapping from a URL path prefix on the server's host to the endpoint of
+ * a long-lived application that generates responses for every path under it.
+ * An endpoint is either "unix:" followed by the path to a Unix domain socket,
+ * or a TCP host and port in the form "host:port" (optionally preceded by
+ * "tcp:").
+ */
+public class GatewayMapping {
+
+  private static final String UNIX_PREFIX = "unix:";
+  private static final String TCP_PREFIX = "tcp:";
+
+  private final String prefix;
+  private final Path prefixPath;
+  private final String endpoint;
+  private final SocketAddress address;
+
+  /**
+   * Creates a new gateway mapping.
+   *
+   * @param  prefix   URL path prefix, e.g., "/app"
+   * @param  endpoint application endpoint
+   * @throws IllegalStateException if the prefix or endpoint is invalid
+   */
+  public GatewayMapping(String prefix, String endpoint) {
+    if (prefix == null || endpoint == null) {
+      throw new IllegalStateException("Gateway prefix and endpoint must not be null");
+    }
+    String trimmedPrefix = prefix.replaceAll("^/+|/+$", "");
+    if (trimmedPrefix.isEmpty()) {
+      throw new IllegalStateException("Gateway prefix must not be empty");
+    }
+    this.prefix = "/" + trimmedPrefix;
+    this.prefixPath = Path.of(trimmedPrefix);
+    this.endpoint = endpoint;
+    this.address = parseAddress(endpoint);
+  }
+
+  /**
+   * Parses an endpoint into a socket address. A TCP address is left
+   * unresolved, so that its host is looked up each time it is connected to.
+   *
+   * @param  endpoint application endpoint
+   * @return          socket address
+   * @throws IllegalStateException if the endpoint is invalid
+   */
+  static SocketAddress parseAddress(String endpoint) {
+    if (endpoint.startsWith(UNIX_PREFIX)) {
+      String socketPath = endpoint.substring(UNIX_PREFIX.length());
+      if (socketPath.isEmpty()) {
+        throw new IllegalStateException("Gateway endpoint " + endpoint +
+                                        " has no socket path");
+      }
+      return UnixDomainSocketAddress.of(socketPath);
+    }
+    String hostPort = endpoint.startsWith(TCP_PREFIX) ?
+      endpoint.substring(TCP_PREFIX.length()) : endpoint;
+    int colonIdx = hostPort.lastIndexOf(':');
+    if (colonIdx < 1) {
+      throw new IllegalStateException("Gateway endpoint " + endpoint +
+                                      " is not unix:<path> or <host>:<port>");
+    }
+    String host = hostPort.substring(0, colonIdx);
+    if (host.startsWith("[") && host.endsWith("]")) {
+      host = host.substring(1, host.length() - 1); // IPv6 literal
+    }
+    int port;
+    try {
+      port = Integer.parseInt(hostPort.substring(colonIdx + 1));
+    } catch (NumberFormatException e) {
+      throw new IllegalStateException("Gateway endpoint " + endpoint +
+                                      " has an invalid port");
+    }
+    if (port < 1 || port > 65535) {
+      throw new IllegalStateException("Gateway endpoint " + endpoint +
+                                      " has an invalid port");
+    }
+    return InetSocketAddress.createUnresolved(host, port);
+  }
+
+  /**
+   * Gets the URL path prefix, with a leading slash and no trailing slash.
+   *
+   * @return prefix
+   */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  /**
+   * Gets the application endpoint, as configured.
+   *
+   * @return endpoint
+   */
+  public String getEndpoint() {
+    return endpoint;
+  }
+
+  /**
+   * Gets the socket address of the application endpoint. A TCP address is
+   * unresolved.
+   *
+   * @return socket address
+   */
+  public SocketAddress getAddress() {
+    return address;
+  }
+
+  /**
+   * Checks if a request path falls under this mapping's prefix.
+   *
+   * @param  path request path, relative to the root
+   * @return      true if the path is the prefix or under it
+   */
+  public boolean matches(Path path) {
+    return path.startsWith(prefixPath);
+  }
+
+  /**
+   * Gets the part of a matching request path that follows the prefix.
+   *
+   * @param  path request path, relative to the root
+   * @return      extra path information, empty if the path is the prefix
+   */
+  public String getExtraPath(Path path) {
+    return prefixPath.relativize(path).toString();
+  }
+}
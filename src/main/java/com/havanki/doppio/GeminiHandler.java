@@ -0,0 +1,54 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.IOException;
+
+/**
+ * A handler that generates responses for the requests under a URL path
+ * prefix, in the server process, instead of a CGI script. A handler class
+ * must have a public no-argument constructor. It is either registered as a
+ * service provider for this interface, or found on the class path by name.
+ * One instance serves every request for its prefix, possibly many at once,
+ * for as long as the server runs, so it must be thread-safe, and it may keep
+ * state between requests.
+ */
+public interface GeminiHandler extends AutoCloseable {
+
+  /**
+   * Handles a request. The handler must send a response header, and then
+   * may write a body. If the handler throws an exception before sending a
+   * header, the server responds with a CGI error.
+   *
+   * @param  request     request
+   * @param  response    response
+   * @throws IOException if the response cannot be written
+   */
+  void handle(GeminiRequest request, GeminiResponse response)
+    throws IOException;
+
+  /**
+   * Releases any resources held by this handler, when the server shuts down.
+   * By default, this does nothing.
+   */
+  @Override
+  default void close() {
+  }
+}
@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.Map;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * A request passed to a {@link GeminiHandler}.
+ */
+public final class GeminiRequest {
+
+  private final URI uri;
+  private final String pathInfo;
+  private final InetSocketAddress remoteAddress;
+  private final SSLSession session;
+  private final X509Certificate peerCertificate;
+  private final Map<String, String> metaVariables;
+
+  /**
+   * Creates a new request.
+   *
+   * @param uri             request URI
+   * @param pathInfo        path after the handler's prefix, with a leading
+   *                        slash, or an empty string
+   * @param remoteAddress   client address, or null if not known
+   * @param session         TLS session
+   * @param peerCertificate client certificate, or null if none
+   * @param metaVariables   CGI meta-variables for the request
+   */
+  public GeminiRequest(URI uri, String pathInfo,
+                       InetSocketAddress remoteAddress, SSLSession session,
+                       X509Certificate peerCertificate,
+                       Map<String, String> metaVariables) {
+    this.uri = uri;
+    this.pathInfo = pathInfo;
+    this.remoteAddress = remoteAddress;
+    this.session = session;
+    this.peerCertificate = peerCertificate;
+    this.metaVariables = Collections.unmodifiableMap(metaVariables);
+  }
+
+  /**
+   * Gets the request URI, normalized and with its path decoded.
+   *
+   * @return URI
+   */
+  public URI getUri() {
+    return uri;
+  }
+
+  /**
+   * Gets the part of the request path after the handler's prefix.
+   *
+   * @return path info, with a leading slash, or an empty string
+   */
+  public String getPathInfo() {
+    return pathInfo;
+  }
+
+  /**
+   * Gets the client address.
+   *
+   * @return client address, or null if not known
+   */
+  public InetSocketAddress getRemoteAddress() {
+    return remoteAddress;
+  }
+
+  /**
+   * Gets the TLS session.
+   *
+   * @return TLS session
+   */
+  public SSLSession getSession() {
+    return session;
+  }
+
+  /**
+   * Gets the client certificate.
+   *
+   * @return client certificate, or null if the client did not present one
+   */
+  public X509Certificate getPeerCertificate() {
+    return peerCertificate;
+  }
+
+  /**
+   * Gets the meta-variables that a CGI script would receive for the request.
+   *
+   * @return unmodifiable map of meta-variable names to values
+   */
+  public Map<String, String> getMetaVariables() {
+    return metaVariables;
+  }
+}
@@ -0,0 +1,169 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * A response written by a {@link GeminiHandler}. The handler sends the
+ * response header, and then writes the body, if any, to the body stream.
+ * Text bodies are subject to line ending conversion if the server forces
+ * canonical text.
+ */
+public class GeminiResponse {
+
+  private final OutputStream out;
+  private final boolean forceCanonicalText;
+  private int statusCode;
+  private boolean headerSent;
+  private OutputStream body;
+  private LineEndingConvertingOutputStream converter;
+  private long bodySize;
+
+  /**
+   * Creates a new response.
+   *
+   * @param out                output stream to client
+   * @param forceCanonicalText true to convert line endings in text bodies
+   */
+  GeminiResponse(OutputStream out, boolean forceCanonicalText) {
+    this.out = out;
+    this.forceCanonicalText = forceCanonicalText;
+  }
+
+  /**
+   * Sends the response header.
+   *
+   * @param  statusCode  status code
+   * @param  meta        meta string, e.g., a content type for a successful
+   *                     response
+   * @throws IOException if the header cannot be sent
+   * @throws IllegalStateException if the header has already been sent
+   */
+  public void sendHeader(int statusCode, String meta) throws IOException {
+    if (headerSent) {
+      throw new IllegalStateException("Response header already sent");
+    }
+    this.statusCode = statusCode;
+    headerSent = true;
+    out.write(RequestHandler.formatResponseHeader(statusCode, meta));
+
+    if (forceCanonicalText && meta.startsWith("text/")) {
+      converter = new LineEndingConvertingOutputStream(new KeepOpenOutputStream(out));
+      body = new CountingOutputStream(converter);
+    } else {
+      body = new CountingOutputStream(out);
+    }
+  }
+
+  /**
+   * Gets the stream to write the response body to. Closing it has no effect
+   * on the connection to the client.
+   *
+   * @return body stream
+   * @throws IllegalStateException if the header has not been sent
+   */
+  public OutputStream getBody() {
+    if (!headerSent) {
+      throw new IllegalStateException("Response header not yet sent");
+    }
+    return body;
+  }
+
+  /**
+   * Checks if the response header has been sent.
+   *
+   * @return true if the header has been sent
+   */
+  public boolean isHeaderSent() {
+    return headerSent;
+  }
+
+  int getStatusCode() {
+    return statusCode;
+  }
+
+  long getBodySize() {
+    return bodySize;
+  }
+
+  /**
+   * Writes out anything the body stream is holding back, once the handler
+   * is done.
+   *
+   * @throws IOException if the body cannot be written
+   */
+  void finish() throws IOException {
+    if (converter != null) {
+      converter.close();
+    }
+    out.flush();
+  }
+
+  /**
+   * Passes bytes through without closing the stream underneath.
+   */
+  private static class KeepOpenOutputStream extends FilterOutputStream {
+
+    private KeepOpenOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+
+  /**
+   * Counts the bytes of the body as the handler writes them, and keeps the
+   * client stream open when closed.
+   */
+  private class CountingOutputStream extends FilterOutputStream {
+
+    private CountingOutputStream(OutputStream out) {
+      super(out);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+      bodySize++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+      bodySize += len;
+    }
+
+    @Override
+    public void close() throws IOException {
+      flush();
+    }
+  }
+}
@@ -0,0 +1,96 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.nio.file.Path;
+
+/**
+ * A mapping from a URL path prefix on the server's host to the class name of
+ * the {@link GeminiHandler} that generates responses for every path under
+ * it.
+ */
+public class HandlerMapping {
+
+  private final String prefix;
+  private final Path prefixPath;
+  private final String className;
+
+  /**
+   * Creates a new handler mapping.
+   *
+   * @param  prefix    URL path prefix, e.g., "/guestbook"
+   * @param  className fully qualified handler class name
+   * @throws IllegalStateException if the prefix or class name is invalid
+   */
+  public HandlerMapping(String prefix, String className) {
+    if (prefix == null || className == null) {
+      throw new IllegalStateException("Handler prefix and class name must not be null");
+    }
+    String trimmedPrefix = prefix.replaceAll("^/+|/+$", "");
+    if (trimmedPrefix.isEmpty()) {
+      throw new IllegalStateException("Handler prefix must not be empty");
+    }
+    if (className.isBlank()) {
+      throw new IllegalStateException("Handler class name for " + prefix +
+                                      " must not be empty");
+    }
+    this.prefix = "/" + trimmedPrefix;
+    this.prefixPath = Path.of(trimmedPrefix);
+    this.className = className.trim();
+  }
+
+  /**
+   * Gets the URL path prefix, with a leading slash and no trailing slash.
+   *
+   * @return prefix
+   */
+  public String getPrefix() {
+    return prefix;
+  }
+
+  /**
+   * Gets the handler class name.
+   *
+   * @return class name
+   */
+  public String getClassName() {
+    return className;
+  }
+
+  /**
+   * Checks if a request path falls under this mapping's prefix.
+   *
+   * @param  path request path, relative to the root
+   * @return      true if the path is the prefix or under it
+   */
+  public boolean matches(Path path) {
+    return path.startsWith(prefixPath);
+  }
+
+  /**
+   * Gets the part of a matching request path that follows the prefix.
+   *
+   * @param  path request path, relative to the root
+   * @return      extra path information, empty if the path is the prefix
+   */
+  public String getExtraPath(Path path) {
+    return prefixPath.relativize(path).toString();
+  }
+}
@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.security.Principal;
+import java.security.cert.Certificate;
+import java.util.List;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSessionContext;
+
+/**
+ * A client connection that exists only in memory. It supplies a single
+ * request, as if from a client without a certificate that asked for a host
+ * through SNI, and discards the response after reading it as a real
+ * connection would, keeping only the status code. This lets the server run
+ * requests through a request handler without a network or TLS, for example
+ * to warm up.
+ */
+class InMemoryClientConnection implements ClientConnection {
+
+  private static final InetSocketAddress REMOTE_ADDRESS =
+    new InetSocketAddress(InetAddress.getLoopbackAddress(), 0);
+
+  private final byte[] request;
+  private final SSLSession session;
+  private final byte[] scratch = new byte[BufferPool.TLS_RECORD_SIZE];
+  private final byte[] status = new byte[2];
+  private long bytesWritten;
+
+  /**
+   * Creates a new connection.
+   *
+   * @param request  request line, without the trailing CRLF
+   * @param hostName host name to request through SNI, or null for none
+   */
+  InMemoryClientConnection(String request, String hostName) {
+    this.request = (request + "\r\n").getBytes(StandardCharsets.UTF_8);
+    session = new InMemorySession(hostName);
+  }
+
+  @Override
+  public SSLSession getSession() {
+    return session;
+  }
+
+  @Override
+  public InetSocketAddress getRemoteAddress() {
+    return REMOTE_ADDRESS;
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return new ByteArrayInputStream(request);
+  }
+
+  @Override
+  public OutputStream getOutputStream() {
+    return new OutputStream() {
+      @Override
+      public void write(int b) {
+        if (bytesWritten < status.length) {
+          status[(int) bytesWritten] = (byte) b;
+        }
+        bytesWritten++;
+      }
+
+      @Override
+      public void write(byte[] b, int off, int len) {
+        record(b, off, len);
+      }
+    };
+  }
+
+  private void record(byte[] b, int off, int len) {
+    for (int i = 0; i < len && bytesWritten + i < status.length; i++) {
+      status[(int) bytesWritten + i] = b[off + i];
+    }
+    bytesWritten += len;
+  }
+
+  @Override
+  public long transferFrom(FileChannel file) throws IOException {
+    ByteBuffer buffer = ByteBuffer.wrap(scratch);
+    long total = 0L;
+    int n;
+    while ((n = file.read(buffer)) != -1) {
+      record(scratch, 0, n);
+      total += n;
+      buffer.clear();
+    }
+    return total;
+  }
+
+  @Override
+  public long transferFrom(ByteBuffer data) {
+    long total = data.remaining();
+    while (data.hasRemaining()) {
+      int n = Math.min(data.remaining(), scratch.length);
+      data.get(scratch, 0, n);
+      record(scratch, 0, n);
+    }
+    return total;
+  }
+
+  @Override
+  public void close() {
+  }
+
+  /**
+   * Gets the number of bytes written in response, header included.
+   *
+   * @return number of bytes written
+   */
+  long getBytesWritten() {
+    return bytesWritten;
+  }
+
+  /**
+   * Gets the status code of the response.
+   *
+   * @return status code, or -1 if no valid response was written
+   */
+  int getStatusCode() {
+    if (bytesWritten < status.length ||
+        !Character.isDigit(status[0]) || !Character.isDigit(status[1])) {
+      return -1;
+    }
+    return (status[0] - '0') * 10 + (status[1] - '0');
+  }
+
+  /**
+   * A session for a connection that never had a handshake. Only the
+   * requested host name and the lack of a client certificate are meaningful.
+   */
+  private static class InMemorySession extends ExtendedSSLSession {
+
+    private final List<SNIServerName> requestedServerNames;
+    private final long creationTime = System.currentTimeMillis();
+
+    private InMemorySession(String hostName) {
+      requestedServerNames = hostName != null ?
+        List.of(new SNIHostName(hostName)) : List.of();
+    }
+
+    @Override
+    public List<SNIServerName> getRequestedServerNames() {
+      return requestedServerNames;
+    }
+
+    @Override
+    public String[] getLocalSupportedSignatureAlgorithms() {
+      return new String[0];
+    }
+
+    @Override
+    public String[] getPeerSupportedSignatureAlgorithms() {
+      return new String[0];
+    }
+
+    @Override
+    public byte[] getId() {
+      return new byte[0];
+    }
+
+    @Override
+    public SSLSessionContext getSessionContext() {
+      return null;
+    }
+
+    @Override
+    public long getCreationTime() {
+      return creationTime;
+    }
+
+    @Override
+    public long getLastAccessedTime() {
+      return creationTime;
+    }
+
+    @Override
+    public void invalidate() {
+    }
+
+    @Override
+    public boolean isValid() {
+      return true;
+    }
+
+    @Override
+    public void putValue(String name, Object value) {
+    }
+
+    @Override
+    public Object getValue(String name) {
+      return null;
+    }
+
+    @Override
+    public void removeValue(String name) {
+    }
+
+    @Override
+    public String[] getValueNames() {
+      return new String[0];
+    }
+
+    @Override
+    public Certificate[] getPeerCertificates()
+      throws SSLPeerUnverifiedException {
+      throw new SSLPeerUnverifiedException("No client certificate");
+    }
+
+    @Override
+    public Certificate[] getLocalCertificates() {
+      return null;
+    }
+
+    @Override
+    public Principal getPeerPrincipal() throws SSLPeerUnverifiedException {
+      throw new SSLPeerUnverifiedException("No client certificate");
+    }
+
+    @Override
+    public Principal getLocalPrincipal() {
+      return null;
+    }
+
+    @Override
+    public String getCipherSuite() {
+      return "SSL_NULL_WITH_NULL_NULL";
+    }
+
+    @Override
+    public String getProtocol() {
+      return "NONE";
+    }
+
+    @Override
+    public String getPeerHost() {
+      return null;
+    }
+
+    @Override
+    public int getPeerPort() {
+      return -1;
+    }
+
+    @Override
+    public int getPacketBufferSize() {
+      return BufferPool.TLS_RECORD_SIZE;
+    }
+
+    @Override
+    public int getApplicationBufferSize() {
+      return BufferPool.TLS_RECORD_SIZE;
+    }
+  }
+}
@@ -0,0 +1,198 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.Closeable;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * The {@link GeminiHandler} instances for the configured handler mappings.
+ * A handler class is first looked for among the service providers for
+ * {@code GeminiHandler}, and otherwise loaded by name. Each mapping gets its
+ * own instance, created once.
+ */
+public class JavaHandlers implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(JavaHandlers.class);
+
+  /**
+   * A handler mapping with its handler instance.
+   */
+  public static final class Entry {
+    private final HandlerMapping handlerMapping;
+    private final GeminiHandler handler;
+
+    private Entry(HandlerMapping handlerMapping, GeminiHandler handler) {
+      this.handlerMapping = handlerMapping;
+      this.handler = handler;
+    }
+
+    /**
+     * Gets the handler mapping.
+     *
+     * @return handler mapping
+     */
+    public HandlerMapping getHandlerMapping() {
+      return handlerMapping;
+    }
+
+    /**
+     * Gets the handler.
+     *
+     * @return handler
+     */
+    public GeminiHandler getHandler() {
+      return handler;
+    }
+  }
+
+  private final List<Entry> entries = new ArrayList<>();
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+
+  /**
+   * Creates handlers for handler mappings.
+   *
+   * @param  handlerMappings handler mappings
+   * @param  classLoader     class loader to find handler classes with
+   * @throws IllegalStateException if a handler cannot be created
+   */
+  public JavaHandlers(List<HandlerMapping> handlerMappings,
+                      ClassLoader classLoader) {
+    Map<String, ServiceLoader.Provider<GeminiHandler>> providers =
+      new HashMap<>();
+    if (!handlerMappings.isEmpty()) {
+      ServiceLoader.load(GeminiHandler.class, classLoader).stream()
+        .forEach(p -> providers.put(p.type().getName(), p));
+    }
+    for (HandlerMapping handlerMapping : handlerMappings) {
+      String className = handlerMapping.getClassName();
+      ServiceLoader.Provider<GeminiHandler> provider = providers.get(className);
+      GeminiHandler handler = provider != null ?
+        provider.get() : instantiate(className, classLoader);
+      LOG.info("Handling {} with {}", handlerMapping.getPrefix(), className);
+      entries.add(new Entry(handlerMapping, handler));
+    }
+  }
+
+  private static GeminiHandler instantiate(String className,
+                                           ClassLoader classLoader) {
+    try {
+      Class<?> c = Class.forName(className, true, classLoader);
+      if (!GeminiHandler.class.isAssignableFrom(c)) {
+        throw new IllegalStateException("Handler class " + className +
+                                        " does not implement GeminiHandler");
+      }
+      return (GeminiHandler) c.getConstructor().newInstance();
+    } catch (ClassNotFoundException e) {
+      throw new IllegalStateException("Handler class " + className +
+                                      " not found", e);
+    } catch (NoSuchMethodException | InstantiationException |
+             IllegalAccessException | InvocationTargetException e) {
+      throw new IllegalStateException("Failed to create handler " + className,
+                                      e);
+    }
+  }
+
+  /**
+   * Finds the handler for a request path. The longest matching prefix wins.
+   *
+   * @param  path request path, relative to the root
+   * @return      matching entry, or null if none
+   */
+  public Entry find(Path path) {
+    Entry found = null;
+    for (Entry entry : entries) {
+      HandlerMapping handlerMapping = entry.handlerMapping;
+      if (handlerMapping.matches(path) &&
+          (found == null ||
+           handlerMapping.getPrefix().length() >
+           found.handlerMapping.getPrefix().length())) {
+        found = entry;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * Records a request handled by a handler.
+   *
+   * @param failed true if the handler failed
+   */
+  void recordRequest(boolean failed) {
+    requests.increment();
+    if (failed) {
+      failures.increment();
+    }
+  }
+
+  /**
+   * Gets the number of requests passed to handlers.
+   *
+   * @return number of requests
+   */
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  /**
+   * Gets the number of requests for which a handler threw an exception.
+   *
+   * @return number of failures
+   */
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    stats.put("handler.requests", getRequests());
+    stats.put("handler.failures", getFailures());
+  }
+
+  /**
+   * Closes every handler.
+   */
+  @Override
+  public void close() {
+    for (Entry entry : entries) {
+      try {
+        entry.handler.close();
+      } catch (RuntimeException e) {
+        LOG.warn("Failed to close handler {}",
+                 entry.handlerMapping.getClassName(), e);
+      }
+    }
+  }
+}
@@ -0,0 +1,175 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiPredicate;
+import java.util.function.ToLongFunction;
+
+/**
+ * Cached values held within a byte budget by evicting the least recently
+ * used ones. This is the storage behind the response caches, which add their
+ * own rules for when a cached value may still be served. It is safe for use
+ * by multiple threads.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+class LruByteCache<K, V> {
+
+  // No single value may take more than this fraction of the budget, so that
+  // one large response cannot flush out everything else.
+  private static final int MAX_ENTRY_FRACTION = 8;
+
+  private final long maxBytes;
+  private final ToLongFunction<V> sizer;
+  private final LinkedHashMap<K, V> entries =
+    new LinkedHashMap<>(16, 0.75f, true); // access order, for LRU eviction
+  private long currentBytes;
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxBytes maximum total size of cached values
+   * @param sizer    function giving the size of a value in bytes
+   */
+  LruByteCache(long maxBytes, ToLongFunction<V> sizer) {
+    this.maxBytes = maxBytes;
+    this.sizer = sizer;
+  }
+
+  /**
+   * Gets the size of the largest value that may be cached.
+   *
+   * @return maximum entry size in bytes
+   */
+  long getMaxEntryBytes() {
+    return maxBytes / MAX_ENTRY_FRACTION;
+  }
+
+  /**
+   * Gets a cached value, marking it as recently used.
+   *
+   * @param  key key
+   * @return     cached value, or null if there is none
+   */
+  synchronized V get(K key) {
+    return entries.get(key);
+  }
+
+  /**
+   * Caches a value, unless it is too large, and evicts the least recently
+   * used values until the cache is within its budget.
+   *
+   * @param  key   key
+   * @param  value value
+   * @return       true if the value was cached
+   */
+  synchronized boolean put(K key, V value) {
+    long size = sizer.applyAsLong(value);
+    if (size > getMaxEntryBytes()) {
+      return false;
+    }
+    V oldValue = entries.put(key, value);
+    if (oldValue != null) {
+      currentBytes -= sizer.applyAsLong(oldValue);
+    }
+    currentBytes += size;
+
+    Iterator<V> iter = entries.values().iterator();
+    while (currentBytes > maxBytes && iter.hasNext()) {
+      V eldest = iter.next();
+      iter.remove();
+      currentBytes -= sizer.applyAsLong(eldest);
+      evictions.increment();
+    }
+    return true;
+  }
+
+  /**
+   * Drops a cached value, if it is still the one cached for its key.
+   *
+   * @param  key   key
+   * @param  value value
+   * @return       true if the value was dropped
+   */
+  synchronized boolean remove(K key, V value) {
+    if (entries.remove(key, value)) {
+      currentBytes -= sizer.applyAsLong(value);
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Drops the cached values that pass a filter.
+   *
+   * @param filter filter on keys and values
+   */
+  synchronized void removeIf(BiPredicate<? super K, ? super V> filter) {
+    Iterator<Map.Entry<K, V>> iter = entries.entrySet().iterator();
+    while (iter.hasNext()) {
+      Map.Entry<K, V> e = iter.next();
+      if (filter.test(e.getKey(), e.getValue())) {
+        iter.remove();
+        currentBytes -= sizer.applyAsLong(e.getValue());
+      }
+    }
+  }
+
+  /**
+   * Drops all cached values.
+   */
+  synchronized void clear() {
+    entries.clear();
+    currentBytes = 0L;
+  }
+
+  /**
+   * Gets the number of cached values.
+   *
+   * @return number of entries
+   */
+  synchronized int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the total size of cached values.
+   *
+   * @return size in bytes
+   */
+  synchronized long getCurrentBytes() {
+    return currentBytes;
+  }
+
+  /**
+   * Gets the number of values evicted to stay within the byte budget.
+   *
+   * @return number of evictions
+   */
+  long getEvictions() {
+    return evictions.sum();
+  }
+}
@@ -20,35 +20,55 @@
 package com.havanki.doppio;
 
 import java.io.FileReader;
+import java.io.IOException;
+import java.nio.file.Path;
 import java.util.Properties;
 
 /**
  * The main class for Doppio. The single argument is the path to the server
- * properties file.
+ * properties file. Alternatively, the arguments "pack", the path to the server
+ * properties file, and the path to an archive file pack the server's root
+ * directory into that archive.
  */
 public class Main {
 
   /**
    * Entry point for the server.
    *
-   * @param  args      command-line arguments: path to server properties file
+   * @param  args      command-line arguments: path to server properties file,
+   *                   or "pack", path to server properties file, and path to
+   *                   archive file
    * @throws Exception if the server properties file could not be read, or if
    *                   the server fails to start
    */
   public static void main(String[] args) throws Exception {
-    String serverPropsFile = args[0];
-    ServerProperties serverProps;
+    if (args.length > 0 && args[0].equals("pack")) {
+      if (args.length != 3) {
+        System.err.println("Usage: pack <server properties file> <archive file>");
+        System.exit(1);
+      }
+      ServerProperties serverProps = loadServerProperties(args[1]);
+      int numResources = new CapsulePacker(serverProps).pack(Path.of(args[2]));
+      System.out.println("Packed " + numResources + " resources into " + args[2]);
+      return;
+    }
+
+    ServerProperties serverProps = loadServerProperties(args[0]);
+    Server server = new Server(serverProps);
+    server.start();
+  }
+
+  private static ServerProperties loadServerProperties(String serverPropsFile)
+    throws IOException {
     try (FileReader r = new FileReader(serverPropsFile)) {
       if (serverPropsFile.endsWith(".yaml")) {
-        serverProps = new ServerPropertiesYamlLoader().loadFromYaml(r);
+        return new ServerPropertiesYamlLoader().loadFromYaml(r);
       } else {
         Properties props = new Properties();
         props.load(r);
-        serverProps = new ServerPropertiesPropertiesLoader()
+        return new ServerPropertiesPropertiesLoader()
             .loadFromProperties(props);
       }
     }
-    Server server = new Server(serverProps);
-    server.start();
   }
 }
@@ -0,0 +1,539 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Arrays;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A client connection serviced by a {@link NioConnectionEngine}. Until the
+ * request line has been read, the connection is driven as a state machine by
+ * the engine's selector thread. After the connection is handed off, the
+ * thread handling the request writes the response directly, waiting on the
+ * selector only when the channel cannot accept more data.
+ */
+class NioClientConnection implements ClientConnection {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NioClientConnection.class);
+
+  private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+  // The engine reads file content straight from direct buffers.
+  private static final BufferPool BUFFER_POOL =
+    new BufferPool(BufferPool.TLS_RECORD_SIZE, true, 64);
+
+  private enum State {
+    HANDSHAKING,
+    READING_REQUEST,
+    HANDED_OFF,
+    CLOSED
+  }
+
+  private final NioConnectionEngine engine;
+  private final SocketChannel channel;
+  private final SSLEngine sslEngine;
+  private final InetSocketAddress remoteAddress;
+  private final Semaphore writable;
+  private final long acceptedNanos;
+  private final long acceptedMillis;
+
+  private SelectionKey key;
+  private ByteBuffer netIn;
+  private ByteBuffer netOut;
+  private ByteBuffer appIn;
+  private int scanned;
+  private boolean requestOverflow;
+  private byte[] requestBytes;
+  private OutputStream outputStream;
+  private volatile State state;
+  private volatile boolean aborted;
+  private boolean handshakeComplete;
+  private long handshakeCompletedNanos;
+
+  /**
+   * Creates a new connection.
+   *
+   * @param  engine      engine servicing the connection
+   * @param  channel     client channel, in non-blocking mode
+   * @param  sslEngine   TLS engine, with the handshake begun
+   * @throws IOException if the remote address cannot be determined
+   */
+  NioClientConnection(NioConnectionEngine engine, SocketChannel channel,
+                      SSLEngine sslEngine) throws IOException {
+    this.engine = engine;
+    this.channel = channel;
+    this.sslEngine = sslEngine;
+    remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+    writable = new Semaphore(0);
+    acceptedNanos = System.nanoTime();
+    acceptedMillis = System.currentTimeMillis();
+
+    SSLSession session = sslEngine.getSession();
+    netIn = ByteBuffer.allocate(session.getPacketBufferSize());
+    netOut = ByteBuffer.allocate(session.getPacketBufferSize());
+    appIn = ByteBuffer.allocate(session.getApplicationBufferSize());
+    state = State.HANDSHAKING;
+  }
+
+  /**
+   * Registers this connection with a selector, so that it starts reading.
+   *
+   * @param  selector               selector
+   * @throws ClosedChannelException if the channel is closed
+   */
+  void register(Selector selector) throws ClosedChannelException {
+    key = channel.register(selector, SelectionKey.OP_READ, this);
+  }
+
+  /**
+   * Gets whether this connection has been handed off for request handling.
+   *
+   * @return whether this connection has been handed off
+   */
+  boolean isHandedOff() {
+    return state == State.HANDED_OFF;
+  }
+
+  /**
+   * Gets whether this connection's initial TLS handshake is still incomplete
+   * after the given time has passed since it was accepted. Called on the
+   * selector thread.
+   *
+   * @param  nowNanos     current time, from {@link System#nanoTime()}
+   * @param  timeoutNanos handshake timeout
+   * @return              whether the handshake has taken too long
+   */
+  boolean isHandshakeOverdue(long nowNanos, long timeoutNanos) {
+    return !handshakeComplete && state == State.HANDSHAKING &&
+      nowNanos - acceptedNanos > timeoutNanos;
+  }
+
+  /**
+   * Gets whether this connection's request line has still not arrived after
+   * the given time has passed since its initial TLS handshake completed.
+   * Called on the selector thread.
+   *
+   * @param  nowNanos     current time, from {@link System#nanoTime()}
+   * @param  timeoutNanos request timeout
+   * @return              whether the request has taken too long
+   */
+  boolean isRequestOverdue(long nowNanos, long timeoutNanos) {
+    return handshakeComplete &&
+      (state == State.READING_REQUEST || state == State.HANDSHAKING) &&
+      nowNanos - handshakeCompletedNanos > timeoutNanos;
+  }
+
+  // ---- selector thread ----
+
+  /**
+   * Handles readiness of the channel. Called on the selector thread.
+   */
+  void handleReady() {
+    try {
+      if (state == State.HANDED_OFF) {
+        // The only interest after hand-off is in the channel being writable,
+        // on behalf of the thread writing the response.
+        if (key.isWritable()) {
+          key.interestOps(0);
+          writable.release();
+        }
+        return;
+      }
+      if (key.isReadable() && channel.read(netIn) == -1) {
+        LOG.debug("Client closed connection before sending a request");
+        abort();
+        return;
+      }
+      progress();
+    } catch (IOException | CancelledKeyException e) {
+      LOG.debug("Failed to process connection", e);
+      abort();
+    }
+  }
+
+  /**
+   * Advances the connection through the TLS handshake and reading of the
+   * request line, as far as possible without blocking.
+   *
+   * @throws IOException if processing the connection fails
+   */
+  private void progress() throws IOException {
+    while (state == State.HANDSHAKING || state == State.READING_REQUEST) {
+      if (netOut.position() > 0 && !flushNonBlocking()) {
+        key.interestOps(SelectionKey.OP_WRITE);
+        return;
+      }
+
+      HandshakeStatus handshakeStatus = sslEngine.getHandshakeStatus();
+      if (state == State.READING_REQUEST &&
+          handshakeStatus != HandshakeStatus.NOT_HANDSHAKING) {
+        // Post-handshake messages need to be exchanged.
+        state = State.HANDSHAKING;
+      }
+
+      if (state == State.HANDSHAKING) {
+        switch (handshakeStatus) {
+          case NEED_WRAP:
+            wrapHandshake();
+            break;
+          case NEED_UNWRAP:
+          case NEED_UNWRAP_AGAIN:
+            if (!unwrap()) {
+              key.interestOps(SelectionKey.OP_READ);
+              return;
+            }
+            break;
+          case NEED_TASK:
+            runDelegatedTasks();
+            return;
+          default:
+            state = State.READING_REQUEST;
+            if (!handshakeComplete) {
+              handshakeComplete = true;
+              handshakeCompletedNanos = System.nanoTime();
+              engine.handshakeCompleted(sslEngine.getSession(), acceptedMillis);
+            }
+            break;
+        }
+        continue;
+      }
+
+      if (hasCompleteRequest()) {
+        handOff();
+        return;
+      }
+      if (!unwrap()) {
+        key.interestOps(SelectionKey.OP_READ);
+        return;
+      }
+    }
+  }
+
+  private void wrapHandshake() throws IOException {
+    SSLEngineResult result = sslEngine.wrap(EMPTY, netOut);
+    if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+      // The engine has produced its final alert; send it along and give up.
+      flushNonBlocking();
+      throw new SSLException("TLS engine closed during handshake");
+    }
+    if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+      netOut = enlarge(netOut, sslEngine.getSession().getPacketBufferSize());
+    }
+  }
+
+  /**
+   * Unwraps data received from the client.
+   *
+   * @return             true if progress was made, false if more data must be
+   *                     read from the client first
+   * @throws IOException if unwrapping fails
+   */
+  private boolean unwrap() throws IOException {
+    HandshakeStatus before = sslEngine.getHandshakeStatus();
+    SSLEngineResult result;
+    netIn.flip();
+    try {
+      result = sslEngine.unwrap(netIn, appIn);
+    } finally {
+      netIn.compact();
+    }
+
+    switch (result.getStatus()) {
+      case BUFFER_UNDERFLOW:
+        int packetBufferSize = sslEngine.getSession().getPacketBufferSize();
+        if (netIn.capacity() < packetBufferSize) {
+          netIn = enlarge(netIn, packetBufferSize);
+        }
+        return false;
+      case BUFFER_OVERFLOW:
+        if (state == State.READING_REQUEST && appIn.position() > 0) {
+          // There is more data than any valid request, so stop reading and
+          // let the request handler reject it.
+          requestOverflow = true;
+        } else {
+          appIn = enlarge(appIn, sslEngine.getSession().getApplicationBufferSize());
+        }
+        return true;
+      case CLOSED:
+        throw new SSLException("Client closed TLS connection");
+      default:
+        return result.bytesConsumed() > 0 || result.bytesProduced() > 0 ||
+          result.getHandshakeStatus() != before;
+    }
+  }
+
+  private void runDelegatedTasks() {
+    key.interestOps(0);
+    try {
+      engine.runTask(() -> {
+        Runnable task;
+        while ((task = sslEngine.getDelegatedTask()) != null) {
+          task.run();
+        }
+        engine.runOnSelector(this::resume);
+      });
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Failed to run TLS delegated tasks", e);
+      abort();
+    }
+  }
+
+  private void resume() {
+    if (state == State.CLOSED) {
+      return;
+    }
+    try {
+      progress();
+    } catch (IOException | CancelledKeyException e) {
+      LOG.debug("Failed to process connection", e);
+      abort();
+    }
+  }
+
+  private boolean hasCompleteRequest() {
+    if (requestOverflow || appIn.position() >= RequestHandler.MAX_REQUEST_BYTES) {
+      return true;
+    }
+    byte[] appBytes = appIn.array();
+    int end = appIn.position();
+    for (; scanned < end; scanned++) {
+      if (appBytes[scanned] == '\n') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void handOff() {
+    key.interestOps(0);
+    requestBytes = Arrays.copyOf(appIn.array(), appIn.position());
+    appIn = null;
+    netIn = null;
+    state = State.HANDED_OFF;
+    LOG.debug("Request read, handing off connection");
+    engine.handOff(this);
+  }
+
+  private boolean flushNonBlocking() throws IOException {
+    netOut.flip();
+    try {
+      channel.write(netOut);
+      return !netOut.hasRemaining();
+    } finally {
+      netOut.compact();
+    }
+  }
+
+  /**
+   * Closes the channel immediately, without any TLS closure. Any thread
+   * waiting to write is released.
+   */
+  void abort() {
+    aborted = true;
+    state = State.CLOSED;
+    writable.release();
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.debug("Failed to close channel", e);
+    }
+  }
+
+  private static ByteBuffer enlarge(ByteBuffer buffer, int minCapacity) {
+    ByteBuffer newBuffer = ByteBuffer.allocate(buffer.position() + minCapacity);
+    buffer.flip();
+    newBuffer.put(buffer);
+    return newBuffer;
+  }
+
+  // ---- request handling thread ----
+
+  @Override
+  public SSLSession getSession() {
+    return sslEngine.getSession();
+  }
+
+  @Override
+  public InetSocketAddress getRemoteAddress() {
+    return remoteAddress;
+  }
+
+  @Override
+  public InputStream getInputStream() {
+    return new ByteArrayInputStream(requestBytes);
+  }
+
+  @Override
+  public synchronized OutputStream getOutputStream() {
+    if (outputStream == null) {
+      outputStream = new EngineOutputStream();
+    }
+    return outputStream;
+  }
+
+  @Override
+  public long transferFrom(FileChannel file) throws IOException {
+    ByteBuffer buffer = BUFFER_POOL.acquire();
+    try {
+      long total = 0L;
+      while (true) {
+        // Fill the buffer, so that each wrap makes a full TLS record.
+        while (buffer.hasRemaining() && file.read(buffer) != -1) {
+          // keep reading
+        }
+        if (buffer.position() == 0) {
+          break;
+        }
+        buffer.flip();
+        total += buffer.remaining();
+        writeBlocking(buffer);
+        buffer.clear();
+      }
+      return total;
+    } finally {
+      BUFFER_POOL.release(buffer);
+    }
+  }
+
+  @Override
+  public long transferFrom(ByteBuffer data) throws IOException {
+    long total = data.remaining();
+    writeBlocking(data);
+    return total;
+  }
+
+  /**
+   * Closes the connection gracefully, sending a TLS close_notify alert before
+   * closing the channel.
+   *
+   * @throws IOException if the connection cannot be closed cleanly
+   */
+  @Override
+  public synchronized void close() throws IOException {
+    if (state == State.CLOSED) {
+      return;
+    }
+    state = State.CLOSED;
+    try {
+      sslEngine.closeOutbound();
+      while (!sslEngine.isOutboundDone()) {
+        sslEngine.wrap(EMPTY, netOut);
+        flushBlocking();
+      }
+    } finally {
+      channel.close();
+    }
+  }
+
+  private synchronized void writeBlocking(ByteBuffer src) throws IOException {
+    if (state == State.CLOSED) {
+      throw new IOException("Connection is closed");
+    }
+    while (src.hasRemaining()) {
+      SSLEngineResult result = sslEngine.wrap(src, netOut);
+      switch (result.getStatus()) {
+        case BUFFER_OVERFLOW:
+          if (netOut.position() == 0) {
+            netOut = enlarge(netOut, sslEngine.getSession().getPacketBufferSize());
+          }
+          break;
+        case CLOSED:
+          throw new IOException("TLS connection is closed");
+        default:
+          break;
+      }
+      flushBlocking();
+    }
+  }
+
+  private void flushBlocking() throws IOException {
+    netOut.flip();
+    try {
+      while (netOut.hasRemaining()) {
+        if (channel.write(netOut) == 0) {
+          awaitWritable();
+        }
+      }
+    } finally {
+      netOut.compact();
+    }
+  }
+
+  private void awaitWritable() throws IOException {
+    engine.runOnSelector(() -> {
+      if (key.isValid()) {
+        key.interestOps(SelectionKey.OP_WRITE);
+      }
+    });
+    try {
+      writable.acquire();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting to write");
+    }
+    if (aborted) {
+      throw new IOException("Connection aborted");
+    }
+  }
+
+  /**
+   * An output stream that encrypts response data and writes it to the
+   * channel. Closing the stream closes the connection gracefully.
+   */
+  private class EngineOutputStream extends OutputStream {
+
+    @Override
+    public void write(int b) throws IOException {
+      writeBlocking(ByteBuffer.wrap(new byte[] { (byte) b }));
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      writeBlocking(ByteBuffer.wrap(b, off, len));
+    }
+
+    @Override
+    public void close() throws IOException {
+      NioClientConnection.this.close();
+    }
+  }
+}
@@ -0,0 +1,388 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSession;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A connection engine built on non-blocking channels and a single selector
+ * thread. The engine accepts connections, performs TLS handshakes with an
+ * {@link SSLEngine}, and reads request lines, all without dedicating a thread
+ * to any connection. Once a connection's request line has arrived, the
+ * connection is handed off as a {@link ClientConnection}, typically to a
+ * {@link RequestHandler} running in an executor. The engine continues to
+ * service writes for the response, parking the writing thread only while the
+ * client is not accepting data.
+ */
+public class NioConnectionEngine implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(NioConnectionEngine.class);
+
+  private final SSLContext sslContext;
+  private final SSLParameters sslParameters;
+  private final Executor taskExecutor;
+  private final Consumer<ClientConnection> connectionHandler;
+  private final Selector selector;
+  private final ServerSocketChannel serverChannel;
+  private final Queue<Runnable> selectorActions;
+  private final Thread selectorThread;
+  private long handshakeTimeoutNanos;
+  private long requestTimeoutNanos;
+  private TlsSessionStats tlsSessionStats;
+  private volatile boolean closed;
+
+  /**
+   * Creates a new engine, listening on the given port.
+   *
+   * @param  port              port to listen on (0 for any free port)
+   * @param  sslContext        TLS context
+   * @param  sslParameters     TLS parameters for connections
+   * @param  taskExecutor      executor for TLS delegated tasks, which perform
+   *                           the expensive parts of handshakes
+   * @param  connectionHandler handler for connections whose request line has
+   *                           been read; must not block
+   * @throws IOException       if the engine cannot listen on the port
+   */
+  public NioConnectionEngine(int port, SSLContext sslContext,
+                             SSLParameters sslParameters, Executor taskExecutor,
+                             Consumer<ClientConnection> connectionHandler)
+    throws IOException {
+    this("nio-selector", port, false, sslContext, sslParameters, taskExecutor,
+         connectionHandler);
+  }
+
+  /**
+   * Creates a new engine, listening on the given port. When port reuse is
+   * requested, several engines may listen on the same port, and the kernel
+   * spreads new connections across them.
+   *
+   * @param  name              name for the selector thread
+   * @param  port              port to listen on (0 for any free port)
+   * @param  reusePort         whether to set SO_REUSEPORT on the listener
+   * @param  sslContext        TLS context
+   * @param  sslParameters     TLS parameters for connections
+   * @param  taskExecutor      executor for TLS delegated tasks
+   * @param  connectionHandler handler for connections whose request line has
+   *                           been read; must not block
+   * @throws IOException       if the engine cannot listen on the port
+   */
+  public NioConnectionEngine(String name, int port, boolean reusePort,
+                             SSLContext sslContext,
+                             SSLParameters sslParameters, Executor taskExecutor,
+                             Consumer<ClientConnection> connectionHandler)
+    throws IOException {
+    this.sslContext = sslContext;
+    this.sslParameters = sslParameters;
+    this.taskExecutor = taskExecutor;
+    this.connectionHandler = connectionHandler;
+
+    selector = Selector.open();
+    serverChannel = ServerSocketChannel.open();
+    try {
+      if (reusePort) {
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+      }
+      serverChannel.bind(new InetSocketAddress(port));
+      serverChannel.configureBlocking(false);
+      serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    } catch (IOException e) {
+      serverChannel.close();
+      selector.close();
+      throw e;
+    }
+    selectorActions = new ConcurrentLinkedQueue<>();
+    selectorThread = new Thread(this::runSelector, name);
+  }
+
+  /**
+   * Gets the port that the engine is listening on.
+   *
+   * @return local port
+   * @throws IOException if the port cannot be determined
+   */
+  public int getLocalPort() throws IOException {
+    return ((InetSocketAddress) serverChannel.getLocalAddress()).getPort();
+  }
+
+  /**
+   * Sets the time allowed for a client to complete its TLS handshake after
+   * connecting, after which the connection is closed. This must be called
+   * before the engine is started.
+   *
+   * @param handshakeTimeoutMs handshake timeout, in milliseconds, or 0 for
+   *                           no timeout
+   */
+  public void setHandshakeTimeoutMs(long handshakeTimeoutMs) {
+    handshakeTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(handshakeTimeoutMs);
+  }
+
+  /**
+   * Sets the time allowed for a client to send its request line after
+   * completing its TLS handshake, after which the connection is closed. This
+   * must be called before the engine is started.
+   *
+   * @param requestTimeoutMs request timeout, in milliseconds, or 0 for no
+   *                         timeout
+   */
+  public void setRequestTimeoutMs(long requestTimeoutMs) {
+    requestTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(requestTimeoutMs);
+  }
+
+  /**
+   * Sets the statistics to update when TLS handshakes complete. This must be
+   * called before the engine is started.
+   *
+   * @param tlsSessionStats TLS session statistics
+   */
+  public void setTlsSessionStats(TlsSessionStats tlsSessionStats) {
+    this.tlsSessionStats = tlsSessionStats;
+  }
+
+  /**
+   * Starts the selector thread, so that the engine begins accepting
+   * connections.
+   */
+  public void start() {
+    selectorThread.start();
+  }
+
+  /**
+   * Stops accepting new connections. Connections that have not yet been
+   * handed off are closed, but those that have been continue to be serviced
+   * until the engine is closed.
+   */
+  public void stopAccepting() {
+    runOnSelector(() -> {
+      try {
+        serverChannel.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close server channel", e);
+      }
+      for (SelectionKey key : selector.keys()) {
+        if (key.attachment() instanceof NioClientConnection) {
+          NioClientConnection connection = (NioClientConnection) key.attachment();
+          if (!connection.isHandedOff()) {
+            connection.abort();
+          }
+        }
+      }
+    });
+  }
+
+  /**
+   * Closes the engine. Any remaining connections are closed immediately.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    selector.wakeup();
+    if (selectorThread.isAlive() && Thread.currentThread() != selectorThread) {
+      try {
+        selectorThread.join();
+      } catch (InterruptedException e) {
+        LOG.debug("Interrupted while waiting for selector thread to stop", e);
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+
+  /**
+   * Runs an action on the selector thread.
+   *
+   * @param action action to run
+   */
+  void runOnSelector(Runnable action) {
+    selectorActions.add(action);
+    selector.wakeup();
+  }
+
+  /**
+   * Runs a TLS delegated task (or any other potentially lengthy work) off of
+   * the selector thread.
+   *
+   * @param task task to run
+   */
+  void runTask(Runnable task) {
+    taskExecutor.execute(task);
+  }
+
+  /**
+   * Notes that a connection's initial TLS handshake has completed.
+   *
+   * @param session              established session
+   * @param handshakeStartMillis time when the handshake began
+   */
+  void handshakeCompleted(SSLSession session, long handshakeStartMillis) {
+    if (tlsSessionStats != null) {
+      tlsSessionStats.recordHandshake(session, handshakeStartMillis);
+    }
+  }
+
+  /**
+   * Hands off a connection whose request line has been read.
+   *
+   * @param connection connection
+   */
+  void handOff(NioClientConnection connection) {
+    connectionHandler.accept(connection);
+  }
+
+  private void runSelector() {
+    LOG.debug("Selector thread started");
+    // Check for overdue handshakes and requests a few times per timeout
+    // period, going by the shorter timeout.
+    long shortestTimeoutNanos = handshakeTimeoutNanos == 0L ? requestTimeoutNanos :
+      requestTimeoutNanos == 0L ? handshakeTimeoutNanos :
+      Math.min(handshakeTimeoutNanos, requestTimeoutNanos);
+    long sweepIntervalMs =
+      Math.max(TimeUnit.NANOSECONDS.toMillis(shortestTimeoutNanos) / 4, 1L);
+    long nextSweepNanos =
+      System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(sweepIntervalMs);
+    try {
+      while (!closed) {
+        if (shortestTimeoutNanos > 0L) {
+          selector.select(sweepIntervalMs);
+          long nowNanos = System.nanoTime();
+          if (nowNanos - nextSweepNanos >= 0L) {
+            abortOverdueConnections(nowNanos);
+            nextSweepNanos = nowNanos + TimeUnit.MILLISECONDS.toNanos(sweepIntervalMs);
+          }
+        } else {
+          selector.select();
+        }
+
+        Runnable action;
+        while ((action = selectorActions.poll()) != null) {
+          action.run();
+        }
+
+        Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+        while (keys.hasNext()) {
+          SelectionKey key = keys.next();
+          keys.remove();
+          if (!key.isValid()) {
+            continue;
+          }
+          if (key.isAcceptable()) {
+            accept();
+          } else {
+            ((NioClientConnection) key.attachment()).handleReady();
+          }
+        }
+      }
+    } catch (IOException | ClosedSelectorException e) {
+      LOG.error("Selector failed, closing engine", e);
+    } finally {
+      closeAll();
+    }
+    LOG.debug("Selector thread stopped");
+  }
+
+  private void abortOverdueConnections(long nowNanos) {
+    for (SelectionKey key : selector.keys()) {
+      if (key.attachment() instanceof NioClientConnection) {
+        NioClientConnection connection = (NioClientConnection) key.attachment();
+        if (handshakeTimeoutNanos > 0L &&
+            connection.isHandshakeOverdue(nowNanos, handshakeTimeoutNanos)) {
+          LOG.debug("TLS handshake timed out, closing connection");
+          connection.abort();
+        } else if (requestTimeoutNanos > 0L &&
+                   connection.isRequestOverdue(nowNanos, requestTimeoutNanos)) {
+          LOG.debug("Request timed out, closing connection");
+          connection.abort();
+        }
+      }
+    }
+  }
+
+  private void accept() {
+    while (true) {
+      SocketChannel channel;
+      try {
+        channel = serverChannel.accept();
+      } catch (IOException e) {
+        LOG.warn("Failed to accept connection", e);
+        return;
+      }
+      if (channel == null) {
+        return;
+      }
+
+      LOG.debug("Accepted connection");
+      try {
+        channel.configureBlocking(false);
+        SSLEngine sslEngine = sslContext.createSSLEngine();
+        sslEngine.setUseClientMode(false);
+        sslEngine.setSSLParameters(sslParameters);
+        sslEngine.beginHandshake();
+        NioClientConnection connection =
+          new NioClientConnection(this, channel, sslEngine);
+        connection.register(selector);
+      } catch (IOException e) {
+        LOG.debug("Failed to set up connection", e);
+        try {
+          channel.close();
+        } catch (IOException e2) {
+          LOG.debug("Failed to close channel", e2);
+        }
+      }
+    }
+  }
+
+  private void closeAll() {
+    try {
+      serverChannel.close();
+    } catch (IOException e) {
+      LOG.debug("Failed to close server channel", e);
+    }
+    try {
+      for (SelectionKey key : selector.keys()) {
+        if (key.attachment() instanceof NioClientConnection) {
+          ((NioClientConnection) key.attachment()).abort();
+        }
+      }
+      selector.close();
+    } catch (IOException | ClosedSelectorException e) {
+      LOG.debug("Failed to close selector", e);
+    }
+  }
+}
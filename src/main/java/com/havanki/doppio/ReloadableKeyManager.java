@@ -0,0 +1,207 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+/**
+ * A key manager whose key material can be replaced while the server is
+ * running. New handshakes use the latest key material, while sessions that
+ * are already established are unaffected.
+ *
+ * A handshake chooses an alias and then separately asks for the key and
+ * certificate chain under that alias, so a replacement could otherwise land
+ * in between and pair the key from one generation with the chain from
+ * another. To prevent that, aliases handed out by this key manager are
+ * tagged with the generation of key material they came from, and lookups
+ * by alias go to that same generation. The previous generation is retained
+ * for handshakes that straddle a replacement.
+ */
+public class ReloadableKeyManager extends X509ExtendedKeyManager {
+
+  private static final char GENERATION_SEPARATOR = ':';
+
+  private static class Generation {
+    private final int number;
+    private final X509ExtendedKeyManager keyManager;
+
+    private Generation(int number, X509ExtendedKeyManager keyManager) {
+      this.number = number;
+      this.keyManager = keyManager;
+    }
+  }
+
+  private volatile Generation current;
+  private volatile Generation previous;
+
+  /**
+   * Creates a new key manager.
+   *
+   * @param keyManager initial delegate key manager
+   */
+  public ReloadableKeyManager(X509ExtendedKeyManager keyManager) {
+    current = new Generation(0, keyManager);
+  }
+
+  /**
+   * Replaces the key material used for new handshakes.
+   *
+   * @param keyManager new delegate key manager
+   */
+  public synchronized void reload(X509ExtendedKeyManager keyManager) {
+    Generation oldCurrent = current;
+    previous = oldCurrent;
+    current = new Generation(oldCurrent.number + 1, keyManager);
+  }
+
+  /**
+   * Gets the number of times that the key material has been replaced.
+   *
+   * @return number of reloads
+   */
+  public int getReloadCount() {
+    return current.number;
+  }
+
+  /**
+   * Finds the X.509 key manager among those produced by a key manager
+   * factory.
+   *
+   * @param  keyManagers key managers
+   * @return             X.509 key manager
+   * @throws IllegalArgumentException if there is no X.509 key manager
+   */
+  public static X509ExtendedKeyManager findX509KeyManager(KeyManager[] keyManagers) {
+    for (KeyManager keyManager : keyManagers) {
+      if (keyManager instanceof X509ExtendedKeyManager) {
+        return (X509ExtendedKeyManager) keyManager;
+      }
+    }
+    throw new IllegalArgumentException("No X.509 key manager available");
+  }
+
+  private static String tag(Generation generation, String alias) {
+    return alias == null ? null :
+      generation.number + String.valueOf(GENERATION_SEPARATOR) + alias;
+  }
+
+  private static String[] tag(Generation generation, String[] aliases) {
+    if (aliases == null) {
+      return null;
+    }
+    String[] tagged = new String[aliases.length];
+    for (int i = 0; i < aliases.length; i++) {
+      tagged[i] = tag(generation, aliases[i]);
+    }
+    return tagged;
+  }
+
+  /**
+   * Finds the generation of key material that a tagged alias came from.
+   *
+   * @param  alias tagged alias
+   * @return       generation, or null if the alias is not tagged or its
+   *               generation is no longer retained
+   */
+  private Generation generationOf(String alias) {
+    int idx = alias == null ? -1 : alias.indexOf(GENERATION_SEPARATOR);
+    if (idx < 1) {
+      return null;
+    }
+    int number;
+    try {
+      number = Integer.parseInt(alias.substring(0, idx));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+    Generation c = current;
+    if (c.number == number) {
+      return c;
+    }
+    Generation p = previous;
+    if (p != null && p.number == number) {
+      return p;
+    }
+    return null;
+  }
+
+  private static String untag(String alias) {
+    return alias.substring(alias.indexOf(GENERATION_SEPARATOR) + 1);
+  }
+
+  @Override
+  public String[] getClientAliases(String keyType, Principal[] issuers) {
+    Generation g = current;
+    return tag(g, g.keyManager.getClientAliases(keyType, issuers));
+  }
+
+  @Override
+  public String chooseClientAlias(String[] keyType, Principal[] issuers,
+                                  Socket socket) {
+    Generation g = current;
+    return tag(g, g.keyManager.chooseClientAlias(keyType, issuers, socket));
+  }
+
+  @Override
+  public String chooseEngineClientAlias(String[] keyType, Principal[] issuers,
+                                        SSLEngine engine) {
+    Generation g = current;
+    return tag(g, g.keyManager.chooseEngineClientAlias(keyType, issuers, engine));
+  }
+
+  @Override
+  public String[] getServerAliases(String keyType, Principal[] issuers) {
+    Generation g = current;
+    return tag(g, g.keyManager.getServerAliases(keyType, issuers));
+  }
+
+  @Override
+  public String chooseServerAlias(String keyType, Principal[] issuers,
+                                  Socket socket) {
+    Generation g = current;
+    return tag(g, g.keyManager.chooseServerAlias(keyType, issuers, socket));
+  }
+
+  @Override
+  public String chooseEngineServerAlias(String keyType, Principal[] issuers,
+                                        SSLEngine engine) {
+    Generation g = current;
+    return tag(g, g.keyManager.chooseEngineServerAlias(keyType, issuers, engine));
+  }
+
+  @Override
+  public X509Certificate[] getCertificateChain(String alias) {
+    Generation g = generationOf(alias);
+    return g == null ? null : g.keyManager.getCertificateChain(untag(alias));
+  }
+
+  @Override
+  public PrivateKey getPrivateKey(String alias) {
+    Generation g = generationOf(alias);
+    return g == null ? null : g.keyManager.getPrivateKey(untag(alias));
+  }
+}
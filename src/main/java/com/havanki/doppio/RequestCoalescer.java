@@ -0,0 +1,201 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Coalesces identical requests that are in progress at the same time, so
+ * that only the first one produces its response, and the rest wait for it and
+ * share the result. This applies only to requests for paths under configured
+ * prefixes, and not to requests in secure domains unless that is also
+ * configured.
+ */
+public class RequestCoalescer {
+
+  /**
+   * The default longest time that a request waits for an identical request
+   * in progress, in milliseconds.
+   */
+  static final long DEFAULT_MAX_WAIT_MS = 30000L;
+
+  /**
+   * Produces a result for a request.
+   *
+   * @param <T> result type
+   */
+  @FunctionalInterface
+  public interface Producer<T> {
+    /**
+     * Produces the result.
+     *
+     * @return             result
+     * @throws IOException if the result cannot be produced
+     */
+    T produce() throws IOException;
+  }
+
+  private final List<Path> prefixes;
+  private final boolean coalesceSecureDomains;
+  private final ConcurrentMap<String, CompletableFuture<Object>> inFlight =
+    new ConcurrentHashMap<>();
+  private final LongAdder leaders = new LongAdder();
+  private final LongAdder followers = new LongAdder();
+  private final LongAdder fallbacks = new LongAdder();
+
+  /**
+   * Creates a new coalescer.
+   *
+   * @param prefixes              URL path prefixes to coalesce requests
+   *                              under
+   * @param coalesceSecureDomains true to coalesce requests in secure domains
+   */
+  public RequestCoalescer(List<String> prefixes,
+                          boolean coalesceSecureDomains) {
+    this.prefixes = prefixes.stream()
+      .map(p -> Path.of(p.replaceAll("^/+", "")))
+      .toList();
+    this.coalesceSecureDomains = coalesceSecureDomains;
+  }
+
+  /**
+   * Checks whether requests for a path are coalesced.
+   *
+   * @param  path     request path, relative to the root
+   * @param  isSecure true if the path is in a secure domain
+   * @return          true if requests for the path are coalesced
+   */
+  public boolean applies(Path path, boolean isSecure) {
+    if (isSecure && !coalesceSecureDomains) {
+      return false;
+    }
+    for (Path prefix : prefixes) {
+      if (path.startsWith(prefix)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Produces a result for a request, or waits for the result of an identical
+   * request already in progress. Only results that may be shared are handed
+   * to waiting requests; if the first request's result may not be shared,
+   * or it fails, or it takes longer than the waiting request is willing to
+   * wait, each waiting request produces its own result.
+   *
+   * @param  <T>         result type
+   * @param  key         key identifying identical requests
+   * @param  producer    producer of the result
+   * @param  isShareable test for whether a result may be shared
+   * @param  maxWaitMs   longest time to wait for an identical request in
+   *                     progress, in milliseconds, or 0 for the default
+   * @return             result
+   * @throws IOException if the result cannot be produced
+   */
+  @SuppressWarnings("unchecked")
+  public <T> T execute(String key, Producer<T> producer,
+                       Predicate<T> isShareable, long maxWaitMs)
+    throws IOException {
+    CompletableFuture<Object> flight = new CompletableFuture<>();
+    CompletableFuture<Object> existing = inFlight.putIfAbsent(key, flight);
+    if (existing != null) {
+      followers.increment();
+      try {
+        Object result = existing.get(maxWaitMs > 0L ? maxWaitMs : DEFAULT_MAX_WAIT_MS,
+                                     TimeUnit.MILLISECONDS);
+        if (result != null) {
+          return (T) result;
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException("Interrupted waiting for coalesced request");
+      } catch (TimeoutException e) {
+        // give up on the identical request and produce a result here
+      } catch (ExecutionException e) {
+        // not expected, since a flight is only ever completed normally
+      }
+      fallbacks.increment();
+      return producer.produce();
+    }
+
+    leaders.increment();
+    T result = null;
+    try {
+      result = producer.produce();
+      return result;
+    } finally {
+      inFlight.remove(key, flight);
+      flight.complete(result != null && isShareable.test(result) ?
+                      result : null);
+    }
+  }
+
+  /**
+   * Gets the number of requests that produced a result for others to share.
+   *
+   * @return number of leading requests
+   */
+  public long getLeaders() {
+    return leaders.sum();
+  }
+
+  /**
+   * Gets the number of requests that waited for another request's result.
+   *
+   * @return number of following requests
+   */
+  public long getFollowers() {
+    return followers.sum();
+  }
+
+  /**
+   * Gets the number of waiting requests that had to produce their own
+   * result after all, including those that gave up waiting.
+   *
+   * @return number of fallbacks
+   */
+  public long getFallbacks() {
+    return fallbacks.sum();
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    stats.put("coalesce.leaders", getLeaders());
+    stats.put("coalesce.followers", getFollowers());
+    stats.put("coalesce.fallbacks", getFallbacks());
+  }
+}
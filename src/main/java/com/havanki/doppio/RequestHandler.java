@@ -21,22 +21,26 @@ package com.havanki.doppio;
 
 import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.net.Socket;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
 import java.net.URI;
 import java.security.cert.CertificateException;
 import java.security.cert.CertificateExpiredException;
 import java.security.cert.CertificateNotYetValidException;
 import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 
@@ -55,10 +59,12 @@ public class RequestHandler implements Runnable {
 
   private static final Logger LOG = LoggerFactory.getLogger(RequestHandler.class);
 
-  private static final int MAX_REQUEST_BYTES = 1025;  // one more than permitted
+  static final int MAX_REQUEST_BYTES = 1025;  // one more than permitted
   private static final String CRLF = "\r\n";
   private static final String ATOM_FEED_FILE_NAME = "atom.xml";
   private static final String ATOM_FEED_META = "text/xml;charset=utf-8";
+  // most bytes of a coalesced CGI response to keep in memory for sharing
+  private static final int MAX_COALESCED_RESPONSE_BYTES = 1024 * 1024;
   // This is the "auth type" for TrustManager::checkClientTrusted. There is next
   // to no information out there on what valid values for this are, except "RSA"
   // being one. OpenJDK code seems to indicate that, for client trust, it
@@ -67,8 +73,16 @@ public class RequestHandler implements Runnable {
 
   private final ServerProperties serverProps;
   private final AccessLogger accessLogger;
-  private final SSLSocket socket;
-  private final RequestParser requestParser;
+  private final ClientConnection connection;
+  private final StaticResponseCache staticResponseCache;
+  private final CapsuleArchive capsuleArchive;
+  private final FeedCache feedCache;
+  private final List<GatewayClient> gatewayClients;
+  private final JavaHandlers javaHandlers;
+  private final CgiWorkerPools cgiWorkerPools;
+  private final CgiResponseCache cgiResponseCache;
+  private final RequestCoalescer requestCoalescer;
+  private final CgiLimiter cgiLimiter;
   private final Atomizer atomizer;
   private final ContentTypeResolver contentTypeResolver;
   private final CharsetDetector charsetDetector;
@@ -83,11 +97,48 @@ public class RequestHandler implements Runnable {
   public RequestHandler(ServerProperties serverProps,
                         AccessLogger accessLogger,
                         SSLSocket socket) {
+    this(serverProps, accessLogger, new SocketClientConnection(socket));
+  }
+
+  /**
+   * Creates a request handler with no shared dependencies.
+   *
+   * @param  serverProps  server properties
+   * @param  accessLogger access logger
+   * @param  connection   client connection
+   */
+  public RequestHandler(ServerProperties serverProps,
+                        AccessLogger accessLogger,
+                        ClientConnection connection) {
+    this(serverProps, accessLogger, connection,
+         RequestHandlerDependencies.none());
+  }
+
+  /**
+   * Creates a request handler.
+   *
+   * @param  serverProps  server properties
+   * @param  accessLogger access logger
+   * @param  connection   client connection
+   * @param  dependencies collaborators shared with other request handlers
+   */
+  public RequestHandler(ServerProperties serverProps,
+                        AccessLogger accessLogger,
+                        ClientConnection connection,
+                        RequestHandlerDependencies dependencies) {
     this.serverProps = serverProps;
     this.accessLogger = accessLogger;
-    this.socket = socket;
+    this.connection = connection;
+    staticResponseCache = dependencies.getStaticResponseCache();
+    capsuleArchive = dependencies.getCapsuleArchive();
+    feedCache = dependencies.getFeedCache();
+    gatewayClients = dependencies.getGatewayClients();
+    javaHandlers = dependencies.getJavaHandlers();
+    cgiWorkerPools = dependencies.getCgiWorkerPools();
+    cgiResponseCache = dependencies.getCgiResponseCache();
+    requestCoalescer = dependencies.getRequestCoalescer();
+    cgiLimiter = dependencies.getCgiLimiter();
 
-    requestParser = new RequestParser(serverProps.getHost(), serverProps.getPort());
     atomizer = new Atomizer();
     contentTypeResolver =
       new ContentTypeResolver(serverProps.getTextGeminiSuffixes(),
@@ -102,19 +153,27 @@ public class RequestHandler implements Runnable {
     int statusCode = StatusCodes.PERMANENT_FAILURE;
     String remoteUsername = null;
     long responseBodySize = 0;
+    String accessLogNote = null;
 
     // Check for a valid session / successful handshake.
-    SSLSession session = socket.getSession();
+    SSLSession session = connection.getSession();
     if (!session.isValid()) {
       LOG.debug("Session is invalid, rejecting");
       try {
-        socket.close();
+        connection.close();
       } catch (IOException e) {
-        LOG.debug("Failed to close socket", e);
+        LOG.debug("Failed to close connection", e);
       }
       return;
     }
 
+    // Serve the virtual host that the client asked for, and only accept
+    // requests for that host.
+    VirtualHost virtualHost =
+      serverProps.getVirtualHost(VirtualHost.getRequestedHostName(session));
+    RequestParser requestParser =
+      new RequestParser(virtualHost.getHost(), serverProps.getPort());
+
     // Retrieve the peer certificate, if any.
     X509Certificate peerCertificate;
     try {
@@ -123,16 +182,16 @@ public class RequestHandler implements Runnable {
       peerCertificate = null;
     }
 
-    // Open input and output streams for the socket.
+    // Open input and output streams for the connection.
     try (BoundedInputStream bis =
-          new BoundedInputStream(socket.getInputStream(), MAX_REQUEST_BYTES);
+          new BoundedInputStream(connection.getInputStream(), MAX_REQUEST_BYTES);
          InputStreamReader isr =
           new InputStreamReader(bis,
                                 StandardCharsets.UTF_8.newDecoder()
                                 .onMalformedInput(CodingErrorAction.REPORT)
                                 .onUnmappableCharacter(CodingErrorAction.REPORT));
          BufferedReader in = new BufferedReader(isr);
-         OutputStream os = new SocketOutputStream(socket);
+         OutputStream os = connection.getOutputStream();
          BufferedOutputStream out = new BufferedOutputStream(os)) {
 
       // Read the single-line Gemini request.
@@ -158,10 +217,12 @@ public class RequestHandler implements Runnable {
 
       // Expect not to have to atomize (generate an Atom feed for) the resource.
       boolean atomize = false;
+      String feedDirUriString = null;
 
       // Loop handling requests until there is no longer a local redirect, or
       // the maximum number of local redirects has been exceeded.
       File resourceFile = null;
+      Path staticResourcePath = null;
       int numLocalRedirects = 0;
       while (numLocalRedirects <= serverProps.getMaxLocalRedirects()) {
 
@@ -180,7 +241,7 @@ public class RequestHandler implements Runnable {
         if (pathString.length() > 0 && pathString.charAt(0) == '/') {
           pathString = pathString.substring(1);
         }
-        Path resourcePath = serverProps.getRoot().resolve(pathString);
+        Path resourcePath = virtualHost.getRoot().resolve(pathString);
         LOG.debug("Resolved path: {}", resourcePath);
         Path path = Path.of(pathString);
 
@@ -188,7 +249,7 @@ public class RequestHandler implements Runnable {
         // Do this before checking if the resource exists so as not to leak
         // info.
         boolean isSecure = false;
-        for (SecureDomain secureDomain : serverProps.getSecureDomains()) {
+        for (SecureDomain secureDomain : virtualHost.getSecureDomains()) {
           if (path.startsWith(secureDomain.getDir())) {
             isSecure = true;
             if (peerCertificate == null) {
@@ -240,9 +301,92 @@ public class RequestHandler implements Runnable {
           return;
         }
 
+        // Pass the request to an in-process handler if its path falls under
+        // a handler prefix for the server's host.
+        JavaHandlers.Entry handlerEntry =
+          javaHandlers != null &&
+          virtualHost == serverProps.getDefaultVirtualHost() ?
+          javaHandlers.find(path) : null;
+        if (handlerEntry != null) {
+          HandlerMapping handlerMapping = handlerEntry.getHandlerMapping();
+          LOG.debug("Passing request to handler {}",
+                    handlerMapping.getClassName());
+          String extraPath = handlerMapping.getExtraPath(path);
+          Map<String, String> metaVars = new CgiProcessBuilderFactory()
+            .createMetaVariables(handlerMapping.getPrefix(), extraPath, uri,
+                                 connection.getRemoteAddress(), session,
+                                 peerCertificate, virtualHost, serverProps);
+          GeminiRequest handlerRequest =
+            new GeminiRequest(uri, extraPath.isEmpty() ? "" : "/" + extraPath,
+                              connection.getRemoteAddress(), session,
+                              peerCertificate, metaVars);
+          GeminiResponse handlerResponse =
+            new GeminiResponse(out, serverProps.isForceCanonicalText());
+          boolean failed = false;
+          try {
+            handlerEntry.getHandler().handle(handlerRequest, handlerResponse);
+            if (!handlerResponse.isHeaderSent()) {
+              throw new IllegalStateException("Handler sent no response header");
+            }
+          } catch (IOException | RuntimeException e) {
+            LOG.error("Handler {} failed", handlerMapping.getClassName(), e);
+            failed = true;
+          }
+          javaHandlers.recordRequest(failed);
+          if (handlerResponse.isHeaderSent()) {
+            handlerResponse.finish();
+            statusCode = handlerResponse.getStatusCode();
+            responseBodySize = handlerResponse.getBodySize();
+          } else {
+            statusCode = StatusCodes.CGI_ERROR;
+            writeResponseHeader(out, statusCode, "Handler failed");
+          }
+          return;
+        }
+
+        // Pass the request to a FastCGI or SCGI application if its path
+        // falls under a gateway prefix for the server's host.
+        GatewayClient gatewayClient =
+          virtualHost == serverProps.getDefaultVirtualHost() ?
+          findGatewayClient(path) : null;
+        if (gatewayClient != null) {
+          GatewayMapping gatewayMapping = gatewayClient.getGatewayMapping();
+          String application = gatewayClient.getProtocolName() + " application";
+          LOG.debug("Passing request to {} at {}", application,
+                    gatewayMapping.getEndpoint());
+          Map<String, String> metaVars = new CgiProcessBuilderFactory()
+            .createMetaVariables(gatewayMapping.getPrefix(),
+                                 gatewayMapping.getExtraPath(path), uri,
+                                 connection.getRemoteAddress(), session,
+                                 peerCertificate, virtualHost, serverProps);
+          InputStream applicationStdout;
+          try {
+            applicationStdout = gatewayClient.sendRequest(metaVars);
+          } catch (IOException e) {
+            LOG.error("Failed to send request to {}", application, e);
+            statusCode = StatusCodes.CGI_ERROR;
+            writeResponseHeader(out, statusCode,
+                                "Failed to reach " + application);
+            return;
+          }
+          CgiOutcome outcome;
+          try (applicationStdout) {
+            outcome = writeCgiResponse(applicationStdout, out, application,
+                                       null);
+          }
+          statusCode = outcome.statusCode;
+          responseBodySize = outcome.responseBodySize;
+          if (outcome.localRedirect != null) {
+            uri = outcome.localRedirect;
+            numLocalRedirects++;
+            continue; // the while loop for local redirects
+          }
+          return;
+        }
+
         // Determine if the resource is a CGI script.
-        boolean isCgi = serverProps.getCgiDir() != null &&
-          path.startsWith(serverProps.getCgiDir());
+        boolean isCgi = virtualHost.getCgiDir() != null &&
+          path.startsWith(virtualHost.getCgiDir());
         LOG.debug("CGI? {}", isCgi);
 
         // If the request is for an Atom feed, and atomization is configured for
@@ -251,22 +395,62 @@ public class RequestHandler implements Runnable {
         // For simplicity, automatic feeds are not supported for CGI.
         if (path.endsWith(Path.of(ATOM_FEED_FILE_NAME)) && !isCgi) {
           Path pathParent = path.getParent();
-          Optional<String> feedPage = serverProps.getFeedPages().stream()
+          Optional<String> feedPage = virtualHost.getFeedPages().stream()
             .filter(p -> Objects.equals(Path.of(p).getParent(), pathParent))
             .findFirst();
           if (feedPage.isPresent()) {
             LOG.debug("Using generated feed for {}", feedPage.get());
-            resourcePath = serverProps.getRoot().resolve(feedPage.get());
+            resourcePath = virtualHost.getRoot().resolve(feedPage.get());
             LOG.debug("Re-resolved path: {}", resourcePath);
             path = Path.of(pathString);
             atomize = true;
+            // Build the feed URI from configuration, so that every request
+            // for the feed, whatever its query, gets the same one.
+            feedDirUriString =
+              FeedCache.feedDirUriString(virtualHost.getHost(),
+                                         serverProps.getPort(),
+                                         feedPage.get());
+          }
+        }
+
+        // Serve a static resource for the server's own host from the packed
+        // archive, if there is one. The archive stands in for the root
+        // directory, so a resource missing from it is not found.
+        if (!isCgi && !atomize && capsuleArchive != null &&
+            virtualHost == serverProps.getDefaultVirtualHost()) {
+          CapsuleArchive.Entry archiveEntry = capsuleArchive.get(pathString);
+          if (archiveEntry == null) {
+            statusCode = StatusCodes.NOT_FOUND;
+            writeResponseHeader(out, statusCode, "Resource not found");
+            return;
+          }
+          LOG.debug("Serving response from archive: {}", archiveEntry.getMeta());
+          statusCode = StatusCodes.SUCCESS;
+          out.flush();
+          connection.transferFrom(archiveEntry.getResponse());
+          responseBodySize = archiveEntry.getBodySize();
+          return;
+        }
+
+        // Serve a cached response for a static resource, if the file behind
+        // it has not changed.
+        if (!isCgi && !atomize && staticResponseCache != null) {
+          StaticResponseCache.Entry cachedResponse =
+            staticResponseCache.get(resourcePath);
+          if (cachedResponse != null) {
+            LOG.debug("Serving cached response");
+            statusCode = StatusCodes.SUCCESS;
+            out.write(cachedResponse.getResponse());
+            out.flush();
+            responseBodySize = cachedResponse.getBodySize();
+            return;
           }
         }
 
         // Locate the resource, finding the path to it and any extra path
         // information.
         Optional<Path[]> splitResourcePath =
-          splitResourcePath(resourcePath, isCgi);
+          splitResourcePath(virtualHost, resourcePath, isCgi);
         if (splitResourcePath.isEmpty()) {
           // If the resource does not exist, fail with a NOT_FOUND.
           statusCode = StatusCodes.NOT_FOUND;
@@ -278,6 +462,7 @@ public class RequestHandler implements Runnable {
         // Non-CGI resources cannot be redirects, so break out of the redirect
         // loop now for them.
         if (!isCgi) {
+          staticResourcePath = resourcePath;
           break;
         }
 
@@ -289,99 +474,85 @@ public class RequestHandler implements Runnable {
           return;
         }
 
-        // Start a process to run the CGI script.
-        ProcessBuilder pb;
-        try {
-          pb = new CgiProcessBuilderFactory()
-            .createCgiProcessBuilder(resourceFile, splitResourcePath.get(),
-                                     uri, socket, peerCertificate, serverProps);
-        } catch (IOException e) {
-          statusCode = StatusCodes.TEMPORARY_FAILURE;
-          writeResponseHeader(out, statusCode,
-                              "Failed to resolve CGI resource path");
-          return;
+        // Serve a cached response from an earlier run of the script, if it
+        // has not expired. Scripts in secure domains may respond differently
+        // to each client, so their responses are cached per certificate.
+        Path[] splitPaths = splitResourcePath.get();
+        String cgiRequestKey = null;
+        if (cgiResponseCache != null || requestCoalescer != null) {
+          String fingerprint = isSecure ?
+            CgiProcessBuilderFactory.fingerprint(peerCertificate) : null;
+          if (!isSecure || fingerprint != null) {
+            cgiRequestKey = CgiResponseCache.key(virtualHost.getHost(),
+                                                 splitPaths[0],
+                                                 splitPaths[1].toString(),
+                                                 uri.getRawQuery(), fingerprint);
+          }
+        }
+        String cgiCacheKey = cgiResponseCache != null ? cgiRequestKey : null;
+        if (cgiCacheKey != null) {
+          CgiResponseCache.Entry cachedResponse =
+            cgiResponseCache.get(cgiCacheKey);
+          if (cachedResponse != null) {
+            LOG.debug("Serving cached CGI response");
+            statusCode = cachedResponse.getStatusCode();
+            out.write(cachedResponse.getResponse());
+            out.flush();
+            responseBodySize = cachedResponse.getBodySize();
+            return;
+          }
         }
-        LOG.debug("Executing CGI {}", pb.command());
-        Process p = pb.start();
-
-        // Process the script output.
-        try {
-          try (InputStream processStdout = p.getInputStream()) {
-
-            // Consume the response headers. If the script fails before it
-            // starts generating output, then expected headers will not be
-            // found and the server will return a CGI error.
-            CgiResponseMetadata responseMetadata;
-            try {
-              responseMetadata = new CgiResponseHeaderReader()
-                .consumeHeaders(processStdout);
-            } catch (IOException e) {
-              LOG.error("CGI script returned invalid response headers", e);
-              statusCode = StatusCodes.CGI_ERROR;
-              writeResponseHeader(out, statusCode,
-                                  "CGI script returned invalid response headers");
-              return;
-            }
-
-            // Check if the response indicates a redirect.
-            boolean isRedirect = responseMetadata.getLocation() != null;
-
-            // If the location URI is non-absolute (not starting with a
-            // scheme), then treat it as a local redirect.
-            if (isRedirect && !responseMetadata.getLocation().isAbsolute()) {
-              LOG.debug("Local redirect: {}", responseMetadata.getLocation());
-              uri = responseMetadata.getLocation();
-              numLocalRedirects++;
-              continue; // the while loop for local redirects
-            }
-
-            // Determine the response status code. If not explicitly provided,
-            // default to 30 for a redirect and 20 otherwise.
-            Integer statusCodeInt = responseMetadata.getStatusCode();
-            if (statusCodeInt == null) {
-                statusCode = isRedirect ?
-                  StatusCodes.REDIRECT_TEMPORARY : StatusCodes.SUCCESS;
-            } else {
-              statusCode = statusCodeInt.intValue();
-            }
 
-            // Determine the meta string for the response. For a redirect,
-            // this is the URI to redirect to. Otherwise, it's the content
-            // type of the response body.
-            String meta;
-            if (isRedirect) {
-              meta = responseMetadata.getLocation().toString();
-            } else {
-              meta = responseMetadata.getContentType();
+        // Run the script. When requests for it are coalesced, identical
+        // requests in progress at the same time share the response from a
+        // single run, so it is rendered in memory first. A response too
+        // large to keep in memory is streamed to this client instead, and
+        // not shared.
+        CgiOutcome outcome;
+        if (cgiRequestKey != null && requestCoalescer != null &&
+            requestCoalescer.applies(path, isSecure)) {
+          File scriptFile = resourceFile;
+          URI scriptUri = uri;
+          X509Certificate scriptPeerCertificate = peerCertificate;
+          int maxBufferBytes = cgiResponseCache != null ?
+            (int) Math.min(cgiResponseCache.getMaxEntryBytes(),
+                           MAX_COALESCED_RESPONSE_BYTES) :
+            MAX_COALESCED_RESPONSE_BYTES;
+          outcome = requestCoalescer.execute(cgiRequestKey, () -> {
+            SpillingOutputStream buffer =
+              new SpillingOutputStream(out, maxBufferBytes);
+            CgiOutcome bufferedOutcome;
+            try (BufferedOutputStream bufferOut = new BufferedOutputStream(buffer)) {
+              bufferedOutcome =
+                runCgiScript(scriptFile, splitPaths, scriptUri, session,
+                             scriptPeerCertificate, virtualHost, bufferOut,
+                             cgiCacheKey);
             }
-
-            // Write out a response header.
-            writeResponseHeader(out, statusCode, meta);
-
-            // Pipe the body content out when the response is not a redirect.
-            if (!isRedirect) {
-              if (serverProps.isForceCanonicalText() && meta.startsWith("text/")) {
-                try (OutputStream bodyOut = new LineEndingConvertingOutputStream(out)) {
-                  responseBodySize = processStdout.transferTo(bodyOut);
-                }
-              } else {
-                responseBodySize = processStdout.transferTo(out);
-              }
+            if (!buffer.hasSpilled()) {
+              bufferedOutcome.response = buffer.toByteArray();
             }
+            return bufferedOutcome;
+          }, CgiOutcome::isShareable, virtualHost.getCgiTimeoutMs());
+          if (outcome.response != null) {
+            out.write(outcome.response);
           }
-        } finally {
-          // Wait for the script process to exit. If the script fails while it
-          // is generating output, transfer of the response body just stops.
-          try {
-            int exitCode = p.waitFor();
-            if (exitCode != 0) {
-              LOG.warn("CGI exited with code {}", exitCode);
-            }
-          } catch (InterruptedException e) {
-            LOG.info("Interrupted while waiting for CGI to complete");
-          }
-        } // end processing CGI output
+          out.flush();
+        } else {
+          outcome = runCgiScript(resourceFile, splitPaths, uri, session,
+                                 peerCertificate, virtualHost, out,
+                                 cgiCacheKey);
+        }
 
+        statusCode = outcome.statusCode;
+        responseBodySize = outcome.responseBodySize;
+        if (outcome.localRedirect != null) {
+          uri = outcome.localRedirect;
+          numLocalRedirects++;
+          continue; // the while loop for local redirects
+        }
+        if (outcome.breach != null) {
+          accessLogNote = outcome.breach.getLogNote();
+        }
         return; // NOPMD
 
       } // end while redirecting
@@ -425,15 +596,19 @@ public class RequestHandler implements Runnable {
 
       if (atomize) {
 
-        // If the file needs to be atomized, generate its feed content and emit
-        // it as UTF-8 XML.
-        String feedPathString = uri.toString().replace("/" + ATOM_FEED_FILE_NAME, "");
-        String fileContent = Files.readString(resourceFile.toPath(), StandardCharsets.UTF_8);
-        String feedContent = atomizer.atomize(feedPathString, fileContent);
+        // If the file needs to be atomized, generate its feed content (or
+        // reuse it from the cache, if the feed page is unchanged) and emit it
+        // as UTF-8 XML.
+        // The feed cache also lets only one of several identical requests
+        // generate a feed, so feeds need no coalescing.
+        byte[] feedContent = feedCache != null ?
+          feedCache.getFeed(resourceFile.toPath(), feedDirUriString) :
+          atomize(resourceFile.toPath(), feedDirUriString);
 
         statusCode = StatusCodes.SUCCESS;
         writeResponseHeader(out, statusCode, ATOM_FEED_META);
-        writeString(out, feedContent);
+        out.write(feedContent);
+        responseBodySize = feedContent.length;
 
       } else {
 
@@ -451,13 +626,25 @@ public class RequestHandler implements Runnable {
         // Write out a SUCCESS response header and then the file contents as
         // the response body.
         statusCode = StatusCodes.SUCCESS;
+        boolean convertLineEndings =
+          serverProps.isForceCanonicalText() && contentType.startsWith("text/");
+        if (staticResponseCache != null &&
+            staticResponseCache.isCacheable(resourceFile.length())) {
+          // Render the whole response in memory, so that it can be cached.
+          responseBodySize =
+            writeAndCacheResponse(out, staticResourcePath, resourceFile,
+                                  statusCode,
+                                  formatMeta(contentType, detectedCharset),
+                                  convertLineEndings);
+          return;
+        }
         writeResponseHeader(out, statusCode, formatMeta(contentType, detectedCharset));
-        if (serverProps.isForceCanonicalText() && contentType.startsWith("text/")) {
+        if (convertLineEndings) {
           OutputStream bodyOut = new LineEndingConvertingOutputStream(out);
           responseBodySize = writeFile(bodyOut, resourceFile);
           bodyOut.flush(); // do not close, let try-with-resources handle it
         } else {
-          responseBodySize = writeFile(out, resourceFile);
+          responseBodySize = transferFile(out, resourceFile);
         }
 
       }
@@ -470,21 +657,402 @@ public class RequestHandler implements Runnable {
       throw e;
     } finally {
       try {
-        socket.close();
+        connection.close();
       } catch (IOException e) {
-        LOG.debug("Failed to close socket", e);
+        LOG.debug("Failed to close connection", e);
       }
 
       // Write to the access log.
       if (request == null) {
         request = "?";
       }
-      accessLogger.log(socket, remoteUsername, request, statusCode,
-                       responseBodySize);
+      accessLogger.log(connection.getRemoteAddress(), remoteUsername, request,
+                       statusCode, responseBodySize, accessLogNote);
+    }
+  }
+
+  /**
+   * Runs a CGI script once the CGI concurrency limits allow it, or tells the
+   * client to slow down if it cannot run soon enough.
+   *
+   * @param  resourceFile    script file
+   * @param  splitPaths      script path and extra path information
+   * @param  uri             request URI
+   * @param  session         TLS session
+   * @param  peerCertificate client certificate, or null
+   * @param  virtualHost     virtual host serving the request
+   * @param  out             output stream to client
+   * @param  cgiCacheKey     key to cache the response under, or null to not
+   *                         cache it
+   * @return                 outcome
+   * @throws IOException     if the script cannot be run or its response
+   *                         cannot be relayed
+   */
+  private CgiOutcome runCgiScript(File resourceFile, Path[] splitPaths,
+                                  URI uri, SSLSession session,
+                                  X509Certificate peerCertificate,
+                                  VirtualHost virtualHost,
+                                  BufferedOutputStream out,
+                                  String cgiCacheKey)
+    throws IOException {
+    if (cgiLimiter == null) {
+      return executeCgiScript(resourceFile, splitPaths, uri, session,
+                              peerCertificate, virtualHost, out, cgiCacheKey);
+    }
+    try (CgiLimiter.Permit permit = cgiLimiter.acquire(resourceFile.toPath())) {
+      if (permit == null) {
+        LOG.warn("Too many CGI requests, telling client to slow down");
+        CgiOutcome outcome = new CgiOutcome();
+        outcome.statusCode = StatusCodes.SLOW_DOWN;
+        writeResponseHeader(out, outcome.statusCode,
+                            Integer.toString(cgiLimiter.getRetryAfterSec()));
+        return outcome;
+      }
+      return executeCgiScript(resourceFile, splitPaths, uri, session,
+                              peerCertificate, virtualHost, out, cgiCacheKey);
     }
   }
 
-  private Optional<Path[]> splitResourcePath(final Path resourcePath, boolean isCgi) {
+  /**
+   * Runs a CGI script, as a worker if it supports that, or else in a new
+   * process, and relays its response to the client.
+   *
+   * @param  resourceFile    script file
+   * @param  splitPaths      script path and extra path information
+   * @param  uri             request URI
+   * @param  session         TLS session
+   * @param  peerCertificate client certificate, or null
+   * @param  virtualHost     virtual host serving the request
+   * @param  out             output stream to client
+   * @param  cgiCacheKey     key to cache the response under, or null to not
+   *                         cache it
+   * @return                 outcome
+   * @throws IOException     if the script cannot be run or its response
+   *                         cannot be relayed
+   */
+  private CgiOutcome executeCgiScript(File resourceFile, Path[] splitPaths,
+                                      URI uri, SSLSession session,
+                                      X509Certificate peerCertificate,
+                                      VirtualHost virtualHost,
+                                      BufferedOutputStream out,
+                                      String cgiCacheKey)
+    throws IOException {
+    // Pass the request to a worker if the script supports being run as
+    // one.
+    if (cgiWorkerPools != null &&
+        cgiWorkerPools.isWorkerScript(resourceFile)) {
+      InputStream workerStdout;
+      try {
+        ProcessBuilder workerPb = new CgiProcessBuilderFactory()
+          .createWorkerProcessBuilder(resourceFile, virtualHost,
+                                      serverProps);
+        Map<String, String> metaVars = new CgiProcessBuilderFactory()
+          .createMetaVariables("/" + virtualHost.getRoot().relativize(splitPaths[0]),
+                               splitPaths[1].toString(), uri,
+                               connection.getRemoteAddress(), session,
+                               peerCertificate, virtualHost, serverProps);
+        LOG.debug("Passing request to CGI worker {}", workerPb.command());
+        workerStdout = cgiWorkerPools.send(workerPb, metaVars,
+                                           virtualHost.getCgiTimeoutMs(),
+                                           virtualHost.getCgiMaxOutputBytes());
+      } catch (IOException e) {
+        LOG.error("Failed to send request to CGI worker", e);
+        CgiOutcome outcome = new CgiOutcome();
+        outcome.statusCode = StatusCodes.CGI_ERROR;
+        writeResponseHeader(out, outcome.statusCode,
+                            "Failed to reach CGI worker");
+        return outcome;
+      }
+      CgiOutcome outcome;
+      try (workerStdout) {
+        outcome = writeCgiResponse(workerStdout, out, "CGI worker",
+                                   cgiCacheKey);
+      }
+      return recordBreach(outcome, CgiProcessGuard.getBreach(workerStdout),
+                          resourceFile);
+    }
+
+    // Start a process to run the CGI script.
+    ProcessBuilder pb;
+    try {
+      pb = new CgiProcessBuilderFactory()
+        .createCgiProcessBuilder(resourceFile, splitPaths,
+                                 uri, connection.getRemoteAddress(),
+                                 session, peerCertificate, virtualHost,
+                                 serverProps);
+    } catch (IOException e) {
+      CgiOutcome outcome = new CgiOutcome();
+      outcome.statusCode = StatusCodes.TEMPORARY_FAILURE;
+      writeResponseHeader(out, outcome.statusCode,
+                          "Failed to resolve CGI resource path");
+      return outcome;
+    }
+    LOG.debug("Executing CGI {}", pb.command());
+    Process p = pb.start();
+    CgiProcessGuard guard =
+      new CgiProcessGuard(p, virtualHost.getCgiTimeoutMs(),
+                          virtualHost.getCgiMaxOutputBytes());
+
+    // Process the script output.
+    CgiOutcome outcome;
+    try {
+      try (InputStream processStdout = guard.guard(p.getInputStream())) {
+        outcome = writeCgiResponse(processStdout, out, "CGI script",
+                                   cgiCacheKey);
+      }
+    } finally {
+      // Wait for the script process to exit. If the script fails while it
+      // is generating output, transfer of the response body just stops.
+      try {
+        int exitCode = p.waitFor();
+        if (exitCode != 0) {
+          LOG.warn("CGI exited with code {}", exitCode);
+        }
+      } catch (InterruptedException e) {
+        LOG.info("Interrupted while waiting for CGI to complete");
+      } finally {
+        guard.disarm();
+      }
+    } // end processing CGI output
+
+    return recordBreach(outcome, guard.getBreach(), resourceFile);
+  }
+
+  /**
+   * Records a limit broken by a CGI script in its outcome. A script stopped
+   * for breaking a limit has its response cut short, so it is recorded as a
+   * CGI error, whatever the client was told.
+   *
+   * @param  outcome      outcome of running the script
+   * @param  breach       breached limit, or null if none was
+   * @param  resourceFile script file
+   * @return              outcome
+   */
+  private static CgiOutcome recordBreach(CgiOutcome outcome,
+                                         CgiProcessGuard.Breach breach,
+                                         File resourceFile) {
+    if (breach != null) {
+      LOG.warn("Stopped CGI {} for breaking limit {}", resourceFile, breach);
+      outcome.statusCode = StatusCodes.CGI_ERROR;
+      outcome.breach = breach;
+    }
+    return outcome;
+  }
+
+  private byte[] atomize(Path feedPage, String feedPathString)
+    throws IOException {
+    String fileContent = Files.readString(feedPage, StandardCharsets.UTF_8);
+    ByteArrayOutputStream feedOut = new ByteArrayOutputStream();
+    atomizer.atomize(feedPathString, fileContent, feedOut);
+    return feedOut.toByteArray();
+  }
+
+  private GatewayClient findGatewayClient(Path path) {
+    // The longest matching prefix wins.
+    GatewayClient found = null;
+    for (GatewayClient client : gatewayClients) {
+      GatewayMapping gatewayMapping = client.getGatewayMapping();
+      if (gatewayMapping.matches(path) &&
+          (found == null ||
+           gatewayMapping.getPrefix().length() >
+           found.getGatewayMapping().getPrefix().length())) {
+        found = client;
+      }
+    }
+    return found;
+  }
+
+  /**
+   * The result of relaying a CGI response to the client.
+   */
+  private static final class CgiOutcome {
+    private int statusCode;
+    private long responseBodySize;
+    private URI localRedirect;
+    private CgiProcessGuard.Breach breach; // limit the script broke, if any
+    private byte[] response; // only when rendered in memory
+
+    /**
+     * Checks whether this outcome may be shared with identical requests. Only
+     * complete success and redirect responses are shared; a waiting request
+     * tries again itself after a failure, a local redirect, a response
+     * that was cut short by a breached limit, or a response too large to
+     * keep in memory.
+     *
+     * @return true if this outcome may be shared
+     */
+    private boolean isShareable() {
+      int category = statusCode / 10;
+      return (category == 2 || category == 3) && breach == null &&
+        localRedirect == null && response != null;
+    }
+  }
+
+  /**
+   * Relays a CGI response, from a CGI script or a FastCGI or SCGI
+   * application, to the client. A local redirect is not relayed, but
+   * returned in the outcome for the caller to follow. A response that
+   * declares a maximum age is also cached, if a cache key is given and the
+   * response is small enough.
+   *
+   * @param  cgiOut      CGI response output
+   * @param  out         output stream to client
+   * @param  source      description of where the response comes from, for
+   *                     messages
+   * @param  cacheKey    key to cache the response under, or null to not
+   *                     cache it
+   * @return             outcome
+   * @throws IOException if the response cannot be relayed
+   */
+  private CgiOutcome writeCgiResponse(InputStream cgiOut,
+                                      BufferedOutputStream out, String source,
+                                      String cacheKey)
+    throws IOException {
+    // The reader's buffer goes back to its pool once the body is relayed.
+    try (CgiResponseHeaderReader headerReader = new CgiResponseHeaderReader()) {
+      return writeCgiResponse(cgiOut, headerReader, out, source, cacheKey);
+    }
+  }
+
+  private CgiOutcome writeCgiResponse(InputStream cgiOut,
+                                      CgiResponseHeaderReader headerReader,
+                                      BufferedOutputStream out, String source,
+                                      String cacheKey)
+    throws IOException {
+    CgiOutcome outcome = new CgiOutcome();
+
+    // Consume the response headers. If the script fails before it starts
+    // generating output, then expected headers will not be found and the
+    // server will return a CGI error.
+    CgiResponseMetadata responseMetadata;
+    try {
+      responseMetadata = headerReader.consumeHeaders(cgiOut);
+    } catch (IOException e) {
+      outcome.statusCode = StatusCodes.CGI_ERROR;
+      outcome.breach = CgiProcessGuard.getBreach(cgiOut);
+      if (outcome.breach != null) {
+        writeResponseHeader(out, outcome.statusCode,
+                            source + " was stopped");
+        return outcome;
+      }
+      LOG.error("{} returned invalid response headers", source, e);
+      writeResponseHeader(out, outcome.statusCode,
+                          source + " returned invalid response headers");
+      return outcome;
+    }
+
+    // The body starts with any output read along with the headers.
+    InputStream cgiBody = headerReader.getBody();
+
+    // Check if the response indicates a redirect.
+    boolean isRedirect = responseMetadata.getLocation() != null;
+
+    // If the location URI is non-absolute (not starting with a scheme), then
+    // treat it as a local redirect.
+    if (isRedirect && !responseMetadata.getLocation().isAbsolute()) {
+      LOG.debug("Local redirect: {}", responseMetadata.getLocation());
+      outcome.localRedirect = responseMetadata.getLocation();
+      return outcome;
+    }
+
+    // Determine the response status code. If not explicitly provided,
+    // default to 30 for a redirect and 20 otherwise.
+    Integer statusCodeInt = responseMetadata.getStatusCode();
+    if (statusCodeInt == null) {
+      outcome.statusCode = isRedirect ?
+        StatusCodes.REDIRECT_TEMPORARY : StatusCodes.SUCCESS;
+    } else {
+      outcome.statusCode = statusCodeInt.intValue();
+    }
+
+    // Determine the meta string for the response. For a redirect, this is
+    // the URI to redirect to. Otherwise, it's the content type of the
+    // response body.
+    String meta;
+    if (isRedirect) {
+      meta = responseMetadata.getLocation().toString();
+    } else {
+      meta = responseMetadata.getContentType();
+    }
+
+    boolean convertLineEndings = !isRedirect &&
+      serverProps.isForceCanonicalText() && meta.startsWith("text/");
+
+    // Render a response that may be cached in memory first, unless its body
+    // turns out to be too large.
+    byte[] body = null;
+    if (cacheKey != null && cgiResponseCache != null &&
+        responseMetadata.getMaxAgeSec() != null) {
+      byte[] header = formatResponseHeader(outcome.statusCode, meta);
+      long maxBodySize = cgiResponseCache.getMaxEntryBytes() - header.length;
+      if (maxBodySize >= 0L) {
+        body = isRedirect ? new byte[0] :
+          cgiBody.readNBytes((int) Math.min(maxBodySize + 1, Integer.MAX_VALUE - 8));
+        // A response cut short by a stopped script must not be cached.
+        if (body.length <= maxBodySize && !CgiProcessGuard.isCutShort(cgiOut)) {
+          outcome.responseBodySize =
+            writeAndCacheCgiResponse(out, cacheKey, outcome.statusCode,
+                                     header, body, convertLineEndings,
+                                     responseMetadata.getMaxAgeSec());
+          return outcome;
+        }
+      }
+    }
+
+    // Write out a response header.
+    writeResponseHeader(out, outcome.statusCode, meta);
+
+    // Pipe the body content out when the response is not a redirect,
+    // starting with any part already read while trying to cache it.
+    if (!isRedirect) {
+      if (convertLineEndings) {
+        try (OutputStream bodyOut = new LineEndingConvertingOutputStream(out)) {
+          if (body != null) {
+            bodyOut.write(body);
+            outcome.responseBodySize = body.length;
+          }
+          outcome.responseBodySize += cgiBody.transferTo(bodyOut);
+        }
+      } else {
+        if (body != null) {
+          out.write(body);
+          outcome.responseBodySize = body.length;
+        }
+        outcome.responseBodySize += cgiBody.transferTo(out);
+      }
+    }
+    outcome.breach = CgiProcessGuard.getBreach(cgiOut);
+    return outcome;
+  }
+
+  private long writeAndCacheCgiResponse(OutputStream out, String cacheKey,
+                                        int statusCode, byte[] header,
+                                        byte[] body, boolean convertLineEndings,
+                                        long maxAgeSec)
+    throws IOException {
+    ByteArrayOutputStream response =
+      new ByteArrayOutputStream(header.length + body.length);
+    response.write(header);
+    if (convertLineEndings) {
+      try (OutputStream bodyOut = new LineEndingConvertingOutputStream(response)) {
+        bodyOut.write(body);
+      }
+    } else {
+      response.write(body);
+    }
+
+    byte[] responseBytes = response.toByteArray();
+    out.write(responseBytes);
+    out.flush();
+    cgiResponseCache.put(cacheKey, statusCode, responseBytes, header.length,
+                         maxAgeSec);
+    // Converting line endings may have changed the body's size.
+    return responseBytes.length - header.length;
+  }
+
+  private Optional<Path[]> splitResourcePath(VirtualHost virtualHost,
+                                           final Path resourcePath,
+                                           boolean isCgi) {
     if (!isCgi) {
       // The whole path is the resource, if it's present.
       if (resourcePath.toFile().exists()) {
@@ -496,7 +1064,7 @@ public class RequestHandler implements Runnable {
     // Find the portion of the path that points to something in the CGI
     // directory. Everything after that is extra path information to pass to
     // the script.
-    Path cgiDir = serverProps.getRoot().resolve(serverProps.getCgiDir());
+    Path cgiDir = virtualHost.getRoot().resolve(virtualHost.getCgiDir());
     Path scriptPath = resourcePath; // start with the entire path
     while (!scriptPath.equals(cgiDir)) {
       if (scriptPath.toFile().exists()) {
@@ -518,7 +1086,7 @@ public class RequestHandler implements Runnable {
 
   private static final String CONTENT_TYPE_WITH_CHARSET_FORMAT = "%s;charset=%s";
 
-  private static String formatMeta(String contentType, String charset) {
+  static String formatMeta(String contentType, String charset) {
     if (charset == null) {
       return contentType;
     }
@@ -527,47 +1095,70 @@ public class RequestHandler implements Runnable {
 
   private static final String RESPONSE_HEADER_FORMAT = "%d %s" + CRLF;
 
+  static byte[] formatResponseHeader(int statusCode, String meta) {
+    return String.format(RESPONSE_HEADER_FORMAT, statusCode, meta)
+      .getBytes(StandardCharsets.UTF_8);
+  }
+
   private void writeResponseHeader(BufferedOutputStream out, int statusCode,
                                    String meta)
     throws IOException {
-    String header = String.format(RESPONSE_HEADER_FORMAT, statusCode, meta);
-    out.write(header.getBytes(StandardCharsets.UTF_8));
+    out.write(formatResponseHeader(statusCode, meta));
     out.flush();
   }
 
+  private long writeAndCacheResponse(OutputStream out, Path cacheKey,
+                                     File resourceFile, int statusCode,
+                                     String meta, boolean convertLineEndings)
+    throws IOException {
+    Path file = resourceFile.toPath();
+    // Read the generation and attributes first, so that a change made while
+    // the file is being read keeps the response out of the cache, or is
+    // noticed when the cached response is next validated.
+    long generation = staticResponseCache.getGeneration();
+    BasicFileAttributes attrs =
+      Files.readAttributes(file, BasicFileAttributes.class);
+
+    byte[] header = formatResponseHeader(statusCode, meta);
+    ByteArrayOutputStream response =
+      new ByteArrayOutputStream(header.length + (int) attrs.size());
+    response.write(header);
+    if (convertLineEndings) {
+      OutputStream bodyOut = new LineEndingConvertingOutputStream(response);
+      Files.copy(file, bodyOut);
+      bodyOut.flush();
+    } else {
+      Files.copy(file, response);
+    }
+
+    byte[] responseBytes = response.toByteArray();
+    out.write(responseBytes);
+    out.flush();
+    staticResponseCache.put(cacheKey, file, attrs, responseBytes, header.length,
+                            generation);
+    return responseBytes.length - header.length;
+  }
+
   private long writeFile(OutputStream out, File resourceFile)
     throws IOException {
     return Files.copy(resourceFile.toPath(), out);
   }
 
+  private long transferFile(OutputStream out, File resourceFile)
+    throws IOException {
+    // Send the header first, then hand the file to the connection to send
+    // without further buffering.
+    out.flush();
+    try (FileChannel file = FileChannel.open(resourceFile.toPath(),
+                                             StandardOpenOption.READ)) {
+      return connection.transferFrom(file);
+    }
+  }
+
   private long writeString(OutputStream out, String s)
     throws IOException {
     byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
     out.write(bytes);
     return (long) bytes.length;
   }
-
-  /**
-   * Java likes to send a TLS user_canceled alert before it closes a TLS
-   * connection, which some clients interpret as an error. The workaround is to
-   * shutdown socket output before closing the socket. Also, unfortunately, Java
-   * closes a socket when its input or output stream is closed. So, this class
-   * wraps a socket output stream so that, when the stream is closed, it can
-   * shutdown socket output first.
-   */
-  private static class SocketOutputStream extends FilterOutputStream {
-
-    private final Socket socket;
-
-    private SocketOutputStream(Socket socket) throws IOException {
-      super(socket.getOutputStream());
-      this.socket = socket;
-    }
-
-    @Override
-    public void close() throws IOException {
-      socket.shutdownOutput();
-      super.close();
-    }
-  }
 }
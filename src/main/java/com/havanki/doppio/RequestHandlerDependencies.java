@@ -0,0 +1,252 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The collaborators that request handlers share: caches, clients, pools,
+ * and limits that live as long as the server. A server builds one set of
+ * these and passes it to every request handler it creates. Each one is
+ * optional; a missing one turns off the feature it provides.
+ */
+public final class RequestHandlerDependencies {
+
+  private static final RequestHandlerDependencies NONE = builder().build();
+
+  private final StaticResponseCache staticResponseCache;
+  private final CapsuleArchive capsuleArchive;
+  private final FeedCache feedCache;
+  private final List<GatewayClient> gatewayClients;
+  private final JavaHandlers javaHandlers;
+  private final CgiWorkerPools cgiWorkerPools;
+  private final CgiResponseCache cgiResponseCache;
+  private final RequestCoalescer requestCoalescer;
+  private final CgiLimiter cgiLimiter;
+
+  private RequestHandlerDependencies(Builder builder) {
+    staticResponseCache = builder.staticResponseCache;
+    capsuleArchive = builder.capsuleArchive;
+    feedCache = builder.feedCache;
+    gatewayClients = List.copyOf(builder.gatewayClients);
+    javaHandlers = builder.javaHandlers;
+    cgiWorkerPools = builder.cgiWorkerPools;
+    cgiResponseCache = builder.cgiResponseCache;
+    requestCoalescer = builder.requestCoalescer;
+    cgiLimiter = builder.cgiLimiter;
+  }
+
+  /**
+   * Gets an empty set of dependencies, for handlers that only serve static
+   * resources and CGI scripts without any caching or limits.
+   *
+   * @return empty dependencies
+   */
+  public static RequestHandlerDependencies none() {
+    return NONE;
+  }
+
+  /**
+   * Gets a new builder for dependencies.
+   *
+   * @return new builder
+   */
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /**
+   * Gets the cache for static responses.
+   *
+   * @return static response cache, or null for none
+   */
+  public StaticResponseCache getStaticResponseCache() {
+    return staticResponseCache;
+  }
+
+  /**
+   * Gets the packed archive to serve static resources for the server's host
+   * from.
+   *
+   * @return capsule archive, or null for none
+   */
+  public CapsuleArchive getCapsuleArchive() {
+    return capsuleArchive;
+  }
+
+  /**
+   * Gets the cache for generated Atom feeds.
+   *
+   * @return feed cache, or null for none
+   */
+  public FeedCache getFeedCache() {
+    return feedCache;
+  }
+
+  /**
+   * Gets the clients for FastCGI and SCGI applications serving gateway
+   * prefixes on the server's host.
+   *
+   * @return gateway clients (possibly empty)
+   */
+  public List<GatewayClient> getGatewayClients() {
+    return gatewayClients;
+  }
+
+  /**
+   * Gets the in-process handlers for prefixes on the server's host.
+   *
+   * @return Java handlers, or null for none
+   */
+  public JavaHandlers getJavaHandlers() {
+    return javaHandlers;
+  }
+
+  /**
+   * Gets the pools of workers for CGI scripts that support them.
+   *
+   * @return CGI worker pools, or null to always start a process per request
+   */
+  public CgiWorkerPools getCgiWorkerPools() {
+    return cgiWorkerPools;
+  }
+
+  /**
+   * Gets the cache for CGI responses that declare a maximum age.
+   *
+   * @return CGI response cache, or null for none
+   */
+  public CgiResponseCache getCgiResponseCache() {
+    return cgiResponseCache;
+  }
+
+  /**
+   * Gets the coalescer for identical concurrent requests for CGI scripts and
+   * feeds.
+   *
+   * @return request coalescer, or null for none
+   */
+  public RequestCoalescer getRequestCoalescer() {
+    return requestCoalescer;
+  }
+
+  /**
+   * Gets the limiter for how many CGI scripts run at a time.
+   *
+   * @return CGI limiter, or null for no limit
+   */
+  public CgiLimiter getCgiLimiter() {
+    return cgiLimiter;
+  }
+
+  /**
+   * Adds the statistics of each dependency that keeps them to a map of
+   * server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    if (staticResponseCache != null) {
+      staticResponseCache.addTo(stats);
+    }
+    if (capsuleArchive != null) {
+      capsuleArchive.addTo(stats);
+    }
+    if (feedCache != null) {
+      feedCache.addTo(stats);
+    }
+    for (GatewayClient gatewayClient : gatewayClients) {
+      gatewayClient.addTo(stats);
+    }
+    if (javaHandlers != null) {
+      javaHandlers.addTo(stats);
+    }
+    if (cgiWorkerPools != null) {
+      cgiWorkerPools.addTo(stats);
+    }
+    if (cgiResponseCache != null) {
+      cgiResponseCache.addTo(stats);
+    }
+    if (requestCoalescer != null) {
+      requestCoalescer.addTo(stats);
+    }
+    if (cgiLimiter != null) {
+      cgiLimiter.addTo(stats);
+    }
+  }
+
+  /**
+   * A builder for {@link RequestHandlerDependencies}.
+   */
+  public static class Builder {
+
+    private StaticResponseCache staticResponseCache;
+    private CapsuleArchive capsuleArchive;
+    private FeedCache feedCache;
+    private List<GatewayClient> gatewayClients = List.of();
+    private JavaHandlers javaHandlers;
+    private CgiWorkerPools cgiWorkerPools;
+    private CgiResponseCache cgiResponseCache;
+    private RequestCoalescer requestCoalescer;
+    private CgiLimiter cgiLimiter;
+
+    public Builder staticResponseCache(StaticResponseCache staticResponseCache) {
+      this.staticResponseCache = staticResponseCache;
+      return this;
+    }
+    public Builder capsuleArchive(CapsuleArchive capsuleArchive) {
+      this.capsuleArchive = capsuleArchive;
+      return this;
+    }
+    public Builder feedCache(FeedCache feedCache) {
+      this.feedCache = feedCache;
+      return this;
+    }
+    public Builder gatewayClients(List<GatewayClient> gatewayClients) {
+      this.gatewayClients = gatewayClients;
+      return this;
+    }
+    public Builder javaHandlers(JavaHandlers javaHandlers) {
+      this.javaHandlers = javaHandlers;
+      return this;
+    }
+    public Builder cgiWorkerPools(CgiWorkerPools cgiWorkerPools) {
+      this.cgiWorkerPools = cgiWorkerPools;
+      return this;
+    }
+    public Builder cgiResponseCache(CgiResponseCache cgiResponseCache) {
+      this.cgiResponseCache = cgiResponseCache;
+      return this;
+    }
+    public Builder requestCoalescer(RequestCoalescer requestCoalescer) {
+      this.requestCoalescer = requestCoalescer;
+      return this;
+    }
+    public Builder cgiLimiter(CgiLimiter cgiLimiter) {
+      this.cgiLimiter = cgiLimiter;
+      return this;
+    }
+
+    public RequestHandlerDependencies build() {
+      return new RequestHandlerDependencies(this);
+    }
+  }
+}
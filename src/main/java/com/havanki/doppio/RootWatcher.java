@@ -0,0 +1,243 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A watcher for changes under one or more root directories, which tells
+ * listeners about them so that cached content can be dropped. Each directory
+ * in each tree is watched, including directories added after watching
+ * starts.
+ *
+ * The platform may drop events if too many occur at once. When that happens,
+ * listeners are told that everything may have changed.
+ */
+public class RootWatcher implements Closeable {
+
+  private static final Logger LOG = LoggerFactory.getLogger(RootWatcher.class);
+
+  /**
+   * A listener for changes under a watched root.
+   */
+  public interface Listener {
+    /**
+     * Handles a change to a path. The path may be a file or a directory that
+     * was created, modified, or deleted; for a directory, anything beneath it
+     * may have changed too.
+     *
+     * @param path changed path
+     */
+    void pathChanged(Path path);
+
+    /**
+     * Handles a change that could not be tracked to a path, so that anything
+     * may have changed.
+     */
+    void allChanged();
+  }
+
+  private final List<Path> roots;
+  private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+  private final Map<WatchKey, Path> watchedDirs = new ConcurrentHashMap<>();
+  private final LongAdder events = new LongAdder();
+  private final LongAdder overflows = new LongAdder();
+  private WatchService watchService;
+  private Thread thread;
+
+  /**
+   * Creates a new watcher.
+   *
+   * @param roots root directories to watch
+   */
+  public RootWatcher(List<Path> roots) {
+    this.roots = roots;
+  }
+
+  /**
+   * Adds a listener for changes.
+   *
+   * @param listener listener
+   */
+  public void addListener(Listener listener) {
+    listeners.add(listener);
+  }
+
+  /**
+   * Starts watching. Listeners are called from a dedicated thread.
+   *
+   * @throws IOException if the roots cannot be watched
+   */
+  public void start() throws IOException {
+    watchService = FileSystems.getDefault().newWatchService();
+    try {
+      for (Path root : roots) {
+        registerAll(root);
+      }
+    } catch (IOException e) {
+      watchService.close();
+      throw e;
+    }
+    LOG.debug("Watching {} directories", watchedDirs.size());
+
+    thread = Thread.ofPlatform().name("root-watcher").daemon()
+      .start(this::processEvents);
+  }
+
+  private void registerAll(Path dir) throws IOException {
+    Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+      @Override
+      public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs)
+        throws IOException {
+        WatchKey key = d.register(watchService, ENTRY_CREATE, ENTRY_DELETE,
+                                  ENTRY_MODIFY);
+        watchedDirs.put(key, d);
+        return FileVisitResult.CONTINUE;
+      }
+    });
+  }
+
+  private void processEvents() {
+    while (true) {
+      WatchKey key;
+      try {
+        key = watchService.take();
+      } catch (InterruptedException | ClosedWatchServiceException e) {
+        return;
+      }
+
+      Path dir = watchedDirs.get(key);
+      for (WatchEvent<?> event : key.pollEvents()) {
+        events.increment();
+        if (event.kind() == OVERFLOW || dir == null) {
+          overflows.increment();
+          LOG.debug("Lost track of changes, invalidating everything");
+          publishAllChanged();
+          continue;
+        }
+
+        Path child = dir.resolve((Path) event.context());
+        if (event.kind() == ENTRY_CREATE &&
+            Files.isDirectory(child, LinkOption.NOFOLLOW_LINKS)) {
+          try {
+            registerAll(child);
+          } catch (IOException e) {
+            LOG.warn("Failed to watch new directory {}", child, e);
+          }
+        }
+        publishPathChanged(child);
+      }
+
+      if (!key.reset()) {
+        // The directory is no longer accessible, e.g., it was deleted.
+        watchedDirs.remove(key);
+      }
+    }
+  }
+
+  private void publishPathChanged(Path path) {
+    for (Listener listener : listeners) {
+      try {
+        listener.pathChanged(path);
+      } catch (RuntimeException e) {
+        LOG.error("Listener failed to handle change to {}", path, e);
+      }
+    }
+  }
+
+  private void publishAllChanged() {
+    for (Listener listener : listeners) {
+      try {
+        listener.allChanged();
+      } catch (RuntimeException e) {
+        LOG.error("Listener failed to handle change", e);
+      }
+    }
+  }
+
+  /**
+   * Gets the number of events received.
+   *
+   * @return number of events
+   */
+  public long getEvents() {
+    return events.sum();
+  }
+
+  /**
+   * Gets the number of times that events were lost, leading to a full
+   * invalidation.
+   *
+   * @return number of overflows
+   */
+  public long getOverflows() {
+    return overflows.sum();
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    stats.put("root.watcher.events", getEvents());
+    stats.put("root.watcher.overflows", getOverflows());
+  }
+
+  /**
+   * Stops watching.
+   *
+   * @throws IOException if the watch service cannot be closed
+   */
+  @Override
+  public void close() throws IOException {
+    if (watchService != null) {
+      watchService.close();
+    }
+    if (thread != null) {
+      thread.interrupt();
+    }
+  }
+}
@@ -0,0 +1,483 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A client for a long-lived SCGI application, which serves the requests for
+ * one gateway mapping. SCGI carries one request per connection, which the
+ * application closes once its response is complete, so connections cannot
+ * be reused. Instead, a small pool of connections is opened ahead of time,
+ * so that a request does not wait for a connection to be made. The number
+ * of requests in progress at a time is limited, so that the application may
+ * work at its own pace; a request waits when the limit is reached.
+ */
+public class ScgiClient implements GatewayClient {
+
+  private static final Logger LOG = LoggerFactory.getLogger(ScgiClient.class);
+
+  private static final int RESPONSE_BUFFER_SIZE = 8192;
+
+  private final GatewayMapping gatewayMapping;
+  private final int idleConnections;
+  private final long timeoutMs;
+  private final Semaphore permits;
+  private final Deque<SocketChannel> idle = new ArrayDeque<>();
+  private int pendingConnects; // guarded by idle
+  private final LongAdder requests = new LongAdder();
+  private final LongAdder connectionsOpened = new LongAdder();
+  private final LongAdder pooledRequests = new LongAdder();
+  private volatile boolean closed;
+
+  /**
+   * Creates a new client. No connections are opened until the client is
+   * started or requests are made.
+   *
+   * @param gatewayMapping        gateway mapping for the application
+   * @param maxConcurrentRequests maximum number of requests in progress at a
+   *                              time
+   * @param idleConnections       number of connections to keep open ahead of
+   *                              time
+   * @param timeoutMs             longest time to wait for more of a response,
+   *                              in milliseconds, or 0 for no limit
+   */
+  public ScgiClient(GatewayMapping gatewayMapping, int maxConcurrentRequests,
+                    int idleConnections, long timeoutMs) {
+    this.gatewayMapping = gatewayMapping;
+    this.idleConnections = idleConnections;
+    this.timeoutMs = timeoutMs;
+    permits = new Semaphore(maxConcurrentRequests, true);
+  }
+
+  @Override
+  public String getProtocolName() {
+    return "SCGI";
+  }
+
+  @Override
+  public GatewayMapping getGatewayMapping() {
+    return gatewayMapping;
+  }
+
+  /**
+   * Opens the pool of connections to the application.
+   */
+  @Override
+  public void start() {
+    fillPool();
+  }
+
+  /**
+   * Sends a request to the application, over a connection from the pool if
+   * one is open and still usable, or otherwise over a new connection.
+   *
+   * @param  params      request parameters (CGI meta-variables)
+   * @return             stream of the application's response, which holds a
+   *                     CGI response; close it when done
+   * @throws IOException if the request cannot be sent
+   */
+  @Override
+  public InputStream sendRequest(Map<String, String> params)
+    throws IOException {
+    if (closed) {
+      throw new IOException("SCGI client is closed");
+    }
+    try {
+      permits.acquire();
+    } catch (InterruptedException e) {
+      throw new InterruptedIOException("Interrupted waiting to send SCGI request");
+    }
+    boolean sent = false;
+    try {
+      SocketChannel channel = takeIdle();
+      if (channel != null) {
+        pooledRequests.increment();
+      } else {
+        channel = connect();
+      }
+      fillPool();
+
+      try {
+        ByteBuffer request = encodeRequest(params);
+        while (request.hasRemaining()) {
+          channel.write(request);
+        }
+      } catch (IOException e) {
+        closeQuietly(channel);
+        throw e;
+      }
+      ResponseStream response;
+      try {
+        response = new ResponseStream(channel);
+      } catch (IOException e) {
+        closeQuietly(channel);
+        throw e;
+      }
+      sent = true;
+      requests.increment();
+      return response;
+    } finally {
+      if (!sent) {
+        permits.release();
+      }
+    }
+  }
+
+  /**
+   * Encodes a request. The headers are a netstring of null-terminated names
+   * and values, starting with CONTENT_LENGTH and SCGI as the protocol
+   * requires. Since Gemini requests have no body, none follows.
+   *
+   * @param  params request parameters
+   * @return        buffer holding the request, ready to write
+   */
+  static ByteBuffer encodeRequest(Map<String, String> params) {
+    ByteArrayOutputStream headers = new ByteArrayOutputStream(1024);
+    writeHeader(headers, "CONTENT_LENGTH", "0");
+    writeHeader(headers, "SCGI", "1");
+    for (Map.Entry<String, String> param : params.entrySet()) {
+      if (param.getKey().equals("CONTENT_LENGTH") ||
+          param.getKey().equals("SCGI")) {
+        continue;
+      }
+      writeHeader(headers, param.getKey(), param.getValue());
+    }
+
+    byte[] length = Integer.toString(headers.size())
+      .getBytes(StandardCharsets.US_ASCII);
+    ByteBuffer request =
+      ByteBuffer.allocate(length.length + headers.size() + 2);
+    request.put(length)
+      .put((byte) ':')
+      .put(headers.toByteArray())
+      .put((byte) ',')
+      .flip();
+    return request;
+  }
+
+  private static void writeHeader(ByteArrayOutputStream out, String name,
+                                  String value) {
+    byte[] nameBytes = name.getBytes(StandardCharsets.UTF_8);
+    byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+    out.write(nameBytes, 0, nameBytes.length);
+    out.write(0);
+    out.write(valueBytes, 0, valueBytes.length);
+    out.write(0);
+  }
+
+  private SocketChannel connect() throws IOException {
+    SocketAddress address = gatewayMapping.getAddress();
+    if (address instanceof InetSocketAddress &&
+        ((InetSocketAddress) address).isUnresolved()) {
+      InetSocketAddress isa = (InetSocketAddress) address;
+      address = new InetSocketAddress(isa.getHostString(), isa.getPort());
+    }
+    SocketChannel channel = SocketChannel.open(address);
+    connectionsOpened.increment();
+    return channel;
+  }
+
+  /**
+   * Takes a usable connection from the pool. Connections that the
+   * application has closed while they waited are discarded.
+   *
+   * @return connection, or null if none is available
+   */
+  private SocketChannel takeIdle() {
+    while (true) {
+      SocketChannel channel;
+      synchronized (idle) {
+        channel = idle.poll();
+      }
+      if (channel == null) {
+        return null;
+      }
+      if (isUsable(channel)) {
+        return channel;
+      }
+      LOG.debug("Discarding SCGI connection closed by application");
+      closeQuietly(channel);
+    }
+  }
+
+  /**
+   * Checks whether a connection that has not yet carried a request is still
+   * open, by reading from it without blocking. The application should not
+   * have sent anything.
+   */
+  private static boolean isUsable(SocketChannel channel) {
+    try {
+      channel.configureBlocking(false);
+      int n = channel.read(ByteBuffer.allocate(1));
+      channel.configureBlocking(true);
+      return n == 0;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Starts opening connections in the background until the pool, counting
+   * connections already being opened, is full.
+   */
+  private void fillPool() {
+    int toOpen;
+    synchronized (idle) {
+      if (closed) {
+        return;
+      }
+      toOpen = idleConnections - idle.size() - pendingConnects;
+      if (toOpen <= 0) {
+        return;
+      }
+      pendingConnects += toOpen;
+    }
+    for (int i = 0; i < toOpen; i++) {
+      Thread.ofVirtual()
+        .name("scgi-connect")
+        .start(this::connectIdle);
+    }
+  }
+
+  private void connectIdle() {
+    SocketChannel channel = null;
+    try {
+      channel = connect();
+    } catch (IOException e) {
+      LOG.debug("Failed to connect to SCGI application at {}",
+                gatewayMapping.getEndpoint(), e);
+    }
+    synchronized (idle) {
+      pendingConnects--;
+      if (channel != null && !closed) {
+        idle.add(channel);
+        channel = null;
+      }
+    }
+    if (channel != null) {
+      closeQuietly(channel);
+    }
+  }
+
+  private static void closeQuietly(SocketChannel channel) {
+    try {
+      channel.close();
+    } catch (IOException e) {
+      LOG.debug("Failed to close SCGI connection", e);
+    }
+  }
+
+  /**
+   * Gets the number of requests sent to the application.
+   *
+   * @return number of requests
+   */
+  public long getRequests() {
+    return requests.sum();
+  }
+
+  /**
+   * Gets the number of connections opened to the application.
+   *
+   * @return number of connections opened
+   */
+  public long getConnectionsOpened() {
+    return connectionsOpened.sum();
+  }
+
+  /**
+   * Gets the number of requests sent over connections from the pool.
+   *
+   * @return number of requests sent over pooled connections
+   */
+  public long getPooledRequests() {
+    return pooledRequests.sum();
+  }
+
+  /**
+   * Gets the number of connections waiting in the pool.
+   *
+   * @return number of idle connections
+   */
+  public int getIdleConnections() {
+    synchronized (idle) {
+      return idle.size();
+    }
+  }
+
+  @Override
+  public void addTo(Map<String, Long> stats) {
+    stats.merge("scgi.requests", getRequests(), Long::sum);
+    stats.merge("scgi.requests.pooled", getPooledRequests(), Long::sum);
+    stats.merge("scgi.connections.opened", getConnectionsOpened(), Long::sum);
+    stats.merge("scgi.connections.idle", (long) getIdleConnections(),
+                Long::sum);
+  }
+
+  /**
+   * Closes every connection in the pool. Requests in progress continue
+   * until their responses are read.
+   */
+  @Override
+  public void close() {
+    List<SocketChannel> toClose;
+    synchronized (idle) {
+      closed = true;
+      toClose = new ArrayList<>(idle);
+      idle.clear();
+    }
+    for (SocketChannel channel : toClose) {
+      closeQuietly(channel);
+    }
+  }
+
+  /**
+   * The response from the application for one request. Closing the stream
+   * closes the connection and lets another request proceed. Waiting too long
+   * for more of the response fails the stream and closes it.
+   */
+  private class ResponseStream extends FilterInputStream {
+
+    private boolean released;
+
+    private ResponseStream(SocketChannel channel) throws IOException {
+      super(new BufferedInputStream(new ChannelInputStream(channel, timeoutMs),
+                                    RESPONSE_BUFFER_SIZE));
+    }
+
+    @Override
+    public int read() throws IOException {
+      try {
+        return super.read();
+      } catch (SocketTimeoutException e) {
+        close();
+        throw e;
+      }
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      try {
+        return super.read(b, off, len);
+      } catch (SocketTimeoutException e) {
+        close();
+        throw e;
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (released) {
+        return;
+      }
+      released = true;
+      try {
+        super.close();
+      } finally {
+        permits.release();
+      }
+    }
+  }
+
+  /**
+   * Reads from a connection with a time limit on each read. A blocking
+   * socket channel has no such limit, and one for a Unix domain socket has
+   * no socket adaptor to set one on, so the channel is read without
+   * blocking, waiting on a selector between reads.
+   */
+  private static class ChannelInputStream extends InputStream {
+
+    private final SocketChannel channel;
+    private final Selector selector;
+    private final long timeoutMs;
+
+    private ChannelInputStream(SocketChannel channel, long timeoutMs)
+      throws IOException {
+      this.channel = channel;
+      this.timeoutMs = timeoutMs;
+      selector = Selector.open();
+      try {
+        channel.configureBlocking(false);
+        channel.register(selector, SelectionKey.OP_READ);
+      } catch (IOException e) {
+        selector.close();
+        throw e;
+      }
+    }
+
+    @Override
+    public int read() throws IOException {
+      byte[] b = new byte[1];
+      int n = read(b, 0, 1);
+      return n == -1 ? -1 : b[0] & 0xff;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      if (len == 0) {
+        return 0;
+      }
+      ByteBuffer buffer = ByteBuffer.wrap(b, off, len);
+      while (true) {
+        int n = channel.read(buffer);
+        if (n != 0) {
+          return n;
+        }
+        if (selector.select(timeoutMs) == 0 && timeoutMs > 0L) {
+          throw new SocketTimeoutException("Timed out waiting for SCGI response");
+        }
+        selector.selectedKeys().clear();
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      try {
+        selector.close();
+      } finally {
+        channel.close();
+      }
+    }
+  }
+}
@@ -19,27 +19,46 @@
 
 package com.havanki.doppio;
 
+import java.io.Closeable;
 import java.io.IOException;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.ServerSocket;
 import java.net.SocketException;
+import java.net.StandardSocketOptions;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.security.GeneralSecurityException;
 import java.security.KeyStore;
 import java.security.cert.X509Certificate;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import javax.net.ServerSocketFactory;
+import javax.net.ssl.KeyManager;
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SNIHostName;
 import javax.net.ssl.SNIMatcher;
 import javax.net.ssl.SSLContext;
 import javax.net.ssl.SSLParameters;
 import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSessionContext;
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedKeyManager;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -53,6 +72,17 @@ public class Server {
 
   private final ServerProperties serverProps;
   private final ExecutorService executorService;
+  private final Semaphore requestPermits;
+  private final ExecutorService handshakeExecutorService;
+  private final TlsSessionStats tlsSessionStats = new TlsSessionStats();
+  private final StaticResponseCache staticResponseCache;
+  private final FeedCache feedCache;
+  private final List<GatewayClient> gatewayClients;
+  private final JavaHandlers javaHandlers;
+  private final CgiWorkerPools cgiWorkerPools;
+  private final CgiResponseCache cgiResponseCache;
+  private final RequestCoalescer requestCoalescer;
+  private final CgiLimiter cgiLimiter;
 
   /**
    * Creates a new server.
@@ -61,12 +91,76 @@ public class Server {
    */
   public Server(ServerProperties serverProps) {
     this.serverProps = serverProps;
-    executorService =
-      Executors.newFixedThreadPool(serverProps.getNumThreads());
+    switch (serverProps.getExecutor()) {
+      case VIRTUAL:
+        executorService = newVirtualThreadExecutor();
+        requestPermits = null;
+        break;
+      case BOUNDED_VIRTUAL:
+        executorService = newVirtualThreadExecutor();
+        requestPermits = new Semaphore(serverProps.getMaxConcurrentRequests());
+        break;
+      default:
+        executorService =
+          Executors.newFixedThreadPool(serverProps.getNumThreads());
+        requestPermits = null;
+        break;
+    }
+    // TLS handshakes run on their own bounded pool, so that bursts of
+    // handshake work or stalled clients cannot starve request handling.
+    handshakeExecutorService =
+      Executors.newFixedThreadPool(serverProps.getNumHandshakeThreads(),
+                                   Thread.ofPlatform()
+                                   .name("handshake-", 0)
+                                   .factory());
+    staticResponseCache = serverProps.getStaticCacheMaxBytes() > 0L ?
+      new StaticResponseCache(serverProps.getStaticCacheMaxBytes()) : null;
+    feedCache = new FeedCache();
+    javaHandlers = new JavaHandlers(serverProps.getHandlers(),
+                                    Thread.currentThread().getContextClassLoader());
+    gatewayClients = new ArrayList<>();
+    for (GatewayMapping gm : serverProps.getFastCgiGateways()) {
+      gatewayClients.add(new FastCgiClient(gm, serverProps.getFastCgiMaxConnections(),
+                                           serverProps.getFastCgiMaxRequestsPerConnection(),
+                                           serverProps.getGatewayTimeoutMs()));
+    }
+    for (GatewayMapping gm : serverProps.getScgiGateways()) {
+      gatewayClients.add(new ScgiClient(gm, serverProps.getScgiMaxConcurrentRequests(),
+                                        serverProps.getScgiIdleConnections(),
+                                        serverProps.getGatewayTimeoutMs()));
+    }
+    cgiWorkerPools = serverProps.isCgiWorkers() ?
+      new CgiWorkerPools(serverProps) : null;
+    cgiResponseCache = serverProps.getCgiCacheMaxBytes() > 0L ?
+      new CgiResponseCache(serverProps.getCgiCacheMaxBytes()) : null;
+    requestCoalescer = serverProps.getCoalescePrefixes().isEmpty() ? null :
+      new RequestCoalescer(serverProps.getCoalescePrefixes(),
+                           serverProps.isCoalesceSecureDomains());
+    cgiLimiter = serverProps.getCgiMaxConcurrent() > 0 ||
+      serverProps.getCgiMaxConcurrentPerScript() > 0 ?
+      new CgiLimiter(serverProps.getCgiMaxConcurrent(),
+                     serverProps.getCgiMaxConcurrentPerScript(),
+                     serverProps.getCgiMaxQueued(),
+                     serverProps.getCgiQueueTimeoutMs()) : null;
+  }
+
+  private static ExecutorService newVirtualThreadExecutor() {
+    return Executors.newThreadPerTaskExecutor(Thread.ofVirtual()
+                                              .name("request-", 0)
+                                              .factory());
   }
 
   private ServerSocket controlSocket;
-  private ServerSocket serverSocket;
+  private volatile SSLContext sslContext;
+  private ReloadableKeyManager reloadableKeyManager;
+  private Object keystoreState;
+  private ScheduledExecutorService keystoreChecker;
+  private RootWatcher rootWatcher;
+  private CapsuleArchive capsuleArchive;
+  private volatile RequestHandlerDependencies requestHandlerDependencies;
+  private final List<ServerSocket> serverSockets = new ArrayList<>();
+  private final List<NioConnectionEngine> nioEngines = new ArrayList<>();
+  private final CountDownLatch shutdownLatch = new CountDownLatch(1);
   private AccessLogger accessLogger;
 
   /**
@@ -78,6 +172,7 @@ public class Server {
    *                                  TLS connectivity
    */
   public void start() throws IOException, GeneralSecurityException {
+    long startNanos = System.nanoTime();
     int controlPort = serverProps.getControlPort();
     if (controlPort >= 0) {
       controlSocket = ServerSocketFactory.getDefault()
@@ -87,44 +182,149 @@ public class Server {
       controlSocket = null;
     }
 
-    SSLContext sslContext = buildSSLContext();
-    serverSocket = sslContext.getServerSocketFactory()
-      .createServerSocket(serverProps.getPort());
+    sslContext = buildSSLContext();
 
     accessLogger = new AccessLogger(serverProps.getLogDir());
 
+    if (serverProps.getArchive() != null) {
+      capsuleArchive = CapsuleArchive.open(serverProps.getArchive());
+      LOG.info("Serving {} static resources from archive {}",
+               capsuleArchive.size(), capsuleArchive.getFile());
+    }
+    requestHandlerDependencies = RequestHandlerDependencies.builder()
+      .staticResponseCache(staticResponseCache)
+      .capsuleArchive(capsuleArchive)
+      .feedCache(feedCache)
+      .gatewayClients(gatewayClients)
+      .javaHandlers(javaHandlers)
+      .cgiWorkerPools(cgiWorkerPools)
+      .cgiResponseCache(cgiResponseCache)
+      .requestCoalescer(requestCoalescer)
+      .cgiLimiter(cgiLimiter)
+      .build();
+
     // Set some custom SSL parameters:
     // - require TLS 1.3 or 1.2
-    // - require SNI with an exact match for the server's host
+    // - require SNI with an exact match for the server's host or one of its
+    //   virtual hosts
     SSLParameters sslParameters = sslContext.getDefaultSSLParameters();
     sslParameters.setProtocols(new String[] { "TLSv1.3", "TLSv1.2" });
-    String hostRegex = serverProps.getHost().replace(".", "\\.");
+    String hostRegex = Pattern.quote(serverProps.getHost());
+    for (VirtualHost virtualHost : serverProps.getVirtualHosts()) {
+      hostRegex += "|" + Pattern.quote(virtualHost.getHost());
+    }
     SNIMatcher sniMatcher = SNIHostName.createSNIMatcher(hostRegex);
     sslParameters.setSNIMatchers(Collections.singletonList(sniMatcher));
     sslParameters.setWantClientAuth(true);
-    ((SSLServerSocket) serverSocket).setSSLParameters(sslParameters);
+
+    // With more than one acceptor, give each its own listening socket so that
+    // the kernel spreads new connections across them. Without SO_REUSEPORT,
+    // blocking acceptors can still share a single listening socket, but a
+    // single selector must do all of the accepting for the NIO engine.
+    int numAcceptors = serverProps.getNumAcceptors();
+    boolean reusePort = numAcceptors > 1 && isReusePortSupported();
+    int numListeners = reusePort ? numAcceptors : 1;
+    if (numAcceptors > 1 && !reusePort) {
+      LOG.warn("SO_REUSEPORT is not supported, so all acceptors will share " +
+               "one listening socket");
+    }
+
+    int port = serverProps.getPort();
+    if (serverProps.getEngine() == ServerProperties.EngineMode.NIO) {
+      for (int i = 0; i < numListeners; i++) {
+        String name = numListeners > 1 ? "nio-selector-" + i : "nio-selector";
+        NioConnectionEngine nioEngine =
+          new NioConnectionEngine(name, port, reusePort, sslContext,
+                                  sslParameters, handshakeExecutorService,
+                                  this::dispatch);
+        nioEngine.setHandshakeTimeoutMs(serverProps.getHandshakeTimeoutMs());
+        nioEngine.setRequestTimeoutMs(serverProps.getRequestTimeoutMs());
+        nioEngine.setTlsSessionStats(tlsSessionStats);
+        nioEngines.add(nioEngine);
+      }
+    } else {
+      for (int i = 0; i < numListeners; i++) {
+        SSLServerSocket serverSocket = (SSLServerSocket)
+          sslContext.getServerSocketFactory().createServerSocket();
+        if (reusePort) {
+          serverSocket.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+        }
+        serverSocket.bind(new InetSocketAddress(port));
+        serverSocket.setSSLParameters(sslParameters);
+        serverSockets.add(serverSocket);
+      }
+    }
 
     if (controlSocket != null) {
       new Thread(new ControlRunnable(controlSocket, this), "control").start();
     }
 
-    LOG.info("Doppio {} started", Version.VERSION);
+    int keystoreCheckIntervalSec = serverProps.getKeystoreCheckIntervalSec();
+    if (keystoreState != null && keystoreCheckIntervalSec > 0) {
+      keystoreChecker = Executors.newSingleThreadScheduledExecutor(
+        Thread.ofPlatform().name("keystore-checker").daemon().factory());
+      keystoreChecker.scheduleWithFixedDelay(this::checkKeystore,
+                                             keystoreCheckIntervalSec,
+                                             keystoreCheckIntervalSec,
+                                             TimeUnit.SECONDS);
+    }
+
+    if (serverProps.isWatchRoot()) {
+      startRootWatcher();
+    }
+
+    for (GatewayClient gatewayClient : gatewayClients) {
+      gatewayClient.start();
+    }
+
+    if (serverProps.getWarmUpBudgetMs() > 0) {
+      warmUp();
+    }
+
+    LOG.info("Doppio {} started in {} ms", Version.VERSION,
+             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startNanos));
     LOG.info("Server listening on port {}", serverProps.getPort());
     LOG.info("Control listening on port {}", serverProps.getControlPort());
+    LOG.info("Handling connections with {} engine and requests with {} executor",
+             serverProps.getEngine().getConfigValue(),
+             serverProps.getExecutor().getConfigValue());
+    LOG.info("Accepting connections with {} acceptor(s) on {} listener(s)",
+             nioEngines.isEmpty() ? numAcceptors : numListeners,
+             numListeners);
     try {
-      // Accept connections and hand them off to request handlers until there
-      // is a SocketException, which should indicate that the server is
-      // shutting down.
-      while (true) {
-        LOG.debug("Accepting connection");
-        SSLSocket clientSocket = (SSLSocket) serverSocket.accept();
-        executorService.submit(new RequestHandler(serverProps, accessLogger,
-                                                  clientSocket));
+      if (!nioEngines.isEmpty()) {
+        // The engines run in their own threads, so just wait for shutdown.
+        for (NioConnectionEngine nioEngine : nioEngines) {
+          nioEngine.start();
+        }
+        try {
+          shutdownLatch.await();
+        } catch (InterruptedException e) {
+          LOG.info("Interrupted while running, shutting down");
+        }
+      } else if (numAcceptors == 1) {
+        acceptConnections(serverSockets.get(0));
+      } else {
+        runAcceptors(numAcceptors);
       }
-    } catch (SocketException e) {
-      LOG.info("Server socket closed, shutting down");
-      LOG.debug("Accept exception", e);
     } finally {
+      if (keystoreChecker != null) {
+        keystoreChecker.shutdownNow();
+      }
+      if (rootWatcher != null) {
+        closeQuietly(rootWatcher);
+      }
+
+      // Let handshakes already underway finish and pass their connections
+      // along before request handling winds down.
+      handshakeExecutorService.shutdown();
+      try {
+        handshakeExecutorService.awaitTermination(serverProps.getShutdownTimeoutSec(),
+                                                  TimeUnit.SECONDS);
+      } catch (InterruptedException e) {
+        LOG.debug("Interrupted while waiting for handshake executor termination", e);
+      }
+
       executorService.shutdown();
       try {
         executorService.awaitTermination(serverProps.getShutdownTimeoutSec(),
@@ -134,6 +334,18 @@ public class Server {
       }
       executorService.shutdownNow();
 
+      for (NioConnectionEngine nioEngine : nioEngines) {
+        nioEngine.close();
+      }
+      handshakeExecutorService.shutdownNow();
+      for (GatewayClient gatewayClient : gatewayClients) {
+        gatewayClient.close();
+      }
+      javaHandlers.close();
+      if (cgiWorkerPools != null) {
+        cgiWorkerPools.close();
+      }
+
       try {
         accessLogger.close();
       } catch (IOException e) {
@@ -150,55 +362,515 @@ public class Server {
     }
   }
 
+  private static boolean isReusePortSupported() {
+    try (ServerSocket probe = new ServerSocket()) {
+      return probe.supportedOptions()
+        .contains(StandardSocketOptions.SO_REUSEPORT);
+    } catch (IOException e) {
+      LOG.debug("Failed to check for SO_REUSEPORT support", e);
+      return false;
+    }
+  }
+
+  /**
+   * Runs acceptor threads over the blocking server sockets, spreading them
+   * evenly when there are fewer sockets than acceptors, and waits for all of
+   * them to finish.
+   *
+   * @param numAcceptors number of acceptor threads
+   */
+  private void runAcceptors(int numAcceptors) {
+    List<Thread> acceptors = new ArrayList<>(numAcceptors);
+    for (int i = 0; i < numAcceptors; i++) {
+      ServerSocket serverSocket = serverSockets.get(i % serverSockets.size());
+      Thread acceptor = new Thread(() -> {
+        try {
+          acceptConnections(serverSocket);
+        } catch (IOException e) {
+          LOG.error("Failed to accept connection", e);
+        }
+      }, "acceptor-" + i);
+      acceptor.start();
+      acceptors.add(acceptor);
+    }
+
+    try {
+      for (Thread acceptor : acceptors) {
+        acceptor.join();
+      }
+    } catch (InterruptedException e) {
+      LOG.info("Interrupted while running, shutting down");
+      shutdown();
+    }
+  }
+
+  /**
+   * Accepts connections from a blocking server socket and hands them off to
+   * the handshake stage, until the server is shutting down.
+   *
+   * @param  serverSocket server socket to accept from
+   * @throws IOException  if accepting a connection fails unexpectedly
+   */
+  private void acceptConnections(ServerSocket serverSocket) throws IOException {
+    try {
+      // Accept connections and hand them off for handshaking until there is a
+      // SocketException, which should indicate that the server is shutting
+      // down.
+      while (true) {
+        LOG.debug("Accepting connection");
+        SSLSocket clientSocket = (SSLSocket) serverSocket.accept();
+        try {
+          handshakeExecutorService.execute(() -> handshake(clientSocket));
+        } catch (RejectedExecutionException e) {
+          LOG.debug("Server is shutting down, dropping connection", e);
+          closeQuietly(clientSocket);
+        }
+      }
+    } catch (SocketException e) {
+      LOG.info("Server socket closed, shutting down");
+      LOG.debug("Accept exception", e);
+    }
+  }
+
+  /**
+   * Performs the TLS handshake for a connection from the blocking server
+   * socket, within the handshake timeout, and then submits the connection to
+   * a request handler, which must read the request within the request
+   * timeout. A connection whose handshake fails is closed and never
+   * reaches the request executor.
+   *
+   * @param clientSocket client socket
+   */
+  private void handshake(SSLSocket clientSocket) {
+    long handshakeStartMillis = System.currentTimeMillis();
+    try {
+      clientSocket.setSoTimeout(serverProps.getHandshakeTimeoutMs());
+      clientSocket.startHandshake();
+      // From here on, the timeout bounds reading the request line.
+      clientSocket.setSoTimeout(serverProps.getRequestTimeoutMs());
+      tlsSessionStats.recordHandshake(clientSocket.getSession(),
+                                      handshakeStartMillis);
+    } catch (IOException e) {
+      LOG.debug("TLS handshake failed, closing connection", e);
+      closeQuietly(clientSocket);
+      return;
+    }
+
+    try {
+      submit(new RequestHandler(serverProps, accessLogger,
+                                new SocketClientConnection(clientSocket),
+                                requestHandlerDependencies));
+    } catch (InterruptedException e) {
+      LOG.debug("Interrupted while waiting to handle a request", e);
+      closeQuietly(clientSocket);
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Server is shutting down, dropping connection", e);
+      closeQuietly(clientSocket);
+    }
+  }
+
+  /**
+   * Dispatches a connection from the NIO engine to a request handler. This
+   * must not block the engine, so when the number of concurrent requests is
+   * bounded, waiting for a permit happens in the executor instead.
+   *
+   * @param connection connection with a request ready to handle
+   */
+  private void dispatch(ClientConnection connection) {
+    RequestHandler requestHandler =
+      new RequestHandler(serverProps, accessLogger, connection,
+                         requestHandlerDependencies);
+    try {
+      if (requestPermits == null) {
+        executorService.submit(requestHandler);
+        return;
+      }
+      executorService.submit(() -> {
+        try {
+          requestPermits.acquire();
+        } catch (InterruptedException e) {
+          LOG.debug("Interrupted while waiting to handle a request", e);
+          closeQuietly(connection);
+          return;
+        }
+        try {
+          requestHandler.run();
+        } finally {
+          requestPermits.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      LOG.debug("Server is shutting down, dropping connection", e);
+      closeQuietly(connection);
+    }
+  }
+
+  private static void closeQuietly(Closeable connection) {
+    try {
+      connection.close();
+    } catch (IOException e) {
+      LOG.debug("Failed to close connection", e);
+    }
+  }
+
+  /**
+   * Submits a request handler to the executor. When the number of concurrent
+   * requests is bounded, this blocks until a permit to run is available, so
+   * that no more connections are handshaken while the server is at capacity.
+   * This may be called from several handshake threads at once.
+   *
+   * @param  requestHandler       request handler
+   * @throws InterruptedException if interrupted while waiting for a permit
+   */
+  private void submit(RequestHandler requestHandler)
+    throws InterruptedException {
+    if (requestPermits == null) {
+      executorService.submit(requestHandler);
+      return;
+    }
+
+    requestPermits.acquire();
+    try {
+      executorService.submit(() -> {
+        try {
+          requestHandler.run();
+        } finally {
+          requestPermits.release();
+        }
+      });
+    } catch (RejectedExecutionException e) {
+      requestPermits.release();
+      throw e;
+    }
+  }
+
   int TEMP_CERT_VALIDITY_IN_SEC = 24 * 60 * 60;  // = one day
 
-  private SSLContext buildSSLContext()
+  // A cached temporary certificate is reused only if it has at least this
+  // much validity left.
+  private static final Duration TEMP_CERT_MIN_REMAINING = Duration.ofHours(1L);
+
+  /**
+   * Gets a temporary server certificate and its key for a host, reusing a
+   * cached one if possible and generating a new one otherwise.
+   */
+  private KeyStore.PrivateKeyEntry getTemporaryCertificate(VirtualHost virtualHost)
     throws IOException, GeneralSecurityException {
-    SSLContext sslContext = SSLContext.getInstance("TLS");
+    String host = virtualHost.getHost();
+    TemporaryCertificateCache tempCertCache = null;
+    if (serverProps.getTempCertCacheDir() != null) {
+      tempCertCache = virtualHost == serverProps.getDefaultVirtualHost() ?
+        new TemporaryCertificateCache(serverProps.getTempCertCacheDir()) :
+        TemporaryCertificateCache.forVirtualHost(serverProps.getTempCertCacheDir(),
+                                                 host);
+      KeyStore.PrivateKeyEntry cachedEntry =
+        tempCertCache.load(host, serverProps.getTempCertKeyType(),
+                           TEMP_CERT_MIN_REMAINING);
+      if (cachedEntry != null) {
+        LOG.info("Reusing cached temporary server certificate for {}, expires {}",
+                 host,
+                 ((X509Certificate) cachedEntry.getCertificate()).getNotAfter());
+        return cachedEntry;
+      }
+    }
 
+    LOG.info("Generating temporary server certificate for {} with {} key",
+             host, serverProps.getTempCertKeyType().getConfigValue());
+    TemporaryCertificateGenerator tempCertGen =
+        new TemporaryCertificateGenerator(host,
+                                          TEMP_CERT_VALIDITY_IN_SEC,
+                                          serverProps.getTempCertKeyType());
+    LOG.info("Temporary server certificate generated, expires " +
+             tempCertGen.getCertificate().getNotAfter());
+
+    if (tempCertCache != null) {
+      try {
+        tempCertCache.store(tempCertGen.getPrivateKey(),
+                            tempCertGen.getCertificate());
+      } catch (IOException | GeneralSecurityException e) {
+        LOG.warn("Failed to cache temporary server certificate", e);
+      }
+    }
+    return new KeyStore.PrivateKeyEntry(tempCertGen.getPrivateKey(),
+                                        new X509Certificate[] {
+                                          tempCertGen.getCertificate()
+                                        });
+  }
+
+  /**
+   * Builds a key manager for a host's key material, either from its
+   * configured keystore or from a temporary certificate.
+   */
+  private X509ExtendedKeyManager buildKeyManager(VirtualHost virtualHost)
+    throws IOException, GeneralSecurityException {
     KeyManagerFactory kmf;
-    if (serverProps.getKeystore() != null) {
+    if (virtualHost.getKeystore() != null) {
       KeyStore keystore =
-          KeyStore.getInstance(serverProps.getKeystore().toFile(),
-                               serverProps.getKeystorePassword().toCharArray());
+          KeyStore.getInstance(virtualHost.getKeystore().toFile(),
+                               virtualHost.getKeystorePassword().toCharArray());
       kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-      kmf.init(keystore, serverProps.getKeystorePassword().toCharArray());
+      kmf.init(keystore, virtualHost.getKeystorePassword().toCharArray());
     } else {
-      LOG.info("Generating temporary server certificate");
       KeyStore tempKeystore = KeyStore.getInstance(KeyStore.getDefaultType());
       tempKeystore.load(null, null);
-
-      TemporaryCertificateGenerator tempCertGen =
-          new TemporaryCertificateGenerator(serverProps.getHost(),
-                                            TEMP_CERT_VALIDITY_IN_SEC);
-      tempKeystore.setKeyEntry("doppio", tempCertGen.getPrivateKey(), null,
-                               new X509Certificate[] { tempCertGen.getCertificate() });
+      KeyStore.PrivateKeyEntry tempCertEntry = getTemporaryCertificate(virtualHost);
+      tempKeystore.setEntry("doppio", tempCertEntry,
+                            new KeyStore.PasswordProtection(new char[0]));
       kmf = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
-      kmf.init(tempKeystore, null);
+      kmf.init(tempKeystore, new char[0]);
+    }
+    return ReloadableKeyManager.findX509KeyManager(kmf.getKeyManagers());
+  }
 
-      LOG.info("Temporary server certificate generated, expires " +
-               tempCertGen.getCertificate().getNotAfter());
+  /**
+   * Builds a key manager for the server's key material. When there are
+   * virtual hosts, the key material for each is selected through SNI.
+   */
+  private X509ExtendedKeyManager buildKeyManager()
+    throws IOException, GeneralSecurityException {
+    X509ExtendedKeyManager defaultKeyManager =
+      buildKeyManager(serverProps.getDefaultVirtualHost());
+    if (serverProps.getVirtualHosts().isEmpty()) {
+      return defaultKeyManager;
+    }
+    Map<String, X509ExtendedKeyManager> hostKeyManagers = new HashMap<>();
+    for (VirtualHost virtualHost : serverProps.getVirtualHosts()) {
+      hostKeyManagers.put(virtualHost.getHost(), buildKeyManager(virtualHost));
     }
+    return new VirtualHostKeyManager(defaultKeyManager, hostKeyManagers);
+  }
+
+  private SSLContext buildSSLContext()
+    throws IOException, GeneralSecurityException {
+    SSLContext sslContext = newSSLContext(serverProps.isTlsSessionTickets());
+
+    // Key material may be replaced while the server is running.
+    keystoreState = getKeystoreState();
+    reloadableKeyManager = new ReloadableKeyManager(buildKeyManager());
 
     // Secure domains each control client authentication.
     TrustManager[] trustManagers = new TrustManager[] {
       new AllowAllTrustManager()
     };
 
-    sslContext.init(kmf.getKeyManagers(), trustManagers, null);
+    sslContext.init(new KeyManager[] { reloadableKeyManager }, trustManagers,
+                    null);
+
+    // Tune the cache of sessions available for resumption.
+    SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+    sessionContext.setSessionCacheSize(serverProps.getTlsSessionCacheSize());
+    sessionContext.setSessionTimeout(serverProps.getTlsSessionTimeoutSec());
+    LOG.debug("TLS session cache size {}, timeout {} sec, session tickets {}",
+              serverProps.getTlsSessionCacheSize(),
+              serverProps.getTlsSessionTimeoutSec(),
+              serverProps.isTlsSessionTickets() ? "enabled" : "disabled");
     return sslContext;
   }
 
+  private static final String SESSION_TICKET_PROPERTY =
+    "jdk.tls.server.enableSessionTicketExtension";
+
+  /**
+   * Creates an SSL context. The JDK only offers a system property to enable
+   * or disable stateless session tickets, which is read when a context
+   * creates its server session context, as part of getting the context
+   * instance. So the property is set for just the duration of that.
+   *
+   * @param  sessionTickets           whether to enable stateless session
+   *                                  tickets
+   * @return                          new, uninitialized SSL context
+   * @throws GeneralSecurityException if the context cannot be created
+   */
+  static SSLContext newSSLContext(boolean sessionTickets)
+    throws GeneralSecurityException {
+    synchronized (Server.class) {
+      String oldValue = System.getProperty(SESSION_TICKET_PROPERTY);
+      System.setProperty(SESSION_TICKET_PROPERTY,
+                         Boolean.toString(sessionTickets));
+      try {
+        return SSLContext.getInstance("TLS");
+      } finally {
+        if (oldValue != null) {
+          System.setProperty(SESSION_TICKET_PROPERTY, oldValue);
+        } else {
+          System.clearProperty(SESSION_TICKET_PROPERTY);
+        }
+      }
+    }
+  }
+
+  /**
+   * Reloads the server's key material, from the keystore or from a temporary
+   * certificate. New handshakes use the new key material, while established
+   * sessions continue undisturbed. If loading fails, the current key
+   * material remains in use.
+   *
+   * @throws IOException if the keystore cannot be read
+   * @throws GeneralSecurityException if the key material cannot be loaded
+   * @throws IllegalStateException if the server has not been started
+   */
+  public synchronized void reloadCertificate()
+    throws IOException, GeneralSecurityException {
+    if (reloadableKeyManager == null) {
+      throw new IllegalStateException("Server has not been started");
+    }
+    Object newKeystoreState = getKeystoreState();
+    reloadableKeyManager.reload(buildKeyManager());
+    keystoreState = newKeystoreState;
+    LOG.info("Reloaded server certificate");
+  }
+
+  /**
+   * Gets a summary of the state of the keystore files, so that changes to
+   * them can be detected.
+   *
+   * @return keystore file state, or null if there are no keystore files
+   */
+  private Object getKeystoreState() {
+    List<Path> keystores = new ArrayList<>();
+    if (serverProps.getKeystore() != null) {
+      keystores.add(serverProps.getKeystore());
+    }
+    for (VirtualHost virtualHost : serverProps.getVirtualHosts()) {
+      if (virtualHost.getKeystore() != null) {
+        keystores.add(virtualHost.getKeystore());
+      }
+    }
+    if (keystores.isEmpty()) {
+      return null;
+    }
+    List<Object> state = new ArrayList<>();
+    for (Path keystore : keystores) {
+      try {
+        state.add(List.of(Files.getLastModifiedTime(keystore), Files.size(keystore)));
+      } catch (IOException e) {
+        LOG.debug("Failed to check keystore {}", keystore, e);
+        return null;
+      }
+    }
+    return state;
+  }
+
+  /**
+   * Reloads the server's key material if any keystore file has changed since
+   * it was last loaded.
+   */
+  private synchronized void checkKeystore() {
+    Object newKeystoreState = getKeystoreState();
+    if (newKeystoreState == null || newKeystoreState.equals(keystoreState)) {
+      return;
+    }
+    LOG.info("Keystore has changed");
+    try {
+      reloadCertificate();
+    } catch (IOException | GeneralSecurityException e) {
+      LOG.warn("Failed to reload server certificate, keeping current one", e);
+      // Avoid retrying until the file changes again.
+      keystoreState = newKeystoreState;
+    }
+  }
+
+  /**
+   * Warms up the server by running the configured warm-up requests, so that
+   * the first clients after startup do not find everything cold.
+   *
+   * @throws IOException if warming up cannot be set up
+   */
+  private void warmUp() throws IOException {
+    // Warm-up requests only fill caches, so they do not run gateway
+    // applications, handlers, or workers.
+    WarmUp warmUp =
+      new WarmUp(serverProps, RequestHandlerDependencies.builder()
+                 .staticResponseCache(staticResponseCache)
+                 .capsuleArchive(capsuleArchive)
+                 .feedCache(feedCache)
+                 .build());
+    List<String> requests = warmUp.findRequests();
+    if (requests.isEmpty()) {
+      return;
+    }
+    long warmUpStartNanos = System.nanoTime();
+    int numHandled = warmUp.run(requests);
+    LOG.info("Warmed up with {} requests for {} resources in {} ms",
+             numHandled, requests.size(),
+             TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - warmUpStartNanos));
+  }
+
+  /**
+   * Starts watching the root directories of all hosts, so that caches drop
+   * changed content right away and need not check files when serving. If
+   * watching is not possible, caches go on checking files instead.
+   */
+  private void startRootWatcher() {
+    List<Path> roots = new ArrayList<>();
+    roots.add(serverProps.getRoot());
+    for (VirtualHost virtualHost : serverProps.getVirtualHosts()) {
+      roots.add(virtualHost.getRoot());
+    }
+    RootWatcher watcher = new RootWatcher(roots);
+    if (staticResponseCache != null) {
+      watcher.addListener(staticResponseCache);
+    }
+    watcher.addListener(feedCache);
+    try {
+      watcher.start();
+    } catch (IOException e) {
+      LOG.warn("Failed to watch root directories, checking files instead", e);
+      return;
+    }
+    if (staticResponseCache != null) {
+      staticResponseCache.setValidateOnHit(false);
+    }
+    feedCache.setValidateOnHit(false);
+    rootWatcher = watcher;
+  }
+
+  /**
+   * Gets current server statistics, for reporting over the control port.
+   *
+   * @return map of statistic names to values, in a stable order
+   */
+  public Map<String, Long> getStats() {
+    Map<String, Long> stats = new LinkedHashMap<>();
+    tlsSessionStats.addTo(stats);
+    if (reloadableKeyManager != null) {
+      stats.put("tls.certificate.reloads",
+                (long) reloadableKeyManager.getReloadCount());
+    }
+    if (sslContext != null) {
+      stats.put("tls.sessions.cached",
+                (long) Collections.list(sslContext.getServerSessionContext()
+                                        .getIds()).size());
+    }
+    if (rootWatcher != null) {
+      rootWatcher.addTo(stats);
+    }
+    if (requestHandlerDependencies != null) {
+      requestHandlerDependencies.addTo(stats);
+    }
+    return stats;
+  }
+
   /**
    * Shuts down the server.
    */
   public void shutdown() {
+    if (!nioEngines.isEmpty()) {
+      for (NioConnectionEngine nioEngine : nioEngines) {
+        nioEngine.stopAccepting();
+      }
+      shutdownLatch.countDown();
+      return;
+    }
+
     // You can't interrupt a server socket blocked on accept; you have
     // to just close it.
-    try {
-      serverSocket.close();
-    } catch (IOException e) {
-      LOG.debug("Failed to close server socket", e);
+    for (ServerSocket serverSocket : serverSockets) {
+      try {
+        serverSocket.close();
+      } catch (IOException e) {
+        LOG.debug("Failed to close server socket", e);
+      }
     }
   }
 }
@@ -21,7 +21,10 @@ package com.havanki.doppio;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
+import java.util.Map;
 
 /**
  * Server configuration properties.
@@ -34,19 +37,57 @@ public class ServerProperties {
   static final int DEFAULT_CONTROL_PORT = 31965;
   static final long DEFAULT_SHUTDOWN_TIMEOUT_SEC = 5;
   static final int DEFAULT_NUM_THREADS = 4;
+  static final ExecutorMode DEFAULT_EXECUTOR = ExecutorMode.FIXED;
+  static final int DEFAULT_MAX_CONCURRENT_REQUESTS = 1000;
+  static final EngineMode DEFAULT_ENGINE = EngineMode.BLOCKING;
+  static final int DEFAULT_NUM_ACCEPTORS = 1;
+  static final int DEFAULT_HANDSHAKE_TIMEOUT_MS = 10000;
+  static final int DEFAULT_REQUEST_TIMEOUT_MS = 10000;
+  static final int DEFAULT_NUM_HANDSHAKE_THREADS = 4;
+  static final int DEFAULT_TLS_SESSION_CACHE_SIZE = 20480;
+  static final int DEFAULT_TLS_SESSION_TIMEOUT_SEC = 86400;
+  static final boolean DEFAULT_TLS_SESSION_TICKETS = true;
   static final Path DEFAULT_CGI_DIR = null;
   static final int DEFAULT_MAX_LOCAL_REDIRECTS = 10;
+  static final boolean DEFAULT_CGI_WORKERS = false;
+  static final int DEFAULT_CGI_WORKER_POOL_SIZE = 4;
+  static final int DEFAULT_CGI_WORKER_MAX_REQUESTS = 1000;
+  static final int DEFAULT_CGI_WORKER_IDLE_TIMEOUT_SEC = 300;
+  static final long DEFAULT_CGI_CACHE_MAX_BYTES = 0L;
+  static final List<String> DEFAULT_COALESCE_PREFIXES = List.of();
+  static final boolean DEFAULT_COALESCE_SECURE_DOMAINS = false;
+  static final int DEFAULT_CGI_MAX_CONCURRENT = 0;
+  static final int DEFAULT_CGI_MAX_CONCURRENT_PER_SCRIPT = 0;
+  static final int DEFAULT_CGI_MAX_QUEUED = 16;
+  static final int DEFAULT_CGI_QUEUE_TIMEOUT_MS = 5000;
+  static final int DEFAULT_CGI_TIMEOUT_MS = 0;
+  static final long DEFAULT_CGI_MAX_OUTPUT_BYTES = 0L;
+  static final int DEFAULT_FAST_CGI_MAX_CONNECTIONS = 8;
+  static final int DEFAULT_FAST_CGI_MAX_REQUESTS_PER_CONNECTION = 1;
+  static final int DEFAULT_SCGI_MAX_CONCURRENT_REQUESTS = 8;
+  static final int DEFAULT_SCGI_IDLE_CONNECTIONS = 2;
+  static final int DEFAULT_GATEWAY_TIMEOUT_MS = 30000;
   static final boolean DEFAULT_FORCE_CANONICAL_TEXT = false;
   static final List<String> DEFAULT_TEXT_GEMINI_SUFFIXES =
     List.of(".gmi", ".gemini");
   static final String DEFAULT_DEFAULT_CONTENT_TYPE = "text/plain";
   static final boolean DEFAULT_ENABLE_CHARSET_DETECTION = false;
   static final String DEFAULT_DEFAULT_CHARSET = null;
+  static final long DEFAULT_STATIC_CACHE_MAX_BYTES = 0L;
+  static final boolean DEFAULT_WATCH_ROOT = true;
+  static final Path DEFAULT_ARCHIVE = null;
+  static final List<String> DEFAULT_WARM_UP_PATHS = List.of();
+  static final int DEFAULT_WARM_UP_TOP_PATHS = 0;
+  static final int DEFAULT_WARM_UP_BUDGET_MS = 10000;
+  static final boolean DEFAULT_WARM_UP_JIT = false;
   static final String DEFAULT_FAVICON = null;
   static final List<String> DEFAULT_FEED_PAGES = List.of();
   static final Path DEFAULT_LOG_DIR = null;
   static final Path DEFAULT_KEYSTORE = null;
   static final String DEFAULT_KEYSTORE_PASSWORD = "doppio";
+  static final TempCertKeyType DEFAULT_TEMP_CERT_KEY_TYPE = TempCertKeyType.RSA_4096;
+  static final Path DEFAULT_TEMP_CERT_CACHE_DIR = null;
+  static final int DEFAULT_KEYSTORE_CHECK_INTERVAL_SEC = 60;
   static final boolean DEFAULT_SET_MOD_SSL_CGI_META_VARS = false;
 
   private final Path root;
@@ -55,20 +96,65 @@ public class ServerProperties {
   private final int controlPort;
   private final long shutdownTimeoutSec;
   private final int numThreads;
+  private final ExecutorMode executor;
+  private final int maxConcurrentRequests;
+  private final EngineMode engine;
+  private final int numAcceptors;
+  private final int handshakeTimeoutMs;
+  private final int requestTimeoutMs;
+  private final int numHandshakeThreads;
+  private final int tlsSessionCacheSize;
+  private final int tlsSessionTimeoutSec;
+  private final boolean tlsSessionTickets;
   private final Path cgiDir;
   private final int maxLocalRedirects;
+  private final boolean cgiWorkers;
+  private final int cgiWorkerPoolSize;
+  private final int cgiWorkerMaxRequests;
+  private final int cgiWorkerIdleTimeoutSec;
+  private final long cgiCacheMaxBytes;
+  private final List<String> coalescePrefixes;
+  private final boolean coalesceSecureDomains;
+  private final int cgiMaxConcurrent;
+  private final int cgiMaxConcurrentPerScript;
+  private final int cgiMaxQueued;
+  private final int cgiQueueTimeoutMs;
+  private final int cgiTimeoutMs;
+  private final long cgiMaxOutputBytes;
+  private final List<HandlerMapping> handlers;
+  private final List<GatewayMapping> fastCgiGateways;
+  private final int fastCgiMaxConnections;
+  private final int fastCgiMaxRequestsPerConnection;
+  private final List<GatewayMapping> scgiGateways;
+  private final int scgiMaxConcurrentRequests;
+  private final int scgiIdleConnections;
+  private final int gatewayTimeoutMs;
   private final boolean forceCanonicalText;
   private final List<String> textGeminiSuffixes;
   private final String defaultContentType;
   private final boolean enableCharsetDetection;
   private final String defaultCharset;
+  private final long staticCacheMaxBytes;
+  private final boolean watchRoot;
+  private final Path archive;
+  private final List<String> warmUpPaths;
+  private final int warmUpTopPaths;
+  private final int warmUpBudgetMs;
+  private final boolean warmUpJit;
   private final String favicon;
   private final List<String> feedPages;
   private final Path logDir;
   private final List<SecureDomain> secureDomains;
   private final Path keystore;
   private final String keystorePassword;
+  private final TempCertKeyType tempCertKeyType;
+  private final Path tempCertCacheDir;
+  private final int keystoreCheckIntervalSec;
   private final boolean setModSslCgiMetaVars;
+  private final List<VirtualHost> virtualHosts;
+
+  private final VirtualHost defaultVirtualHost;
+  private final Map<String, VirtualHost> virtualHostsByName;
 
   /**
    * Creates new server properties. Use of a builder is preferred to calling
@@ -81,20 +167,62 @@ public class ServerProperties {
     int controlPort,
     long shutdownTimeoutSec,
     int numThreads,
+    ExecutorMode executor,
+    int maxConcurrentRequests,
+    EngineMode engine,
+    int numAcceptors,
+    int handshakeTimeoutMs,
+    int requestTimeoutMs,
+    int numHandshakeThreads,
+    int tlsSessionCacheSize,
+    int tlsSessionTimeoutSec,
+    boolean tlsSessionTickets,
     Path cgiDir,
     int maxLocalRedirects,
+    boolean cgiWorkers,
+    int cgiWorkerPoolSize,
+    int cgiWorkerMaxRequests,
+    int cgiWorkerIdleTimeoutSec,
+    long cgiCacheMaxBytes,
+    List<String> coalescePrefixes,
+    boolean coalesceSecureDomains,
+    int cgiMaxConcurrent,
+    int cgiMaxConcurrentPerScript,
+    int cgiMaxQueued,
+    int cgiQueueTimeoutMs,
+    int cgiTimeoutMs,
+    long cgiMaxOutputBytes,
+    List<HandlerMapping> handlers,
+    List<GatewayMapping> fastCgiGateways,
+    int fastCgiMaxConnections,
+    int fastCgiMaxRequestsPerConnection,
+    List<GatewayMapping> scgiGateways,
+    int scgiMaxConcurrentRequests,
+    int scgiIdleConnections,
+    int gatewayTimeoutMs,
     boolean forceCanonicalText,
     List<String> textGeminiSuffixes,
     String defaultContentType,
     boolean enableCharsetDetection,
     String defaultCharset,
+    long staticCacheMaxBytes,
+    boolean watchRoot,
+    Path archive,
+    List<String> warmUpPaths,
+    int warmUpTopPaths,
+    int warmUpBudgetMs,
+    boolean warmUpJit,
     String favicon,
     List<String> feedPages,
     Path logDir,
     List<SecureDomain> secureDomains,
     Path keystore,
     String keystorePassword,
-    boolean setModSslCgiMetaVars
+    TempCertKeyType tempCertKeyType,
+    Path tempCertCacheDir,
+    int keystoreCheckIntervalSec,
+    boolean setModSslCgiMetaVars,
+    List<VirtualHost> virtualHosts
   ) {
     this.root = root;
     this.host = host;
@@ -102,20 +230,75 @@ public class ServerProperties {
     this.controlPort = controlPort;
     this.shutdownTimeoutSec = shutdownTimeoutSec;
     this.numThreads = numThreads;
+    this.executor = executor;
+    this.maxConcurrentRequests = maxConcurrentRequests;
+    this.engine = engine;
+    this.numAcceptors = numAcceptors;
+    this.handshakeTimeoutMs = handshakeTimeoutMs;
+    this.requestTimeoutMs = requestTimeoutMs;
+    this.numHandshakeThreads = numHandshakeThreads;
+    this.tlsSessionCacheSize = tlsSessionCacheSize;
+    this.tlsSessionTimeoutSec = tlsSessionTimeoutSec;
+    this.tlsSessionTickets = tlsSessionTickets;
     this.cgiDir = cgiDir;
     this.maxLocalRedirects = maxLocalRedirects;
+    this.cgiWorkers = cgiWorkers;
+    this.cgiWorkerPoolSize = cgiWorkerPoolSize;
+    this.cgiWorkerMaxRequests = cgiWorkerMaxRequests;
+    this.cgiWorkerIdleTimeoutSec = cgiWorkerIdleTimeoutSec;
+    this.cgiCacheMaxBytes = cgiCacheMaxBytes;
+    this.coalescePrefixes = coalescePrefixes;
+    this.coalesceSecureDomains = coalesceSecureDomains;
+    this.cgiMaxConcurrent = cgiMaxConcurrent;
+    this.cgiMaxConcurrentPerScript = cgiMaxConcurrentPerScript;
+    this.cgiMaxQueued = cgiMaxQueued;
+    this.cgiQueueTimeoutMs = cgiQueueTimeoutMs;
+    this.cgiTimeoutMs = cgiTimeoutMs;
+    this.cgiMaxOutputBytes = cgiMaxOutputBytes;
+    this.handlers = handlers;
+    this.fastCgiGateways = fastCgiGateways;
+    this.fastCgiMaxConnections = fastCgiMaxConnections;
+    this.fastCgiMaxRequestsPerConnection = fastCgiMaxRequestsPerConnection;
+    this.scgiGateways = scgiGateways;
+    this.scgiMaxConcurrentRequests = scgiMaxConcurrentRequests;
+    this.scgiIdleConnections = scgiIdleConnections;
+    this.gatewayTimeoutMs = gatewayTimeoutMs;
     this.forceCanonicalText = forceCanonicalText;
     this.textGeminiSuffixes = textGeminiSuffixes;
     this.defaultContentType = defaultContentType;
     this.enableCharsetDetection = enableCharsetDetection;
     this.defaultCharset = defaultCharset;
+    this.staticCacheMaxBytes = staticCacheMaxBytes;
+    this.watchRoot = watchRoot;
+    this.archive = archive;
+    this.warmUpPaths = warmUpPaths;
+    this.warmUpTopPaths = warmUpTopPaths;
+    this.warmUpBudgetMs = warmUpBudgetMs;
+    this.warmUpJit = warmUpJit;
     this.favicon = favicon;
     this.feedPages = feedPages;
     this.logDir = logDir;
     this.secureDomains = secureDomains;
     this.keystore = keystore;
     this.keystorePassword = keystorePassword;
+    this.tempCertKeyType = tempCertKeyType;
+    this.tempCertCacheDir = tempCertCacheDir;
+    this.keystoreCheckIntervalSec = keystoreCheckIntervalSec;
     this.setModSslCgiMetaVars = setModSslCgiMetaVars;
+    this.virtualHosts = virtualHosts;
+
+    defaultVirtualHost = new VirtualHost(host, root, cgiDir, cgiTimeoutMs,
+                                         cgiMaxOutputBytes, secureDomains,
+                                         feedPages, keystore, keystorePassword);
+    virtualHostsByName = new HashMap<>();
+    if (virtualHosts != null) {
+      for (VirtualHost virtualHost : virtualHosts) {
+        if (virtualHost.getHost() != null) {
+          virtualHostsByName.putIfAbsent(virtualHost.getHost().toLowerCase(Locale.ROOT),
+                                         virtualHost);
+        }
+      }
+    }
   }
 
   void validate() {
@@ -128,9 +311,131 @@ public class ServerProperties {
     if (numThreads < 1) {
       throw new IllegalStateException("numThreads must be positive");
     }
+    if (executor == null) {
+      throw new IllegalStateException("executor may not be null");
+    }
+    if (maxConcurrentRequests < 1) {
+      throw new IllegalStateException("maxConcurrentRequests must be positive");
+    }
+    if (engine == null) {
+      throw new IllegalStateException("engine may not be null");
+    }
+    if (numAcceptors < 1) {
+      throw new IllegalStateException("numAcceptors must be positive");
+    }
+    if (handshakeTimeoutMs < 0) {
+      throw new IllegalStateException("handshakeTimeoutMs must be non-negative");
+    }
+    if (requestTimeoutMs < 0) {
+      throw new IllegalStateException("requestTimeoutMs must be non-negative");
+    }
+    if (numHandshakeThreads < 1) {
+      throw new IllegalStateException("numHandshakeThreads must be positive");
+    }
+    if (tlsSessionCacheSize < 0) {
+      throw new IllegalStateException("tlsSessionCacheSize must be non-negative");
+    }
+    if (tlsSessionTimeoutSec < 0) {
+      throw new IllegalStateException("tlsSessionTimeoutSec must be non-negative");
+    }
+    if (staticCacheMaxBytes < 0) {
+      throw new IllegalStateException("staticCacheMaxBytes must be non-negative");
+    }
+    if (warmUpTopPaths < 0) {
+      throw new IllegalStateException("warmUpTopPaths must be non-negative");
+    }
+    if (warmUpBudgetMs < 0) {
+      throw new IllegalStateException("warmUpBudgetMs must be non-negative");
+    }
     if (maxLocalRedirects < 0) {
       throw new IllegalStateException("maxLocalRedirects must be non-negative");
     }
+    if (cgiWorkerPoolSize < 1) {
+      throw new IllegalStateException("cgiWorkerPoolSize must be positive");
+    }
+    if (cgiWorkerMaxRequests < 0) {
+      throw new IllegalStateException("cgiWorkerMaxRequests must be non-negative");
+    }
+    if (cgiWorkerIdleTimeoutSec < 1) {
+      throw new IllegalStateException("cgiWorkerIdleTimeoutSec must be positive");
+    }
+    if (handlers == null) {
+      throw new IllegalStateException("handlers may not be null");
+    }
+    if (fastCgiGateways == null) {
+      throw new IllegalStateException("fastCgiGateways may not be null");
+    }
+    if (fastCgiMaxConnections < 1) {
+      throw new IllegalStateException("fastCgiMaxConnections must be positive");
+    }
+    if (fastCgiMaxRequestsPerConnection < 1 ||
+        fastCgiMaxRequestsPerConnection > 65535) {
+      throw new IllegalStateException("fastCgiMaxRequestsPerConnection must be " +
+                                      "between 1 and 65535");
+    }
+    if (scgiGateways == null) {
+      throw new IllegalStateException("scgiGateways may not be null");
+    }
+    if (scgiMaxConcurrentRequests < 1) {
+      throw new IllegalStateException("scgiMaxConcurrentRequests must be positive");
+    }
+    if (scgiIdleConnections < 0) {
+      throw new IllegalStateException("scgiIdleConnections must be non-negative");
+    }
+    if (gatewayTimeoutMs < 0) {
+      throw new IllegalStateException("gatewayTimeoutMs must be non-negative");
+    }
+    if (cgiCacheMaxBytes < 0) {
+      throw new IllegalStateException("cgiCacheMaxBytes must be non-negative");
+    }
+    if (coalescePrefixes == null) {
+      throw new IllegalStateException("coalescePrefixes may not be null");
+    }
+    if (cgiMaxConcurrent < 0) {
+      throw new IllegalStateException("cgiMaxConcurrent must be non-negative");
+    }
+    if (cgiMaxConcurrentPerScript < 0) {
+      throw new IllegalStateException("cgiMaxConcurrentPerScript must be non-negative");
+    }
+    if (cgiMaxQueued < 0) {
+      throw new IllegalStateException("cgiMaxQueued must be non-negative");
+    }
+    if (cgiQueueTimeoutMs < 0) {
+      throw new IllegalStateException("cgiQueueTimeoutMs must be non-negative");
+    }
+    if (cgiTimeoutMs < 0) {
+      throw new IllegalStateException("cgiTimeoutMs must be non-negative");
+    }
+    if (cgiMaxOutputBytes < 0) {
+      throw new IllegalStateException("cgiMaxOutputBytes must be non-negative");
+    }
+    if (tempCertKeyType == null) {
+      throw new IllegalStateException("tempCertKeyType may not be null");
+    }
+    if (keystoreCheckIntervalSec < 0) {
+      throw new IllegalStateException("keystoreCheckIntervalSec must be non-negative");
+    }
+    if (virtualHosts == null) {
+      throw new IllegalStateException("virtualHosts may not be null");
+    }
+    if (virtualHostsByName.size() != virtualHosts.size()) {
+      throw new IllegalStateException("Virtual host names must be non-null and unique");
+    }
+    if (virtualHostsByName.containsKey(host.toLowerCase(Locale.ROOT))) {
+      throw new IllegalStateException("Virtual host " + host +
+                                      " duplicates the server host");
+    }
+    for (VirtualHost virtualHost : virtualHosts) {
+      if (virtualHost.getRoot() == null) {
+        throw new IllegalStateException("Virtual host " + virtualHost.getHost() +
+                                        " has no root");
+      }
+      if (virtualHost.getCgiTimeoutMs() < 0 ||
+          virtualHost.getCgiMaxOutputBytes() < 0L) {
+        throw new IllegalStateException("Virtual host " + virtualHost.getHost() +
+                                        " has a negative CGI limit");
+      }
+    }
   }
 
   /**
@@ -187,6 +492,104 @@ public class ServerProperties {
     return numThreads;
   }
 
+  /**
+   * Gets the mode of the executor that runs request handlers.
+   *
+   * @return executor mode
+   */
+  public ExecutorMode getExecutor() {
+    return executor;
+  }
+
+  /**
+   * Gets the maximum number of requests handled concurrently when the executor
+   * mode is {@link ExecutorMode#BOUNDED_VIRTUAL}.
+   *
+   * @return maximum number of concurrent requests
+   */
+  public int getMaxConcurrentRequests() {
+    return maxConcurrentRequests;
+  }
+
+  /**
+   * Gets the mode of the engine that accepts connections and performs TLS.
+   *
+   * @return engine mode
+   */
+  public EngineMode getEngine() {
+    return engine;
+  }
+
+  /**
+   * Gets the number of acceptor threads, each with its own listening socket
+   * where the platform supports it.
+   *
+   * @return number of acceptors
+   */
+  public int getNumAcceptors() {
+    return numAcceptors;
+  }
+
+  /**
+   * Gets the time allowed for a client to complete its TLS handshake, in
+   * milliseconds. A value of zero means no timeout.
+   *
+   * @return handshake timeout
+   */
+  public int getHandshakeTimeoutMs() {
+    return handshakeTimeoutMs;
+  }
+
+  /**
+   * Gets the time allowed for a client to send its request once its TLS
+   * handshake is complete, in milliseconds. A value of zero means no
+   * timeout.
+   *
+   * @return request timeout
+   */
+  public int getRequestTimeoutMs() {
+    return requestTimeoutMs;
+  }
+
+  /**
+   * Gets the number of threads that perform TLS handshakes.
+   *
+   * @return number of handshake threads
+   */
+  public int getNumHandshakeThreads() {
+    return numHandshakeThreads;
+  }
+
+  /**
+   * Gets the maximum number of TLS sessions cached for resumption. A value of
+   * zero means no limit.
+   *
+   * @return TLS session cache size
+   */
+  public int getTlsSessionCacheSize() {
+    return tlsSessionCacheSize;
+  }
+
+  /**
+   * Gets the time for which a TLS session may be resumed, in seconds. A value
+   * of zero means no limit.
+   *
+   * @return TLS session timeout
+   */
+  public int getTlsSessionTimeoutSec() {
+    return tlsSessionTimeoutSec;
+  }
+
+  /**
+   * Gets whether stateless TLS session tickets are issued to clients, so that
+   * they may resume sessions without the server caching them.
+   *
+   * @return whether TLS session tickets are enabled
+   */
+  public boolean isTlsSessionTickets() {
+    return tlsSessionTickets;
+  }
+
   /**
    * Gets the maximum number of CGI local redirects permitted by the server.
    *
@@ -196,6 +599,213 @@ public class ServerProperties {
     return maxLocalRedirects;
   }
 
+  /**
+   * Gets whether CGI scripts that support it are run as long-lived workers.
+   *
+   * @return true if CGI workers are enabled
+   */
+  public boolean isCgiWorkers() {
+    return cgiWorkers;
+  }
+
+  /**
+   * Gets the maximum number of worker processes for each CGI script run as
+   * a worker.
+   *
+   * @return CGI worker pool size
+   */
+  public int getCgiWorkerPoolSize() {
+    return cgiWorkerPoolSize;
+  }
+
+  /**
+   * Gets the number of requests a CGI worker handles before it is replaced,
+   * or 0 for no limit.
+   *
+   * @return maximum requests per CGI worker
+   */
+  public int getCgiWorkerMaxRequests() {
+    return cgiWorkerMaxRequests;
+  }
+
+  /**
+   * Gets how long a CGI worker may sit idle before it is stopped.
+   *
+   * @return CGI worker idle timeout, in seconds
+   */
+  public int getCgiWorkerIdleTimeoutSec() {
+    return cgiWorkerIdleTimeoutSec;
+  }
+
+  /**
+   * Gets the maximum total size of cached CGI responses. Zero disables
+   * caching.
+   *
+   * @return CGI cache size in bytes
+   */
+  public long getCgiCacheMaxBytes() {
+    return cgiCacheMaxBytes;
+  }
+
+  /**
+   * Gets the URL path prefixes under which identical concurrent requests for
+   * dynamic or generated responses share one response.
+   *
+   * @return coalescing prefixes
+   */
+  public List<String> getCoalescePrefixes() {
+    return coalescePrefixes;
+  }
+
+  /**
+   * Gets whether requests in secure domains are coalesced too. Each client
+   * certificate still gets its own response.
+   *
+   * @return true if secure domain requests are coalesced
+   */
+  public boolean isCoalesceSecureDomains() {
+    return coalesceSecureDomains;
+  }
+
+  /**
+   * Gets the maximum number of CGI scripts that may run at a time, across
+   * all scripts. Zero means no limit.
+   *
+   * @return global CGI concurrency limit
+   */
+  public int getCgiMaxConcurrent() {
+    return cgiMaxConcurrent;
+  }
+
+  /**
+   * Gets the maximum number of runs of any one CGI script that may be in
+   * progress at a time. Zero means no limit.
+   *
+   * @return per-script CGI concurrency limit
+   */
+  public int getCgiMaxConcurrentPerScript() {
+    return cgiMaxConcurrentPerScript;
+  }
+
+  /**
+   * Gets the maximum number of CGI requests that may wait for a CGI
+   * concurrency limit to allow them to run. Requests beyond these are told
+   * to slow down.
+   *
+   * @return CGI wait queue size
+   */
+  public int getCgiMaxQueued() {
+    return cgiMaxQueued;
+  }
+
+  /**
+   * Gets how long a CGI request may wait for a CGI concurrency limit to
+   * allow it to run before it is told to slow down.
+   *
+   * @return CGI queue timeout, in milliseconds
+   */
+  public int getCgiQueueTimeoutMs() {
+    return cgiQueueTimeoutMs;
+  }
+
+  /**
+   * Gets how long a CGI script in the server's CGI directory may run before
+   * it is stopped. Zero means no limit.
+   *
+   * @return CGI timeout, in milliseconds
+   */
+  public int getCgiTimeoutMs() {
+    return cgiTimeoutMs;
+  }
+
+  /**
+   * Gets how much output a CGI script in the server's CGI directory may
+   * write before it is stopped. Zero means no limit.
+   *
+   * @return CGI output limit, in bytes
+   */
+  public long getCgiMaxOutputBytes() {
+    return cgiMaxOutputBytes;
+  }
+
+  /**
+   * Gets the mappings of URL path prefixes to in-process handler classes.
+   *
+   * @return handlers
+   */
+  public List<HandlerMapping> getHandlers() {
+    return handlers;
+  }
+
+  /**
+   * Gets the mappings of URL path prefixes to FastCGI application endpoints.
+   *
+   * @return FastCGI gateways
+   */
+  public List<GatewayMapping> getFastCgiGateways() {
+    return fastCgiGateways;
+  }
+
+  /**
+   * Gets the maximum number of connections kept open to each FastCGI
+   * application.
+   *
+   * @return maximum FastCGI connections
+   */
+  public int getFastCgiMaxConnections() {
+    return fastCgiMaxConnections;
+  }
+
+  /**
+   * Gets the maximum number of requests multiplexed over each connection to
+   * a FastCGI application. Values greater than one require the application
+   * to support multiplexing.
+   *
+   * @return maximum requests per FastCGI connection
+   */
+  public int getFastCgiMaxRequestsPerConnection() {
+    return fastCgiMaxRequestsPerConnection;
+  }
+
+  /**
+   * Gets the mappings of URL path prefixes to SCGI application endpoints.
+   *
+   * @return SCGI gateways
+   */
+  public List<GatewayMapping> getScgiGateways() {
+    return scgiGateways;
+  }
+
+  /**
+   * Gets the maximum number of requests in progress at a time for each SCGI
+   * application.
+   *
+   * @return maximum concurrent SCGI requests
+   */
+  public int getScgiMaxConcurrentRequests() {
+    return scgiMaxConcurrentRequests;
+  }
+
+  /**
+   * Gets the number of connections to each SCGI application to open ahead of
+   * time.
+   *
+   * @return idle SCGI connections
+   */
+  public int getScgiIdleConnections() {
+    return scgiIdleConnections;
+  }
+
+  /**
+   * Gets how long to wait for more output from a FastCGI or SCGI application
+   * before giving up on a request. Zero means no limit.
+   *
+   * @return gateway timeout, in milliseconds
+   */
+  public int getGatewayTimeoutMs() {
+    return gatewayTimeoutMs;
+  }
+
   /**
    * Gets whether text response bodies are forced to use canonical (DOS) line
    * endings.
@@ -242,6 +852,78 @@ public class ServerProperties {
     return defaultCharset;
   }
 
+  /**
+   * Gets the maximum number of bytes of static responses kept in memory for
+   * reuse. A value of zero disables caching.
+   *
+   * @return static response cache size
+   */
+  public long getStaticCacheMaxBytes() {
+    return staticCacheMaxBytes;
+  }
+
+  /**
+   * Gets whether the root directories are watched for changes, so that cached
+   * content is dropped as soon as it changes instead of being checked each
+   * time it is served.
+   *
+   * @return whether to watch root directories
+   */
+  public boolean isWatchRoot() {
+    return watchRoot;
+  }
+
+  /**
+   * Gets the packed archive that static resources for the server's host are
+   * served from, instead of the root directory. A null value means that
+   * static resources are served from the root directory.
+   *
+   * @return packed archive, or null
+   */
+  public Path getArchive() {
+    return archive;
+  }
+
+  /**
+   * Gets the paths or URIs of resources to request while the server warms up,
+   * before it accepts connections.
+   *
+   * @return warm-up paths
+   */
+  public List<String> getWarmUpPaths() {
+    return warmUpPaths;
+  }
+
+  /**
+   * Gets the number of the most often successfully requested resources in the
+   * access log to request while the server warms up.
+   *
+   * @return number of top access log requests to warm up
+   */
+  public int getWarmUpTopPaths() {
+    return warmUpTopPaths;
+  }
+
+  /**
+   * Gets the most time, in milliseconds, that the server spends warming up.
+   * A value of zero disables warming up.
+   *
+   * @return warm-up time budget
+   */
+  public int getWarmUpBudgetMs() {
+    return warmUpBudgetMs;
+  }
+
+  /**
+   * Gets whether warm-up requests are repeated enough for the JIT compiler to
+   * optimize request handling, rather than made once each.
+   *
+   * @return whether to warm up the JIT compiler
+   */
+  public boolean isWarmUpJit() {
+    return warmUpJit;
+  }
+
   /**
    * Gets the site favicon.
    *
@@ -305,6 +987,35 @@ public class ServerProperties {
     return keystorePassword;
   }
 
+  /**
+   * Gets the type of key for a generated temporary server certificate.
+   *
+   * @return temporary certificate key type
+   */
+  public TempCertKeyType getTempCertKeyType() {
+    return tempCertKeyType;
+  }
+
+  /**
+   * Gets the directory where a generated temporary server certificate is kept
+   * for reuse across restarts. If null, the certificate is not kept.
+   *
+   * @return temporary certificate cache directory
+   */
+  public Path getTempCertCacheDir() {
+    return tempCertCacheDir;
+  }
+
+  /**
+   * Gets how often the keystore file is checked for changes, in seconds, so
+   * that new key material can be loaded. A value of zero disables checking.
+   *
+   * @return keystore check interval
+   */
+  public int getKeystoreCheckIntervalSec() {
+    return keystoreCheckIntervalSec;
+  }
+
   /**
    * Gets whether CGI meta-variables defined by Apache mod_ssl should be set
    * when executing a CGI script.
@@ -315,6 +1026,192 @@ public class ServerProperties {
     return setModSslCgiMetaVars;
   }
 
+  /**
+   * Gets the additional virtual hosts served alongside the main host.
+   *
+   * @return virtual hosts
+   */
+  public List<VirtualHost> getVirtualHosts() {
+    return virtualHosts;
+  }
+
+  /**
+   * Gets the virtual host for the server's own host, root, and related
+   * properties.
+   *
+   * @return default virtual host
+   */
+  public VirtualHost getDefaultVirtualHost() {
+    return defaultVirtualHost;
+  }
+
+  /**
+   * Gets the virtual host with the given name, ignoring case. If the name is
+   * null or does not match any additional virtual host, the default virtual
+   * host is returned.
+   *
+   * @param  name host name, usually from SNI
+   * @return      matching virtual host
+   */
+  public VirtualHost getVirtualHost(String name) {
+    if (name == null) {
+      return defaultVirtualHost;
+    }
+    return virtualHostsByName.getOrDefault(name.toLowerCase(Locale.ROOT),
+                                           defaultVirtualHost);
+  }
+
+  /**
+   * Modes for the executor that runs request handlers.
+   */
+  public enum ExecutorMode {
+    /**
+     * A fixed pool of platform threads, sized by the number of server threads.
+     */
+    FIXED("fixed"),
+    /**
+     * A new virtual thread for each request, without limit.
+     */
+    VIRTUAL("virtual"),
+    /**
+     * A new virtual thread for each request, with the number of concurrent
+     * requests limited by the maximum number of concurrent requests.
+     */
+    BOUNDED_VIRTUAL("bounded-virtual");
+
+    private final String configValue;
+
+    ExecutorMode(String configValue) {
+      this.configValue = configValue;
+    }
+
+    /**
+     * Gets the value used for this mode in server configuration.
+     *
+     * @return configuration value
+     */
+    public String getConfigValue() {
+      return configValue;
+    }
+
+    /**
+     * Gets the mode for a server configuration value.
+     *
+     * @param  configValue configuration value
+     * @return             executor mode
+     * @throws IllegalStateException if the value is not a known mode
+     */
+    public static ExecutorMode fromConfigValue(String configValue) {
+      for (ExecutorMode mode : values()) {
+        if (mode.configValue.equalsIgnoreCase(configValue)) {
+          return mode;
+        }
+      }
+      throw new IllegalStateException("Unsupported executor " + configValue);
+    }
+  }
+
+  /**
+   * Modes for the engine that accepts connections and performs TLS.
+   */
+  public enum EngineMode {
+    /**
+     * A blocking TLS server socket, where each connection is handled entirely
+     * by a single thread.
+     */
+    BLOCKING("blocking"),
+    /**
+     * A non-blocking selector loop that performs the TLS handshake and reads
+     * requests before handing them off to request handlers.
+     */
+    NIO("nio");
+
+    private final String configValue;
+
+    EngineMode(String configValue) {
+      this.configValue = configValue;
+    }
+
+    /**
+     * Gets the value used for this mode in server configuration.
+     *
+     * @return configuration value
+     */
+    public String getConfigValue() {
+      return configValue;
+    }
+
+    /**
+     * Gets the mode for a server configuration value.
+     *
+     * @param  configValue configuration value
+     * @return             engine mode
+     * @throws IllegalStateException if the value is not a known mode
+     */
+    public static EngineMode fromConfigValue(String configValue) {
+      for (EngineMode mode : values()) {
+        if (mode.configValue.equalsIgnoreCase(configValue)) {
+          return mode;
+        }
+      }
+      throw new IllegalStateException("Unsupported engine " + configValue);
+    }
+  }
+
+  /**
+   * Types of key for a generated temporary server certificate.
+   */
+  public enum TempCertKeyType {
+    /**
+     * A 2048-bit RSA key.
+     */
+    RSA_2048("rsa2048"),
+    /**
+     * A 4096-bit RSA key. This is the slowest to generate and to use in
+     * handshakes, but is the most widely supported.
+     */
+    RSA_4096("rsa4096"),
+    /**
+     * An ECDSA key on the NIST P-256 curve.
+     */
+    EC_P256("ec-p256"),
+    /**
+     * An Ed25519 key. Some older clients do not support these.
+     */
+    ED25519("ed25519");
+
+    private final String configValue;
+
+    TempCertKeyType(String configValue) {
+      this.configValue = configValue;
+    }
+
+    /**
+     * Gets the value used for this key type in server configuration.
+     *
+     * @return configuration value
+     */
+    public String getConfigValue() {
+      return configValue;
+    }
+
+    /**
+     * Gets the key type for a server configuration value.
+     *
+     * @param  configValue configuration value
+     * @return             key type
+     * @throws IllegalStateException if the value is not a known key type
+     */
+    public static TempCertKeyType fromConfigValue(String configValue) {
+      for (TempCertKeyType keyType : values()) {
+        if (keyType.configValue.equalsIgnoreCase(configValue)) {
+          return keyType;
+        }
+      }
+      throw new IllegalStateException("Unsupported tempCertKeyType " + configValue);
+    }
+  }
+
   /**
    * Gets a new builder for server properties.
    *
@@ -335,20 +1232,62 @@ public class ServerProperties {
     private int controlPort = DEFAULT_CONTROL_PORT;
     private long shutdownTimeoutSec = DEFAULT_SHUTDOWN_TIMEOUT_SEC;
     private int numThreads = DEFAULT_NUM_THREADS;
+    private ExecutorMode executor = DEFAULT_EXECUTOR;
+    private int maxConcurrentRequests = DEFAULT_MAX_CONCURRENT_REQUESTS;
+    private EngineMode engine = DEFAULT_ENGINE;
+    private int numAcceptors = DEFAULT_NUM_ACCEPTORS;
+    private int handshakeTimeoutMs = DEFAULT_HANDSHAKE_TIMEOUT_MS;
+    private int requestTimeoutMs = DEFAULT_REQUEST_TIMEOUT_MS;
+    private int numHandshakeThreads = DEFAULT_NUM_HANDSHAKE_THREADS;
+    private int tlsSessionCacheSize = DEFAULT_TLS_SESSION_CACHE_SIZE;
+    private int tlsSessionTimeoutSec = DEFAULT_TLS_SESSION_TIMEOUT_SEC;
+    private boolean tlsSessionTickets = DEFAULT_TLS_SESSION_TICKETS;
     private Path cgiDir = DEFAULT_CGI_DIR;
     private int maxLocalRedirects = DEFAULT_MAX_LOCAL_REDIRECTS;
+    private boolean cgiWorkers = DEFAULT_CGI_WORKERS;
+    private int cgiWorkerPoolSize = DEFAULT_CGI_WORKER_POOL_SIZE;
+    private int cgiWorkerMaxRequests = DEFAULT_CGI_WORKER_MAX_REQUESTS;
+    private int cgiWorkerIdleTimeoutSec = DEFAULT_CGI_WORKER_IDLE_TIMEOUT_SEC;
+    private long cgiCacheMaxBytes = DEFAULT_CGI_CACHE_MAX_BYTES;
+    private List<String> coalescePrefixes = DEFAULT_COALESCE_PREFIXES;
+    private boolean coalesceSecureDomains = DEFAULT_COALESCE_SECURE_DOMAINS;
+    private int cgiMaxConcurrent = DEFAULT_CGI_MAX_CONCURRENT;
+    private int cgiMaxConcurrentPerScript = DEFAULT_CGI_MAX_CONCURRENT_PER_SCRIPT;
+    private int cgiMaxQueued = DEFAULT_CGI_MAX_QUEUED;
+    private int cgiQueueTimeoutMs = DEFAULT_CGI_QUEUE_TIMEOUT_MS;
+    private int cgiTimeoutMs = DEFAULT_CGI_TIMEOUT_MS;
+    private long cgiMaxOutputBytes = DEFAULT_CGI_MAX_OUTPUT_BYTES;
+    private List<HandlerMapping> handlers = new ArrayList<>();
+    private List<GatewayMapping> fastCgiGateways = new ArrayList<>();
+    private int fastCgiMaxConnections = DEFAULT_FAST_CGI_MAX_CONNECTIONS;
+    private int fastCgiMaxRequestsPerConnection = DEFAULT_FAST_CGI_MAX_REQUESTS_PER_CONNECTION;
+    private List<GatewayMapping> scgiGateways = new ArrayList<>();
+    private int scgiMaxConcurrentRequests = DEFAULT_SCGI_MAX_CONCURRENT_REQUESTS;
+    private int scgiIdleConnections = DEFAULT_SCGI_IDLE_CONNECTIONS;
+    private int gatewayTimeoutMs = DEFAULT_GATEWAY_TIMEOUT_MS;
     private boolean forceCanonicalText = DEFAULT_FORCE_CANONICAL_TEXT;
     private List<String> textGeminiSuffixes = DEFAULT_TEXT_GEMINI_SUFFIXES;
     private String defaultContentType = DEFAULT_DEFAULT_CONTENT_TYPE;
     private boolean enableCharsetDetection = DEFAULT_ENABLE_CHARSET_DETECTION;
     private String defaultCharset = DEFAULT_DEFAULT_CHARSET;
+    private long staticCacheMaxBytes = DEFAULT_STATIC_CACHE_MAX_BYTES;
+    private boolean watchRoot = DEFAULT_WATCH_ROOT;
+    private Path archive = DEFAULT_ARCHIVE;
+    private List<String> warmUpPaths = DEFAULT_WARM_UP_PATHS;
+    private int warmUpTopPaths = DEFAULT_WARM_UP_TOP_PATHS;
+    private int warmUpBudgetMs = DEFAULT_WARM_UP_BUDGET_MS;
+    private boolean warmUpJit = DEFAULT_WARM_UP_JIT;
     private String favicon = DEFAULT_FAVICON;
     private List<String> feedPages = DEFAULT_FEED_PAGES;
     private Path logDir = DEFAULT_LOG_DIR;
     private List<SecureDomain> secureDomains = new ArrayList<>();
     private Path keystore = DEFAULT_KEYSTORE;
     private String keystorePassword = DEFAULT_KEYSTORE_PASSWORD;
+    private TempCertKeyType tempCertKeyType = DEFAULT_TEMP_CERT_KEY_TYPE;
+    private Path tempCertCacheDir = DEFAULT_TEMP_CERT_CACHE_DIR;
+    private int keystoreCheckIntervalSec = DEFAULT_KEYSTORE_CHECK_INTERVAL_SEC;
     private boolean setModSslCgiMetaVars = DEFAULT_SET_MOD_SSL_CGI_META_VARS;
+    private List<VirtualHost> virtualHosts = new ArrayList<>();
 
     public Builder root(Path root) {
       this.root = root;
@@ -374,6 +1313,46 @@ public class ServerProperties {
       this.numThreads = numThreads;
       return this;
     }
+    public Builder executor(ExecutorMode executor) {
+      this.executor = executor;
+      return this;
+    }
+    public Builder maxConcurrentRequests(int maxConcurrentRequests) {
+      this.maxConcurrentRequests = maxConcurrentRequests;
+      return this;
+    }
+    public Builder engine(EngineMode engine) {
+      this.engine = engine;
+      return this;
+    }
+    public Builder numAcceptors(int numAcceptors) {
+      this.numAcceptors = numAcceptors;
+      return this;
+    }
+    public Builder handshakeTimeoutMs(int handshakeTimeoutMs) {
+      this.handshakeTimeoutMs = handshakeTimeoutMs;
+      return this;
+    }
+    public Builder requestTimeoutMs(int requestTimeoutMs) {
+      this.requestTimeoutMs = requestTimeoutMs;
+      return this;
+    }
+    public Builder numHandshakeThreads(int numHandshakeThreads) {
+      this.numHandshakeThreads = numHandshakeThreads;
+      return this;
+    }
+    public Builder tlsSessionCacheSize(int tlsSessionCacheSize) {
+      this.tlsSessionCacheSize = tlsSessionCacheSize;
+      return this;
+    }
+    public Builder tlsSessionTimeoutSec(int tlsSessionTimeoutSec) {
+      this.tlsSessionTimeoutSec = tlsSessionTimeoutSec;
+      return this;
+    }
+    public Builder tlsSessionTickets(boolean tlsSessionTickets) {
+      this.tlsSessionTickets = tlsSessionTickets;
+      return this;
+    }
     public Builder cgiDir(Path cgiDir) {
       this.cgiDir = cgiDir;
       return this;
@@ -382,6 +1361,90 @@ public class ServerProperties {
       this.maxLocalRedirects = maxLocalRedirects;
       return this;
     }
+    public Builder cgiWorkers(boolean cgiWorkers) {
+      this.cgiWorkers = cgiWorkers;
+      return this;
+    }
+    public Builder cgiWorkerPoolSize(int cgiWorkerPoolSize) {
+      this.cgiWorkerPoolSize = cgiWorkerPoolSize;
+      return this;
+    }
+    public Builder cgiWorkerMaxRequests(int cgiWorkerMaxRequests) {
+      this.cgiWorkerMaxRequests = cgiWorkerMaxRequests;
+      return this;
+    }
+    public Builder cgiWorkerIdleTimeoutSec(int cgiWorkerIdleTimeoutSec) {
+      this.cgiWorkerIdleTimeoutSec = cgiWorkerIdleTimeoutSec;
+      return this;
+    }
+    public Builder cgiCacheMaxBytes(long cgiCacheMaxBytes) {
+      this.cgiCacheMaxBytes = cgiCacheMaxBytes;
+      return this;
+    }
+    public Builder coalescePrefixes(List<String> coalescePrefixes) {
+      this.coalescePrefixes = coalescePrefixes;
+      return this;
+    }
+    public Builder coalesceSecureDomains(boolean coalesceSecureDomains) {
+      this.coalesceSecureDomains = coalesceSecureDomains;
+      return this;
+    }
+    public Builder cgiMaxConcurrent(int cgiMaxConcurrent) {
+      this.cgiMaxConcurrent = cgiMaxConcurrent;
+      return this;
+    }
+    public Builder cgiMaxConcurrentPerScript(int cgiMaxConcurrentPerScript) {
+      this.cgiMaxConcurrentPerScript = cgiMaxConcurrentPerScript;
+      return this;
+    }
+    public Builder cgiMaxQueued(int cgiMaxQueued) {
+      this.cgiMaxQueued = cgiMaxQueued;
+      return this;
+    }
+    public Builder cgiQueueTimeoutMs(int cgiQueueTimeoutMs) {
+      this.cgiQueueTimeoutMs = cgiQueueTimeoutMs;
+      return this;
+    }
+    public Builder cgiTimeoutMs(int cgiTimeoutMs) {
+      this.cgiTimeoutMs = cgiTimeoutMs;
+      return this;
+    }
+    public Builder cgiMaxOutputBytes(long cgiMaxOutputBytes) {
+      this.cgiMaxOutputBytes = cgiMaxOutputBytes;
+      return this;
+    }
+    public Builder handlers(List<HandlerMapping> handlers) {
+      this.handlers = handlers;
+      return this;
+    }
+    public Builder fastCgiGateways(List<GatewayMapping> fastCgiGateways) {
+      this.fastCgiGateways = fastCgiGateways;
+      return this;
+    }
+    public Builder fastCgiMaxConnections(int fastCgiMaxConnections) {
+      this.fastCgiMaxConnections = fastCgiMaxConnections;
+      return this;
+    }
+    public Builder fastCgiMaxRequestsPerConnection(int fastCgiMaxRequestsPerConnection) {
+      this.fastCgiMaxRequestsPerConnection = fastCgiMaxRequestsPerConnection;
+      return this;
+    }
+    public Builder scgiGateways(List<GatewayMapping> scgiGateways) {
+      this.scgiGateways = scgiGateways;
+      return this;
+    }
+    public Builder scgiMaxConcurrentRequests(int scgiMaxConcurrentRequests) {
+      this.scgiMaxConcurrentRequests = scgiMaxConcurrentRequests;
+      return this;
+    }
+    public Builder scgiIdleConnections(int scgiIdleConnections) {
+      this.scgiIdleConnections = scgiIdleConnections;
+      return this;
+    }
+    public Builder gatewayTimeoutMs(int gatewayTimeoutMs) {
+      this.gatewayTimeoutMs = gatewayTimeoutMs;
+      return this;
+    }
     public Builder forceCanonicalText(boolean forceCanonicalText) {
       this.forceCanonicalText = forceCanonicalText;
       return this;
@@ -402,6 +1465,34 @@ public class ServerProperties {
       this.defaultCharset = defaultCharset;
       return this;
     }
+    public Builder staticCacheMaxBytes(long staticCacheMaxBytes) {
+      this.staticCacheMaxBytes = staticCacheMaxBytes;
+      return this;
+    }
+    public Builder watchRoot(boolean watchRoot) {
+      this.watchRoot = watchRoot;
+      return this;
+    }
+    public Builder archive(Path archive) {
+      this.archive = archive;
+      return this;
+    }
+    public Builder warmUpPaths(List<String> warmUpPaths) {
+      this.warmUpPaths = warmUpPaths;
+      return this;
+    }
+    public Builder warmUpTopPaths(int warmUpTopPaths) {
+      this.warmUpTopPaths = warmUpTopPaths;
+      return this;
+    }
+    public Builder warmUpBudgetMs(int warmUpBudgetMs) {
+      this.warmUpBudgetMs = warmUpBudgetMs;
+      return this;
+    }
+    public Builder warmUpJit(boolean warmUpJit) {
+      this.warmUpJit = warmUpJit;
+      return this;
+    }
     public Builder favicon(String favicon) {
       this.favicon = favicon;
       return this;
@@ -426,10 +1517,26 @@ public class ServerProperties {
       this.keystorePassword = keystorePassword;
       return this;
     }
+    public Builder tempCertKeyType(TempCertKeyType tempCertKeyType) {
+      this.tempCertKeyType = tempCertKeyType;
+      return this;
+    }
+    public Builder tempCertCacheDir(Path tempCertCacheDir) {
+      this.tempCertCacheDir = tempCertCacheDir;
+      return this;
+    }
+    public Builder keystoreCheckIntervalSec(int keystoreCheckIntervalSec) {
+      this.keystoreCheckIntervalSec = keystoreCheckIntervalSec;
+      return this;
+    }
     public Builder setModSslCgiMetaVars(boolean setModSslCgiMetaVars) {
       this.setModSslCgiMetaVars = setModSslCgiMetaVars;
       return this;
     }
+    public Builder virtualHosts(List<VirtualHost> virtualHosts) {
+      this.virtualHosts = virtualHosts;
+      return this;
+    }
 
     public ServerProperties build() {
       return new ServerProperties(
@@ -439,20 +1546,62 @@ public class ServerProperties {
         controlPort,
         shutdownTimeoutSec,
         numThreads,
+        executor,
+        maxConcurrentRequests,
+        engine,
+        numAcceptors,
+        handshakeTimeoutMs,
+        requestTimeoutMs,
+        numHandshakeThreads,
+        tlsSessionCacheSize,
+        tlsSessionTimeoutSec,
+        tlsSessionTickets,
         cgiDir,
         maxLocalRedirects,
+        cgiWorkers,
+        cgiWorkerPoolSize,
+        cgiWorkerMaxRequests,
+        cgiWorkerIdleTimeoutSec,
+        cgiCacheMaxBytes,
+        coalescePrefixes,
+        coalesceSecureDomains,
+        cgiMaxConcurrent,
+        cgiMaxConcurrentPerScript,
+        cgiMaxQueued,
+        cgiQueueTimeoutMs,
+        cgiTimeoutMs,
+        cgiMaxOutputBytes,
+        handlers,
+        fastCgiGateways,
+        fastCgiMaxConnections,
+        fastCgiMaxRequestsPerConnection,
+        scgiGateways,
+        scgiMaxConcurrentRequests,
+        scgiIdleConnections,
+        gatewayTimeoutMs,
         forceCanonicalText,
         textGeminiSuffixes,
         defaultContentType,
         enableCharsetDetection,
         defaultCharset,
+        staticCacheMaxBytes,
+        watchRoot,
+        archive,
+        warmUpPaths,
+        warmUpTopPaths,
+        warmUpBudgetMs,
+        warmUpJit,
         favicon,
         feedPages,
         logDir,
         secureDomains,
         keystore,
         keystorePassword,
-        setModSslCgiMetaVars
+        tempCertKeyType,
+        tempCertCacheDir,
+        keystoreCheckIntervalSec,
+        setModSslCgiMetaVars,
+        virtualHosts
       );
     }
   }
@@ -52,9 +52,70 @@ public class ServerPropertiesPropertiesLoader {
                                          ServerProperties.DEFAULT_SHUTDOWN_TIMEOUT_SEC));
     b.numThreads(getIntProperty(props, "numThreads",
                                 ServerProperties.DEFAULT_NUM_THREADS));
+    if (props.containsKey("executor")) {
+      b.executor(ServerProperties.ExecutorMode.fromConfigValue(props.getProperty("executor")));
+    }
+    b.maxConcurrentRequests(getIntProperty(props, "maxConcurrentRequests",
+                                           ServerProperties.DEFAULT_MAX_CONCURRENT_REQUESTS));
+    if (props.containsKey("engine")) {
+      b.engine(ServerProperties.EngineMode.fromConfigValue(props.getProperty("engine")));
+    }
+    b.numAcceptors(getIntProperty(props, "numAcceptors",
+                                  ServerProperties.DEFAULT_NUM_ACCEPTORS));
+    b.handshakeTimeoutMs(getIntProperty(props, "handshakeTimeoutMs",
+                                        ServerProperties.DEFAULT_HANDSHAKE_TIMEOUT_MS));
+    b.requestTimeoutMs(getIntProperty(props, "requestTimeoutMs",
+                                      ServerProperties.DEFAULT_REQUEST_TIMEOUT_MS));
+    b.numHandshakeThreads(getIntProperty(props, "numHandshakeThreads",
+                                         ServerProperties.DEFAULT_NUM_HANDSHAKE_THREADS));
+    b.tlsSessionCacheSize(getIntProperty(props, "tlsSessionCacheSize",
+                                         ServerProperties.DEFAULT_TLS_SESSION_CACHE_SIZE));
+    b.tlsSessionTimeoutSec(getIntProperty(props, "tlsSessionTimeoutSec",
+                                          ServerProperties.DEFAULT_TLS_SESSION_TIMEOUT_SEC));
+    b.tlsSessionTickets(getBooleanProperty(props, "tlsSessionTickets",
+                                           ServerProperties.DEFAULT_TLS_SESSION_TICKETS));
     b.cgiDir(getPathProperty(props, "cgiDir", ServerProperties.DEFAULT_CGI_DIR));
     b.maxLocalRedirects(getIntProperty(props, "maxLocalRedirects",
                                        ServerProperties.DEFAULT_MAX_LOCAL_REDIRECTS));
+    b.cgiWorkers(getBooleanProperty(props, "cgiWorkers",
+                                    ServerProperties.DEFAULT_CGI_WORKERS));
+    b.cgiWorkerPoolSize(getIntProperty(props, "cgiWorkerPoolSize",
+                                       ServerProperties.DEFAULT_CGI_WORKER_POOL_SIZE));
+    b.cgiWorkerMaxRequests(getIntProperty(props, "cgiWorkerMaxRequests",
+                                          ServerProperties.DEFAULT_CGI_WORKER_MAX_REQUESTS));
+    b.cgiWorkerIdleTimeoutSec(getIntProperty(props, "cgiWorkerIdleTimeoutSec",
+                                             ServerProperties.DEFAULT_CGI_WORKER_IDLE_TIMEOUT_SEC));
+    b.cgiCacheMaxBytes(getLongProperty(props, "cgiCacheMaxBytes",
+                                       ServerProperties.DEFAULT_CGI_CACHE_MAX_BYTES));
+    b.coalescePrefixes(getStringListProperty(props, "coalescePrefixes",
+                                             ServerProperties.DEFAULT_COALESCE_PREFIXES));
+    b.coalesceSecureDomains(getBooleanProperty(props, "coalesceSecureDomains",
+                                               ServerProperties.DEFAULT_COALESCE_SECURE_DOMAINS));
+    b.cgiMaxConcurrent(getIntProperty(props, "cgiMaxConcurrent",
+                                      ServerProperties.DEFAULT_CGI_MAX_CONCURRENT));
+    b.cgiMaxConcurrentPerScript(getIntProperty(props, "cgiMaxConcurrentPerScript",
+                                               ServerProperties.DEFAULT_CGI_MAX_CONCURRENT_PER_SCRIPT));
+    b.cgiMaxQueued(getIntProperty(props, "cgiMaxQueued",
+                                  ServerProperties.DEFAULT_CGI_MAX_QUEUED));
+    b.cgiQueueTimeoutMs(getIntProperty(props, "cgiQueueTimeoutMs",
+                                       ServerProperties.DEFAULT_CGI_QUEUE_TIMEOUT_MS));
+    b.cgiTimeoutMs(getIntProperty(props, "cgiTimeoutMs",
+                                  ServerProperties.DEFAULT_CGI_TIMEOUT_MS));
+    b.cgiMaxOutputBytes(getLongProperty(props, "cgiMaxOutputBytes",
+                                        ServerProperties.DEFAULT_CGI_MAX_OUTPUT_BYTES));
+    b.handlers(buildHandlerMappings(props, "handler."));
+    b.fastCgiGateways(buildGatewayMappings(props, "fastCgiGateway."));
+    b.fastCgiMaxConnections(getIntProperty(props, "fastCgiMaxConnections",
+                                           ServerProperties.DEFAULT_FAST_CGI_MAX_CONNECTIONS));
+    b.fastCgiMaxRequestsPerConnection(getIntProperty(props, "fastCgiMaxRequestsPerConnection",
+                                                     ServerProperties.DEFAULT_FAST_CGI_MAX_REQUESTS_PER_CONNECTION));
+    b.scgiGateways(buildGatewayMappings(props, "scgiGateway."));
+    b.scgiMaxConcurrentRequests(getIntProperty(props, "scgiMaxConcurrentRequests",
+                                               ServerProperties.DEFAULT_SCGI_MAX_CONCURRENT_REQUESTS));
+    b.scgiIdleConnections(getIntProperty(props, "scgiIdleConnections",
+                                         ServerProperties.DEFAULT_SCGI_IDLE_CONNECTIONS));
+    b.gatewayTimeoutMs(getIntProperty(props, "gatewayTimeoutMs",
+                                      ServerProperties.DEFAULT_GATEWAY_TIMEOUT_MS));
     b.forceCanonicalText(getBooleanProperty(props, "forceCanonicalText",
                                             ServerProperties.DEFAULT_FORCE_CANONICAL_TEXT));
     b.textGeminiSuffixes(getStringListProperty(props, "textGeminiSuffixes",
@@ -65,6 +126,19 @@ public class ServerPropertiesPropertiesLoader {
                                                 ServerProperties.DEFAULT_ENABLE_CHARSET_DETECTION));
     b.defaultCharset(props.getProperty("defaultCharset",
                                        ServerProperties.DEFAULT_DEFAULT_CHARSET));
+    b.staticCacheMaxBytes(getLongProperty(props, "staticCacheMaxBytes",
+                                          ServerProperties.DEFAULT_STATIC_CACHE_MAX_BYTES));
+    b.watchRoot(getBooleanProperty(props, "watchRoot",
+                                   ServerProperties.DEFAULT_WATCH_ROOT));
+    b.archive(getPathProperty(props, "archive", ServerProperties.DEFAULT_ARCHIVE));
+    b.warmUpPaths(getStringListProperty(props, "warmUpPaths",
+                                        ServerProperties.DEFAULT_WARM_UP_PATHS));
+    b.warmUpTopPaths(getIntProperty(props, "warmUpTopPaths",
+                                    ServerProperties.DEFAULT_WARM_UP_TOP_PATHS));
+    b.warmUpBudgetMs(getIntProperty(props, "warmUpBudgetMs",
+                                    ServerProperties.DEFAULT_WARM_UP_BUDGET_MS));
+    b.warmUpJit(getBooleanProperty(props, "warmUpJit",
+                                   ServerProperties.DEFAULT_WARM_UP_JIT));
     b.favicon(props.getProperty("favicon", ServerProperties.DEFAULT_FAVICON));
     // Counting emoji in Java just ain't reliable
     // https://lemire.me/blog/2018/06/15/emojis-java-and-strings/
@@ -79,11 +153,19 @@ public class ServerPropertiesPropertiesLoader {
                                ServerProperties.DEFAULT_KEYSTORE));
     b.keystorePassword(props.getProperty("keystorePassword",
                                          ServerProperties.DEFAULT_KEYSTORE_PASSWORD));
+    if (props.containsKey("tempCertKeyType")) {
+      b.tempCertKeyType(ServerProperties.TempCertKeyType.fromConfigValue(props.getProperty("tempCertKeyType")));
+    }
+    b.tempCertCacheDir(getPathProperty(props, "tempCertCacheDir",
+                                       ServerProperties.DEFAULT_TEMP_CERT_CACHE_DIR));
+    b.keystoreCheckIntervalSec(getIntProperty(props, "keystoreCheckIntervalSec",
+                                              ServerProperties.DEFAULT_KEYSTORE_CHECK_INTERVAL_SEC));
     b.setModSslCgiMetaVars(getBooleanProperty(props, "setModSslCgiMetaVars",
                                               ServerProperties.DEFAULT_SET_MOD_SSL_CGI_META_VARS));
 
     try {
-      b.secureDomains(buildSecureDomains(props));
+      b.secureDomains(buildSecureDomains(props, "secureDomain."));
+      b.virtualHosts(buildVirtualHosts(props));
     } catch (GeneralSecurityException | IOException e) {
       throw new IllegalStateException("Failed to build secure domain", e);
     }
@@ -132,11 +214,11 @@ public class ServerPropertiesPropertiesLoader {
     return Boolean.parseBoolean(props.getProperty(key));
   }
 
-  private List<SecureDomain> buildSecureDomains(Properties props)
+  private List<SecureDomain> buildSecureDomains(Properties props, String prefix)
     throws GeneralSecurityException, IOException {
     List<SecureDomain> secureDomains = new ArrayList<>();
     for (String key : props.stringPropertyNames()) {
-      if (!key.startsWith("secureDomain.")) {
+      if (!key.startsWith(prefix)) {
         continue;
       }
       String[] domainValues = props.getProperty(key).split(":", 3);
@@ -156,4 +238,67 @@ public class ServerPropertiesPropertiesLoader {
     return secureDomains;
   }
 
+  private List<HandlerMapping> buildHandlerMappings(Properties props,
+                                                    String prefix) {
+    List<HandlerMapping> handlerMappings = new ArrayList<>();
+    for (String key : props.stringPropertyNames()) {
+      if (!key.startsWith(prefix)) {
+        continue;
+      }
+      handlerMappings.add(new HandlerMapping(key.substring(prefix.length()),
+                                             props.getProperty(key)));
+    }
+    return handlerMappings;
+  }
+
+  private List<GatewayMapping> buildGatewayMappings(Properties props,
+                                                    String prefix) {
+    List<GatewayMapping> gatewayMappings = new ArrayList<>();
+    for (String key : props.stringPropertyNames()) {
+      if (!key.startsWith(prefix)) {
+        continue;
+      }
+      gatewayMappings.add(new GatewayMapping(key.substring(prefix.length()),
+                                             props.getProperty(key)));
+    }
+    return gatewayMappings;
+  }
+
+  private static final String VIRTUAL_HOST_PREFIX = "virtualHost.";
+  private static final String VIRTUAL_HOST_ROOT_SUFFIX = ".root";
+
+  private List<VirtualHost> buildVirtualHosts(Properties props)
+    throws GeneralSecurityException, IOException {
+    List<VirtualHost> virtualHosts = new ArrayList<>();
+    // Each virtual host is identified by its root property, e.g.,
+    // virtualHost.example.com.root. Host names contain dots, so the other
+    // properties for the host are looked up using the name found here.
+    for (String key : props.stringPropertyNames()) {
+      if (!key.startsWith(VIRTUAL_HOST_PREFIX) ||
+          !key.endsWith(VIRTUAL_HOST_ROOT_SUFFIX)) {
+        continue;
+      }
+      String host = key.substring(VIRTUAL_HOST_PREFIX.length(),
+                                  key.length() - VIRTUAL_HOST_ROOT_SUFFIX.length());
+      String prefix = VIRTUAL_HOST_PREFIX + host + ".";
+      virtualHosts.add(new VirtualHost(
+          host,
+          getPathProperty(props, key, null),
+          getPathProperty(props, prefix + "cgiDir",
+                          ServerProperties.DEFAULT_CGI_DIR),
+          getIntProperty(props, prefix + "cgiTimeoutMs",
+                         ServerProperties.DEFAULT_CGI_TIMEOUT_MS),
+          getLongProperty(props, prefix + "cgiMaxOutputBytes",
+                          ServerProperties.DEFAULT_CGI_MAX_OUTPUT_BYTES),
+          buildSecureDomains(props, prefix + "secureDomain."),
+          getStringListProperty(props, prefix + "feedPages",
+                                ServerProperties.DEFAULT_FEED_PAGES),
+          getPathProperty(props, prefix + "keystore",
+                          ServerProperties.DEFAULT_KEYSTORE),
+          props.getProperty(prefix + "keystorePassword",
+                            ServerProperties.DEFAULT_KEYSTORE_PASSWORD)));
+    }
+    return virtualHosts;
+  }
+
 }
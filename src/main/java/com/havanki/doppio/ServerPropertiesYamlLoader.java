@@ -68,9 +68,69 @@ public class ServerPropertiesYamlLoader {
                                  ServerProperties.DEFAULT_SHUTDOWN_TIMEOUT_SEC));
     b.numThreads(getInt(m, "numThreads",
                         ServerProperties.DEFAULT_NUM_THREADS));
+    if (m.containsKey("executor")) {
+      b.executor(ServerProperties.ExecutorMode.fromConfigValue((String) m.get("executor")));
+    }
+    b.maxConcurrentRequests(getInt(m, "maxConcurrentRequests",
+                                   ServerProperties.DEFAULT_MAX_CONCURRENT_REQUESTS));
+    if (m.containsKey("engine")) {
+      b.engine(ServerProperties.EngineMode.fromConfigValue((String) m.get("engine")));
+    }
+    b.numAcceptors(getInt(m, "numAcceptors",
+                          ServerProperties.DEFAULT_NUM_ACCEPTORS));
+    b.handshakeTimeoutMs(getInt(m, "handshakeTimeoutMs",
+                                ServerProperties.DEFAULT_HANDSHAKE_TIMEOUT_MS));
+    b.requestTimeoutMs(getInt(m, "requestTimeoutMs",
+                              ServerProperties.DEFAULT_REQUEST_TIMEOUT_MS));
+    b.numHandshakeThreads(getInt(m, "numHandshakeThreads",
+                                 ServerProperties.DEFAULT_NUM_HANDSHAKE_THREADS));
+    b.tlsSessionCacheSize(getInt(m, "tlsSessionCacheSize",
+                                 ServerProperties.DEFAULT_TLS_SESSION_CACHE_SIZE));
+    b.tlsSessionTimeoutSec(getInt(m, "tlsSessionTimeoutSec",
+                                  ServerProperties.DEFAULT_TLS_SESSION_TIMEOUT_SEC));
+    b.tlsSessionTickets(getBoolean(m, "tlsSessionTickets",
+                                   ServerProperties.DEFAULT_TLS_SESSION_TICKETS));
     b.cgiDir(getPath(m, "cgiDir", ServerProperties.DEFAULT_CGI_DIR));
     b.maxLocalRedirects(getInt(m, "maxLocalRedirects",
                                ServerProperties.DEFAULT_MAX_LOCAL_REDIRECTS));
+    b.cgiWorkers(getBoolean(m, "cgiWorkers", ServerProperties.DEFAULT_CGI_WORKERS));
+    b.cgiWorkerPoolSize(getInt(m, "cgiWorkerPoolSize",
+                               ServerProperties.DEFAULT_CGI_WORKER_POOL_SIZE));
+    b.cgiWorkerMaxRequests(getInt(m, "cgiWorkerMaxRequests",
+                                  ServerProperties.DEFAULT_CGI_WORKER_MAX_REQUESTS));
+    b.cgiWorkerIdleTimeoutSec(getInt(m, "cgiWorkerIdleTimeoutSec",
+                                     ServerProperties.DEFAULT_CGI_WORKER_IDLE_TIMEOUT_SEC));
+    b.cgiCacheMaxBytes(getLong(m, "cgiCacheMaxBytes",
+                               ServerProperties.DEFAULT_CGI_CACHE_MAX_BYTES));
+    b.coalescePrefixes(getStringList(m, "coalescePrefixes",
+                                     ServerProperties.DEFAULT_COALESCE_PREFIXES));
+    b.coalesceSecureDomains(getBoolean(m, "coalesceSecureDomains",
+                                       ServerProperties.DEFAULT_COALESCE_SECURE_DOMAINS));
+    b.cgiMaxConcurrent(getInt(m, "cgiMaxConcurrent",
+                              ServerProperties.DEFAULT_CGI_MAX_CONCURRENT));
+    b.cgiMaxConcurrentPerScript(getInt(m, "cgiMaxConcurrentPerScript",
+                                       ServerProperties.DEFAULT_CGI_MAX_CONCURRENT_PER_SCRIPT));
+    b.cgiMaxQueued(getInt(m, "cgiMaxQueued",
+                          ServerProperties.DEFAULT_CGI_MAX_QUEUED));
+    b.cgiQueueTimeoutMs(getInt(m, "cgiQueueTimeoutMs",
+                               ServerProperties.DEFAULT_CGI_QUEUE_TIMEOUT_MS));
+    b.cgiTimeoutMs(getInt(m, "cgiTimeoutMs",
+                          ServerProperties.DEFAULT_CGI_TIMEOUT_MS));
+    b.cgiMaxOutputBytes(getLong(m, "cgiMaxOutputBytes",
+                                ServerProperties.DEFAULT_CGI_MAX_OUTPUT_BYTES));
+    b.handlers(buildHandlerMappings(m, "handlers"));
+    b.fastCgiGateways(buildGatewayMappings(m, "fastCgiGateways"));
+    b.fastCgiMaxConnections(getInt(m, "fastCgiMaxConnections",
+                                   ServerProperties.DEFAULT_FAST_CGI_MAX_CONNECTIONS));
+    b.fastCgiMaxRequestsPerConnection(getInt(m, "fastCgiMaxRequestsPerConnection",
+                                             ServerProperties.DEFAULT_FAST_CGI_MAX_REQUESTS_PER_CONNECTION));
+    b.scgiGateways(buildGatewayMappings(m, "scgiGateways"));
+    b.scgiMaxConcurrentRequests(getInt(m, "scgiMaxConcurrentRequests",
+                                       ServerProperties.DEFAULT_SCGI_MAX_CONCURRENT_REQUESTS));
+    b.scgiIdleConnections(getInt(m, "scgiIdleConnections",
+                                 ServerProperties.DEFAULT_SCGI_IDLE_CONNECTIONS));
+    b.gatewayTimeoutMs(getInt(m, "gatewayTimeoutMs",
+                              ServerProperties.DEFAULT_GATEWAY_TIMEOUT_MS));
     b.forceCanonicalText(getBoolean(m, "forceCanonicalText",
                                     ServerProperties.DEFAULT_FORCE_CANONICAL_TEXT));
     b.textGeminiSuffixes(getStringList(m, "textGeminiSuffixes",
@@ -81,6 +141,17 @@ public class ServerPropertiesYamlLoader {
                                         ServerProperties.DEFAULT_ENABLE_CHARSET_DETECTION));
     b.defaultCharset(getString(m, "defaultCharset",
                                ServerProperties.DEFAULT_DEFAULT_CHARSET));
+    b.staticCacheMaxBytes(getLong(m, "staticCacheMaxBytes",
+                                  ServerProperties.DEFAULT_STATIC_CACHE_MAX_BYTES));
+    b.watchRoot(getBoolean(m, "watchRoot", ServerProperties.DEFAULT_WATCH_ROOT));
+    b.archive(getPath(m, "archive", ServerProperties.DEFAULT_ARCHIVE));
+    b.warmUpPaths(getStringList(m, "warmUpPaths",
+                                ServerProperties.DEFAULT_WARM_UP_PATHS));
+    b.warmUpTopPaths(getInt(m, "warmUpTopPaths",
+                            ServerProperties.DEFAULT_WARM_UP_TOP_PATHS));
+    b.warmUpBudgetMs(getInt(m, "warmUpBudgetMs",
+                            ServerProperties.DEFAULT_WARM_UP_BUDGET_MS));
+    b.warmUpJit(getBoolean(m, "warmUpJit", ServerProperties.DEFAULT_WARM_UP_JIT));
     b.favicon(getString(m, "favicon", ServerProperties.DEFAULT_FAVICON));
     b.feedPages(getStringList(m, "feedPages",
                               ServerProperties.DEFAULT_FEED_PAGES));
@@ -89,11 +160,19 @@ public class ServerPropertiesYamlLoader {
                        ServerProperties.DEFAULT_KEYSTORE));
     b.keystorePassword(getString(m, "keystorePassword",
                                  ServerProperties.DEFAULT_KEYSTORE_PASSWORD));
+    if (m.containsKey("tempCertKeyType")) {
+      b.tempCertKeyType(ServerProperties.TempCertKeyType.fromConfigValue((String) m.get("tempCertKeyType")));
+    }
+    b.tempCertCacheDir(getPath(m, "tempCertCacheDir",
+                               ServerProperties.DEFAULT_TEMP_CERT_CACHE_DIR));
+    b.keystoreCheckIntervalSec(getInt(m, "keystoreCheckIntervalSec",
+                                      ServerProperties.DEFAULT_KEYSTORE_CHECK_INTERVAL_SEC));
     b.setModSslCgiMetaVars(getBoolean(m, "setModSslCgiMetaVars",
                                       ServerProperties.DEFAULT_SET_MOD_SSL_CGI_META_VARS));
 
     try {
       b.secureDomains(buildSecureDomains(m));
+      b.virtualHosts(buildVirtualHosts(m));
     } catch (GeneralSecurityException | IOException e) {
       throw new IllegalStateException("Failed to build secure domain", e);
     }
@@ -187,4 +266,57 @@ public class ServerPropertiesYamlLoader {
     }
     return secureDomains;
   }
+
+  private List<HandlerMapping> buildHandlerMappings(Map<String, Object> m,
+                                                    String key) {
+    List<HandlerMapping> handlerMappings = new ArrayList<>();
+    if (!m.containsKey(key)) {
+      return handlerMappings;
+    }
+    Map<String, Object> hm = (Map<String, Object>) m.get(key);
+    for (String prefix : hm.keySet()) {
+      handlerMappings.add(new HandlerMapping(prefix, (String) hm.get(prefix)));
+    }
+    return handlerMappings;
+  }
+
+  private List<GatewayMapping> buildGatewayMappings(Map<String, Object> m,
+                                                    String key) {
+    List<GatewayMapping> gatewayMappings = new ArrayList<>();
+    if (!m.containsKey(key)) {
+      return gatewayMappings;
+    }
+    Map<String, Object> gm = (Map<String, Object>) m.get(key);
+    for (String prefix : gm.keySet()) {
+      gatewayMappings.add(new GatewayMapping(prefix, (String) gm.get(prefix)));
+    }
+    return gatewayMappings;
+  }
+
+  private List<VirtualHost> buildVirtualHosts(Map<String, Object> m)
+    throws GeneralSecurityException, IOException {
+    List<VirtualHost> virtualHosts = new ArrayList<>();
+    if (!m.containsKey("virtualHosts")) {
+      return virtualHosts;
+    }
+    Map<String, Object> vhm = (Map<String, Object>) m.get("virtualHosts");
+    for (String host : vhm.keySet()) {
+      Map<String, Object> virtualHostInfo = (Map<String, Object>) vhm.get(host);
+      virtualHosts.add(new VirtualHost(
+          host,
+          getPath(virtualHostInfo, "root", null),
+          getPath(virtualHostInfo, "cgiDir", ServerProperties.DEFAULT_CGI_DIR),
+          getInt(virtualHostInfo, "cgiTimeoutMs",
+                 ServerProperties.DEFAULT_CGI_TIMEOUT_MS),
+          getLong(virtualHostInfo, "cgiMaxOutputBytes",
+                  ServerProperties.DEFAULT_CGI_MAX_OUTPUT_BYTES),
+          buildSecureDomains(virtualHostInfo),
+          getStringList(virtualHostInfo, "feedPages",
+                        ServerProperties.DEFAULT_FEED_PAGES),
+          getPath(virtualHostInfo, "keystore", ServerProperties.DEFAULT_KEYSTORE),
+          getString(virtualHostInfo, "keystorePassword",
+                    ServerProperties.DEFAULT_KEYSTORE_PASSWORD)));
+    }
+    return virtualHosts;
+  }
 }
@@ -0,0 +1,165 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+
+/**
+ * A client connection over a blocking TLS socket.
+ */
+public class SocketClientConnection implements ClientConnection {
+
+  // TLS sockets only accept data from byte arrays, so heap buffers are used.
+  private static final BufferPool BUFFER_POOL =
+    new BufferPool(BufferPool.TLS_RECORD_SIZE, false, 64);
+
+  private final SSLSocket socket;
+
+  /**
+   * Creates a new connection.
+   *
+   * @param  socket client socket
+   */
+  public SocketClientConnection(SSLSocket socket) {
+    this.socket = socket;
+  }
+
+  @Override
+  public SSLSession getSession() {
+    return socket.getSession();
+  }
+
+  @Override
+  public InetSocketAddress getRemoteAddress() {
+    return (InetSocketAddress) socket.getRemoteSocketAddress();
+  }
+
+  @Override
+  public InputStream getInputStream() throws IOException {
+    return socket.getInputStream();
+  }
+
+  @Override
+  public OutputStream getOutputStream() throws IOException {
+    return new SocketOutputStream(socket);
+  }
+
+  @Override
+  public long transferFrom(FileChannel file) throws IOException {
+    OutputStream out = socket.getOutputStream();
+    ByteBuffer buffer = BUFFER_POOL.acquire();
+    try {
+      long total = 0L;
+      while (true) {
+        // Fill the buffer, so that each write makes a full TLS record.
+        while (buffer.hasRemaining() && file.read(buffer) != -1) {
+          // keep reading
+        }
+        if (buffer.position() == 0) {
+          break;
+        }
+        out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+        total += buffer.position();
+        buffer.clear();
+      }
+      out.flush();
+      return total;
+    } finally {
+      BUFFER_POOL.release(buffer);
+    }
+  }
+
+  @Override
+  public long transferFrom(ByteBuffer data) throws IOException {
+    if (data.hasArray()) {
+      long total = data.remaining();
+      OutputStream out = socket.getOutputStream();
+      out.write(data.array(), data.arrayOffset() + data.position(),
+                data.remaining());
+      out.flush();
+      data.position(data.limit());
+      return total;
+    }
+    // Copy direct or mapped data out a full TLS record at a time.
+    OutputStream out = socket.getOutputStream();
+    ByteBuffer buffer = BUFFER_POOL.acquire();
+    try {
+      long total = 0L;
+      while (data.hasRemaining()) {
+        int n = Math.min(data.remaining(), buffer.capacity());
+        data.get(buffer.array(), buffer.arrayOffset(), n);
+        out.write(buffer.array(), buffer.arrayOffset(), n);
+        total += n;
+      }
+      out.flush();
+      return total;
+    } finally {
+      BUFFER_POOL.release(buffer);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    socket.close();
+  }
+
+  /**
+   * Java likes to send a TLS user_canceled alert before it closes a TLS
+   * connection, which some clients interpret as an error. The workaround is to
+   * shutdown socket output before closing the socket. Also, unfortunately, Java
+   * closes a socket when its input or output stream is closed. So, this class
+   * wraps a socket output stream so that, when the stream is closed, it can
+   * shutdown socket output first.
+   *
+   * Array writes are passed straight through. FilterOutputStream would
+   * otherwise write them one byte at a time, sending one TLS record per
+   * byte.
+   */
+  private static class SocketOutputStream extends FilterOutputStream {
+
+    private final Socket socket;
+
+    private SocketOutputStream(Socket socket) throws IOException {
+      super(socket.getOutputStream());
+      this.socket = socket;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      out.write(b, off, len);
+    }
+
+    @Override
+    public void close() throws IOException {
+      socket.shutdownOutput();
+      super.close();
+    }
+  }
+}
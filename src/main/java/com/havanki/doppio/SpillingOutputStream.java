@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * An output stream that keeps what is written to it in memory, up to a
+ * limit. Once more than the limit is written, the kept bytes are written to
+ * an underlying output stream, as is everything written afterwards, and
+ * nothing more is kept.<p>
+ *
+ * Closing this stream flushes, but does not close, the underlying stream.
+ */
+public class SpillingOutputStream extends FilterOutputStream {
+
+  private final int limit;
+  private ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+
+  /**
+   * Creates a new output stream.
+   *
+   * @param  out   underlying output stream, for bytes past the limit
+   * @param  limit most bytes to keep in memory
+   */
+  public SpillingOutputStream(OutputStream out, int limit) {
+    super(out);
+    this.limit = limit;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    write(new byte[] { (byte) b }, 0, 1);
+  }
+
+  @Override
+  public void write(byte[] b, int off, int len) throws IOException {
+    if (buffer != null && buffer.size() + len <= limit) {
+      buffer.write(b, off, len);
+      return;
+    }
+    spill();
+    out.write(b, off, len);
+  }
+
+  private void spill() throws IOException {
+    if (buffer != null) {
+      buffer.writeTo(out);
+      buffer = null;
+    }
+  }
+
+  /**
+   * Checks whether this stream has passed its limit, so that what was
+   * written to it went to the underlying stream.
+   *
+   * @return true if this stream has spilled
+   */
+  public boolean hasSpilled() {
+    return buffer == null;
+  }
+
+  /**
+   * Gets the bytes kept in memory.
+   *
+   * @return kept bytes
+   * @throws IllegalStateException if this stream has spilled
+   */
+  public byte[] toByteArray() {
+    if (buffer == null) {
+      throw new IllegalStateException("Output has already been spilled");
+    }
+    return buffer.toByteArray();
+  }
+
+  @Override
+  public void flush() throws IOException {
+    if (buffer == null) {
+      out.flush();
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    flush();
+  }
+}
@@ -0,0 +1,280 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * An in-memory cache of complete responses for static files, so that
+ * frequently requested files can be served with a single write. Responses are
+ * keyed by the resolved path of the requested resource, and the total size of
+ * cached responses is held within a byte budget by evicting the least
+ * recently used ones.
+ *
+ * Before a cached response is served, the file that it came from is checked
+ * for changes to its last modified time or size, and the response is dropped
+ * if the file has changed. When a {@link RootWatcher} reports changes to the
+ * cache instead, that check may be turned off, so that serving a cached
+ * response needs no file system access at all. A change reported while a
+ * response is being read from its file would then go unnoticed, so each
+ * report moves the cache to a new generation, and a response read during an
+ * earlier generation is not cached.
+ */
+public class StaticResponseCache implements RootWatcher.Listener {
+
+  /**
+   * A cached response.
+   */
+  public static class Entry {
+    private final Path file;
+    private final FileTime lastModifiedTime;
+    private final long fileSize;
+    private final byte[] response;
+    private final int bodyOffset;
+
+    private Entry(Path file, FileTime lastModifiedTime, long fileSize,
+                  byte[] response, int bodyOffset) {
+      this.file = file;
+      this.lastModifiedTime = lastModifiedTime;
+      this.fileSize = fileSize;
+      this.response = response;
+      this.bodyOffset = bodyOffset;
+    }
+
+    /**
+     * Gets the complete response, header and body. Do not modify it.
+     *
+     * @return response bytes
+     */
+    public byte[] getResponse() {
+      return response;
+    }
+
+    /**
+     * Gets the size of the response body.
+     *
+     * @return response body size
+     */
+    public long getBodySize() {
+      return response.length - bodyOffset;
+    }
+  }
+
+  private final LruByteCache<Path, Entry> entries;
+  private long generation; // guarded by this
+  private volatile boolean validateOnHit = true;
+
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+
+  /**
+   * Creates a new cache.
+   *
+   * @param maxBytes maximum total size of cached responses
+   */
+  public StaticResponseCache(long maxBytes) {
+    entries = new LruByteCache<>(maxBytes, entry -> entry.response.length);
+  }
+
+  /**
+   * Sets whether the file behind a cached response is checked for changes
+   * each time the response is served. Only turn this off when changes are
+   * reported to the cache.
+   *
+   * @param validateOnHit true to check files when serving
+   */
+  public void setValidateOnHit(boolean validateOnHit) {
+    this.validateOnHit = validateOnHit;
+  }
+
+  /**
+   * Checks whether a response with a body of the given size may be cached.
+   *
+   * @param  bodySize response body size
+   * @return          true if the response may be cached
+   */
+  public boolean isCacheable(long bodySize) {
+    return bodySize <= entries.getMaxEntryBytes();
+  }
+
+  /**
+   * Gets a cached response, if there is one and the file it came from has not
+   * changed.
+   *
+   * @param  key resolved path of requested resource
+   * @return     cached response, or null if none is available
+   */
+  public Entry get(Path key) {
+    Entry entry = entries.get(key);
+    if (entry == null) {
+      misses.increment();
+      return null;
+    }
+    if (validateOnHit && !isCurrent(entry)) {
+      entries.remove(key, entry);
+      misses.increment();
+      return null;
+    }
+    hits.increment();
+    return entry;
+  }
+
+  private static boolean isCurrent(Entry entry) {
+    try {
+      BasicFileAttributes attrs =
+        Files.readAttributes(entry.file, BasicFileAttributes.class);
+      return attrs.lastModifiedTime().equals(entry.lastModifiedTime) &&
+        attrs.size() == entry.fileSize;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Gets the current generation of the cache, which moves on whenever
+   * changes are reported. Get it before reading a file to cache.
+   *
+   * @return current generation
+   */
+  public synchronized long getGeneration() {
+    return generation;
+  }
+
+  /**
+   * Caches a response. The generation and the file attributes should be read
+   * before the file contents, so that a change made while reading is
+   * detected, either now or when the response is next validated.
+   *
+   * @param key        resolved path of requested resource
+   * @param file       file that the response body came from
+   * @param attrs      attributes of the file
+   * @param response   complete response, header and body
+   * @param bodyOffset offset of body in response
+   * @param generation generation of the cache when the file was read
+   */
+  public void put(Path key, Path file, BasicFileAttributes attrs,
+                  byte[] response, int bodyOffset, long generation) {
+    if (response.length > entries.getMaxEntryBytes()) {
+      return;
+    }
+    Entry entry = new Entry(file, attrs.lastModifiedTime(), attrs.size(),
+                            response, bodyOffset);
+    synchronized (this) {
+      if (generation != this.generation) {
+        return; // something changed while the file was read
+      }
+      entries.put(key, entry);
+    }
+  }
+
+  /**
+   * Drops all cached responses.
+   */
+  public synchronized void invalidateAll() {
+    generation++;
+    entries.clear();
+  }
+
+  /**
+   * Drops cached responses for a path, or that came from a file at the path,
+   * or for anything beneath the path.
+   *
+   * @param path changed path
+   */
+  public synchronized void invalidate(Path path) {
+    generation++;
+    entries.removeIf((key, entry) -> key.startsWith(path) ||
+                     entry.file.startsWith(path));
+  }
+
+  @Override
+  public void pathChanged(Path path) {
+    invalidate(path);
+  }
+
+  @Override
+  public void allChanged() {
+    invalidateAll();
+  }
+
+  /**
+   * Gets the number of requests served from the cache.
+   *
+   * @return number of hits
+   */
+  public long getHits() {
+    return hits.sum();
+  }
+
+  /**
+   * Gets the number of requests that could not be served from the cache.
+   *
+   * @return number of misses
+   */
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  /**
+   * Gets the number of responses evicted to stay within the byte budget.
+   *
+   * @return number of evictions
+   */
+  public long getEvictions() {
+    return entries.getEvictions();
+  }
+
+  /**
+   * Gets the number of cached responses.
+   *
+   * @return number of entries
+   */
+  public int size() {
+    return entries.size();
+  }
+
+  /**
+   * Gets the total size of cached responses.
+   *
+   * @return size in bytes
+   */
+  public long getCurrentBytes() {
+    return entries.getCurrentBytes();
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    stats.put("static.cache.hits", getHits());
+    stats.put("static.cache.misses", getMisses());
+    stats.put("static.cache.evictions", getEvictions());
+    stats.put("static.cache.entries", (long) size());
+    stats.put("static.cache.bytes", getCurrentBytes());
+  }
+}
@@ -45,6 +45,11 @@ public final class StatusCodes {
    * CGI_ERROR: A CGI process died unexpectedly or timed out.
    */
   public static final int CGI_ERROR = 42;
+  /**
+   * SLOW_DOWN: The server is too busy to handle the request now. The meta is
+   * the number of seconds the client should wait before trying again.
+   */
+  public static final int SLOW_DOWN = 44;
   /**
    * PERMANENT_FAILURE: The request has failed, and an identical request will
    * reliably fail later, for the same reason.
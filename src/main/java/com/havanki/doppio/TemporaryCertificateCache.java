@@ -0,0 +1,197 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.security.KeyStore;
+import java.security.PrivateKey;
+import java.security.cert.Certificate;
+import java.security.cert.X509Certificate;
+import java.security.interfaces.ECKey;
+import java.security.interfaces.RSAKey;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A cache for a generated temporary server certificate and its key, so that
+ * the same certificate can be reused across restarts until it expires. The
+ * certificate is kept in a PKCS#12 file in the cache directory, readable only
+ * by its owner where the file system allows.
+ */
+public class TemporaryCertificateCache {
+
+  private static final Logger LOG = LoggerFactory.getLogger(TemporaryCertificateCache.class);
+
+  static final String FILE_NAME = "doppio-temp-cert.p12";
+  private static final String VIRTUAL_HOST_FILE_NAME_FORMAT = "doppio-temp-cert-%s.p12";
+  private static final String ALIAS = "doppio";
+  // The file is protected by its permissions, so the password is only a
+  // formality required by the keystore format.
+  private static final char[] PASSWORD = "doppio".toCharArray();
+
+  private final Path file;
+
+  /**
+   * Creates a new cache.
+   *
+   * @param cacheDir directory where the certificate is kept
+   */
+  public TemporaryCertificateCache(Path cacheDir) {
+    this(cacheDir, FILE_NAME);
+  }
+
+  private TemporaryCertificateCache(Path cacheDir, String fileName) {
+    file = cacheDir.resolve(fileName);
+  }
+
+  /**
+   * Creates a new cache for a virtual host's certificate, which is kept in
+   * its own file in the cache directory.
+   *
+   * @param  cacheDir directory where the certificate is kept
+   * @param  host     virtual host name
+   * @return          new cache
+   */
+  public static TemporaryCertificateCache forVirtualHost(Path cacheDir,
+                                                         String host) {
+    return new TemporaryCertificateCache(cacheDir,
+      String.format(VIRTUAL_HOST_FILE_NAME_FORMAT, host.toLowerCase(Locale.ROOT)));
+  }
+
+  /**
+   * Loads the cached certificate and key, if they exist, are for the given
+   * host and key type, and remain valid for at least the given time. Any
+   * problem reading the cache is logged and treated as a cache miss.
+   *
+   * @param  host         server host
+   * @param  keyType      expected key type
+   * @param  minRemaining minimum remaining validity
+   * @return              cached key entry, or null if no usable entry exists
+   */
+  public KeyStore.PrivateKeyEntry load(String host,
+                                       ServerProperties.TempCertKeyType keyType,
+                                       Duration minRemaining) {
+    if (!Files.exists(file)) {
+      return null;
+    }
+
+    KeyStore keystore;
+    Key key;
+    Certificate cert;
+    try (InputStream in = Files.newInputStream(file)) {
+      keystore = KeyStore.getInstance("PKCS12");
+      keystore.load(in, PASSWORD);
+      key = keystore.getKey(ALIAS, PASSWORD);
+      cert = keystore.getCertificate(ALIAS);
+    } catch (IOException | GeneralSecurityException e) {
+      LOG.warn("Failed to read cached temporary certificate {}", file, e);
+      return null;
+    }
+
+    if (!(key instanceof PrivateKey) || !(cert instanceof X509Certificate)) {
+      LOG.info("Cached temporary certificate {} is incomplete", file);
+      return null;
+    }
+    X509Certificate x509Cert = (X509Certificate) cert;
+    if (!x509Cert.getSubjectX500Principal().getName().equals("CN=" + host)) {
+      LOG.info("Cached temporary certificate is for a different host");
+      return null;
+    }
+    if (!matches(keyType, (PrivateKey) key)) {
+      LOG.info("Cached temporary certificate has a different key type");
+      return null;
+    }
+    Instant notAfter = x509Cert.getNotAfter().toInstant();
+    if (notAfter.isBefore(Instant.now().plus(minRemaining))) {
+      LOG.info("Cached temporary certificate expires at {}", notAfter);
+      return null;
+    }
+
+    return new KeyStore.PrivateKeyEntry((PrivateKey) key,
+                                        new Certificate[] { x509Cert });
+  }
+
+  /**
+   * Stores a certificate and key in the cache, replacing any already there.
+   *
+   * @param  key         private key
+   * @param  cert        certificate
+   * @throws IOException if the cache cannot be written
+   * @throws GeneralSecurityException if the keystore cannot be created
+   */
+  public void store(PrivateKey key, X509Certificate cert)
+    throws IOException, GeneralSecurityException {
+    KeyStore keystore = KeyStore.getInstance("PKCS12");
+    keystore.load(null, null);
+    keystore.setKeyEntry(ALIAS, key, PASSWORD, new Certificate[] { cert });
+
+    // Write to a private temporary file, then move it into place, so that a
+    // reader never sees a partial file.
+    Files.createDirectories(file.getParent());
+    Path tempFile = Files.createTempFile(file.getParent(), FILE_NAME, ".tmp");
+    try {
+      try {
+        Files.setPosixFilePermissions(tempFile,
+                                      PosixFilePermissions.fromString("rw-------"));
+      } catch (UnsupportedOperationException e) {
+        LOG.debug("Cannot restrict permissions on {}", tempFile);
+      }
+      try (OutputStream out = Files.newOutputStream(tempFile)) {
+        keystore.store(out, PASSWORD);
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING,
+                 StandardCopyOption.ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(tempFile);
+    }
+  }
+
+  private static boolean matches(ServerProperties.TempCertKeyType keyType,
+                                 PrivateKey key) {
+    switch (keyType) {
+      case RSA_2048:
+        return key instanceof RSAKey &&
+          ((RSAKey) key).getModulus().bitLength() == 2048;
+      case RSA_4096:
+        return key instanceof RSAKey &&
+          ((RSAKey) key).getModulus().bitLength() == 4096;
+      case EC_P256:
+        return key instanceof ECKey &&
+          ((ECKey) key).getParams().getCurve().getField().getFieldSize() == 256;
+      case ED25519:
+        return key.getAlgorithm().equals("EdDSA") ||
+          key.getAlgorithm().equals("Ed25519");
+      default:
+        return false;
+    }
+  }
+}
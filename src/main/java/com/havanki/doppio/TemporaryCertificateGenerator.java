@@ -28,6 +28,7 @@ import java.security.SecureRandom;
 import java.security.Security;
 import java.security.GeneralSecurityException;
 import java.security.cert.X509Certificate;
+import java.security.spec.ECGenParameterSpec;
 import java.math.BigInteger;
 import java.time.Instant;
 import java.time.temporal.ChronoUnit;
@@ -53,6 +54,12 @@ public class TemporaryCertificateGenerator {
 
   public TemporaryCertificateGenerator(String host, long validityInSec)
       throws GeneralSecurityException, IOException {
+    this(host, validityInSec, ServerProperties.TempCertKeyType.RSA_4096);
+  }
+
+  public TemporaryCertificateGenerator(String host, long validityInSec,
+                                       ServerProperties.TempCertKeyType keyType)
+      throws GeneralSecurityException, IOException {
     synchronized (TemporaryCertificateGenerator.class) {
       if (random == null) {
         random = new SecureRandom();
@@ -64,8 +71,30 @@ public class TemporaryCertificateGenerator {
     }
 
     // Generate the key pair.
-    KeyPairGenerator keyGen = KeyPairGenerator.getInstance("RSA");
-    keyGen.initialize(4096, random);
+    KeyPairGenerator keyGen;
+    String signatureAlgorithm;
+    switch (keyType) {
+      case RSA_2048:
+        keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(2048, random);
+        signatureAlgorithm = "SHA256WithRSA";
+        break;
+      case EC_P256:
+        keyGen = KeyPairGenerator.getInstance("EC");
+        keyGen.initialize(new ECGenParameterSpec("secp256r1"), random);
+        signatureAlgorithm = "SHA256WithECDSA";
+        break;
+      case ED25519:
+        keyGen = KeyPairGenerator.getInstance("Ed25519");
+        keyGen.initialize(255, random);
+        signatureAlgorithm = "Ed25519";
+        break;
+      default:
+        keyGen = KeyPairGenerator.getInstance("RSA");
+        keyGen.initialize(4096, random);
+        signatureAlgorithm = "SHA256WithRSA";
+        break;
+    }
     KeyPair pair = keyGen.generateKeyPair();
     key = pair.getPrivate();
 
@@ -85,7 +114,7 @@ public class TemporaryCertificateGenerator {
       new X509v3CertificateBuilder(dnName, certSerialNumber, startDate, endDate,
                                    dnName, subjectPublicKeyInfo);
     try {
-      ContentSigner contentSigner = new JcaContentSignerBuilder("SHA256WithRSA")
+      ContentSigner contentSigner = new JcaContentSignerBuilder(signatureAlgorithm)
         .setProvider(bouncy).build(pair.getPrivate());
       X509CertificateHolder certificateHolder =
         certificateBuilder.build(contentSigner);
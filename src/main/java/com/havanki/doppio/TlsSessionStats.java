@@ -0,0 +1,92 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSession;
+
+/**
+ * Counters for completed TLS handshakes, distinguishing full handshakes from
+ * those that resumed an earlier session. A resumed session carries the
+ * creation time of the session it continues, which predates the start of the
+ * handshake that resumed it; a full handshake creates a new session.
+ */
+public class TlsSessionStats {
+
+  private final LongAdder fullHandshakes = new LongAdder();
+  private final LongAdder resumedHandshakes = new LongAdder();
+
+  /**
+   * Records a completed handshake.
+   *
+   * @param session              session established by the handshake
+   * @param handshakeStartMillis time when the handshake began, from
+   *                             {@link System#currentTimeMillis()}
+   */
+  public void recordHandshake(SSLSession session, long handshakeStartMillis) {
+    if (isResumed(session, handshakeStartMillis)) {
+      resumedHandshakes.increment();
+    } else {
+      fullHandshakes.increment();
+    }
+  }
+
+  /**
+   * Determines whether a session established by a handshake was resumed.
+   *
+   * @param  session              session established by the handshake
+   * @param  handshakeStartMillis time when the handshake began, from
+   *                              {@link System#currentTimeMillis()}
+   * @return                      true if the session was resumed
+   */
+  static boolean isResumed(SSLSession session, long handshakeStartMillis) {
+    return session.getCreationTime() < handshakeStartMillis;
+  }
+
+  /**
+   * Gets the number of full handshakes.
+   *
+   * @return number of full handshakes
+   */
+  public long getFullHandshakes() {
+    return fullHandshakes.sum();
+  }
+
+  /**
+   * Gets the number of resumed handshakes.
+   *
+   * @return number of resumed handshakes
+   */
+  public long getResumedHandshakes() {
+    return resumedHandshakes.sum();
+  }
+
+  /**
+   * Adds these statistics to a map of server statistics.
+   *
+   * @param stats map of statistic names to values
+   */
+  public void addTo(Map<String, Long> stats) {
+    stats.put("tls.handshakes.full", getFullHandshakes());
+    stats.put("tls.handshakes.resumed", getResumedHandshakes());
+  }
+}
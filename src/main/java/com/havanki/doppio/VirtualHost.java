@@ -0,0 +1,200 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import javax.net.ssl.ExtendedSSLSession;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SNIServerName;
+import javax.net.ssl.SSLSession;
+
+/**
+ * A host served by the server, along with the resources and key material
+ * specific to it. Requests are matched to a virtual host through the server
+ * name indicated (SNI) by the client during the TLS handshake.
+ */
+public class VirtualHost {
+
+  private final String host;
+  private final Path root;
+  private final Path cgiDir;
+  private final int cgiTimeoutMs;
+  private final long cgiMaxOutputBytes;
+  private final List<SecureDomain> secureDomains;
+  private final List<String> feedPages;
+  private final Path keystore;
+  private final String keystorePassword;
+
+  /**
+   * Creates a new virtual host.
+   *
+   * @param  host             host name
+   * @param  root             root (directory) for the host
+   * @param  cgiDir           CGI directory, relative to root, or null
+   * @param  secureDomains    secure domains
+   * @param  feedPages        paths to feed pages
+   * @param  keystore         keystore containing the host's private key, or
+   *                          null to use a temporary certificate
+   * @param  keystorePassword password for the keystore
+   */
+  public VirtualHost(String host, Path root, Path cgiDir,
+                     List<SecureDomain> secureDomains, List<String> feedPages,
+                     Path keystore, String keystorePassword) {
+    this(host, root, cgiDir, ServerProperties.DEFAULT_CGI_TIMEOUT_MS,
+         ServerProperties.DEFAULT_CGI_MAX_OUTPUT_BYTES, secureDomains,
+         feedPages, keystore, keystorePassword);
+  }
+
+  /**
+   * Creates a new virtual host.
+   *
+   * @param  host              host name
+   * @param  root              root (directory) for the host
+   * @param  cgiDir            CGI directory, relative to root, or null
+   * @param  cgiTimeoutMs      how long a CGI script may run, in
+   *                           milliseconds, or 0 for no limit
+   * @param  cgiMaxOutputBytes how much output a CGI script may write, or 0
+   *                           for no limit
+   * @param  secureDomains     secure domains
+   * @param  feedPages         paths to feed pages
+   * @param  keystore          keystore containing the host's private key, or
+   *                           null to use a temporary certificate
+   * @param  keystorePassword  password for the keystore
+   */
+  public VirtualHost(String host, Path root, Path cgiDir, int cgiTimeoutMs,
+                     long cgiMaxOutputBytes, List<SecureDomain> secureDomains,
+                     List<String> feedPages, Path keystore,
+                     String keystorePassword) {
+    this.host = host;
+    this.root = root;
+    this.cgiDir = cgiDir;
+    this.cgiTimeoutMs = cgiTimeoutMs;
+    this.cgiMaxOutputBytes = cgiMaxOutputBytes;
+    this.secureDomains = secureDomains;
+    this.feedPages = feedPages;
+    this.keystore = keystore;
+    this.keystorePassword = keystorePassword;
+  }
+
+  /**
+   * Gets the host name for this virtual host.
+   *
+   * @return host
+   */
+  public String getHost() {
+    return host;
+  }
+
+  /**
+   * Gets the root (directory) for this virtual host.
+   *
+   * @return root
+   */
+  public Path getRoot() {
+    return root;
+  }
+
+  /**
+   * Gets the CGI directory for this virtual host.
+   *
+   * @return CGI directory
+   */
+  public Path getCgiDir() {
+    return cgiDir;
+  }
+
+  /**
+   * Gets how long a CGI script in this virtual host's CGI directory may run
+   * before it is stopped. Zero means no limit.
+   *
+   * @return CGI timeout, in milliseconds
+   */
+  public int getCgiTimeoutMs() {
+    return cgiTimeoutMs;
+  }
+
+  /**
+   * Gets how much output a CGI script in this virtual host's CGI directory
+   * may write before it is stopped. Zero means no limit.
+   *
+   * @return CGI output limit, in bytes
+   */
+  public long getCgiMaxOutputBytes() {
+    return cgiMaxOutputBytes;
+  }
+
+  /**
+   * Gets the secure domains for this virtual host.
+   *
+   * @return secure domains
+   */
+  public List<SecureDomain> getSecureDomains() {
+    return secureDomains;
+  }
+
+  /**
+   * Gets the paths to the feed pages for this virtual host.
+   *
+   * @return feed pages
+   */
+  public List<String> getFeedPages() {
+    return feedPages;
+  }
+
+  /**
+   * Gets the keystore containing this virtual host's private key. If null,
+   * a temporary certificate is generated for the host.
+   *
+   * @return keystore
+   */
+  public Path getKeystore() {
+    return keystore;
+  }
+
+  /**
+   * Gets the password for the keystore.
+   *
+   * @return keystore password
+   */
+  public String getKeystorePassword() {
+    return keystorePassword;
+  }
+
+  /**
+   * Gets the host name that a client requested through SNI.
+   *
+   * @param  session SSL session, possibly still handshaking
+   * @return         requested host name, or null if none was requested
+   */
+  public static String getRequestedHostName(SSLSession session) {
+    if (!(session instanceof ExtendedSSLSession)) {
+      return null;
+    }
+    for (SNIServerName serverName :
+           ((ExtendedSSLSession) session).getRequestedServerNames()) {
+      if (serverName instanceof SNIHostName) {
+        return ((SNIHostName) serverName).getAsciiName();
+      }
+    }
+    return null;
+  }
+}
@@ -0,0 +1,162 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.net.Socket;
+import java.security.Principal;
+import java.security.PrivateKey;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSession;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+/**
+ * A key manager that selects key material by the host name that the client
+ * requested through SNI, so that each virtual host presents its own
+ * certificate. Handshakes without a requested name, or for a name without
+ * its own key material, use the default key material.
+ *
+ * Aliases handed out by this key manager are tagged with the host that they
+ * came from, so that lookups by alias go to the same host's key material.
+ */
+public class VirtualHostKeyManager extends X509ExtendedKeyManager {
+
+  private static final char HOST_SEPARATOR = '/';
+  private static final String DEFAULT_HOST_KEY = "";
+
+  private final Map<String, X509ExtendedKeyManager> keyManagers;
+
+  /**
+   * Creates a new key manager.
+   *
+   * @param defaultKeyManager key manager for the default host
+   * @param hostKeyManagers   key managers for other hosts, by host name
+   */
+  public VirtualHostKeyManager(X509ExtendedKeyManager defaultKeyManager,
+                               Map<String, X509ExtendedKeyManager> hostKeyManagers) {
+    keyManagers = new HashMap<>();
+    for (Map.Entry<String, X509ExtendedKeyManager> e : hostKeyManagers.entrySet()) {
+      keyManagers.put(e.getKey().toLowerCase(Locale.ROOT), e.getValue());
+    }
+    keyManagers.put(DEFAULT_HOST_KEY, defaultKeyManager);
+  }
+
+  /**
+   * Gets the key for the host whose key material should be used in a
+   * handshake.
+   */
+  private String hostKeyFor(SSLSession handshakeSession) {
+    String hostName = VirtualHost.getRequestedHostName(handshakeSession);
+    if (hostName == null) {
+      return DEFAULT_HOST_KEY;
+    }
+    String hostKey = hostName.toLowerCase(Locale.ROOT);
+    return keyManagers.containsKey(hostKey) ? hostKey : DEFAULT_HOST_KEY;
+  }
+
+  private static String tag(String hostKey, String alias) {
+    return alias == null ? null : hostKey + HOST_SEPARATOR + alias;
+  }
+
+  private X509ExtendedKeyManager keyManagerOf(String alias) {
+    int idx = alias == null ? -1 : alias.indexOf(HOST_SEPARATOR);
+    if (idx < 0) {
+      return null;
+    }
+    return keyManagers.get(alias.substring(0, idx));
+  }
+
+  private static String untag(String alias) {
+    return alias.substring(alias.indexOf(HOST_SEPARATOR) + 1);
+  }
+
+  // The server never acts as a TLS client.
+
+  @Override
+  public String[] getClientAliases(String keyType, Principal[] issuers) {
+    return null;
+  }
+
+  @Override
+  public String chooseClientAlias(String[] keyType, Principal[] issuers,
+                                  Socket socket) {
+    return null;
+  }
+
+  @Override
+  public String chooseEngineClientAlias(String[] keyType, Principal[] issuers,
+                                        SSLEngine engine) {
+    return null;
+  }
+
+  @Override
+  public String[] getServerAliases(String keyType, Principal[] issuers) {
+    List<String> aliases = new ArrayList<>();
+    for (Map.Entry<String, X509ExtendedKeyManager> e : keyManagers.entrySet()) {
+      String[] hostAliases = e.getValue().getServerAliases(keyType, issuers);
+      if (hostAliases != null) {
+        for (String alias : hostAliases) {
+          aliases.add(tag(e.getKey(), alias));
+        }
+      }
+    }
+    return aliases.isEmpty() ? null : aliases.toArray(new String[0]);
+  }
+
+  @Override
+  public String chooseServerAlias(String keyType, Principal[] issuers,
+                                  Socket socket) {
+    SSLSession handshakeSession = socket instanceof SSLSocket ?
+      ((SSLSocket) socket).getHandshakeSession() : null;
+    String hostKey = hostKeyFor(handshakeSession);
+    return tag(hostKey,
+               keyManagers.get(hostKey).chooseServerAlias(keyType, issuers, socket));
+  }
+
+  @Override
+  public String chooseEngineServerAlias(String keyType, Principal[] issuers,
+                                        SSLEngine engine) {
+    SSLSession handshakeSession = engine == null ? null :
+      engine.getHandshakeSession();
+    String hostKey = hostKeyFor(handshakeSession);
+    return tag(hostKey,
+               keyManagers.get(hostKey).chooseEngineServerAlias(keyType, issuers,
+                                                                engine));
+  }
+
+  @Override
+  public X509Certificate[] getCertificateChain(String alias) {
+    X509ExtendedKeyManager keyManager = keyManagerOf(alias);
+    return keyManager == null ? null : keyManager.getCertificateChain(untag(alias));
+  }
+
+  @Override
+  public PrivateKey getPrivateKey(String alias) {
+    X509ExtendedKeyManager keyManager = keyManagerOf(alias);
+    return keyManager == null ? null : keyManager.getPrivateKey(untag(alias));
+  }
+}
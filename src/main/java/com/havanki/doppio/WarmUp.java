@@ -0,0 +1,289 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up a server before it accepts connections, by running requests
+ * through request handlers over in-memory connections. This brings resources
+ * into the operating system's page cache, fills the static response cache,
+ * and, when requests are repeated often enough, lets the JIT compiler
+ * optimize request handling. The requests come from the configured warm-up
+ * paths and from the most often successfully requested resources in the
+ * access log. Requests for CGI scripts, in-process handlers, and FastCGI
+ * and SCGI applications are skipped, so that no scripts are run, and warm-up
+ * requests are not written to the access log.
+ */
+public class WarmUp {
+
+  private static final Logger LOG = LoggerFactory.getLogger(WarmUp.class);
+
+  /**
+   * How much of the end of the access log to read for the most requested
+   * resources. Recent requests are the best guide to what will be requested
+   * next, and reading a large log would slow startup.
+   */
+  static final long ACCESS_LOG_TAIL_BYTES = 16L * 1024L * 1024L;
+  /**
+   * The number of requests to handle when warming up the JIT compiler. This
+   * is comfortably past the point where HotSpot fully optimizes hot methods.
+   */
+  static final int JIT_WARM_UP_REQUESTS = 10000;
+
+  // remote address - remote username [timestamp] "request" status size
+  // ["note"]
+  private static final Pattern ACCESS_LOG_LINE =
+    Pattern.compile("\\] \"(.*)\" (\\d+) \\S+( \"[^\"]*\")?$");
+
+  private final ServerProperties serverProps;
+  private final RequestHandlerDependencies dependencies;
+
+  /**
+   * Creates a new warm-up.
+   *
+   * @param serverProps  server properties
+   * @param dependencies collaborators for the warm-up request handlers,
+   *                     such as the caches to fill
+   */
+  public WarmUp(ServerProperties serverProps,
+                RequestHandlerDependencies dependencies) {
+    this.serverProps = serverProps;
+    this.dependencies = dependencies;
+  }
+
+  /**
+   * Finds the requests to warm up with: the configured warm-up paths, then
+   * the most often successfully requested resources in the access log. A
+   * configured path that is not a URI is taken to be for the server's host.
+   *
+   * @return warm-up requests, without duplicates
+   */
+  public List<String> findRequests() {
+    Set<String> requests = new LinkedHashSet<>();
+    for (String path : serverProps.getWarmUpPaths()) {
+      requests.add(toRequest(path));
+    }
+    if (serverProps.getWarmUpTopPaths() > 0 &&
+        serverProps.getLogDir() != null) {
+      Path accessLog =
+        serverProps.getLogDir().resolve(AccessLogger.ACCESS_LOG_FILE_NAME);
+      if (Files.exists(accessLog)) {
+        try {
+          requests.addAll(readTopRequests(accessLog,
+                                          serverProps.getWarmUpTopPaths()));
+        } catch (IOException e) {
+          LOG.warn("Failed to read access log for warm-up requests", e);
+        }
+      }
+    }
+    return new ArrayList<>(requests);
+  }
+
+  private String toRequest(String path) {
+    if (path.contains("://")) {
+      return path;
+    }
+    return "gemini://" + serverProps.getHost() +
+      (path.startsWith("/") ? "" : "/") + path;
+  }
+
+  /**
+   * Reads the most often successfully requested resources from the end of
+   * an access log.
+   *
+   * @param  accessLog access log file
+   * @param  n         maximum number of requests to return
+   * @return           requests, most often made first
+   * @throws IOException if the access log cannot be read
+   */
+  static List<String> readTopRequests(Path accessLog, int n)
+    throws IOException {
+    Map<String, Integer> counts = new HashMap<>();
+    try (FileChannel channel = FileChannel.open(accessLog,
+                                                StandardOpenOption.READ)) {
+      long start = Math.max(0L, channel.size() - ACCESS_LOG_TAIL_BYTES);
+      channel.position(start);
+      BufferedReader reader = new BufferedReader(
+        new InputStreamReader(Channels.newInputStream(channel),
+                              StandardCharsets.UTF_8));
+      if (start > 0L) {
+        reader.readLine(); // most likely only part of a line
+      }
+      String line;
+      while ((line = reader.readLine()) != null) {
+        Matcher m = ACCESS_LOG_LINE.matcher(line);
+        if (m.find() && Integer.parseInt(m.group(2)) == StatusCodes.SUCCESS) {
+          counts.merge(m.group(1), 1, Integer::sum);
+        }
+      }
+    }
+
+    List<Map.Entry<String, Integer>> entries =
+      new ArrayList<>(counts.entrySet());
+    entries.sort(Collections.reverseOrder(Map.Entry.comparingByValue()));
+    List<String> requests = new ArrayList<>();
+    for (Map.Entry<String, Integer> entry :
+           entries.subList(0, Math.min(n, entries.size()))) {
+      requests.add(entry.getKey());
+    }
+    return requests;
+  }
+
+  /**
+   * Runs warm-up requests, stopping when the time budget runs out. Each
+   * request is made once, or, when JIT warm-up is enabled, the requests are
+   * made over and over until enough have been handled.
+   *
+   * @param  requests warm-up requests
+   * @return          number of requests handled
+   * @throws IOException if the request handlers cannot be set up
+   */
+  public int run(List<String> requests) throws IOException {
+    List<Warmable> warmables = new ArrayList<>();
+    for (String request : requests) {
+      Warmable warmable = toWarmable(request);
+      if (warmable != null) {
+        warmables.add(warmable);
+      }
+    }
+    if (warmables.isEmpty()) {
+      return 0;
+    }
+
+    long deadline = System.nanoTime() +
+      TimeUnit.MILLISECONDS.toNanos(serverProps.getWarmUpBudgetMs());
+    int numTarget = serverProps.isWarmUpJit() ?
+      Math.max(JIT_WARM_UP_REQUESTS, warmables.size()) : warmables.size();
+    int numHandled = 0;
+    try (AccessLogger accessLogger = new AccessLogger(null)) {
+      while (numHandled < numTarget) {
+        if (System.nanoTime() - deadline >= 0L) {
+          LOG.info("Warm-up time budget ran out after {} requests", numHandled);
+          break;
+        }
+        Warmable warmable = warmables.get(numHandled % warmables.size());
+        InMemoryClientConnection connection =
+          new InMemoryClientConnection(warmable.request, warmable.hostName);
+        try {
+          new RequestHandler(serverProps, accessLogger, connection,
+                             dependencies).run();
+        } catch (RuntimeException e) {
+          LOG.warn("Warm-up request {} failed", warmable.request, e);
+        }
+        if (numHandled < warmables.size() &&
+            connection.getStatusCode() != StatusCodes.SUCCESS) {
+          LOG.info("Warm-up request {} returned status {}", warmable.request,
+                   connection.getStatusCode());
+        }
+        numHandled++;
+      }
+    }
+    return numHandled;
+  }
+
+  /**
+   * A warm-up request, with the host to ask for through SNI.
+   */
+  private static class Warmable {
+    private final String request;
+    private final String hostName;
+
+    private Warmable(String request, String hostName) {
+      this.request = request;
+      this.hostName = hostName;
+    }
+  }
+
+  private Warmable toWarmable(String request) {
+    URI uri;
+    try {
+      uri = new URI(request).normalize();
+    } catch (URISyntaxException e) {
+      LOG.info("Skipping invalid warm-up request {}", request);
+      return null;
+    }
+    String host = uri.getHost();
+    VirtualHost virtualHost = serverProps.getVirtualHost(host);
+    if (host == null || !virtualHost.getHost().equalsIgnoreCase(host)) {
+      LOG.info("Skipping warm-up request {} for another host", request);
+      return null;
+    }
+
+    // Never run CGI scripts, handlers, or gateway applications just to warm
+    // up.
+    if (uri.getPath() != null) {
+      String pathString = uri.getPath();
+      if (pathString.startsWith("/")) {
+        pathString = pathString.substring(1);
+      }
+      Path path;
+      try {
+        path = Path.of(pathString);
+      } catch (InvalidPathException e) {
+        LOG.info("Skipping warm-up request {} with invalid path", request);
+        return null;
+      }
+      if (virtualHost.getCgiDir() != null &&
+          path.startsWith(virtualHost.getCgiDir())) {
+        LOG.debug("Skipping warm-up request {} for CGI", request);
+        return null;
+      }
+      if (virtualHost == serverProps.getDefaultVirtualHost() &&
+          Stream.concat(serverProps.getFastCgiGateways().stream(),
+                        serverProps.getScgiGateways().stream())
+          .anyMatch(gm -> gm.matches(path))) {
+        LOG.debug("Skipping warm-up request {} for a gateway", request);
+        return null;
+      }
+      if (virtualHost == serverProps.getDefaultVirtualHost() &&
+          serverProps.getHandlers().stream().anyMatch(hm -> hm.matches(path))) {
+        LOG.debug("Skipping warm-up request {} for a handler", request);
+        return null;
+      }
+    }
+    return new Warmable(request, host);
+  }
+}
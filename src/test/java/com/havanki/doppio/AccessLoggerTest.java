@@ -92,6 +92,16 @@ public class AccessLoggerTest {
     assertTrue(line.endsWith(" \"request\" 51 -"));
   }
 
+  @Test
+  public void testLogNote() throws Exception {
+    accessLogger.log(ADDRESS, null, "request", 42, 100L, "cgi-timeout",
+                     timestamp);
+    accessLogger.close();
+
+    String line = getLogLine();
+    assertTrue(line.endsWith(" \"request\" 42 100 \"cgi-timeout\""));
+  }
+
   private String getLogLine() throws Exception {
     try (FileReader fr = new FileReader(logDir.resolve("access.log").toFile(),
                                         StandardCharsets.UTF_8);
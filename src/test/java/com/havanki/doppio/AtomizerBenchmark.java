@@ -0,0 +1,286 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the streaming atomizer with the earlier one, which matched each
+ * line against regular expressions, filled in string templates, and returned
+ * the whole feed as a string to be encoded afterwards. Both produce the UTF-8
+ * bytes of the feed for index pages of various lengths. Add "-prof gc" to the
+ * JMH arguments to see the allocation rate as well.
+ *
+ * Run with: mvn -P benchmark test-compile exec:exec -Dbenchmark=Atomizer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class AtomizerBenchmark {
+
+  private static final String FEED_DIR_URI =
+    "gemini://gemini.example.com/gemlog/";
+
+  @Param({ "10", "1000", "100000" })
+  public int numEntries;
+
+  private String docContent;
+  private Atomizer atomizer;
+  private LegacyAtomizer legacyAtomizer;
+
+  @Setup(Level.Trial)
+  public void setUp() {
+    StringBuilder sb = new StringBuilder();
+    sb.append("# J. Random Geminaut's gemlog\n\n");
+    sb.append("## Posts about gardening and algebra\n\n");
+    for (int i = 0; i < numEntries; i++) {
+      int year = 2000 + (i / 336) % 25;
+      int month = 1 + (i / 28) % 12;
+      int day = 1 + i % 28;
+      sb.append(String.format("=> posts/%d.gmi %04d-%02d-%02d - Post number %d about composting\n",
+                              i, year, month, day, i));
+      if (i % 10 == 9) {
+        sb.append("\nSome commentary between posts.\n\n");
+      }
+    }
+    sb.append("\n=> ../  Back to my homepage\n");
+    docContent = sb.toString();
+    atomizer = new Atomizer();
+    legacyAtomizer = new LegacyAtomizer();
+    try {
+      if (!Arrays.equals(legacy(), streaming())) {
+        throw new IllegalStateException("Atomizers produce different feeds");
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException(e);
+    }
+  }
+
+  @Benchmark
+  public byte[] legacy() {
+    return legacyAtomizer.atomize(FEED_DIR_URI, docContent)
+      .getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Benchmark
+  public byte[] streaming() throws IOException {
+    ByteArrayOutputStream out =
+      new ByteArrayOutputStream(docContent.length() * 2 + 512);
+    atomizer.atomize(FEED_DIR_URI, docContent, out);
+    return out.toByteArray();
+  }
+
+  /**
+   * The atomizer as it was before it streamed its output, kept as a baseline.
+   */
+  static class LegacyAtomizer {
+
+    private static final Logger LOG =
+      LoggerFactory.getLogger(LegacyAtomizer.class);
+
+    private static final String FEED_TEMPLATE =
+      "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+      "<feed xmlns=\"http://www.w3.org/2005/Atom\">\n\n" +
+      "<title>{title}</title>\n" +
+      "{subtitle}" +
+      "<link href=\"{link}\"/>\n" +
+      "<updated>{updated}</updated>\n" +
+      "<id>{id}</id>\n\n" +
+      "{entries}" +
+      "</feed>";
+
+    private static final String ENTRY_TEMPLATE =
+      "  <entry>\n" +
+      "    <title>{title}</title>\n" +
+      "    <link rel=\"alternate\" href=\"{link}\"/>\n" +
+      "    <id>{id}</id>\n" +
+      "    <updated>{updated}</updated>\n" +
+      "  </entry>\n\n";
+
+    private static final String DEFAULT_TITLE_FORMAT = "Feed: %s";
+
+    private static final Pattern H1_PATTERN = Pattern.compile("#([^#]+)");
+    private static final Pattern H2_PATTERN = Pattern.compile("##([^#]+)");
+    private static final Pattern ENTRY_PATTERN =
+      Pattern.compile("=>\\s*(\\S+)\\s+(\\d{4}-\\d{2}-\\d{2})(.+)");
+
+    private final Clock clock = Clock.systemUTC();
+
+    /**
+     * Converts a Gemini index page into an Atom feed.
+     *
+     * @param  feedDirUriString feed directory URI (also where the index page is)
+     * @param  docContent       index page content
+     * @return                  Atom feed content
+     */
+    public String atomize(String feedDirUriString, String docContent) {
+
+      if (!feedDirUriString.endsWith("/")) {
+        feedDirUriString += "/";
+      }
+
+      String title = null;
+      String subtitle = null;
+      Instant updated = null;
+
+      boolean subtitleAvailable = true;
+      List<String> entryList = new ArrayList<>();
+
+      try (StringReader sr = new StringReader(docContent);
+           BufferedReader br = new BufferedReader(sr)) {
+        String line;
+        while ((line = br.readLine()) != null) {
+
+          // Ignore empty lines.
+          if (line.isBlank()) {
+            continue;
+          }
+
+          // Use the first level 1 header as the feed title.
+          if (title == null) {
+            Matcher h1Matcher = H1_PATTERN.matcher(line);
+            if (h1Matcher.matches()) {
+              title = h1Matcher.group(1).trim();
+              continue;
+            }
+          }
+
+          // After the title, use the first level 2 header as the feed subtitle.
+          // Any non-header (and non-blank) lines before that candidate header
+          // means there is no subtitle.
+          if (title != null && subtitleAvailable) {
+            if (!line.startsWith("#")) {
+              subtitleAvailable = false;
+            } else {
+              Matcher h2Matcher = H2_PATTERN.matcher(line);
+              if (h2Matcher.matches()) {
+                subtitle = h2Matcher.group(1).trim();
+                subtitleAvailable = false;
+                continue;
+              }
+            }
+          }
+
+          // For efficiency, skip any non-link lines here on out.
+          if (!line.startsWith("=>")) {
+            continue;
+          }
+
+          // Pick out any link lines that work as feed entries.
+          Matcher entryMatcher = ENTRY_PATTERN.matcher(line);
+          if (entryMatcher.matches()) {
+            String entryUrl = feedDirUriString + entryMatcher.group(1);
+            String iso8601Date = entryMatcher.group(2);
+            String iso8601Timestamp = iso8601Date + "T12:00:00Z";
+            String entryTitle = cleanupEntryTitle(entryMatcher.group(3));
+            String entryContent = ENTRY_TEMPLATE
+              .replace("{title}", entryTitle)
+              .replace("{link}", entryUrl)
+              .replace("{id}", entryUrl)
+              .replace("{updated}", iso8601Timestamp);
+            entryList.add(entryContent);
+
+            // If this entry is the most recent so far, remember its timestamp.
+            try {
+              Instant entryInstant =
+                DateTimeFormatter.ISO_INSTANT.parse(iso8601Timestamp, Instant::from);
+              if (updated == null || entryInstant.isAfter(updated)) {
+                updated = entryInstant;
+              }
+            } catch (DateTimeParseException e) {
+              // It's possible to have entries with invalid timestamps (e.g.,
+              // 2021-01-99), so just ignore those for this calculation.
+              LOG.warn("Failed to parse update time {} for entry {}", iso8601Timestamp, entryUrl);
+            }
+          }
+        }
+      } catch (IOException e) {
+        // This shouldn't happen because this is reading from a string.
+        throw new IllegalStateException("Received I/O error while reading page content", e);
+      }
+
+      if (title == null) {
+        title = DEFAULT_TITLE_FORMAT.format(feedDirUriString);
+      }
+      if (subtitle != null) {
+        subtitle = String.format("<subtitle>%s</subtitle>\n", subtitle);
+      } else {
+        subtitle = "";
+      }
+      if (updated == null) {
+        updated = Instant.now(clock);
+      }
+
+      String feedContent = FEED_TEMPLATE
+        .replace("{title}", title)
+        .replace("{subtitle}", subtitle)
+        .replace("{link}", feedDirUriString)
+        .replace("{id}", feedDirUriString)
+        .replace("{updated}", DateTimeFormatter.ISO_INSTANT.format(updated))
+        .replace("{entries}", entryList.stream().collect(Collectors.joining()));
+      return feedContent;
+    }
+
+    /**
+     * Cleans up the title text for an entry.
+     *
+     * @param  title originally read title
+     * @return       cleaned-up title
+     */
+    private static String cleanupEntryTitle(String title) {
+      return title
+        .trim()  // remove whitespace on either end
+        .replaceFirst("[\\s\\p{Punct}]*", "");  // remove ws + punctuation from the front
+    }
+  }
+}
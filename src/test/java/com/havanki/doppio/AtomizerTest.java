@@ -22,6 +22,8 @@ package com.havanki.doppio;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
 import java.time.Clock;
 import java.time.Instant;
 import java.time.ZoneOffset;
@@ -147,4 +149,51 @@ public class AtomizerTest {
     assertEquals(expectedFeed, atomizer.atomize(DOC_URL, EMPTY_FEED_GEMINI));
   }
 
+  @Test
+  public void testOutputStream() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    atomizer.atomize(DOC_URL, NORMAL_FEED_GEMINI, out);
+    assertEquals(NORMAL_FEED_ATOM, out.toString(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testCrlf() throws Exception {
+    assertEquals(NORMAL_FEED_ATOM,
+                 atomizer.atomize(DOC_URL, NORMAL_FEED_GEMINI.replace("\n", "\r\n")));
+  }
+
+  private static final String UNTITLED_FEED_GEMINI =
+    "=> bokashi.gmi  2020-11-20 - Early Bokashi composting experiments\n" +
+    "=> typo.gmi  2020-11-99 - Not really the latest post\n" +
+    "=> no-date.gmi  Not a post\n" +
+    "=>2020-12-01 No link\n";
+
+  private static final String UNTITLED_FEED_ATOM =
+    "<?xml version=\"1.0\" encoding=\"utf-8\"?>\n" +
+    "<feed xmlns=\"http://www.w3.org/2005/Atom\">\n\n" +
+    "<title>Feed: gemini://gemini.example.com/100%25/</title>\n" +
+    "<link href=\"gemini://gemini.example.com/100%25/\"/>\n" +
+    "<updated>2020-11-20T12:00:00Z</updated>\n" +
+    "<id>gemini://gemini.example.com/100%25/</id>\n\n" +
+    "  <entry>\n" +
+    "    <title>Early Bokashi composting experiments</title>\n" +
+    "    <link rel=\"alternate\" href=\"gemini://gemini.example.com/100%25/bokashi.gmi\"/>\n" +
+    "    <id>gemini://gemini.example.com/100%25/bokashi.gmi</id>\n" +
+    "    <updated>2020-11-20T12:00:00Z</updated>\n" +
+    "  </entry>\n\n" +
+    "  <entry>\n" +
+    "    <title>Not really the latest post</title>\n" +
+    "    <link rel=\"alternate\" href=\"gemini://gemini.example.com/100%25/typo.gmi\"/>\n" +
+    "    <id>gemini://gemini.example.com/100%25/typo.gmi</id>\n" +
+    "    <updated>2020-11-99T12:00:00Z</updated>\n" +
+    "  </entry>\n\n" +
+    "</feed>";
+
+  @Test
+  public void testUntitledWithInvalidDate() throws Exception {
+    assertEquals(UNTITLED_FEED_ATOM,
+                 atomizer.atomize("gemini://gemini.example.com/100%25",
+                                  UNTITLED_FEED_GEMINI));
+  }
+
 }
@@ -0,0 +1,129 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.IOException;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+
+/**
+ * A server running on a free local port for the benchmarks. It serves a
+ * root directory prepared by the benchmark, and closing it shuts down the
+ * server and deletes the root.
+ */
+class BenchmarkServer implements AutoCloseable {
+
+  static final String HOST = "gemini.example.com";
+
+  private final Path root;
+  private final Server server;
+  private final Thread serverThread;
+  private final int port;
+  private final SSLSocketFactory socketFactory;
+
+  /**
+   * Starts a server for the given root and waits for it to listen.
+   *
+   * @param  root       root directory to serve
+   * @param  configurer sets benchmark-specific server properties
+   * @throws Exception  if the server cannot be started
+   */
+  BenchmarkServer(Path root, Consumer<ServerProperties.Builder> configurer)
+    throws Exception {
+    this.root = root;
+    try (ServerSocket probe = new ServerSocket(0)) {
+      port = probe.getLocalPort();
+    }
+    ServerProperties.Builder builder = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .port(port)
+      .controlPort(-1);
+    configurer.accept(builder);
+    server = new Server(builder.build());
+    serverThread = new Thread(() -> {
+      try {
+        server.start();
+      } catch (Exception e) {
+        throw new IllegalStateException(e);
+      }
+    }, "server");
+    serverThread.start();
+
+    SSLContext clientSslContext = SSLContext.getInstance("TLS");
+    clientSslContext.init(null,
+                          new TrustManager[] { new AllowAllTrustManager() },
+                          null);
+    socketFactory = clientSslContext.getSocketFactory();
+    awaitListening();
+  }
+
+  private void awaitListening() throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30L);
+    while (System.nanoTime() < deadline) {
+      try (Socket socket = new Socket("localhost", port)) {
+        return;
+      } catch (IOException e) {
+        Thread.sleep(50L);
+      }
+    }
+    throw new IllegalStateException("Server did not start listening");
+  }
+
+  /**
+   * Opens a TLS connection to the server, naming {@link #HOST} through SNI.
+   *
+   * @return             new socket
+   * @throws IOException if the connection cannot be opened
+   */
+  SSLSocket connect() throws IOException {
+    SSLSocket socket =
+      (SSLSocket) socketFactory.createSocket("localhost", port);
+    SSLParameters sslParameters = socket.getSSLParameters();
+    sslParameters.setServerNames(List.of(new SNIHostName(HOST)));
+    socket.setSSLParameters(sslParameters);
+    return socket;
+  }
+
+  @Override
+  public void close() throws Exception {
+    server.shutdown();
+    serverThread.join();
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(p);
+      }
+    }
+  }
+}
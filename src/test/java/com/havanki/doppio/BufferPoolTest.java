@@ -0,0 +1,74 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+public class BufferPoolTest {
+
+  @Test
+  public void testAcquireAllocatesWhenEmpty() {
+    BufferPool pool = new BufferPool(128, false, 2);
+    ByteBuffer buffer = pool.acquire();
+    assertEquals(128, buffer.capacity());
+    assertFalse(buffer.isDirect());
+    assertEquals(0, pool.getIdleCount());
+  }
+
+  @Test
+  public void testDirect() {
+    BufferPool pool = new BufferPool(128, true, 2);
+    assertTrue(pool.acquire().isDirect());
+  }
+
+  @Test
+  public void testReleaseReuses() {
+    BufferPool pool = new BufferPool(128, false, 2);
+    ByteBuffer buffer = pool.acquire();
+    buffer.put((byte) 1);
+    pool.release(buffer);
+    assertEquals(1, pool.getIdleCount());
+
+    ByteBuffer reused = pool.acquire();
+    assertSame(buffer, reused);
+    assertEquals(0, reused.position());
+    assertEquals(128, reused.remaining());
+  }
+
+  @Test
+  public void testReleaseDropsWhenFull() {
+    BufferPool pool = new BufferPool(128, false, 1);
+    ByteBuffer first = pool.acquire();
+    ByteBuffer second = pool.acquire();
+    assertNotSame(first, second);
+    pool.release(first);
+    pool.release(second);
+    assertEquals(1, pool.getIdleCount());
+    assertSame(first, pool.acquire());
+  }
+}
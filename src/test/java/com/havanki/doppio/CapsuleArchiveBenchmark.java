@@ -0,0 +1,133 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares serving a capsule of many small pages from its root directory with
+ * serving it from a packed archive. Each operation runs a request handler for
+ * one page over an in-memory connection, so that the time taken is the
+ * server's own work, without TLS or networking. Pages are requested in turn,
+ * so that every one is visited. Add "-prof gc" to the JMH arguments to see
+ * the allocation rate as well.
+ *
+ * Run with: mvn -P benchmark test-compile exec:exec -Dbenchmark=CapsuleArchive
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CapsuleArchiveBenchmark {
+
+  private static final String HOST = "gemini.example.com";
+  private static final int NUM_DIRS = 200;
+  private static final int PAGES_PER_DIR = 100;
+  @Param({ "directory", "archive" })
+  public String mode;
+
+  private Path root;
+  private Path archiveFile;
+  private ServerProperties serverProps;
+  private CapsuleArchive capsuleArchive;
+  private RequestHandlerDependencies dependencies;
+  private AccessLogger accessLogger;
+  private String[] requests;
+  private int next;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    root = Files.createTempDirectory("doppio-bench");
+    StringBuilder page = new StringBuilder();
+    while (page.length() < 1024) {
+      page.append("A line of text on a page in a capsule.\n");
+    }
+    List<String> requestList = new ArrayList<>();
+    for (int d = 0; d < NUM_DIRS; d++) {
+      Path dir = Files.createDirectory(root.resolve("dir" + d));
+      for (int p = 0; p < PAGES_PER_DIR; p++) {
+        String name = "page" + p + ".gmi";
+        Files.writeString(dir.resolve(name), page);
+        requestList.add("gemini://" + HOST + "/dir" + d + "/" + name);
+      }
+    }
+    requests = requestList.toArray(new String[0]);
+
+    serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .build();
+    if (mode.equals("archive")) {
+      archiveFile = Files.createTempFile("doppio-bench", ".pack");
+      new CapsulePacker(serverProps).pack(archiveFile);
+      capsuleArchive = CapsuleArchive.open(archiveFile);
+    }
+    dependencies = RequestHandlerDependencies.builder()
+      .capsuleArchive(capsuleArchive)
+      .build();
+    accessLogger = new AccessLogger(null);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    accessLogger.close();
+    if (archiveFile != null) {
+      Files.delete(archiveFile);
+    }
+    try (Stream<Path> paths = Files.walk(root)) {
+      for (Path p : paths.sorted(Comparator.reverseOrder()).toList()) {
+        Files.delete(p);
+      }
+    }
+  }
+
+  @Benchmark
+  public long serve() {
+    String request = requests[next];
+    next = (next + 1) % requests.length;
+    InMemoryClientConnection connection =
+      new InMemoryClientConnection(request, HOST);
+    new RequestHandler(serverProps, accessLogger, connection,
+                       dependencies).run();
+    return connection.getBytesWritten();
+  }
+}
@@ -0,0 +1,208 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CapsuleArchiveTest {
+
+  @TempDir
+  Path root;
+
+  @TempDir
+  Path archiveDir;
+
+  private Path archive;
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    Files.writeString(root.resolve("index.gmi"), "# Home\nWelcome\n");
+    Files.writeString(root.resolve("notes.txt"), "plain\n");
+    Files.write(root.resolve("image.png"), new byte[] { 1, 2, 3, '\n' });
+    Files.createDirectories(root.resolve("gemlog"));
+    Files.writeString(root.resolve("gemlog/index.gmi"), "# Gemlog\n");
+    Files.writeString(root.resolve("gemlog/first.gmi"), "First post\n");
+    Files.createDirectories(root.resolve("empty"));
+    Files.createDirectories(root.resolve("cgi-bin"));
+    Files.writeString(root.resolve("cgi-bin/script.sh"), "#!/bin/sh\n");
+    archive = archiveDir.resolve("capsule.pack");
+  }
+
+  private ServerProperties.Builder serverPropsBuilder() {
+    return ServerProperties.builder()
+      .root(root)
+      .host("gemini.example.com")
+      .cgiDir(Path.of("cgi-bin"));
+  }
+
+  private CapsuleArchive pack(ServerProperties serverProps) throws IOException {
+    new CapsulePacker(serverProps).pack(archive);
+    return CapsuleArchive.open(archive);
+  }
+
+  private static String asString(ByteBuffer buffer) {
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testPackAndGet() throws Exception {
+    CapsuleArchive capsuleArchive = pack(serverPropsBuilder().build());
+
+    CapsuleArchive.Entry entry = capsuleArchive.get("gemlog/first.gmi");
+    assertNotNull(entry);
+    assertEquals("text/gemini", entry.getMeta());
+    assertEquals("20 text/gemini\r\nFirst post\n", asString(entry.getResponse()));
+    assertEquals(11L, entry.getBodySize());
+
+    entry = capsuleArchive.get("/notes.txt");
+    assertEquals("20 text/plain\r\nplain\n", asString(entry.getResponse()));
+
+    entry = capsuleArchive.get("image.png");
+    ByteBuffer response = entry.getResponse();
+    byte[] header = "20 image/png\r\n".getBytes(StandardCharsets.US_ASCII);
+    assertEquals(header.length + 4, response.remaining());
+    assertEquals(ByteBuffer.wrap(new byte[] { 1, 2, 3, '\n' }),
+                 response.slice(header.length, 4));
+  }
+
+  @Test
+  public void testResponseBuffersAreIndependent() throws Exception {
+    CapsuleArchive capsuleArchive = pack(serverPropsBuilder().build());
+
+    CapsuleArchive.Entry entry = capsuleArchive.get("notes.txt");
+    ByteBuffer first = entry.getResponse();
+    first.position(first.limit());
+    assertEquals("20 text/plain\r\nplain\n", asString(entry.getResponse()));
+  }
+
+  @Test
+  public void testDirectories() throws Exception {
+    CapsuleArchive capsuleArchive = pack(serverPropsBuilder().build());
+
+    assertEquals("20 text/gemini\r\n# Home\nWelcome\n",
+                 asString(capsuleArchive.get("").getResponse()));
+    assertEquals("20 text/gemini\r\n# Gemlog\n",
+                 asString(capsuleArchive.get("gemlog").getResponse()));
+    assertEquals("20 text/gemini\r\n# Gemlog\n",
+                 asString(capsuleArchive.get("gemlog/").getResponse()));
+    assertEquals("20 text/gemini\r\n# Gemlog\n",
+                 asString(capsuleArchive.get("/gemlog//").getResponse()));
+    assertNull(capsuleArchive.get("empty"));
+  }
+
+  @Test
+  public void testCgiDirSkipped() throws Exception {
+    CapsuleArchive capsuleArchive = pack(serverPropsBuilder().build());
+
+    assertNull(capsuleArchive.get("cgi-bin/script.sh"));
+    assertNull(capsuleArchive.get("cgi-bin"));
+    // 5 files, plus the root and gemlog directories
+    assertEquals(7, capsuleArchive.size());
+  }
+
+  @Test
+  public void testForceCanonicalText() throws Exception {
+    Files.writeString(root.resolve("trailing.txt"), "one\ntwo\r");
+    CapsuleArchive capsuleArchive =
+      pack(serverPropsBuilder().forceCanonicalText(true).build());
+
+    CapsuleArchive.Entry entry = capsuleArchive.get("index.gmi");
+    assertEquals("20 text/gemini\r\n# Home\r\nWelcome\r\n",
+                 asString(entry.getResponse()));
+    assertEquals(17L, entry.getBodySize());
+    assertEquals("20 text/plain\r\none\r\ntwo\r\n",
+                 asString(capsuleArchive.get("trailing.txt").getResponse()));
+    // Only text is converted.
+    assertEquals(18, capsuleArchive.get("image.png").getResponse().remaining());
+  }
+
+  @Test
+  public void testRepackReplacesArchive() throws Exception {
+    CapsuleArchive oldArchive = pack(serverPropsBuilder().build());
+    Files.writeString(root.resolve("notes.txt"), "changed\n");
+    CapsuleArchive newArchive = pack(serverPropsBuilder().build());
+
+    assertEquals("20 text/plain\r\nchanged\n",
+                 asString(newArchive.get("notes.txt").getResponse()));
+    // The old mapping is unaffected.
+    assertEquals("20 text/plain\r\nplain\n",
+                 asString(oldArchive.get("notes.txt").getResponse()));
+    try (var files = Files.list(archiveDir)) {
+      assertEquals(1L, files.count());
+    }
+  }
+
+  @Test
+  public void testArchiveInRootSkipped() throws Exception {
+    archive = root.resolve("capsule.pack");
+    pack(serverPropsBuilder().build());
+    CapsuleArchive capsuleArchive = pack(serverPropsBuilder().build());
+
+    assertNull(capsuleArchive.get("capsule.pack"));
+  }
+
+  @Test
+  public void testNotAnArchive() throws Exception {
+    Path notArchive = archiveDir.resolve("not.pack");
+    Files.writeString(notArchive, "this is not an archive at all");
+    assertThrows(IOException.class, () -> CapsuleArchive.open(notArchive));
+  }
+
+  @Test
+  public void testTruncatedArchive() throws Exception {
+    pack(serverPropsBuilder().build());
+    byte[] bytes = Files.readAllBytes(archive);
+    Path truncated = archiveDir.resolve("truncated.pack");
+    Files.write(truncated, Arrays.copyOf(bytes, bytes.length - 4));
+    assertThrows(IOException.class, () -> CapsuleArchive.open(truncated));
+  }
+
+  @Test
+  public void testStats() throws Exception {
+    CapsuleArchive capsuleArchive = pack(serverPropsBuilder().build());
+    capsuleArchive.get("index.gmi");
+    capsuleArchive.get("missing.gmi");
+
+    Map<String, Long> stats = new LinkedHashMap<>();
+    capsuleArchive.addTo(stats);
+    assertEquals(1L, stats.get("archive.hits"));
+    assertEquals(1L, stats.get("archive.misses"));
+    assertEquals(7L, stats.get("archive.entries"));
+    assertEquals(Files.size(archive), stats.get("archive.bytes"));
+  }
+}
@@ -0,0 +1,164 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CgiLimiterTest {
+
+  private static final String HOST = "gemini.example.com";
+  private static final Path SCRIPT_A = Path.of("/var/gemini/cgi-bin/a.sh");
+  private static final Path SCRIPT_B = Path.of("/var/gemini/cgi-bin/b.sh");
+
+  @TempDir
+  Path root;
+
+  @Test
+  public void testPerScriptLimit() throws Exception {
+    CgiLimiter limiter = new CgiLimiter(0, 1, 0, 0);
+
+    CgiLimiter.Permit permit = limiter.acquire(SCRIPT_A);
+    assertNotNull(permit);
+    assertNull(limiter.acquire(SCRIPT_A));
+    try (CgiLimiter.Permit other = limiter.acquire(SCRIPT_B)) {
+      assertNotNull(other);
+    }
+
+    permit.close();
+    permit.close(); // only releases once
+    assertEquals(0, limiter.getRunning());
+    try (CgiLimiter.Permit again = limiter.acquire(SCRIPT_A)) {
+      assertNotNull(again);
+    }
+    assertEquals(1L, limiter.getRejected());
+  }
+
+  @Test
+  public void testGlobalLimit() throws Exception {
+    CgiLimiter limiter = new CgiLimiter(1, 0, 0, 0);
+
+    try (CgiLimiter.Permit permit = limiter.acquire(SCRIPT_A)) {
+      assertNotNull(permit);
+      assertNull(limiter.acquire(SCRIPT_B));
+    }
+  }
+
+  @Test
+  public void testWaitsForRoom() throws Exception {
+    CgiLimiter limiter = new CgiLimiter(1, 0, 1, 10000);
+
+    CgiLimiter.Permit permit = limiter.acquire(SCRIPT_A);
+    CompletableFuture<CgiLimiter.Permit> waiter =
+      CompletableFuture.supplyAsync(() -> {
+        try {
+          return limiter.acquire(SCRIPT_B);
+        } catch (Exception e) {
+          throw new IllegalStateException(e);
+        }
+      });
+    while (limiter.getQueued() == 0) {
+      Thread.sleep(10L);
+    }
+    // The queue is full, so another request is turned away at once.
+    assertNull(limiter.acquire(SCRIPT_B));
+
+    permit.close();
+    try (CgiLimiter.Permit waited = waiter.get()) {
+      assertNotNull(waited);
+    }
+
+    Map<String, Long> stats = new HashMap<>();
+    limiter.addTo(stats);
+    assertEquals(2L, stats.get("cgi.limit.admitted"));
+    assertEquals(1L, stats.get("cgi.limit.waited"));
+    assertEquals(1L, stats.get("cgi.limit.rejected"));
+    assertEquals(0L, stats.get("cgi.limit.queued"));
+    assertEquals(0L, stats.get("cgi.limit.running"));
+  }
+
+  @Test
+  public void testQueueTimeout() throws Exception {
+    CgiLimiter limiter = new CgiLimiter(1, 0, 1, 100);
+
+    try (CgiLimiter.Permit permit = limiter.acquire(SCRIPT_A)) {
+      assertNull(limiter.acquire(SCRIPT_A));
+    }
+    assertEquals(1L, limiter.getRejected());
+    assertEquals(0, limiter.getQueued());
+  }
+
+  @Test
+  public void testRetryAfter() {
+    assertEquals(1, new CgiLimiter(1, 0, 0, 0).getRetryAfterSec());
+    assertEquals(2, new CgiLimiter(1, 0, 0, 1500).getRetryAfterSec());
+    assertEquals(5, new CgiLimiter(1, 0, 0, 5000).getRetryAfterSec());
+  }
+
+  @Test
+  public void testSlowDown() throws Exception {
+    Files.createDirectories(root.resolve("cgi-bin"));
+    Path script = root.resolve("cgi-bin/page.sh");
+    Files.writeString(script,
+                      "#!/bin/sh\nprintf 'Content-Type: text/gemini\\n\\nHello\\n'\n");
+    Files.setPosixFilePermissions(script,
+                                  PosixFilePermissions.fromString("rwxr-xr-x"));
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .build();
+    CgiLimiter limiter = new CgiLimiter(1, 0, 0, 0);
+    RequestHandlerDependencies dependencies =
+      RequestHandlerDependencies.builder().cgiLimiter(limiter).build();
+
+    try (CgiLimiter.Permit permit = limiter.acquire(Path.of("/elsewhere.sh"));
+         AccessLogger accessLogger = new AccessLogger(null)) {
+      InMemoryClientConnection connection =
+        new InMemoryClientConnection("gemini://" + HOST + "/cgi-bin/page.sh",
+                                     HOST);
+      new RequestHandler(serverProps, accessLogger, connection,
+                         dependencies).run();
+      assertEquals(StatusCodes.SLOW_DOWN, connection.getStatusCode());
+      assertEquals("44 1\r\n".length(), connection.getBytesWritten());
+    }
+
+    InMemoryClientConnection connection =
+      new InMemoryClientConnection("gemini://" + HOST + "/cgi-bin/page.sh",
+                                   HOST);
+    try (AccessLogger accessLogger = new AccessLogger(null)) {
+      new RequestHandler(serverProps, accessLogger, connection,
+                         dependencies).run();
+    }
+    assertEquals(StatusCodes.SUCCESS, connection.getStatusCode());
+    assertEquals(0, limiter.getRunning());
+  }
+}
@@ -0,0 +1,182 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CgiProcessGuardTest {
+
+  private static final String HOST = "gemini.example.com";
+  private static final String HEADER = "Content-Type: text/gemini\\n\\n";
+
+  @TempDir
+  Path root;
+
+  @BeforeEach
+  public void beforeEach() throws IOException {
+    Files.createDirectories(root.resolve("cgi-bin"));
+  }
+
+  private void writeScript(String name, String body) throws IOException {
+    Path script = root.resolve("cgi-bin/" + name);
+    Files.writeString(script, "#!/bin/bash\n" + body);
+    Files.setPosixFilePermissions(script,
+                                  PosixFilePermissions.fromString("rwxr-xr-x"));
+  }
+
+  private InMemoryClientConnection run(ServerProperties serverProps,
+                                       String path) throws IOException {
+    InMemoryClientConnection connection =
+      new InMemoryClientConnection("gemini://" + HOST + path, HOST);
+    try (AccessLogger accessLogger = new AccessLogger(root)) {
+      new RequestHandler(serverProps, accessLogger, connection).run();
+    }
+    return connection;
+  }
+
+  // "request" status size ["note"]
+  private static final Pattern LOG_LINE_END =
+    Pattern.compile("\" (\\d+) \\S+(?: \"([^\"]*)\")?$");
+
+  private Matcher lastLogLine() throws IOException {
+    List<String> lines =
+      Files.readAllLines(root.resolve(AccessLogger.ACCESS_LOG_FILE_NAME));
+    Matcher m = LOG_LINE_END.matcher(lines.get(lines.size() - 1));
+    assertTrue(m.find());
+    return m;
+  }
+
+  private int loggedStatusCode() throws IOException {
+    return Integer.parseInt(lastLogLine().group(1));
+  }
+
+  private String loggedNote() throws IOException {
+    return lastLogLine().group(2);
+  }
+
+  private static void assertStopped(long pid) throws InterruptedException {
+    for (int i = 0; i < 100; i++) {
+      Optional<ProcessHandle> ph = ProcessHandle.of(pid);
+      if (ph.isEmpty() || !ph.get().isAlive()) {
+        return;
+      }
+      Thread.sleep(50L);
+    }
+    assertFalse(ProcessHandle.of(pid).map(ProcessHandle::isAlive).orElse(false));
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    // The script starts a child that would outlive it if only the script
+    // were stopped.
+    writeScript("hang.sh",
+                "sleep 30 &\n" +
+                "echo $! > \"" + root.resolve("child.pid") + "\"\n" +
+                "printf '" + HEADER + "start\\n'\n" +
+                "wait\n");
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .cgiTimeoutMs(500)
+      .build();
+
+    long start = System.nanoTime();
+    InMemoryClientConnection connection = run(serverProps, "/cgi-bin/hang.sh");
+
+    assertTrue(System.nanoTime() - start < 10_000_000_000L);
+    assertEquals(StatusCodes.SUCCESS, connection.getStatusCode());
+    assertEquals(StatusCodes.CGI_ERROR, loggedStatusCode());
+    assertEquals("cgi-timeout", loggedNote());
+    assertStopped(Long.parseLong(Files.readString(root.resolve("child.pid")).trim()));
+  }
+
+  @Test
+  public void testTimeoutBeforeHeaders() throws Exception {
+    writeScript("silent.sh", "sleep 30\n");
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .cgiTimeoutMs(500)
+      .build();
+
+    InMemoryClientConnection connection = run(serverProps, "/cgi-bin/silent.sh");
+
+    assertEquals(StatusCodes.CGI_ERROR, connection.getStatusCode());
+    assertEquals(StatusCodes.CGI_ERROR, loggedStatusCode());
+    assertEquals("cgi-timeout", loggedNote());
+  }
+
+  @Test
+  public void testOutputLimit() throws Exception {
+    writeScript("endless.sh", "printf '" + HEADER + "'\nyes\n");
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .cgiMaxOutputBytes(1000L)
+      .build();
+
+    InMemoryClientConnection connection = run(serverProps, "/cgi-bin/endless.sh");
+
+    assertEquals(StatusCodes.SUCCESS, connection.getStatusCode());
+    // The limit covers the CGI response headers too.
+    assertEquals("20 text/gemini\r\n".length() + 1000L - "Content-Type: text/gemini\n\n".length(),
+                 connection.getBytesWritten());
+    assertEquals(StatusCodes.CGI_ERROR, loggedStatusCode());
+    assertEquals("cgi-output-limit", loggedNote());
+  }
+
+  @Test
+  public void testWithinLimits() throws Exception {
+    writeScript("page.sh", "printf '" + HEADER + "Hello\\n'\n");
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .cgiTimeoutMs(10000)
+      .cgiMaxOutputBytes("Content-Type: text/gemini\n\nHello\n".length())
+      .build();
+
+    InMemoryClientConnection connection = run(serverProps, "/cgi-bin/page.sh");
+
+    assertEquals(StatusCodes.SUCCESS, connection.getStatusCode());
+    assertEquals("20 text/gemini\r\nHello\n".length(), connection.getBytesWritten());
+    assertEquals(StatusCodes.SUCCESS, loggedStatusCode());
+    assertNull(loggedNote());
+  }
+}
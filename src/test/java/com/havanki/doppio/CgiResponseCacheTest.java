@@ -0,0 +1,205 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CgiResponseCacheTest {
+
+  private static final String HOST = "gemini.example.com";
+  private static final Path SCRIPT = Path.of("/var/gemini/cgi-bin/page.sh");
+
+  @TempDir
+  Path root;
+
+  private CgiResponseCache cache;
+
+  @BeforeEach
+  public void beforeEach() {
+    cache = new CgiResponseCache(800L);
+  }
+
+  private static byte[] bytes(String s) {
+    return s.getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testKey() {
+    String key = CgiResponseCache.key(HOST, SCRIPT, "a", "q=1", null);
+
+    assertEquals(key, CgiResponseCache.key(HOST, SCRIPT, "a", "q=1", null));
+    assertNotEquals(key, CgiResponseCache.key(HOST, SCRIPT, "b", "q=1", null));
+    assertNotEquals(key, CgiResponseCache.key(HOST, SCRIPT, "a", "q=2", null));
+    assertNotEquals(key, CgiResponseCache.key(HOST, SCRIPT, "a", null, null));
+    assertNotEquals(key, CgiResponseCache.key(HOST, SCRIPT, "a", "q=1", "ab:cd"));
+    assertNotEquals(CgiResponseCache.key(HOST, SCRIPT, "a", "q=1", "ab:cd"),
+                    CgiResponseCache.key(HOST, SCRIPT, "a", "q=1", "ef:01"));
+  }
+
+  @Test
+  public void testPutAndGet() {
+    byte[] response = bytes("20 text/gemini\r\nHello\n");
+    cache.put("k", StatusCodes.SUCCESS, response, 16, 60L);
+
+    CgiResponseCache.Entry entry = cache.get("k");
+
+    assertNotNull(entry);
+    assertEquals(StatusCodes.SUCCESS, entry.getStatusCode());
+    assertArrayEquals(response, entry.getResponse());
+    assertEquals(6L, entry.getBodySize());
+    assertNull(cache.get("other"));
+    assertEquals(1L, cache.getHits());
+    assertEquals(1L, cache.getMisses());
+  }
+
+  @Test
+  public void testExpiry() throws Exception {
+    cache.put("k", StatusCodes.SUCCESS, bytes("20 text/gemini\r\n"), 16, 1L);
+    assertNotNull(cache.get("k"));
+
+    Thread.sleep(1100L);
+
+    assertNull(cache.get("k"));
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.getCurrentBytes());
+  }
+
+  @Test
+  public void testTooLarge() {
+    cache.put("k", StatusCodes.SUCCESS, new byte[101], 16, 60L);
+
+    assertNull(cache.get("k"));
+  }
+
+  @Test
+  public void testEviction() {
+    for (int i = 0; i < 9; i++) {
+      cache.put("k" + i, StatusCodes.SUCCESS, new byte[100], 16, 60L);
+    }
+
+    assertNull(cache.get("k0"));
+    assertNotNull(cache.get("k8"));
+    assertEquals(1L, cache.getEvictions());
+    assertEquals(800L, cache.getCurrentBytes());
+  }
+
+  private void writeScript(String name, String cacheControl) throws IOException {
+    Path script = root.resolve("cgi-bin/" + name);
+    Files.writeString(script,
+                      "#!/bin/sh\n" +
+                      "echo x >> \"" + root.resolve(name + ".runs") + "\"\n" +
+                      "printf 'Content-Type: text/gemini\\n" + cacheControl +
+                      "\\nHello\\n'\n");
+    Files.setPosixFilePermissions(script,
+                                  PosixFilePermissions.fromString("rwxr-xr-x"));
+  }
+
+  private long run(ServerProperties serverProps, CgiResponseCache cgiCache,
+                   String path) throws IOException {
+    InMemoryClientConnection connection =
+      new InMemoryClientConnection("gemini://" + HOST + path, HOST);
+    try (AccessLogger accessLogger = new AccessLogger(null)) {
+      new RequestHandler(serverProps, accessLogger, connection,
+                         RequestHandlerDependencies.builder()
+                         .cgiResponseCache(cgiCache)
+                         .build()).run();
+    }
+    assertEquals(StatusCodes.SUCCESS, connection.getStatusCode());
+    return connection.getBytesWritten();
+  }
+
+  private long runs(String name) throws IOException {
+    return Files.readAllLines(root.resolve(name + ".runs")).size();
+  }
+
+  @Test
+  public void testCachesCgiResponses() throws Exception {
+    Files.createDirectories(root.resolve("cgi-bin"));
+    writeScript("cached.sh", "Cache-Control: max-age=60\\n");
+    writeScript("uncached.sh", "");
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .build();
+    CgiResponseCache cgiCache = new CgiResponseCache(1024L * 1024L);
+
+    long size = run(serverProps, cgiCache, "/cgi-bin/cached.sh/a?q");
+    assertEquals("20 text/gemini\r\nHello\n".length(), size);
+    assertEquals(size, run(serverProps, cgiCache, "/cgi-bin/cached.sh/a?q"));
+    assertEquals(1L, runs("cached.sh"));
+
+    // Different extra path information or query is a different response.
+    run(serverProps, cgiCache, "/cgi-bin/cached.sh/b?q");
+    run(serverProps, cgiCache, "/cgi-bin/cached.sh/a?r");
+    assertEquals(3L, runs("cached.sh"));
+
+    run(serverProps, cgiCache, "/cgi-bin/uncached.sh");
+    run(serverProps, cgiCache, "/cgi-bin/uncached.sh");
+    assertEquals(2L, runs("uncached.sh"));
+    assertEquals(3, cgiCache.size());
+  }
+
+  @Test
+  public void testLogsConvertedBodySize() throws Exception {
+    Files.createDirectories(root.resolve("cgi-bin"));
+    writeScript("cached.sh", "Cache-Control: max-age=60\\n");
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .forceCanonicalText(true)
+      .build();
+    CgiResponseCache cgiCache = new CgiResponseCache(1024L * 1024L);
+
+    InMemoryClientConnection connection =
+      new InMemoryClientConnection("gemini://" + HOST + "/cgi-bin/cached.sh",
+                                   HOST);
+    try (AccessLogger accessLogger = new AccessLogger(root)) {
+      new RequestHandler(serverProps, accessLogger, connection,
+                         RequestHandlerDependencies.builder()
+                         .cgiResponseCache(cgiCache)
+                         .build()).run();
+    }
+
+    // The body "Hello\n" is sent as "Hello\r\n".
+    String logLine =
+      Files.readAllLines(root.resolve(AccessLogger.ACCESS_LOG_FILE_NAME)).get(0);
+    assertTrue(logLine.endsWith(" 20 7"), logLine);
+    String key = CgiResponseCache.key(HOST, root.resolve("cgi-bin/cached.sh"),
+                                      "", null, null);
+    assertEquals(7L, cgiCache.get(key).getBodySize());
+  }
+}
@@ -0,0 +1,388 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the buffered CGI response header reader with the earlier one,
+ * which read a byte at a time into a new array for each line. Each operation
+ * reads the headers of a CGI response from an unbuffered stream standing in
+ * for a process pipe, and then relays its body. The reads counter counts
+ * calls to read from the stream, each of which would be a system call on a
+ * real pipe; divide it by the operation rate to get the calls per response.
+ * Add "-prof gc" to the JMH arguments to see the allocation rate as well.
+ *
+ * Run with: mvn -P benchmark test-compile exec:exec -Dbenchmark=CgiResponseHeaderReader
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class CgiResponseHeaderReaderBenchmark {
+
+  private static final String HEADERS =
+    "Status: 20 OK\n" +
+    "Content-Type: text/gemini; charset=utf-8; lang=en\n" +
+    "Cache-Control: public, max-age=60\n" +
+    "\n";
+
+  @Param({ "64", "16384" })
+  public int bodySize;
+
+  private PipeInputStream pipe;
+  private LegacyCgiResponseHeaderReader legacyReader;
+  private final OutputStream sink = OutputStream.nullOutputStream();
+
+  /**
+   * Counts calls to read from the pipe, so that JMH reports a call rate.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters {
+    public long reads;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws IOException {
+    byte[] headerBytes = HEADERS.getBytes(StandardCharsets.UTF_8);
+    byte[] response = Arrays.copyOf(headerBytes, headerBytes.length + bodySize);
+    for (int i = headerBytes.length; i < response.length; i++) {
+      response[i] = (byte) ('a' + i % 26);
+    }
+    pipe = new PipeInputStream(response);
+    legacyReader = new LegacyCgiResponseHeaderReader();
+
+    pipe.rewind();
+    CgiResponseMetadata legacyMetadata = legacyReader.consumeHeaders(pipe);
+    ByteArrayOutputStream legacyBody = new ByteArrayOutputStream();
+    pipe.transferTo(legacyBody);
+    pipe.rewind();
+    CgiResponseMetadata metadata;
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    try (CgiResponseHeaderReader reader = new CgiResponseHeaderReader()) {
+      metadata = reader.consumeHeaders(pipe);
+      reader.getBody().transferTo(body);
+    }
+    if (!Objects.equals(legacyMetadata.getStatusCode(), metadata.getStatusCode()) ||
+        !Objects.equals(legacyMetadata.getReasonPhrase(), metadata.getReasonPhrase()) ||
+        !Objects.equals(legacyMetadata.getContentType(), metadata.getContentType()) ||
+        !Objects.equals(legacyMetadata.getMaxAgeSec(), metadata.getMaxAgeSec()) ||
+        !Arrays.equals(legacyBody.toByteArray(), body.toByteArray())) {
+      throw new IllegalStateException("Readers produce different responses");
+    }
+  }
+
+  @Benchmark
+  public CgiResponseMetadata legacy(Counters counters) throws IOException {
+    pipe.rewind();
+    CgiResponseMetadata metadata = legacyReader.consumeHeaders(pipe);
+    pipe.transferTo(sink);
+    counters.reads += pipe.getReads();
+    return metadata;
+  }
+
+  @Benchmark
+  public CgiResponseMetadata buffered(Counters counters) throws IOException {
+    pipe.rewind();
+    // A request handler uses a new reader for each response, as here.
+    try (CgiResponseHeaderReader reader = new CgiResponseHeaderReader()) {
+      CgiResponseMetadata metadata = reader.consumeHeaders(pipe);
+      reader.getBody().transferTo(sink);
+      counters.reads += pipe.getReads();
+      return metadata;
+    }
+  }
+
+  /**
+   * An unbuffered stream over a response, which counts calls to read from
+   * it. Like a pipe, a read returns whatever is asked for, up to the pipe's
+   * capacity. It may be rewound to serve the response again.
+   */
+  static class PipeInputStream extends InputStream {
+
+    private static final int PIPE_CAPACITY = 65536;
+    private static final int TRANSFER_BUFFER_SIZE = 16384;
+
+    private final byte[] content;
+    private int pos;
+    private long reads;
+
+    PipeInputStream(byte[] content) {
+      this.content = content;
+    }
+
+    void rewind() {
+      pos = 0;
+      reads = 0L;
+    }
+
+    long getReads() {
+      return reads;
+    }
+
+    @Override
+    public int read() {
+      reads++;
+      return pos < content.length ? content[pos++] & 0xff : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+      reads++;
+      if (pos >= content.length) {
+        return -1;
+      }
+      int n = Math.min(Math.min(len, PIPE_CAPACITY), content.length - pos);
+      System.arraycopy(content, pos, b, off, n);
+      pos += n;
+      return n;
+    }
+
+    @Override
+    public long transferTo(OutputStream out) throws IOException {
+      // Read in chunks as InputStream.transferTo does, but without
+      // allocating a buffer, so that only the readers' allocations show.
+      long transferred = 0L;
+      while (true) {
+        reads++;
+        int n = Math.min(TRANSFER_BUFFER_SIZE, content.length - pos);
+        if (n <= 0) {
+          return transferred;
+        }
+        out.write(content, pos, n);
+        pos += n;
+        transferred += n;
+      }
+    }
+  }
+
+  /**
+   * The CGI response header reader as it was before it buffered its input,
+   * kept as a baseline.
+   */
+  static class LegacyCgiResponseHeaderReader {
+
+    private static final Logger LOG =
+      LoggerFactory.getLogger(LegacyCgiResponseHeaderReader.class);
+
+    private static final String CONTENT_TYPE_PREFIX = "Content-Type:";
+    private static final int CONTENT_TYPE_PREFIX_LEN = CONTENT_TYPE_PREFIX.length();
+
+    private static final String STATUS_PREFIX = "Status:";
+    private static final int STATUS_PREFIX_LEN = STATUS_PREFIX.length();
+
+    private static final String LOCATION_PREFIX = "Location:";
+    private static final int LOCATION_PREFIX_LEN = LOCATION_PREFIX.length();
+
+    private static final String CACHE_CONTROL_PREFIX = "Cache-Control:";
+    private static final int CACHE_CONTROL_PREFIX_LEN = CACHE_CONTROL_PREFIX.length();
+    private static final String MAX_AGE_DIRECTIVE = "max-age=";
+
+    /**
+     * Consumes CGI response headers from the given input stream, which is
+     * expected to be the output from a CGI script.
+     *
+     * @param  processStdout CGI output as an input stream
+     * @return               response metadata
+     * @throws IOException   if the headers are malformed
+     */
+    public CgiResponseMetadata consumeHeaders(InputStream processStdout)
+      throws IOException {
+      CgiResponseMetadata responseMetadata = new CgiResponseMetadata();
+
+      String responseHeader;
+      while (true) {
+        responseHeader = readLine(processStdout);
+        if (responseHeader == null || responseHeader.isEmpty()) {
+          break;
+        }
+        LOG.debug("Response header: {}", responseHeader);
+
+        if (responseHeader.startsWith(CONTENT_TYPE_PREFIX)) {
+          // Content-Type: <content-type>
+          responseMetadata.setContentType(responseHeader
+            .substring(CONTENT_TYPE_PREFIX_LEN).trim());
+
+        } else if (responseHeader.startsWith(STATUS_PREFIX)) {
+          // Status: <status-code>[ <reason-phrase>]
+          String statusValue = responseHeader.substring(STATUS_PREFIX_LEN).trim();
+          if (statusValue.isEmpty()) {
+            throw new IOException("Status response header has empty value");
+          }
+          String statusCodeString;
+          int spidx = statusValue.indexOf(" ");
+          if (spidx != -1) {
+            statusCodeString = statusValue.substring(0, spidx);
+          } else {
+            statusCodeString = statusValue;
+          }
+          try {
+            responseMetadata.setStatusCode(Integer.parseInt(statusCodeString));
+          } catch (NumberFormatException e) {
+            throw new IOException("Status response header has invalid status code " +
+                                  statusCodeString);
+          }
+          if (spidx != -1) {
+            responseMetadata.setReasonPhrase(statusValue.substring(spidx + 1));
+          }
+
+        } else if (responseHeader.startsWith(LOCATION_PREFIX)) {
+          // Location: <URI>
+          String uriString = responseHeader.substring(LOCATION_PREFIX_LEN).trim();
+          if (uriString.isEmpty()) {
+            throw new IOException("Location response header has empty value");
+          }
+
+          try {
+            responseMetadata.setLocation(new URI (uriString));
+          } catch (URISyntaxException e) {
+            throw new IOException("Location response header has invalid URI " +
+                                  uriString);
+          }
+        } else if (responseHeader.startsWith(CACHE_CONTROL_PREFIX)) {
+          // Cache-Control: <directive>[, <directive>...]
+          responseMetadata.setMaxAgeSec(parseMaxAge(responseHeader
+            .substring(CACHE_CONTROL_PREFIX_LEN)));
+
+        } else {
+          LOG.warn("Unsupported CGI response header: {}", responseHeader);
+        }
+      }
+
+      // Either Content-Type (ordinary response) or Location (redirect) is
+      // required, so fail if neither one are present.
+      if (responseMetadata.getContentType() == null &&
+          responseMetadata.getLocation() == null) {
+        throw new IOException("Content-Type or Location response header " +
+                              "not provided");
+      }
+      // If a Location header is present, ensure that the status code, if also
+      // present, is for a temporary redirect.
+      if (responseMetadata.getLocation() != null &&
+          responseMetadata.getStatusCode() != null &&
+          responseMetadata.getStatusCode() != StatusCodes.REDIRECT_TEMPORARY) {
+        throw new IOException("CGI response is a redirect, but its status code is " +
+                              responseMetadata.getStatusCode() + " instead of " +
+                              "the required " + StatusCodes.REDIRECT_TEMPORARY);
+      }
+      return responseMetadata;
+    }
+
+    /**
+     * Finds the max-age directive in the value of a Cache-Control header. Other
+     * directives are ignored, except that no-store and no-cache prevent
+     * caching. An invalid max-age is logged and ignored, since caching is only
+     * an optimization.
+     *
+     * @param  value header value
+     * @return       maximum age in seconds, or null if the response may not be
+     *               cached
+     */
+    private Long parseMaxAge(String value) {
+      Long maxAgeSec = null;
+      for (String directive : value.split(",")) {
+        directive = directive.trim();
+        if (directive.equals("no-store") || directive.equals("no-cache")) {
+          return null;
+        }
+        if (directive.startsWith(MAX_AGE_DIRECTIVE)) {
+          String maxAgeString = directive.substring(MAX_AGE_DIRECTIVE.length());
+          try {
+            maxAgeSec = Long.parseLong(maxAgeString);
+          } catch (NumberFormatException e) {
+            LOG.warn("Ignoring invalid max-age in Cache-Control response header: {}",
+                     maxAgeString);
+          }
+        }
+      }
+      return maxAgeSec != null && maxAgeSec > 0L ? maxAgeSec : null;
+    }
+
+    /**
+     * Reads a line of UTF-8 text from an input stream. This is here because after
+     * CGI response headers are read, the rest of the stream is fed to the server
+     * response, and if a normal Java buffered input stream or reader is used,
+     * it is liable to take out extra bytes from the stream that don't belong to
+     * CGI response headers, thus cutting off the beginning of the body content.
+     *
+     * Only "\n" is detected as the end of a line, and not "\r\n". However, RFC
+     * 3875 specifies "\n" as the line ending for CGI response headers, so this
+     * is actually OK.
+     *
+     * @param  in          input stream
+     * @return             line of text
+     * @throws IOException if reading from the stream fails
+     */
+    private String readLine(InputStream in) throws IOException {
+      byte[] lineBytes = new byte[80];
+      int len = 0;
+      int b = 0;
+      while (true) {
+        b = in.read();
+        if (b == -1) {
+          break;
+        }
+        if (b == '\n') {
+          break;
+        }
+        if (lineBytes.length < len + 1) {
+          byte[] newLineBytes = new byte[2 * lineBytes.length];
+          System.arraycopy(lineBytes, 0, newLineBytes, 0, len);
+          lineBytes = newLineBytes;
+        }
+        lineBytes[len] = (byte) b;
+        len++;
+      }
+
+      if (len == 0) {
+        return b == -1 ? null : "";
+      }
+      return new String(lineBytes, StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -19,17 +19,22 @@
 
 package com.havanki.doppio;
 
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.BufferedReader;
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
@@ -44,6 +49,11 @@ public class CgiResponseHeaderReaderTest {
     reader = new CgiResponseHeaderReader();
   }
 
+  @AfterEach
+  public void afterEach() {
+    reader.close();
+  }
+
   @Test
   public void testContentTypeOnly() throws Exception {
     in = newInputStream("Content-Type: text/plain\n" +
@@ -56,7 +66,7 @@ public class CgiResponseHeaderReaderTest {
     assertNull(metadata.getStatusCode());
     assertNull(metadata.getReasonPhrase());
 
-    verifyRemaining(in, "Hello");
+    verifyRemaining("Hello");
   }
 
   @Test
@@ -83,7 +93,7 @@ public class CgiResponseHeaderReaderTest {
     assertEquals(21, metadata.getStatusCode());
     assertNull(metadata.getReasonPhrase());
 
-    verifyRemaining(in, "Hello");
+    verifyRemaining("Hello");
   }
 
   @Test
@@ -99,7 +109,7 @@ public class CgiResponseHeaderReaderTest {
     assertEquals(21, metadata.getStatusCode());
     assertEquals("Because I said so", metadata.getReasonPhrase());
 
-    verifyRemaining(in, "Hello");
+    verifyRemaining("Hello");
   }
 
   @Test
@@ -115,7 +125,7 @@ public class CgiResponseHeaderReaderTest {
     assertEquals(21, metadata.getStatusCode());
     assertNull(metadata.getReasonPhrase()); // the header is trimmed
 
-    verifyRemaining(in, "Hello");
+    verifyRemaining("Hello");
   }
 
   @Test
@@ -137,7 +147,7 @@ public class CgiResponseHeaderReaderTest {
                  "class because using Java's buffering causes " +
                  "characters to get eaten afterwards", metadata.getReasonPhrase());
 
-    verifyRemaining(in, "Hello");
+    verifyRemaining("Hello");
   }
 
   @Test
@@ -225,18 +235,159 @@ public class CgiResponseHeaderReaderTest {
     assertNull(metadata.getStatusCode());
     assertNull(metadata.getReasonPhrase());
 
-    verifyRemaining(in, "Hello");
+    verifyRemaining("Hello");
+  }
+
+  @Test
+  public void testCacheControlMaxAge() throws Exception {
+    in = newInputStream("Content-Type: text/plain\n" +
+                        "Cache-Control: public, max-age=300\n" +
+                        "\n" +
+                        "Hello");
+
+    CgiResponseMetadata metadata = reader.consumeHeaders(in);
+
+    assertEquals(300L, metadata.getMaxAgeSec());
+
+    verifyRemaining("Hello");
+  }
+
+  @Test
+  public void testCacheControlNoStore() throws Exception {
+    in = newInputStream("Content-Type: text/plain\n" +
+                        "Cache-Control: max-age=300, no-store\n" +
+                        "\n" +
+                        "Hello");
+
+    CgiResponseMetadata metadata = reader.consumeHeaders(in);
+
+    assertNull(metadata.getMaxAgeSec());
+  }
+
+  @Test
+  public void testCacheControlInvalidMaxAge() throws Exception {
+    in = newInputStream("Content-Type: text/plain\n" +
+                        "Cache-Control: max-age=soon\n" +
+                        "\n" +
+                        "Hello");
+
+    CgiResponseMetadata metadata = reader.consumeHeaders(in);
+
+    assertNull(metadata.getMaxAgeSec());
+    verifyRemaining("Hello");
   }
 
+  @Test
+  public void testHeaderLongerThanBuffer() throws Exception {
+    String reasonPhrase = "x".repeat(5000);
+    in = newInputStream("Status: 21 " + reasonPhrase + "\n" +
+                        "Content-Type: text/plain\n" +
+                        "\n" +
+                        "Hello");
+
+    CgiResponseMetadata metadata = reader.consumeHeaders(in);
+
+    assertEquals("text/plain", metadata.getContentType());
+    assertEquals(reasonPhrase, metadata.getReasonPhrase());
+
+    verifyRemaining("Hello");
+  }
+
+  @Test
+  public void testHeadersTooLong() throws Exception {
+    in = newInputStream("Content-Type: text/plain\n" +
+                        "Status: 21 " + "x".repeat(70000) + "\n" +
+                        "\n" +
+                        "Hello");
+
+    IOException e = assertThrows(IOException.class,
+                                 () -> reader.consumeHeaders(in));
+    assertEquals("CGI response header is too long", e.getMessage());
+  }
+
+  @Test
+  public void testHeadersSplitAcrossReads() throws Exception {
+    // Hand over one byte per read, like a slow pipe.
+    in = new FilterInputStream(newInputStream("Content-Type: text/plain\n" +
+                                              "Status: 21 OK\n" +
+                                              "\n" +
+                                              "Hello")) {
+      @Override
+      public int read(byte[] b, int off, int len) throws IOException {
+        return super.read(b, off, Math.min(len, 1));
+      }
+    };
+
+    CgiResponseMetadata metadata = reader.consumeHeaders(in);
+
+    assertEquals("text/plain", metadata.getContentType());
+    assertEquals("OK", metadata.getReasonPhrase());
+
+    verifyRemaining("Hello");
+  }
+
+  @Test
+  public void testBodyReadPastHeaders() throws Exception {
+    byte[] bodyBytes = new byte[3000];
+    for (int i = 0; i < bodyBytes.length; i++) {
+      bodyBytes[i] = (byte) i;
+    }
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    content.write("Content-Type: application/octet-stream\n\n"
+                  .getBytes(StandardCharsets.UTF_8));
+    content.write(bodyBytes);
+
+    reader.consumeHeaders(new ByteArrayInputStream(content.toByteArray()));
+    InputStream body = reader.getBody();
+    assertEquals(bodyBytes[0], (byte) body.read());
+    ByteArrayOutputStream rest = new ByteArrayOutputStream();
+    assertEquals(bodyBytes.length - 1L, body.transferTo(rest));
+    assertArrayEquals(Arrays.copyOfRange(bodyBytes, 1, bodyBytes.length),
+                      rest.toByteArray());
+  }
+
+  @Test
+  public void testReuse() throws Exception {
+    for (int i = 0; i < 3; i++) {
+      in = newInputStream("Content-Type: text/plain\n" +
+                          "Status: 2" + i + "\n" +
+                          "\n" +
+                          "Hello " + i);
+
+      CgiResponseMetadata metadata = reader.consumeHeaders(in);
+
+      assertEquals(20 + i, metadata.getStatusCode());
+      verifyRemaining("Hello " + i);
+    }
+  }
+
+  @Test
+  public void testCloseReleasesBuffer() throws Exception {
+    in = newInputStream("Content-Type: text/plain\n" +
+                        "\n" +
+                        "Hello");
+    reader.consumeHeaders(in);
+    verifyRemaining("Hello");
+    int idleWhileReading = CgiResponseHeaderReader.BUFFER_POOL.getIdleCount();
+
+    reader.close();
+
+    assertEquals(idleWhileReading + 1,
+                 CgiResponseHeaderReader.BUFFER_POOL.getIdleCount());
+    // Closing again does not release the buffer twice.
+    reader.close();
+    assertEquals(idleWhileReading + 1,
+                 CgiResponseHeaderReader.BUFFER_POOL.getIdleCount());
+  }
 
   private static InputStream newInputStream(String content) {
     byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
     return new ByteArrayInputStream(contentBytes);
   }
 
-  private void verifyRemaining(InputStream in, String expectedContent)
-    throws Exception {
-    try (InputStreamReader isr = new InputStreamReader(in, StandardCharsets.UTF_8);
+  private void verifyRemaining(String expectedContent) throws Exception {
+    try (InputStreamReader isr = new InputStreamReader(reader.getBody(),
+                                                       StandardCharsets.UTF_8);
          BufferedReader br = new BufferedReader(isr)) {
       StringBuilder content = new StringBuilder();
       String line;
@@ -0,0 +1,275 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class CgiWorkerPoolsTest {
+
+  private static final String HOST = "gemini.example.com";
+
+  // A worker that answers each request with its process ID and the number
+  // of requests it has handled.
+  private static final String WORKER_SCRIPT =
+    "#!/bin/bash\n" +
+    "# doppio-worker\n" +
+    "count=0\n" +
+    "while IFS= read -r -d ':' len; do\n" +
+    "  head -c \"$len\" > /dev/null\n" +
+    "  read -r -n 1 comma\n" +
+    "  count=$((count + 1))\n" +
+    "  body=$(printf 'Content-Type: text/gemini\\n\\n%s %s\\n' $$ $count)\n" +
+    "  printf '%d:%s,0:,' \"${#body}\" \"$body\"\n" +
+    "done\n";
+
+  @TempDir
+  Path root;
+
+  private Path script;
+  private CgiWorkerPools pools;
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    Files.createDirectories(root.resolve("cgi-bin"));
+    script = root.resolve("cgi-bin/worker.sh");
+    Files.writeString(script, WORKER_SCRIPT);
+    Files.setPosixFilePermissions(script,
+                                  PosixFilePermissions.fromString("rwxr-xr-x"));
+  }
+
+  @AfterEach
+  public void afterEach() {
+    if (pools != null) {
+      pools.close();
+    }
+  }
+
+  private ServerProperties.Builder serverPropsBuilder() {
+    return ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .cgiWorkers(true);
+  }
+
+  private ProcessBuilder workerPb(ServerProperties serverProps)
+    throws IOException {
+    return new CgiProcessBuilderFactory()
+      .createWorkerProcessBuilder(script.toFile(),
+                                  serverProps.getDefaultVirtualHost(),
+                                  serverProps);
+  }
+
+  private String send(ProcessBuilder pb) throws IOException {
+    try (InputStream response = pools.send(pb, Map.of("SCRIPT_NAME",
+                                                      "/cgi-bin/worker.sh"),
+                                           0, 0L)) {
+      return new String(response.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private static String[] body(String response) {
+    return response.substring(response.indexOf("\n\n") + 2).trim().split(" ");
+  }
+
+  private Map<String, Long> stats() {
+    Map<String, Long> stats = new HashMap<>();
+    pools.addTo(stats);
+    return stats;
+  }
+
+  @Test
+  public void testEncodeRequest() {
+    Map<String, String> params = new LinkedHashMap<>();
+    params.put("QUERY_STRING", "a=b");
+    params.put("PATH_INFO", "");
+
+    assertEquals("28:QUERY_STRING\0a=b\0PATH_INFO\0\0,",
+                 new String(CgiWorker.encodeRequest(params),
+                            StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testIsWorkerScript() throws Exception {
+    pools = new CgiWorkerPools(serverPropsBuilder().build());
+    Path plain = root.resolve("cgi-bin/plain.sh");
+    Files.writeString(plain, "#!/bin/sh\necho '20 text/plain'\n");
+
+    assertTrue(pools.isWorkerScript(script.toFile()));
+    assertFalse(pools.isWorkerScript(plain.toFile()));
+  }
+
+  @Test
+  public void testReusesWorker() throws Exception {
+    ServerProperties serverProps = serverPropsBuilder().build();
+    pools = new CgiWorkerPools(serverProps);
+    ProcessBuilder pb = workerPb(serverProps);
+
+    String[] first = body(send(pb));
+    String[] second = body(send(pb));
+
+    assertEquals(first[0], second[0]);
+    assertEquals("1", first[1]);
+    assertEquals("2", second[1]);
+    assertEquals(1L, stats().get("cgi.workers.started"));
+    assertEquals(2L, stats().get("cgi.workers.requests"));
+    assertEquals(1L, stats().get("cgi.workers.live"));
+  }
+
+  @Test
+  public void testRecyclesWorker() throws Exception {
+    ServerProperties serverProps = serverPropsBuilder()
+      .cgiWorkerMaxRequests(1)
+      .build();
+    pools = new CgiWorkerPools(serverProps);
+    ProcessBuilder pb = workerPb(serverProps);
+
+    String[] first = body(send(pb));
+    String[] second = body(send(pb));
+
+    assertNotEquals(first[0], second[0]);
+    assertEquals("1", second[1]);
+    assertEquals(2L, stats().get("cgi.workers.started"));
+    assertEquals(2L, stats().get("cgi.workers.recycled"));
+    assertEquals(0L, stats().get("cgi.workers.live"));
+  }
+
+  @Test
+  public void testReplacesWorkersWhenScriptChanges() throws Exception {
+    ServerProperties serverProps = serverPropsBuilder().build();
+    pools = new CgiWorkerPools(serverProps);
+    ProcessBuilder pb = workerPb(serverProps);
+
+    String[] first = body(send(pb));
+    FileTime mtime = Files.getLastModifiedTime(script);
+    Files.writeString(script, WORKER_SCRIPT.replace("count=0", "count=10"));
+    Files.setLastModifiedTime(script,
+                              FileTime.fromMillis(mtime.toMillis() + 1000L));
+    String[] second = body(send(pb));
+
+    // The old worker is stopped, and a new one runs the new script.
+    assertNotEquals(first[0], second[0]);
+    assertEquals("11", second[1]);
+    assertEquals(2L, stats().get("cgi.workers.started"));
+    assertEquals(2L, stats().get("cgi.workers.requests"));
+    assertEquals(1L, stats().get("cgi.workers.live"));
+  }
+
+  @Test
+  public void testStopsWorkerWithIncompleteResponse() throws Exception {
+    ServerProperties serverProps = serverPropsBuilder().build();
+    pools = new CgiWorkerPools(serverProps);
+    ProcessBuilder pb = workerPb(serverProps);
+
+    try (InputStream response = pools.send(pb, Map.of(), 0, 0L)) {
+      response.read();
+    }
+    assertEquals(0L, stats().get("cgi.workers.live"));
+
+    assertEquals("1", body(send(pb))[1]);
+    assertEquals(2L, stats().get("cgi.workers.started"));
+  }
+
+  @Test
+  public void testHandleRequests() throws Exception {
+    ServerProperties serverProps = serverPropsBuilder().build();
+    pools = new CgiWorkerPools(serverProps);
+
+    for (int i = 0; i < 2; i++) {
+      InMemoryClientConnection connection =
+        new InMemoryClientConnection("gemini://" + HOST + "/cgi-bin/worker.sh/extra",
+                                     HOST);
+      try (AccessLogger accessLogger = new AccessLogger(null)) {
+        new RequestHandler(serverProps, accessLogger, connection,
+                           RequestHandlerDependencies.builder()
+                           .cgiWorkerPools(pools)
+                           .build()).run();
+      }
+      assertEquals(StatusCodes.SUCCESS, connection.getStatusCode());
+    }
+
+    assertEquals(1L, stats().get("cgi.workers.started"));
+    assertEquals(2L, stats().get("cgi.workers.requests"));
+  }
+
+  @Test
+  public void testStopsWorkerThatTimesOut() throws Exception {
+    // The worker hangs on requests while the hang file exists.
+    Path hang = root.resolve("hang");
+    Files.writeString(script,
+                      WORKER_SCRIPT.replace("  count=$((count + 1))\n",
+                                            "  if [ -e \"" + hang + "\" ]; then sleep 30; fi\n" +
+                                            "  count=$((count + 1))\n"));
+    Files.createFile(hang);
+    ServerProperties serverProps = serverPropsBuilder()
+      .cgiTimeoutMs(500)
+      .build();
+    pools = new CgiWorkerPools(serverProps);
+    RequestHandlerDependencies dependencies =
+      RequestHandlerDependencies.builder().cgiWorkerPools(pools).build();
+
+    long start = System.nanoTime();
+    InMemoryClientConnection connection =
+      new InMemoryClientConnection("gemini://" + HOST + "/cgi-bin/worker.sh",
+                                   HOST);
+    try (AccessLogger accessLogger = new AccessLogger(root)) {
+      new RequestHandler(serverProps, accessLogger, connection,
+                         dependencies).run();
+    }
+
+    assertTrue(System.nanoTime() - start < 10_000_000_000L);
+    assertEquals(StatusCodes.CGI_ERROR, connection.getStatusCode());
+    String logLine =
+      Files.readAllLines(root.resolve(AccessLogger.ACCESS_LOG_FILE_NAME)).get(0);
+    assertTrue(logLine.endsWith(" 42 - \"cgi-timeout\""));
+    assertEquals(0L, stats().get("cgi.workers.live"));
+
+    // A new worker takes the next request.
+    Files.delete(hang);
+    connection =
+      new InMemoryClientConnection("gemini://" + HOST + "/cgi-bin/worker.sh",
+                                   HOST);
+    try (AccessLogger accessLogger = new AccessLogger(null)) {
+      new RequestHandler(serverProps, accessLogger, connection,
+                         dependencies).run();
+    }
+    assertEquals(StatusCodes.SUCCESS, connection.getStatusCode());
+    assertEquals(2L, stats().get("cgi.workers.started"));
+  }
+}
@@ -0,0 +1,111 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocket;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how many connections per second a running server completes as the
+ * number of acceptors grows. Each operation connects, performs the TLS
+ * handshake, requests a small page, and reads the response to the end. Many
+ * client threads connect at once so that accepting becomes a bottleneck. The
+ * client resumes TLS sessions, as real clients do, so that full handshakes do
+ * not swamp the accept path.
+ *
+ * Run with: mvn -P benchmark test-compile exec:exec -Dbenchmark=ConnectionRate
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+@Threads(32)
+public class ConnectionRateBenchmark {
+
+  private static final byte[] REQUEST =
+    ("gemini://" + BenchmarkServer.HOST + "/\r\n")
+    .getBytes(StandardCharsets.UTF_8);
+
+  @Param({ "1", "2", "4", "8" })
+  public int numAcceptors;
+
+  @Param({ "blocking", "nio" })
+  public String engine;
+
+  private BenchmarkServer server;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Path root = Files.createTempDirectory("doppio-bench");
+    Files.writeString(root.resolve("index.gmi"), "# Hello\n");
+
+    server = new BenchmarkServer(root, builder -> builder
+      .executor(ServerProperties.ExecutorMode.VIRTUAL)
+      .engine(ServerProperties.EngineMode.fromConfigValue(engine))
+      .numAcceptors(numAcceptors));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    server.close();
+  }
+
+  @Benchmark
+  public int connect() throws IOException {
+    try (SSLSocket socket = server.connect()) {
+      OutputStream out = socket.getOutputStream();
+      out.write(REQUEST);
+      out.flush();
+
+      InputStream in = socket.getInputStream();
+      byte[] buf = new byte[1024];
+      int total = 0;
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        total += n;
+      }
+      return total;
+    }
+  }
+}
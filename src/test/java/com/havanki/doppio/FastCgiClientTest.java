@@ -0,0 +1,414 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.net.StandardProtocolFamily;
+import java.net.UnixDomainSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FastCgiClientTest {
+
+  private static final long TIMEOUT_MS = 5000L;
+
+  @TempDir
+  Path tempDir;
+
+  private Responder responder;
+  private FastCgiClient client;
+
+  @AfterEach
+  public void afterEach() throws Exception {
+    if (client != null) {
+      client.close();
+    }
+    if (responder != null) {
+      responder.close();
+    }
+  }
+
+  private void startTcp(int protocolStatus, boolean closeAfterRequest)
+    throws IOException {
+    startTcp(protocolStatus, closeAfterRequest, TIMEOUT_MS);
+  }
+
+  private void startTcp(int protocolStatus, boolean closeAfterRequest,
+                        long timeoutMs)
+    throws IOException {
+    ServerSocketChannel ssc = ServerSocketChannel.open();
+    ssc.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    responder = new Responder(ssc, protocolStatus, closeAfterRequest);
+    int port = ((InetSocketAddress) ssc.getLocalAddress()).getPort();
+    client = new FastCgiClient(new GatewayMapping("/app", "localhost:" + port),
+                               2, 1, timeoutMs);
+  }
+
+  private static String readAll(InputStream in) throws IOException {
+    try (in) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  @Test
+  public void testSendRequest() throws Exception {
+    startTcp(FastCgiConnection.REQUEST_COMPLETE, false);
+
+    InputStream response =
+      client.sendRequest(Map.of("PATH_INFO", "/hello",
+                                "QUERY_STRING", "x".repeat(300)));
+    CgiResponseHeaderReader reader = new CgiResponseHeaderReader();
+    CgiResponseMetadata metadata = reader.consumeHeaders(response);
+
+    assertEquals("text/gemini", metadata.getContentType());
+    assertEquals("path /hello query length 300\n", readAll(reader.getBody()));
+    assertEquals(1L, client.getRequests());
+  }
+
+  @Test
+  public void testReusesConnection() throws Exception {
+    startTcp(FastCgiConnection.REQUEST_COMPLETE, false);
+
+    for (int i = 0; i < 5; i++) {
+      readAll(client.sendRequest(Map.of("PATH_INFO", "/" + i)));
+    }
+
+    assertEquals(5L, client.getRequests());
+    assertEquals(1L, client.getConnectionsOpened());
+    assertEquals(1, responder.getConnectionsAccepted());
+    assertEquals(1, client.getOpenConnections());
+  }
+
+  @Test
+  public void testReconnectsWhenApplicationClosesConnection() throws Exception {
+    startTcp(FastCgiConnection.REQUEST_COMPLETE, true);
+
+    for (int i = 0; i < 3; i++) {
+      String body = readAll(client.sendRequest(Map.of("PATH_INFO", "/" + i)));
+      assertEquals("Content-Type: text/gemini\n\npath /" + i + " query length 0\n",
+                   body);
+      // Wait for the client to notice that the connection closed.
+      while (client.getOpenConnections() > 0) {
+        Thread.sleep(10L);
+      }
+    }
+
+    assertEquals(3L, client.getRequests());
+    assertEquals(3, responder.getConnectionsAccepted());
+  }
+
+  @Test
+  public void testConcurrentRequests() throws Exception {
+    startTcp(FastCgiConnection.REQUEST_COMPLETE, false);
+
+    // Requests that find no free connection open new ones, outside of any
+    // lock, but no more than the limit.
+    ExecutorService executor = Executors.newFixedThreadPool(8);
+    try {
+      List<Future<String>> bodies = new ArrayList<>();
+      for (int i = 0; i < 40; i++) {
+        String path = "/" + i;
+        bodies.add(executor.submit(
+          () -> readAll(client.sendRequest(Map.of("PATH_INFO", path)))));
+      }
+      for (int i = 0; i < bodies.size(); i++) {
+        assertEquals("Content-Type: text/gemini\n\npath /" + i +
+                     " query length 0\n",
+                     bodies.get(i).get(10L, TimeUnit.SECONDS));
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(40L, client.getRequests());
+    assertTrue(client.getConnectionsOpened() <= 2L);
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    startTcp(FastCgiConnection.REQUEST_COMPLETE, false, 200L);
+
+    InputStream response = client.sendRequest(Map.of("PATH_INFO", "/hang"));
+
+    assertThrows(SocketTimeoutException.class,
+                 () -> response.readAllBytes());
+    response.close();
+    // The request was aborted, so the application ends it.
+    long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+    while (responder.getAborts() == 0 &&
+           System.currentTimeMillis() < deadline) {
+      Thread.sleep(10L);
+    }
+    assertEquals(1, responder.getAborts());
+    assertEquals("Content-Type: text/gemini\n\npath /next query length 0\n",
+                 readAll(client.sendRequest(Map.of("PATH_INFO", "/next"))));
+  }
+
+  @Test
+  public void testRefusedRequest() throws Exception {
+    startTcp(FastCgiConnection.OVERLOADED, false);
+
+    InputStream response = client.sendRequest(Map.of());
+
+    IOException e = assertThrows(IOException.class,
+                                 () -> response.readAllBytes());
+    assertEquals("FastCGI application refused request: overloaded",
+                 e.getMessage());
+    response.close();
+  }
+
+  @Test
+  public void testUnreachableApplication() throws Exception {
+    client = new FastCgiClient(new GatewayMapping("/app", "unix:" +
+                                                  tempDir.resolve("missing.sock")),
+                               1, 1, TIMEOUT_MS);
+
+    assertThrows(IOException.class, () -> client.sendRequest(Map.of()));
+    assertEquals(0, client.getOpenConnections());
+  }
+
+  @Test
+  public void testUnixDomainSocket() throws Exception {
+    Path socketPath = tempDir.resolve("app.sock");
+    ServerSocketChannel ssc =
+      ServerSocketChannel.open(StandardProtocolFamily.UNIX);
+    ssc.bind(UnixDomainSocketAddress.of(socketPath));
+    responder = new Responder(ssc, FastCgiConnection.REQUEST_COMPLETE, false);
+    client = new FastCgiClient(new GatewayMapping("/app", "unix:" + socketPath),
+                               1, 1, TIMEOUT_MS);
+
+    String body = readAll(client.sendRequest(Map.of("PATH_INFO", "/unix")));
+
+    assertEquals("Content-Type: text/gemini\n\npath /unix query length 0\n", body);
+  }
+
+  @Test
+  public void testGatewayMapping() {
+    GatewayMapping gm = new GatewayMapping("app/", "tcp:[::1]:9000");
+
+    assertEquals("/app", gm.getPrefix());
+    assertEquals("::1", ((InetSocketAddress) gm.getAddress()).getHostString());
+    assertEquals(9000, ((InetSocketAddress) gm.getAddress()).getPort());
+    assertEquals(true, gm.matches(Path.of("app/x/y")));
+    assertEquals(false, gm.matches(Path.of("apple")));
+    assertEquals("x/y", gm.getExtraPath(Path.of("app/x/y")));
+    assertEquals("", gm.getExtraPath(Path.of("app")));
+  }
+
+  @Test
+  public void testInvalidGatewayPort() {
+    IllegalStateException e =
+      assertThrows(IllegalStateException.class,
+                   () -> new GatewayMapping("/app", "localhost:70000"));
+
+    assertEquals("Gateway endpoint localhost:70000 has an invalid port",
+                 e.getMessage());
+  }
+
+  /**
+   * A stand-in FastCGI application, which responds to each request with a
+   * short text/gemini document describing its parameters. Requests on a
+   * connection are handled one at a time. A request for the path "/hang" is
+   * not answered until it is aborted.
+   */
+  private static class Responder implements AutoCloseable {
+
+    private final ServerSocketChannel ssc;
+    private final int protocolStatus;
+    private final boolean closeAfterRequest;
+    private final AtomicInteger connectionsAccepted = new AtomicInteger();
+    private final AtomicInteger aborts = new AtomicInteger();
+    private final List<SocketChannel> channels = new ArrayList<>();
+
+    private Responder(ServerSocketChannel ssc, int protocolStatus,
+                      boolean closeAfterRequest) {
+      this.ssc = ssc;
+      this.protocolStatus = protocolStatus;
+      this.closeAfterRequest = closeAfterRequest;
+      Thread.ofVirtual().start(this::accept);
+    }
+
+    private int getConnectionsAccepted() {
+      return connectionsAccepted.get();
+    }
+
+    private int getAborts() {
+      return aborts.get();
+    }
+
+    private void accept() {
+      try {
+        while (true) {
+          SocketChannel channel = ssc.accept();
+          connectionsAccepted.incrementAndGet();
+          synchronized (channels) {
+            channels.add(channel);
+          }
+          Thread.ofVirtual().start(() -> serve(channel));
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    private void serve(SocketChannel channel) {
+      try (channel) {
+        ByteArrayOutputStream params = new ByteArrayOutputStream();
+        while (true) {
+          ByteBuffer header = ByteBuffer.allocate(FastCgiConnection.HEADER_LENGTH);
+          readFully(channel, header);
+          header.flip();
+          header.get();
+          int type = header.get() & 0xff;
+          int requestId = header.getShort() & 0xffff;
+          int contentLength = header.getShort() & 0xffff;
+          int paddingLength = header.get() & 0xff;
+          ByteBuffer content = ByteBuffer.allocate(contentLength + paddingLength);
+          readFully(channel, content);
+
+          if (type == FastCgiConnection.PARAMS) {
+            params.write(content.array(), 0, contentLength);
+          } else if (type == FastCgiConnection.STDIN && contentLength == 0) {
+            Map<String, String> decodedParams =
+              decodeParams(params.toByteArray());
+            params.reset();
+            if ("/hang".equals(decodedParams.get("PATH_INFO"))) {
+              continue;
+            }
+            respond(channel, requestId, decodedParams);
+            if (closeAfterRequest) {
+              return;
+            }
+          } else if (type == FastCgiConnection.ABORT_REQUEST) {
+            aborts.incrementAndGet();
+            writeRecord(channel, FastCgiConnection.END_REQUEST, requestId,
+                        new byte[8]);
+          }
+        }
+      } catch (IOException e) {
+        // connection closed
+      }
+    }
+
+    private void respond(SocketChannel channel, int requestId,
+                         Map<String, String> params) throws IOException {
+      if (protocolStatus == FastCgiConnection.REQUEST_COMPLETE) {
+        String body = "Content-Type: text/gemini\n\n" +
+          "path " + params.getOrDefault("PATH_INFO", "") +
+          " query length " + params.getOrDefault("QUERY_STRING", "").length() +
+          "\n";
+        writeRecord(channel, FastCgiConnection.STDOUT, requestId,
+                    body.getBytes(StandardCharsets.UTF_8));
+        writeRecord(channel, FastCgiConnection.STDOUT, requestId, new byte[0]);
+      }
+      byte[] endBody = new byte[8];
+      endBody[4] = (byte) protocolStatus;
+      writeRecord(channel, FastCgiConnection.END_REQUEST, requestId, endBody);
+    }
+
+    private static Map<String, String> decodeParams(byte[] bytes) {
+      Map<String, String> params = new HashMap<>();
+      ByteBuffer buf = ByteBuffer.wrap(bytes);
+      while (buf.hasRemaining()) {
+        int nameLength = readLength(buf);
+        int valueLength = readLength(buf);
+        byte[] name = new byte[nameLength];
+        byte[] value = new byte[valueLength];
+        buf.get(name);
+        buf.get(value);
+        params.put(new String(name, StandardCharsets.UTF_8),
+                   new String(value, StandardCharsets.UTF_8));
+      }
+      return params;
+    }
+
+    private static int readLength(ByteBuffer buf) {
+      int b = buf.get() & 0xff;
+      if (b < 128) {
+        return b;
+      }
+      buf.position(buf.position() - 1);
+      return buf.getInt() & 0x7fffffff;
+    }
+
+    private static void writeRecord(SocketChannel channel, int type,
+                                    int requestId, byte[] content)
+      throws IOException {
+      ByteBuffer buf =
+        ByteBuffer.allocate(FastCgiConnection.HEADER_LENGTH + content.length);
+      buf.put((byte) FastCgiConnection.VERSION_1);
+      buf.put((byte) type);
+      buf.putShort((short) requestId);
+      buf.putShort((short) content.length);
+      buf.put((byte) 0);
+      buf.put((byte) 0);
+      buf.put(content);
+      buf.flip();
+      while (buf.hasRemaining()) {
+        channel.write(buf);
+      }
+    }
+
+    private static void readFully(SocketChannel channel, ByteBuffer buf)
+      throws IOException {
+      while (buf.hasRemaining()) {
+        if (channel.read(buf) == -1) {
+          throw new EOFException();
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      ssc.close();
+      synchronized (channels) {
+        for (SocketChannel channel : channels) {
+          channel.close();
+        }
+      }
+    }
+  }
+}
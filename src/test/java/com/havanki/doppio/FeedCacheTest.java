@@ -0,0 +1,277 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Clock;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class FeedCacheTest {
+
+  private static final String FEED_DIR_URI =
+    "gemini://gemini.example.com/gemlog";
+  private static final String FEED_PAGE_CONTENT =
+    "# My gemlog\n\n" +
+    "=> first.gmi 2020-11-06 - First post\n";
+
+  @TempDir
+  Path root;
+
+  private Atomizer atomizer;
+  private FeedCache cache;
+  private Path feedPage;
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    atomizer = new Atomizer(Clock.fixed(Instant.now(), ZoneOffset.UTC));
+    cache = new FeedCache(atomizer);
+    feedPage = root.resolve("index.gmi");
+    Files.writeString(feedPage, FEED_PAGE_CONTENT);
+  }
+
+  private byte[] expectedFeed(String feedDirUri, String content) {
+    return atomizer.atomize(feedDirUri, content)
+      .getBytes(StandardCharsets.UTF_8);
+  }
+
+  @Test
+  public void testGetFeed() throws Exception {
+    assertArrayEquals(expectedFeed(FEED_DIR_URI, FEED_PAGE_CONTENT),
+                      cache.getFeed(feedPage, FEED_DIR_URI));
+    assertEquals(1L, cache.getRenders());
+    assertEquals(0L, cache.getHits());
+  }
+
+  @Test
+  public void testFeedDirUriString() {
+    assertEquals("gemini://gemini.example.com/gemlog",
+                 FeedCache.feedDirUriString("gemini.example.com", 1965,
+                                            "gemlog/index.gmi"));
+    assertEquals("gemini://gemini.example.com/a/gemlog",
+                 FeedCache.feedDirUriString("gemini.example.com", 1965,
+                                            "/a/gemlog/index.gmi"));
+    assertEquals("gemini://gemini.example.com",
+                 FeedCache.feedDirUriString("gemini.example.com", 1965,
+                                            "index.gmi"));
+    assertEquals("gemini://gemini.example.com:1966/my%20gemlog",
+                 FeedCache.feedDirUriString("gemini.example.com", 1966,
+                                            "my gemlog/index.gmi"));
+  }
+
+  @Test
+  public void testRendersOnceForConcurrentRequests() throws Exception {
+    CountDownLatch rendering = new CountDownLatch(1);
+    CountDownLatch finish = new CountDownLatch(1);
+    Atomizer slowAtomizer =
+      new Atomizer(Clock.fixed(Instant.now(), ZoneOffset.UTC)) {
+        @Override
+        public void atomize(String feedDirUriString, String docContent,
+                            OutputStream out) throws IOException {
+          rendering.countDown();
+          try {
+            finish.await();
+          } catch (InterruptedException e) {
+            throw new IOException(e);
+          }
+          super.atomize(feedDirUriString, docContent, out);
+        }
+      };
+    cache = new FeedCache(slowAtomizer);
+
+    ExecutorService executor = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<byte[]>> feeds = new ArrayList<>();
+      feeds.add(executor.submit(() -> cache.getFeed(feedPage, FEED_DIR_URI)));
+      assertTrue(rendering.await(5L, TimeUnit.SECONDS));
+      for (int i = 0; i < 3; i++) {
+        feeds.add(executor.submit(() -> cache.getFeed(feedPage, FEED_DIR_URI)));
+      }
+      // The other requests wait for the render without holding any lock.
+      assertEquals(1L, cache.getRenders());
+      finish.countDown();
+
+      byte[] feed = feeds.get(0).get(5L, TimeUnit.SECONDS);
+      for (Future<byte[]> f : feeds) {
+        assertSame(feed, f.get(5L, TimeUnit.SECONDS));
+      }
+      assertEquals(1L, cache.getRenders());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testRendersOnceWhileUnchanged() throws Exception {
+    byte[] feed = cache.getFeed(feedPage, FEED_DIR_URI);
+    for (int i = 0; i < 10; i++) {
+      assertSame(feed, cache.getFeed(feedPage, FEED_DIR_URI));
+    }
+    assertEquals(1L, cache.getRenders());
+    assertEquals(10L, cache.getHits());
+  }
+
+  @Test
+  public void testRendersAgainWhenModified() throws Exception {
+    FileTime mtime = Files.getLastModifiedTime(feedPage);
+    cache.getFeed(feedPage, FEED_DIR_URI);
+
+    String newContent = FEED_PAGE_CONTENT +
+      "=> second.gmi 2020-11-13 - Second post\n";
+    Files.writeString(feedPage, newContent);
+    Files.setLastModifiedTime(feedPage,
+                              FileTime.fromMillis(mtime.toMillis() + 1000L));
+
+    assertArrayEquals(expectedFeed(FEED_DIR_URI, newContent),
+                      cache.getFeed(feedPage, FEED_DIR_URI));
+    assertEquals(2L, cache.getRenders());
+  }
+
+  @Test
+  public void testRendersAgainWhenSizeChanges() throws Exception {
+    FileTime mtime = Files.getLastModifiedTime(feedPage);
+    cache.getFeed(feedPage, FEED_DIR_URI);
+
+    // Same modification time, as with a coarse-grained file system clock.
+    String newContent = FEED_PAGE_CONTENT +
+      "=> second.gmi 2020-11-13 - Second post\n";
+    Files.writeString(feedPage, newContent);
+    Files.setLastModifiedTime(feedPage, mtime);
+
+    assertArrayEquals(expectedFeed(FEED_DIR_URI, newContent),
+                      cache.getFeed(feedPage, FEED_DIR_URI));
+    assertEquals(2L, cache.getRenders());
+  }
+
+  @Test
+  public void testRendersAgainForDifferentUri() throws Exception {
+    cache.getFeed(feedPage, FEED_DIR_URI);
+
+    String otherUri = "gemini://other.example.com/gemlog";
+    assertArrayEquals(expectedFeed(otherUri, FEED_PAGE_CONTENT),
+                      cache.getFeed(feedPage, otherUri));
+    assertEquals(2L, cache.getRenders());
+  }
+
+  @Test
+  public void testNoValidateOnHit() throws Exception {
+    cache.setValidateOnHit(false);
+    byte[] feed = cache.getFeed(feedPage, FEED_DIR_URI);
+
+    // Without a reported change, the removed page is not noticed.
+    Files.delete(feedPage);
+    assertSame(feed, cache.getFeed(feedPage, FEED_DIR_URI));
+    assertEquals(1L, cache.getHits());
+  }
+
+  @Test
+  public void testPathChanged() throws Exception {
+    cache.setValidateOnHit(false);
+    byte[] feed = cache.getFeed(feedPage, FEED_DIR_URI);
+
+    cache.pathChanged(feedPage);
+    assertNotSame(feed, cache.getFeed(feedPage, FEED_DIR_URI));
+    assertEquals(2L, cache.getRenders());
+  }
+
+  @Test
+  public void testAllChanged() throws Exception {
+    cache.setValidateOnHit(false);
+    cache.getFeed(feedPage, FEED_DIR_URI);
+
+    cache.allChanged();
+    cache.getFeed(feedPage, FEED_DIR_URI);
+    assertEquals(2L, cache.getRenders());
+  }
+
+  @Test
+  public void testPageChangedWhileRendering() throws Exception {
+    String newContent = FEED_PAGE_CONTENT +
+      "=> second.gmi 2020-11-13 - Second post\n";
+    Atomizer changingAtomizer =
+      new Atomizer(Clock.fixed(Instant.now(), ZoneOffset.UTC)) {
+        private boolean changed;
+
+        @Override
+        public void atomize(String feedDirUriString, String docContent,
+                            OutputStream out) throws IOException {
+          if (!changed) {
+            // The page is edited, and the change reported, after it was read.
+            changed = true;
+            Files.writeString(feedPage, newContent);
+            cache.pathChanged(feedPage);
+          }
+          super.atomize(feedDirUriString, docContent, out);
+        }
+      };
+    cache = new FeedCache(changingAtomizer);
+    cache.setValidateOnHit(false);
+
+    cache.getFeed(feedPage, FEED_DIR_URI);
+    assertArrayEquals(expectedFeed(FEED_DIR_URI, newContent),
+                      cache.getFeed(feedPage, FEED_DIR_URI));
+    assertEquals(2L, cache.getRenders());
+  }
+
+  @Test
+  public void testMissingFeedPage() {
+    assertThrows(IOException.class,
+                 () -> cache.getFeed(root.resolve("missing.gmi"),
+                                     FEED_DIR_URI));
+    assertEquals(0L, cache.getRenders());
+  }
+
+  @Test
+  public void testAddTo() throws Exception {
+    cache.getFeed(feedPage, FEED_DIR_URI);
+    cache.getFeed(feedPage, FEED_DIR_URI);
+
+    Map<String, Long> stats = new HashMap<>();
+    cache.addTo(stats);
+    assertEquals(1L, stats.get("feed.cache.hits"));
+    assertEquals(1L, stats.get("feed.cache.renders"));
+    assertEquals(1L, stats.get("feed.cache.entries"));
+  }
+}
@@ -0,0 +1,120 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.SSLSocket;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures how fast a running server sends static files of various sizes.
+ * Each operation connects, requests the file, and reads the response to the
+ * end. The bytes counter gives the transfer rate in bytes per second. Add
+ * "-prof gc" to the JMH arguments to see the allocation rate as well.
+ *
+ * Run with: mvn -P benchmark test-compile exec:exec -Dbenchmark=FileTransfer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+public class FileTransferBenchmark {
+
+  private static final byte[] REQUEST =
+    ("gemini://" + BenchmarkServer.HOST + "/file.bin\r\n")
+    .getBytes(StandardCharsets.UTF_8);
+
+  @Param({ "1024", "1048576", "104857600" })
+  public int fileSize;
+
+  @Param({ "blocking", "nio" })
+  public String engine;
+
+  private BenchmarkServer server;
+
+  /**
+   * Counts bytes received, so that JMH reports a transfer rate.
+   */
+  @State(Scope.Thread)
+  @AuxCounters(AuxCounters.Type.OPERATIONS)
+  public static class Counters {
+    public long bytes;
+  }
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    Path root = Files.createTempDirectory("doppio-bench");
+    byte[] content = new byte[fileSize];
+    new Random(1965L).nextBytes(content);
+    Files.write(root.resolve("file.bin"), content);
+
+    server = new BenchmarkServer(root, builder -> builder
+      .engine(ServerProperties.EngineMode.fromConfigValue(engine))
+      .tempCertKeyType(ServerProperties.TempCertKeyType.EC_P256));
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() throws Exception {
+    server.close();
+  }
+
+  @Benchmark
+  public long download(Counters counters) throws IOException {
+    try (SSLSocket socket = server.connect()) {
+      OutputStream out = socket.getOutputStream();
+      out.write(REQUEST);
+      out.flush();
+
+      InputStream in = socket.getInputStream();
+      byte[] buf = new byte[65536];
+      long total = 0L;
+      int n;
+      while ((n = in.read(buf)) != -1) {
+        total += n;
+      }
+      counters.bytes += total;
+      return total;
+    }
+  }
+}
@@ -0,0 +1,184 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class JavaHandlersTest {
+
+  private static final String HOST = "gemini.example.com";
+
+  @TempDir
+  Path root;
+
+  /**
+   * Responds with its path info and a count of the requests it has handled.
+   */
+  public static class CountingHandler implements GeminiHandler {
+    private final AtomicInteger count = new AtomicInteger();
+
+    @Override
+    public void handle(GeminiRequest request, GeminiResponse response)
+      throws IOException {
+      response.sendHeader(StatusCodes.SUCCESS, "text/gemini");
+      response.getBody().write((request.getPathInfo() + " " +
+                                request.getMetaVariables().get("SCRIPT_NAME") +
+                                " " + count.incrementAndGet() + "\n")
+                               .getBytes(StandardCharsets.UTF_8));
+    }
+  }
+
+  /**
+   * Fails every request.
+   */
+  public static class FailingHandler implements GeminiHandler {
+    @Override
+    public void handle(GeminiRequest request, GeminiResponse response) {
+      throw new IllegalArgumentException("nope");
+    }
+  }
+
+  private static JavaHandlers javaHandlers(HandlerMapping... handlerMappings) {
+    return new JavaHandlers(List.of(handlerMappings),
+                            JavaHandlersTest.class.getClassLoader());
+  }
+
+  private InMemoryClientConnection run(ServerProperties serverProps,
+                                       JavaHandlers handlers, String path) {
+    InMemoryClientConnection connection =
+      new InMemoryClientConnection("gemini://" + HOST + path, HOST);
+    try (AccessLogger accessLogger = new AccessLogger(null)) {
+      new RequestHandler(serverProps, accessLogger, connection,
+                         RequestHandlerDependencies.builder()
+                         .javaHandlers(handlers)
+                         .build()).run();
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+    return connection;
+  }
+
+  @Test
+  public void testFindLongestPrefix() {
+    JavaHandlers handlers =
+      javaHandlers(new HandlerMapping("/app", CountingHandler.class.getName()),
+                   new HandlerMapping("/app/admin", FailingHandler.class.getName()));
+
+    assertInstanceOf(CountingHandler.class,
+                     handlers.find(Path.of("app/x")).getHandler());
+    assertInstanceOf(FailingHandler.class,
+                     handlers.find(Path.of("app/admin/x")).getHandler());
+    assertNull(handlers.find(Path.of("other")));
+  }
+
+  @Test
+  public void testClassNotFound() {
+    IllegalStateException e =
+      assertThrows(IllegalStateException.class,
+                   () -> javaHandlers(new HandlerMapping("/app", "com.example.Missing")));
+
+    assertEquals("Handler class com.example.Missing not found", e.getMessage());
+  }
+
+  @Test
+  public void testClassNotAHandler() {
+    IllegalStateException e =
+      assertThrows(IllegalStateException.class,
+                   () -> javaHandlers(new HandlerMapping("/app", "java.lang.Object")));
+
+    assertEquals("Handler class java.lang.Object does not implement GeminiHandler",
+                 e.getMessage());
+  }
+
+  @Test
+  public void testHandleRequests() {
+    ServerProperties serverProps =
+      ServerProperties.builder().root(root).host(HOST).build();
+    JavaHandlers handlers =
+      javaHandlers(new HandlerMapping("/app", CountingHandler.class.getName()));
+
+    InMemoryClientConnection first = run(serverProps, handlers, "/app/a/b");
+    assertEquals(StatusCodes.SUCCESS, first.getStatusCode());
+    assertEquals("20 text/gemini\r\n/a/b /app 1\n".length(),
+                 first.getBytesWritten());
+
+    // The same instance handles the next request.
+    InMemoryClientConnection second = run(serverProps, handlers, "/app");
+    assertEquals("20 text/gemini\r\n /app 2\n".length(),
+                 second.getBytesWritten());
+
+    assertEquals(2L, handlers.getRequests());
+    assertEquals(0L, handlers.getFailures());
+  }
+
+  @Test
+  public void testHandlerFailure() {
+    ServerProperties serverProps =
+      ServerProperties.builder().root(root).host(HOST).build();
+    JavaHandlers handlers =
+      javaHandlers(new HandlerMapping("/app", FailingHandler.class.getName()));
+
+    InMemoryClientConnection connection = run(serverProps, handlers, "/app");
+
+    assertEquals(StatusCodes.CGI_ERROR, connection.getStatusCode());
+    assertEquals(1L, handlers.getFailures());
+  }
+
+  @Test
+  public void testResponseConvertsLineEndings() throws Exception {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    GeminiResponse response = new GeminiResponse(out, true);
+
+    response.sendHeader(StatusCodes.SUCCESS, "text/plain");
+    try (OutputStream body = response.getBody()) {
+      body.write("one\ntwo\r".getBytes(StandardCharsets.UTF_8));
+    }
+    response.finish();
+
+    assertEquals("20 text/plain\r\none\r\ntwo\r\n",
+                 out.toString(StandardCharsets.UTF_8));
+    assertEquals(8L, response.getBodySize());
+  }
+
+  @Test
+  public void testResponseRequiresHeaderFirst() throws Exception {
+    GeminiResponse response =
+      new GeminiResponse(new ByteArrayOutputStream(), false);
+
+    assertThrows(IllegalStateException.class, () -> response.getBody());
+    response.sendHeader(StatusCodes.NOT_FOUND, "Not found");
+    assertThrows(IllegalStateException.class,
+                 () -> response.sendHeader(StatusCodes.SUCCESS, "text/plain"));
+  }
+}
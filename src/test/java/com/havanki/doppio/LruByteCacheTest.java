@@ -0,0 +1,107 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class LruByteCacheTest {
+
+  private LruByteCache<String, byte[]> cache;
+
+  @BeforeEach
+  public void beforeEach() {
+    cache = new LruByteCache<>(64L, value -> value.length);
+  }
+
+  @Test
+  public void testPutAndGet() {
+    byte[] value = new byte[8];
+    assertTrue(cache.put("a", value));
+
+    assertEquals(value, cache.get("a"));
+    assertEquals(1, cache.size());
+    assertEquals(8L, cache.getCurrentBytes());
+  }
+
+  @Test
+  public void testTooLarge() {
+    assertEquals(8L, cache.getMaxEntryBytes());
+    assertFalse(cache.put("a", new byte[9]));
+
+    assertNull(cache.get("a"));
+    assertEquals(0L, cache.getCurrentBytes());
+  }
+
+  @Test
+  public void testReplace() {
+    cache.put("a", new byte[8]);
+    cache.put("a", new byte[4]);
+
+    assertEquals(1, cache.size());
+    assertEquals(4L, cache.getCurrentBytes());
+  }
+
+  @Test
+  public void testEvictsLeastRecentlyUsed() {
+    for (int i = 0; i < 8; i++) {
+      cache.put("k" + i, new byte[8]);
+    }
+    cache.get("k0");
+    cache.put("k8", new byte[8]);
+
+    assertEquals(8, cache.size());
+    assertEquals(64L, cache.getCurrentBytes());
+    assertEquals(1L, cache.getEvictions());
+    assertNull(cache.get("k1"));
+    assertEquals(8, cache.get("k0").length);
+  }
+
+  @Test
+  public void testRemove() {
+    byte[] value = new byte[8];
+    cache.put("a", value);
+
+    assertFalse(cache.remove("a", new byte[8]));
+    assertTrue(cache.remove("a", value));
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.getCurrentBytes());
+  }
+
+  @Test
+  public void testRemoveIfAndClear() {
+    cache.put("a1", new byte[8]);
+    cache.put("a2", new byte[8]);
+    cache.put("b", new byte[4]);
+
+    cache.removeIf((key, value) -> key.startsWith("a"));
+    assertEquals(1, cache.size());
+    assertEquals(4L, cache.getCurrentBytes());
+
+    cache.clear();
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.getCurrentBytes());
+  }
+}
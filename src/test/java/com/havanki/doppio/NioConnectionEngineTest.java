@@ -0,0 +1,275 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class NioConnectionEngineTest {
+
+  private static final String HOST = "gemini.example.com";
+  // long enough for the first, slow handshake in a busy JVM
+  private static final long HANDSHAKE_TIMEOUT_MS = 2000L;
+  private static final long REQUEST_TIMEOUT_MS = 500L;
+
+  private static KeyManager[] keyManagers;
+  private static TrustManager[] trustManagers;
+  private static SSLContext serverSslContext;
+  private static SSLContext clientSslContext;
+
+  @TempDir
+  Path root;
+
+  private ServerProperties serverProps;
+  private SSLContext clientContext;
+  private ExecutorService executorService;
+  private AccessLogger accessLogger;
+  private NioConnectionEngine engine;
+  private TlsSessionStats tlsSessionStats;
+
+  @BeforeAll
+  public static void beforeAll() throws Exception {
+    TemporaryCertificateGenerator tempCertGen =
+      new TemporaryCertificateGenerator(HOST, 60L);
+    KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keystore.load(null, null);
+    keystore.setKeyEntry("doppio", tempCertGen.getPrivateKey(), null,
+                         new X509Certificate[] { tempCertGen.getCertificate() });
+    KeyManagerFactory kmf =
+      KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(keystore, null);
+    keyManagers = kmf.getKeyManagers();
+    trustManagers = new TrustManager[] {
+      new AllowAllTrustManager()
+    };
+
+    serverSslContext = SSLContext.getInstance("TLS");
+    serverSslContext.init(keyManagers, trustManagers, null);
+    clientSslContext = SSLContext.getInstance("TLS");
+    clientSslContext.init(null, trustManagers, null);
+  }
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    Files.writeString(root.resolve("index.gmi"), "# Hello\n");
+    serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .build();
+
+    clientContext = clientSslContext;
+    executorService = Executors.newFixedThreadPool(2);
+    accessLogger = new AccessLogger(null);
+    startEngine(serverSslContext);
+  }
+
+  private void startEngine(SSLContext sslContext) throws Exception {
+    SSLParameters sslParameters = sslContext.getDefaultSSLParameters();
+    sslParameters.setProtocols(new String[] { "TLSv1.3", "TLSv1.2" });
+    sslParameters.setWantClientAuth(true);
+    engine = new NioConnectionEngine(0, sslContext, sslParameters,
+                                     executorService,
+                                     c -> executorService.submit(
+                                       new RequestHandler(serverProps,
+                                                          accessLogger, c)));
+    engine.setHandshakeTimeoutMs(HANDSHAKE_TIMEOUT_MS);
+    engine.setRequestTimeoutMs(REQUEST_TIMEOUT_MS);
+    tlsSessionStats = new TlsSessionStats();
+    engine.setTlsSessionStats(tlsSessionStats);
+    engine.start();
+  }
+
+  @AfterEach
+  public void afterEach() throws Exception {
+    engine.stopAccepting();
+    executorService.shutdown();
+    engine.close();
+    accessLogger.close();
+  }
+
+  @Test
+  public void testRequest() throws Exception {
+    String response = request("gemini://" + HOST + "/\r\n");
+
+    assertEquals("20 text/gemini\r\n# Hello\n", response);
+  }
+
+  @Test
+  public void testRequestInPieces() throws Exception {
+    String response = request("gemini://" + HOST, "/index.gmi", "\r\n");
+
+    assertEquals("20 text/gemini\r\n# Hello\n", response);
+  }
+
+  @Test
+  public void testMultipleRequests() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      String response = request("gemini://" + HOST + "/missing.gmi\r\n");
+
+      assertEquals("51 Resource not found\r\n", response);
+    }
+  }
+
+  @Test
+  public void testRequestTooLong() throws Exception {
+    String response = request("gemini://" + HOST + "/" + "a".repeat(2000));
+
+    assertTrue(response.startsWith("59 "));
+  }
+
+  @Test
+  public void testSessionResumption() throws Exception {
+    // The client context caches the session from the first connection and
+    // resumes it for the second.
+    request("gemini://" + HOST + "/\r\n");
+    Thread.sleep(10L);
+    request("gemini://" + HOST + "/\r\n");
+
+    assertEquals(1L, tlsSessionStats.getFullHandshakes());
+    assertEquals(1L, tlsSessionStats.getResumedHandshakes());
+  }
+
+  @Test
+  public void testSessionTicketsEnabled() throws Exception {
+    SSLContext ticketSslContext = Server.newSSLContext(true);
+    restartEngine(ticketSslContext);
+
+    request("gemini://" + HOST + "/\r\n");
+
+    // A stateless ticket carries the session, so the server keeps none.
+    assertEquals(0, countCachedSessions(ticketSslContext));
+  }
+
+  @Test
+  public void testSessionTicketsDisabled() throws Exception {
+    SSLContext noTicketSslContext = Server.newSSLContext(false);
+    restartEngine(noTicketSslContext);
+
+    request("gemini://" + HOST + "/\r\n");
+
+    // Without tickets, the server keeps the session for resumption.
+    assertEquals(1, countCachedSessions(noTicketSslContext));
+  }
+
+  private void restartEngine(SSLContext sslContext) throws Exception {
+    engine.stopAccepting();
+    engine.close();
+    sslContext.init(keyManagers, trustManagers, null);
+    startEngine(sslContext);
+
+    // Use a new client too, which offers no session or ticket from another
+    // test's server.
+    clientContext = SSLContext.getInstance("TLS");
+    clientContext.init(null, trustManagers, null);
+  }
+
+  private static int countCachedSessions(SSLContext sslContext) {
+    return Collections.list(sslContext.getServerSessionContext().getIds())
+      .size();
+  }
+
+  @Test
+  public void testHandshakeTimeout() throws Exception {
+    // The engine's clock starts when it accepts the connection, so start
+    // this one before connecting.
+    long start = System.nanoTime();
+    try (Socket socket = new Socket("127.0.0.1", engine.getLocalPort())) {
+      socket.setSoTimeout(10000);
+
+      // Never start the handshake; the engine should give up and close.
+      assertEquals(-1, socket.getInputStream().read());
+      long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertTrue(elapsedMs >= HANDSHAKE_TIMEOUT_MS);
+    }
+  }
+
+  @Test
+  public void testRequestTimeout() throws Exception {
+    try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory()
+         .createSocket("127.0.0.1", engine.getLocalPort())) {
+      SSLParameters sslParameters = socket.getSSLParameters();
+      sslParameters.setServerNames(List.of(new SNIHostName(HOST)));
+      socket.setSSLParameters(sslParameters);
+      socket.setSoTimeout(10000);
+      long start = System.nanoTime();
+      socket.startHandshake();
+
+      // Complete the handshake but never send a request; the engine should
+      // give up and close.
+      assertEquals(-1, socket.getInputStream().read());
+      long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+      assertTrue(elapsedMs >= REQUEST_TIMEOUT_MS);
+      assertTrue(elapsedMs < 5000L);
+    }
+  }
+
+  private String request(String... requestParts) throws Exception {
+    try (SSLSocket socket = (SSLSocket) clientContext.getSocketFactory()
+         .createSocket("127.0.0.1", engine.getLocalPort())) {
+      SSLParameters sslParameters = socket.getSSLParameters();
+      sslParameters.setServerNames(List.of(new SNIHostName(HOST)));
+      socket.setSSLParameters(sslParameters);
+      socket.setSoTimeout(10000);
+
+      OutputStream out = socket.getOutputStream();
+      for (String requestPart : requestParts) {
+        out.write(requestPart.getBytes(StandardCharsets.UTF_8));
+        out.flush();
+        Thread.sleep(50L);
+      }
+
+      // The response must end with a clean TLS closure, or else reading
+      // throws an exception.
+      InputStream in = socket.getInputStream();
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      in.transferTo(response);
+      return response.toString(StandardCharsets.UTF_8);
+    }
+  }
+}
@@ -0,0 +1,233 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ReloadableKeyManagerTest {
+
+  private static final String HOST = "gemini.example.com";
+  private static final int NUM_CLIENTS = 4;
+  private static final int NUM_ROTATIONS = 10;
+
+  @TempDir
+  Path root;
+
+  private ReloadableKeyManager keyManager;
+  private SSLContext clientSslContext;
+  private ExecutorService executorService;
+  private AccessLogger accessLogger;
+  private NioConnectionEngine engine;
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    Files.writeString(root.resolve("index.gmi"), "# Hello\n");
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .build();
+
+    TrustManager[] trustManagers = new TrustManager[] {
+      new AllowAllTrustManager()
+    };
+    keyManager = new ReloadableKeyManager(newKeyManager());
+    SSLContext serverSslContext = SSLContext.getInstance("TLS");
+    serverSslContext.init(new ReloadableKeyManager[] { keyManager },
+                          trustManagers, null);
+    clientSslContext = newClientSslContext();
+
+    executorService = Executors.newFixedThreadPool(NUM_CLIENTS + 2);
+    accessLogger = new AccessLogger(null);
+    SSLParameters sslParameters = serverSslContext.getDefaultSSLParameters();
+    sslParameters.setProtocols(new String[] { "TLSv1.3", "TLSv1.2" });
+    engine = new NioConnectionEngine(0, serverSslContext, sslParameters,
+                                     executorService,
+                                     c -> executorService.submit(
+                                       new RequestHandler(serverProps,
+                                                          accessLogger, c)));
+    engine.start();
+  }
+
+  @AfterEach
+  public void afterEach() throws Exception {
+    engine.stopAccepting();
+    executorService.shutdown();
+    executorService.awaitTermination(10L, TimeUnit.SECONDS);
+    engine.close();
+    accessLogger.close();
+  }
+
+  private static SSLContext newClientSslContext() throws Exception {
+    SSLContext sslContext = SSLContext.getInstance("TLS");
+    sslContext.init(null, new TrustManager[] { new AllowAllTrustManager() },
+                    null);
+    return sslContext;
+  }
+
+  private static X509ExtendedKeyManager newKeyManager() throws Exception {
+    TemporaryCertificateGenerator gen =
+      new TemporaryCertificateGenerator(HOST, 60L,
+                                        ServerProperties.TempCertKeyType.EC_P256);
+    KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keystore.load(null, null);
+    keystore.setKeyEntry("doppio", gen.getPrivateKey(), new char[0],
+                         new X509Certificate[] { gen.getCertificate() });
+    KeyManagerFactory kmf =
+      KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(keystore, new char[0]);
+    return ReloadableKeyManager.findX509KeyManager(kmf.getKeyManagers());
+  }
+
+  @Test
+  public void testNewHandshakesUseNewKeyMaterial() throws Exception {
+    X509Certificate before = request().serverCert;
+    keyManager.reload(newKeyManager());
+    // A fresh client context does not resume the earlier session.
+    X509Certificate after = request(newClientSslContext()).serverCert;
+
+    assertNotEquals(before, after);
+    assertEquals(1, keyManager.getReloadCount());
+  }
+
+  @Test
+  public void testAliasesStayWithTheirGeneration() throws Exception {
+    String alias = keyManager.chooseServerAlias("EC", null, null);
+    X509Certificate[] chain = keyManager.getCertificateChain(alias);
+
+    // A handshake that chose its alias just before a reload still gets the
+    // matching chain afterwards, but not after a second reload.
+    keyManager.reload(newKeyManager());
+    assertEquals(chain[0], keyManager.getCertificateChain(alias)[0]);
+    assertNotEquals(chain[0],
+                    keyManager.getCertificateChain(
+                      keyManager.chooseServerAlias("EC", null, null))[0]);
+
+    keyManager.reload(newKeyManager());
+    assertNull(keyManager.getCertificateChain(alias));
+  }
+
+  @Test
+  public void testRotationUnderLoad() throws Exception {
+    // Generate key material ahead of time so rotations come quickly.
+    List<X509ExtendedKeyManager> newKeyManagers = new ArrayList<>();
+    for (int i = 0; i < NUM_ROTATIONS; i++) {
+      newKeyManagers.add(newKeyManager());
+    }
+
+    AtomicBoolean running = new AtomicBoolean(true);
+    ExecutorService clients = Executors.newFixedThreadPool(NUM_CLIENTS);
+    List<Future<Integer>> results = new ArrayList<>();
+    for (int i = 0; i < NUM_CLIENTS; i++) {
+      results.add(clients.submit(() -> {
+        int count = 0;
+        while (running.get()) {
+          // Use a fresh client context so that every connection makes a full
+          // handshake. Any failed connection throws and fails the test.
+          Response response = request(newClientSslContext());
+          assertEquals("20 text/gemini\r\n# Hello\n", response.body);
+          count++;
+        }
+        return count;
+      }));
+    }
+
+    for (X509ExtendedKeyManager newKeyManager : newKeyManagers) {
+      Thread.sleep(50L);
+      keyManager.reload(newKeyManager);
+    }
+    Thread.sleep(50L);
+    running.set(false);
+
+    int total = 0;
+    for (Future<Integer> result : results) {
+      total += result.get(30L, TimeUnit.SECONDS);
+    }
+    clients.shutdown();
+
+    assertNotEquals(0, total);
+    assertEquals(NUM_ROTATIONS, keyManager.getReloadCount());
+  }
+
+  private static class Response {
+    private final X509Certificate serverCert;
+    private final String body;
+
+    private Response(X509Certificate serverCert, String body) {
+      this.serverCert = serverCert;
+      this.body = body;
+    }
+  }
+
+  private Response request() throws Exception {
+    return request(clientSslContext);
+  }
+
+  private Response request(SSLContext sslContext) throws Exception {
+    try (SSLSocket socket = (SSLSocket) sslContext.getSocketFactory()
+         .createSocket("127.0.0.1", engine.getLocalPort())) {
+      SSLParameters sslParameters = socket.getSSLParameters();
+      sslParameters.setServerNames(List.of(new SNIHostName(HOST)));
+      socket.setSSLParameters(sslParameters);
+      socket.setSoTimeout(10000);
+
+      OutputStream out = socket.getOutputStream();
+      out.write(("gemini://" + HOST + "/\r\n").getBytes(StandardCharsets.UTF_8));
+      out.flush();
+
+      InputStream in = socket.getInputStream();
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      in.transferTo(response);
+      return new Response((X509Certificate) socket.getSession()
+                          .getPeerCertificates()[0],
+                          response.toString(StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,357 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RequestCoalescerTest {
+
+  private static final String HOST = "gemini.example.com";
+  private static final int NUM_FOLLOWERS = 3;
+
+  @TempDir
+  Path root;
+
+  private static void awaitFollowers(RequestCoalescer coalescer)
+    throws InterruptedException {
+    while (coalescer.getFollowers() < NUM_FOLLOWERS) {
+      Thread.sleep(10L);
+    }
+  }
+
+  @Test
+  public void testApplies() {
+    RequestCoalescer coalescer =
+      new RequestCoalescer(List.of("/cgi-bin/popular", "gemlog"), false);
+
+    assertTrue(coalescer.applies(Path.of("cgi-bin/popular/x"), false));
+    assertTrue(coalescer.applies(Path.of("gemlog/atom.xml"), false));
+    assertFalse(coalescer.applies(Path.of("cgi-bin/other"), false));
+    assertFalse(coalescer.applies(Path.of("gemlog/atom.xml"), true));
+
+    assertTrue(new RequestCoalescer(List.of("/gemlog"), true)
+               .applies(Path.of("gemlog/atom.xml"), true));
+  }
+
+  @Test
+  public void testSharesResult() throws Exception {
+    RequestCoalescer coalescer = new RequestCoalescer(List.of("/"), false);
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    Object result = new Object();
+    RequestCoalescer.Producer<Object> producer = () -> {
+      runs.incrementAndGet();
+      try {
+        release.await();
+      } catch (InterruptedException e) {
+        throw new IOException(e);
+      }
+      return result;
+    };
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      List<Future<Object>> futures = new ArrayList<>();
+      futures.add(executor.submit(() -> coalescer.execute("k", producer, r -> true, 0L)));
+      while (runs.get() == 0) {
+        Thread.sleep(10L);
+      }
+      for (int i = 0; i < NUM_FOLLOWERS; i++) {
+        futures.add(executor.submit(() -> coalescer.execute("k", producer, r -> true, 0L)));
+      }
+      awaitFollowers(coalescer);
+      release.countDown();
+
+      for (Future<Object> future : futures) {
+        assertSame(result, future.get());
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1, runs.get());
+    assertEquals(1L, coalescer.getLeaders());
+    assertEquals(0L, coalescer.getFallbacks());
+  }
+
+  @Test
+  public void testUnshareableResult() throws Exception {
+    RequestCoalescer coalescer = new RequestCoalescer(List.of("/"), false);
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    RequestCoalescer.Producer<Integer> producer = () -> {
+      int run = runs.incrementAndGet();
+      if (run == 1) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+      }
+      return run;
+    };
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Future<Integer> leader =
+        executor.submit(() -> coalescer.execute("k", producer, r -> false, 0L));
+      while (runs.get() == 0) {
+        Thread.sleep(10L);
+      }
+      List<Future<Integer>> followers = new ArrayList<>();
+      for (int i = 0; i < NUM_FOLLOWERS; i++) {
+        followers.add(executor.submit(() -> coalescer.execute("k", producer, r -> false, 0L)));
+      }
+      awaitFollowers(coalescer);
+      release.countDown();
+
+      assertEquals(1, leader.get());
+      for (Future<Integer> follower : followers) {
+        assertTrue(follower.get() > 1);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1 + NUM_FOLLOWERS, runs.get());
+    assertEquals((long) NUM_FOLLOWERS, coalescer.getFallbacks());
+  }
+
+  @Test
+  public void testFailureIsNotShared() throws Exception {
+    RequestCoalescer coalescer = new RequestCoalescer(List.of("/"), false);
+
+    assertThrows(IOException.class,
+                 () -> coalescer.execute("k", () -> { throw new IOException("no"); },
+                                         r -> true, 0L));
+    assertEquals("ok", coalescer.execute("k", () -> "ok", r -> true, 0L));
+  }
+
+  @Test
+  public void testFailingLeader() throws Exception {
+    RequestCoalescer coalescer = new RequestCoalescer(List.of("/"), false);
+    AtomicInteger runs = new AtomicInteger();
+    CountDownLatch release = new CountDownLatch(1);
+    RequestCoalescer.Producer<Integer> producer = () -> {
+      int run = runs.incrementAndGet();
+      if (run == 1) {
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        throw new IOException("leader failed");
+      }
+      return run;
+    };
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Future<Integer> leader =
+        executor.submit(() -> coalescer.execute("k", producer, r -> true, 0L));
+      while (runs.get() == 0) {
+        Thread.sleep(10L);
+      }
+      List<Future<Integer>> followers = new ArrayList<>();
+      for (int i = 0; i < NUM_FOLLOWERS; i++) {
+        followers.add(executor.submit(() -> coalescer.execute("k", producer, r -> true, 0L)));
+      }
+      awaitFollowers(coalescer);
+      release.countDown();
+
+      ExecutionException e = assertThrows(ExecutionException.class, leader::get);
+      assertInstanceOf(IOException.class, e.getCause());
+      for (Future<Integer> follower : followers) {
+        assertTrue(follower.get() > 1);
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(1 + NUM_FOLLOWERS, runs.get());
+    assertEquals((long) NUM_FOLLOWERS, coalescer.getFallbacks());
+  }
+
+  @Test
+  public void testGivesUpWaiting() throws Exception {
+    RequestCoalescer coalescer = new RequestCoalescer(List.of("/"), false);
+    CountDownLatch release = new CountDownLatch(1);
+    CountDownLatch started = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    try {
+      Future<String> leader = executor.submit(() -> coalescer.execute("k", () -> {
+        started.countDown();
+        try {
+          release.await();
+        } catch (InterruptedException e) {
+          throw new IOException(e);
+        }
+        return "leader";
+      }, r -> true, 0L));
+      started.await();
+
+      // The leader is still stuck, so the follower runs on its own.
+      assertEquals("follower",
+                   coalescer.execute("k", () -> "follower", r -> true, 100L));
+      assertEquals(1L, coalescer.getFollowers());
+      assertEquals(1L, coalescer.getFallbacks());
+
+      release.countDown();
+      assertEquals("leader", leader.get());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testCoalescesCgiRequests() throws Exception {
+    Files.createDirectories(root.resolve("cgi-bin"));
+    Path script = root.resolve("cgi-bin/slow.sh");
+    Files.writeString(script,
+                      "#!/bin/sh\n" +
+                      "echo x >> \"" + root.resolve("runs") + "\"\n" +
+                      "sleep 1\n" +
+                      "printf 'Content-Type: text/gemini\\n\\nHello\\n'\n");
+    Files.setPosixFilePermissions(script,
+                                  PosixFilePermissions.fromString("rwxr-xr-x"));
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .build();
+    RequestCoalescer coalescer =
+      new RequestCoalescer(List.of("/cgi-bin/slow.sh"), false);
+    RequestHandlerDependencies dependencies =
+      RequestHandlerDependencies.builder().requestCoalescer(coalescer).build();
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    List<InMemoryClientConnection> connections = new ArrayList<>();
+    try (AccessLogger accessLogger = new AccessLogger(null)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i <= NUM_FOLLOWERS; i++) {
+        InMemoryClientConnection connection =
+          new InMemoryClientConnection("gemini://" + HOST + "/cgi-bin/slow.sh",
+                                       HOST);
+        connections.add(connection);
+        futures.add(executor.submit(new RequestHandler(serverProps, accessLogger,
+                                                       connection,
+                                                       dependencies)));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    for (InMemoryClientConnection connection : connections) {
+      assertEquals(StatusCodes.SUCCESS, connection.getStatusCode());
+      assertEquals("20 text/gemini\r\nHello\n".length(),
+                   connection.getBytesWritten());
+    }
+    assertEquals(1, Files.readAllLines(root.resolve("runs")).size());
+  }
+
+  @Test
+  public void testFailedCgiRequestIsNotShared() throws Exception {
+    // The first run fails without writing a response, and later runs
+    // succeed.
+    Files.createDirectories(root.resolve("cgi-bin"));
+    Path script = root.resolve("cgi-bin/flaky.sh");
+    Path failed = root.resolve("failed");
+    Files.writeString(script,
+                      "#!/bin/sh\n" +
+                      "echo x >> \"" + root.resolve("runs") + "\"\n" +
+                      "if [ ! -e \"" + failed + "\" ]; then\n" +
+                      "  touch \"" + failed + "\"\n" +
+                      "  sleep 1\n" +
+                      "  exit 1\n" +
+                      "fi\n" +
+                      "printf 'Content-Type: text/gemini\\n\\nHello\\n'\n");
+    Files.setPosixFilePermissions(script,
+                                  PosixFilePermissions.fromString("rwxr-xr-x"));
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .build();
+    RequestCoalescer coalescer =
+      new RequestCoalescer(List.of("/cgi-bin/flaky.sh"), false);
+    RequestHandlerDependencies dependencies =
+      RequestHandlerDependencies.builder().requestCoalescer(coalescer).build();
+
+    ExecutorService executor = Executors.newCachedThreadPool();
+    List<InMemoryClientConnection> connections = new ArrayList<>();
+    try (AccessLogger accessLogger = new AccessLogger(null)) {
+      List<Future<?>> futures = new ArrayList<>();
+      for (int i = 0; i <= NUM_FOLLOWERS; i++) {
+        InMemoryClientConnection connection =
+          new InMemoryClientConnection("gemini://" + HOST + "/cgi-bin/flaky.sh",
+                                       HOST);
+        connections.add(connection);
+        futures.add(executor.submit(new RequestHandler(serverProps, accessLogger,
+                                                       connection,
+                                                       dependencies)));
+        if (i == 0) {
+          // Let the first request lead before the rest arrive.
+          while (!Files.exists(failed)) {
+            Thread.sleep(10L);
+          }
+        }
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+
+    assertEquals(StatusCodes.CGI_ERROR, connections.get(0).getStatusCode());
+    for (InMemoryClientConnection connection :
+           connections.subList(1, connections.size())) {
+      assertEquals(StatusCodes.SUCCESS, connection.getStatusCode());
+    }
+    assertEquals(1 + NUM_FOLLOWERS,
+                 Files.readAllLines(root.resolve("runs")).size());
+    assertEquals((long) NUM_FOLLOWERS, coalescer.getFallbacks());
+  }
+}
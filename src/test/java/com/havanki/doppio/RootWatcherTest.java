@@ -0,0 +1,136 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class RootWatcherTest {
+
+  private static final long TIMEOUT_SEC = 10L;
+
+  @TempDir
+  Path root;
+
+  private RootWatcher watcher;
+  private BlockingQueue<Path> changes;
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    Files.createDirectories(root.resolve("gemlog"));
+    Files.writeString(root.resolve("gemlog/index.gmi"), "# Gemlog\n");
+
+    changes = new LinkedBlockingQueue<>();
+    watcher = new RootWatcher(List.of(root));
+    watcher.addListener(new RootWatcher.Listener() {
+      @Override
+      public void pathChanged(Path path) {
+        changes.add(path);
+      }
+
+      @Override
+      public void allChanged() {
+        changes.add(root);
+      }
+    });
+    watcher.start();
+  }
+
+  @AfterEach
+  public void afterEach() throws Exception {
+    watcher.close();
+  }
+
+  /**
+   * Waits for a change to be reported for a path, skipping others.
+   */
+  private Path awaitChange(Path path) throws InterruptedException {
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(TIMEOUT_SEC);
+    while (System.nanoTime() < deadline) {
+      Path changed = changes.poll(100L, TimeUnit.MILLISECONDS);
+      if (path.equals(changed)) {
+        return changed;
+      }
+    }
+    return null;
+  }
+
+  @Test
+  public void testFileCreated() throws Exception {
+    Path file = root.resolve("index.gmi");
+    Files.writeString(file, "# Hello\n");
+
+    assertNotNull(awaitChange(file));
+  }
+
+  @Test
+  public void testFileModifiedInSubdirectory() throws Exception {
+    Path file = root.resolve("gemlog/index.gmi");
+    Files.writeString(file, "# Gemlog, updated\n");
+
+    assertNotNull(awaitChange(file));
+  }
+
+  @Test
+  public void testFileDeleted() throws Exception {
+    Path file = root.resolve("gemlog/index.gmi");
+    Files.delete(file);
+
+    assertNotNull(awaitChange(file));
+  }
+
+  @Test
+  public void testDirectoryAdded() throws Exception {
+    Path dir = root.resolve("new");
+    Files.createDirectory(dir);
+    assertNotNull(awaitChange(dir));
+
+    // The new directory is watched too.
+    Path file = dir.resolve("index.gmi");
+    Files.writeString(file, "# New\n");
+    assertNotNull(awaitChange(file));
+  }
+
+  @Test
+  public void testAddTo() throws Exception {
+    Path file = root.resolve("index.gmi");
+    Files.writeString(file, "# Hello\n");
+    assertNotNull(awaitChange(file));
+
+    Map<String, Long> stats = new LinkedHashMap<>();
+    watcher.addTo(stats);
+
+    assertEquals(0L, stats.get("root.watcher.overflows").longValue());
+  }
+}
@@ -0,0 +1,278 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class ScgiClientTest {
+
+  private static final long TIMEOUT_MS = 5000L;
+
+  private Responder responder;
+  private GatewayMapping gatewayMapping;
+  private ScgiClient client;
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    ServerSocketChannel ssc = ServerSocketChannel.open();
+    ssc.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+    responder = new Responder(ssc);
+    int port = ((InetSocketAddress) ssc.getLocalAddress()).getPort();
+    gatewayMapping = new GatewayMapping("/app", "localhost:" + port);
+  }
+
+  @AfterEach
+  public void afterEach() throws Exception {
+    if (client != null) {
+      client.close();
+    }
+    responder.close();
+  }
+
+  private static String readAll(InputStream in) throws IOException {
+    try (in) {
+      return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+  }
+
+  private void waitForIdleConnections(int n) throws InterruptedException {
+    while (client.getIdleConnections() < n) {
+      Thread.sleep(10L);
+    }
+  }
+
+  @Test
+  public void testEncodeRequest() {
+    Map<String, String> params = new LinkedHashMap<>();
+    params.put("PATH_INFO", "/x");
+    params.put("SCGI", "2");
+
+    ByteBuffer request = ScgiClient.encodeRequest(params);
+
+    String expectedHeaders = "CONTENT_LENGTH\u00000\u0000SCGI\u00001\u0000" +
+      "PATH_INFO\u0000/x\u0000";
+    assertEquals(expectedHeaders.length() + ":" + expectedHeaders + ",",
+                 StandardCharsets.UTF_8.decode(request).toString());
+  }
+
+  @Test
+  public void testSendRequest() throws Exception {
+    client = new ScgiClient(gatewayMapping, 2, 0, TIMEOUT_MS);
+
+    InputStream response =
+      client.sendRequest(Map.of("PATH_INFO", "/hello"));
+    CgiResponseHeaderReader reader = new CgiResponseHeaderReader();
+    CgiResponseMetadata metadata = reader.consumeHeaders(response);
+
+    assertEquals("text/gemini", metadata.getContentType());
+    assertEquals("path /hello\n", readAll(reader.getBody()));
+    assertEquals(1L, client.getRequests());
+    assertEquals(0L, client.getPooledRequests());
+  }
+
+  @Test
+  public void testUsesPooledConnections() throws Exception {
+    client = new ScgiClient(gatewayMapping, 2, 2, TIMEOUT_MS);
+    client.start();
+    waitForIdleConnections(2);
+
+    for (int i = 0; i < 3; i++) {
+      assertEquals("Content-Type: text/gemini\n\npath /" + i + "\n",
+                   readAll(client.sendRequest(Map.of("PATH_INFO", "/" + i))));
+      waitForIdleConnections(2);
+    }
+
+    assertEquals(3L, client.getRequests());
+    assertEquals(3L, client.getPooledRequests());
+    assertEquals(5L, client.getConnectionsOpened());
+  }
+
+  @Test
+  public void testDiscardsPooledConnectionsClosedByApplication()
+    throws Exception {
+    client = new ScgiClient(gatewayMapping, 2, 1, TIMEOUT_MS);
+    client.start();
+    waitForIdleConnections(1);
+
+    responder.closeConnections();
+    Thread.sleep(100L);
+
+    assertEquals("Content-Type: text/gemini\n\npath /after\n",
+                 readAll(client.sendRequest(Map.of("PATH_INFO", "/after"))));
+    assertEquals(0L, client.getPooledRequests());
+  }
+
+  @Test
+  public void testLimitsConcurrentRequests() throws Exception {
+    client = new ScgiClient(gatewayMapping, 1, 0, TIMEOUT_MS);
+
+    InputStream first = client.sendRequest(Map.of("PATH_INFO", "/first"));
+    CompletableFuture<String> second = CompletableFuture.supplyAsync(() -> {
+      try {
+        return readAll(client.sendRequest(Map.of("PATH_INFO", "/second")));
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    });
+
+    Thread.sleep(100L);
+    assertFalse(second.isDone());
+
+    readAll(first);
+    assertEquals("Content-Type: text/gemini\n\npath /second\n",
+                 second.get(5L, TimeUnit.SECONDS));
+  }
+
+  @Test
+  public void testTimeout() throws Exception {
+    client = new ScgiClient(gatewayMapping, 1, 0, 200L);
+
+    InputStream response = client.sendRequest(Map.of("PATH_INFO", "/hang"));
+
+    assertThrows(SocketTimeoutException.class, () -> response.read());
+    // The connection was closed and the permit given back.
+    assertEquals("Content-Type: text/gemini\n\npath /next\n",
+                 readAll(client.sendRequest(Map.of("PATH_INFO", "/next"))));
+  }
+
+  @Test
+  public void testUnreachableApplication() throws Exception {
+    // A socket that is bound but not listening holds its port for the whole
+    // test, so connections to it are refused rather than reaching whatever
+    // might take over a freed port.
+    try (Socket unlistened = new Socket()) {
+      unlistened.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+      client = new ScgiClient(new GatewayMapping("/app", "localhost:" +
+                                                 unlistened.getLocalPort()),
+                              1, 0, TIMEOUT_MS);
+
+      assertThrows(IOException.class, () -> client.sendRequest(Map.of()));
+      // The permit is given back after a failure.
+      assertThrows(IOException.class, () -> client.sendRequest(Map.of()));
+    }
+  }
+
+  /**
+   * A stand-in SCGI application, which responds to each request with a
+   * short text/gemini document holding its PATH_INFO, then closes the
+   * connection. A request for the path "/hang" is never answered.
+   */
+  private static class Responder implements AutoCloseable {
+
+    private final ServerSocketChannel ssc;
+    private final List<SocketChannel> channels = new ArrayList<>();
+
+    private Responder(ServerSocketChannel ssc) {
+      this.ssc = ssc;
+      Thread.ofVirtual().start(this::accept);
+    }
+
+    private void accept() {
+      try {
+        while (true) {
+          SocketChannel channel = ssc.accept();
+          synchronized (channels) {
+            channels.add(channel);
+          }
+          Thread.ofVirtual().start(() -> serve(channel));
+        }
+      } catch (IOException e) {
+        // closed
+      }
+    }
+
+    private void serve(SocketChannel channel) {
+      try (channel) {
+        InputStream in = Channels.newInputStream(channel);
+        Map<String, String> headers = readHeaders(in);
+        if ("/hang".equals(headers.get("PATH_INFO"))) {
+          in.read(); // until the client closes the connection
+          return;
+        }
+        OutputStream out = Channels.newOutputStream(channel);
+        out.write(("Content-Type: text/gemini\n\npath " +
+                   headers.get("PATH_INFO") + "\n")
+                  .getBytes(StandardCharsets.UTF_8));
+      } catch (IOException e) {
+        // connection closed
+      }
+    }
+
+    private static Map<String, String> readHeaders(InputStream in)
+      throws IOException {
+      int length = 0;
+      int b;
+      while ((b = in.read()) != ':') {
+        if (b == -1) {
+          throw new EOFException();
+        }
+        length = length * 10 + (b - '0');
+      }
+      byte[] netstring = in.readNBytes(length + 1);
+      String[] parts = new String(netstring, 0, length, StandardCharsets.UTF_8)
+        .split("\u0000");
+      Map<String, String> headers = new LinkedHashMap<>();
+      for (int i = 0; i + 1 < parts.length; i += 2) {
+        headers.put(parts[i], parts[i + 1]);
+      }
+      return headers;
+    }
+
+    private void closeConnections() throws IOException {
+      synchronized (channels) {
+        for (SocketChannel channel : channels) {
+          channel.close();
+        }
+      }
+    }
+
+    @Override
+    public void close() throws IOException {
+      ssc.close();
+      closeConnections();
+    }
+  }
+}
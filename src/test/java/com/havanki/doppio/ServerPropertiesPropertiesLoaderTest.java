@@ -58,9 +58,54 @@ public class ServerPropertiesPropertiesLoaderTest extends ServerPropertiesTest {
     props.setProperty("shutdownTimeoutSec",
                       Long.toString(SHUTDOWN_TIMEOUT_SEC));
     props.setProperty("numThreads", Integer.toString(NUM_THREADS));
+    props.setProperty("executor", EXECUTOR.getConfigValue());
+    props.setProperty("maxConcurrentRequests",
+                      Integer.toString(MAX_CONCURRENT_REQUESTS));
+    props.setProperty("engine", ENGINE.getConfigValue());
+    props.setProperty("numAcceptors", Integer.toString(NUM_ACCEPTORS));
+    props.setProperty("handshakeTimeoutMs", Integer.toString(HANDSHAKE_TIMEOUT_MS));
+    props.setProperty("requestTimeoutMs", Integer.toString(REQUEST_TIMEOUT_MS));
+    props.setProperty("numHandshakeThreads", Integer.toString(NUM_HANDSHAKE_THREADS));
+    props.setProperty("tlsSessionCacheSize", Integer.toString(TLS_SESSION_CACHE_SIZE));
+    props.setProperty("tlsSessionTimeoutSec", Integer.toString(TLS_SESSION_TIMEOUT_SEC));
+    props.setProperty("tlsSessionTickets", Boolean.toString(TLS_SESSION_TICKETS));
     props.setProperty("cgiDir", CGI_DIR);
     props.setProperty("maxLocalRedirects",
                       Integer.toString(MAX_LOCAL_REDIRECTS));
+    props.setProperty("cgiWorkers", Boolean.toString(CGI_WORKERS));
+    props.setProperty("cgiWorkerPoolSize",
+                      Integer.toString(CGI_WORKER_POOL_SIZE));
+    props.setProperty("cgiWorkerMaxRequests",
+                      Integer.toString(CGI_WORKER_MAX_REQUESTS));
+    props.setProperty("cgiWorkerIdleTimeoutSec",
+                      Integer.toString(CGI_WORKER_IDLE_TIMEOUT_SEC));
+    props.setProperty("cgiCacheMaxBytes", Long.toString(CGI_CACHE_MAX_BYTES));
+    props.setProperty("coalescePrefixes",
+                      COALESCE_PREFIXES.stream().collect(Collectors.joining(",")));
+    props.setProperty("coalesceSecureDomains",
+                      Boolean.toString(COALESCE_SECURE_DOMAINS));
+    props.setProperty("cgiMaxConcurrent", Integer.toString(CGI_MAX_CONCURRENT));
+    props.setProperty("cgiMaxConcurrentPerScript",
+                      Integer.toString(CGI_MAX_CONCURRENT_PER_SCRIPT));
+    props.setProperty("cgiMaxQueued", Integer.toString(CGI_MAX_QUEUED));
+    props.setProperty("cgiQueueTimeoutMs",
+                      Integer.toString(CGI_QUEUE_TIMEOUT_MS));
+    props.setProperty("cgiTimeoutMs", Integer.toString(CGI_TIMEOUT_MS));
+    props.setProperty("cgiMaxOutputBytes", Long.toString(CGI_MAX_OUTPUT_BYTES));
+    props.setProperty("handler." + HANDLER_PREFIX, HANDLER_CLASS_NAME);
+    props.setProperty("fastCgiGateway." + FAST_CGI_GATEWAY_PREFIX,
+                      FAST_CGI_GATEWAY_ENDPOINT);
+    props.setProperty("fastCgiMaxConnections",
+                      Integer.toString(FAST_CGI_MAX_CONNECTIONS));
+    props.setProperty("fastCgiMaxRequestsPerConnection",
+                      Integer.toString(FAST_CGI_MAX_REQUESTS_PER_CONNECTION));
+    props.setProperty("scgiGateway." + SCGI_GATEWAY_PREFIX,
+                      SCGI_GATEWAY_ENDPOINT);
+    props.setProperty("scgiMaxConcurrentRequests",
+                      Integer.toString(SCGI_MAX_CONCURRENT_REQUESTS));
+    props.setProperty("scgiIdleConnections",
+                      Integer.toString(SCGI_IDLE_CONNECTIONS));
+    props.setProperty("gatewayTimeoutMs", Integer.toString(GATEWAY_TIMEOUT_MS));
     props.setProperty("forceCanonicalText",
                       Boolean.toString(FORCE_CANONICAL_TEXT));
     props.setProperty("textGeminiSuffixes",
@@ -70,6 +115,14 @@ public class ServerPropertiesPropertiesLoaderTest extends ServerPropertiesTest {
     props.setProperty("enableCharsetDetection",
                       Boolean.toString(ENABLE_CHARSET_DETECTION));
     props.setProperty("defaultCharset", DEFAULT_CHARSET);
+    props.setProperty("staticCacheMaxBytes", Long.toString(STATIC_CACHE_MAX_BYTES));
+    props.setProperty("watchRoot", Boolean.toString(WATCH_ROOT));
+    props.setProperty("archive", ARCHIVE);
+    props.setProperty("warmUpPaths",
+                      WARM_UP_PATHS.stream().collect(Collectors.joining(",")));
+    props.setProperty("warmUpTopPaths", Integer.toString(WARM_UP_TOP_PATHS));
+    props.setProperty("warmUpBudgetMs", Integer.toString(WARM_UP_BUDGET_MS));
+    props.setProperty("warmUpJit", Boolean.toString(WARM_UP_JIT));
     props.setProperty("favicon", FAVICON);
     props.setProperty("feedPages",
                       FEED_PAGES.stream().collect(Collectors.joining(",")));
@@ -77,8 +130,24 @@ public class ServerPropertiesPropertiesLoaderTest extends ServerPropertiesTest {
     props.setProperty("secureDomain.1", "/path1");
     props.setProperty("keystore", KEYSTORE);
     props.setProperty("keystorePassword", KEYSTORE_PASSWORD);
+    props.setProperty("tempCertKeyType", TEMP_CERT_KEY_TYPE.getConfigValue());
+    props.setProperty("tempCertCacheDir", TEMP_CERT_CACHE_DIR);
+    props.setProperty("keystoreCheckIntervalSec",
+                      Integer.toString(KEYSTORE_CHECK_INTERVAL_SEC));
     props.setProperty("setModSslCgiMetaVars",
                       Boolean.toString(SET_MOD_SSL_CGI_META_VARS));
+    String vhPrefix = "virtualHost." + VIRTUAL_HOST + ".";
+    props.setProperty(vhPrefix + "root", VIRTUAL_HOST_ROOT);
+    props.setProperty(vhPrefix + "cgiDir", VIRTUAL_HOST_CGI_DIR);
+    props.setProperty(vhPrefix + "cgiTimeoutMs",
+                      Integer.toString(VIRTUAL_HOST_CGI_TIMEOUT_MS));
+    props.setProperty(vhPrefix + "cgiMaxOutputBytes",
+                      Long.toString(VIRTUAL_HOST_CGI_MAX_OUTPUT_BYTES));
+    props.setProperty(vhPrefix + "feedPages",
+                      VIRTUAL_HOST_FEED_PAGES.stream().collect(Collectors.joining(",")));
+    props.setProperty(vhPrefix + "secureDomain.1", "/private");
+    props.setProperty(vhPrefix + "keystore", VIRTUAL_HOST_KEYSTORE);
+    props.setProperty(vhPrefix + "keystorePassword", VIRTUAL_HOST_KEYSTORE_PASSWORD);
 
     sp = loader.loadFromProperties(props);
 
@@ -112,6 +181,131 @@ public class ServerPropertiesPropertiesLoaderTest extends ServerPropertiesTest {
     assertEquals("numThreads must be positive", e.getMessage());
   }
 
+  @Test
+  public void testInvalidExecutor() {
+    props.setProperty("host", HOST);
+    props.setProperty("executor", "cooperative");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("Unsupported executor cooperative", e.getMessage());
+  }
+
+  @Test
+  public void testInvalidEngine() {
+    props.setProperty("host", HOST);
+    props.setProperty("engine", "steam");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("Unsupported engine steam", e.getMessage());
+  }
+
+  @Test
+  public void testInvalidMaxConcurrentRequests() {
+    props.setProperty("host", HOST);
+    props.setProperty("maxConcurrentRequests", "0");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("maxConcurrentRequests must be positive", e.getMessage());
+  }
+
+  @Test
+  public void testInvalidNumAcceptors() {
+    props.setProperty("host", HOST);
+    props.setProperty("numAcceptors", "0");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("numAcceptors must be positive", e.getMessage());
+  }
+
+  @Test
+  public void testInvalidHandshakeTimeoutMs() {
+    props.setProperty("host", HOST);
+    props.setProperty("handshakeTimeoutMs", "-1");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("handshakeTimeoutMs must be non-negative", e.getMessage());
+  }
+
+  @Test
+  public void testInvalidStaticCacheMaxBytes() {
+    props.setProperty("host", HOST);
+    props.setProperty("staticCacheMaxBytes", "-1");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("staticCacheMaxBytes must be non-negative", e.getMessage());
+  }
+
+  @Test
+  public void testInvalidWarmUpBudgetMs() {
+    props.setProperty("host", HOST);
+    props.setProperty("warmUpBudgetMs", "-1");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("warmUpBudgetMs must be non-negative", e.getMessage());
+  }
+
+  @Test
+  public void testVirtualHostDuplicatingHost() {
+    props.setProperty("host", HOST);
+    props.setProperty("virtualHost." + HOST.toUpperCase() + ".root",
+                      VIRTUAL_HOST_ROOT);
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("Virtual host " + HOST + " duplicates the server host",
+                 e.getMessage());
+  }
+
+  @Test
+  public void testVirtualHostNegativeCgiLimit() {
+    props.setProperty("host", HOST);
+    String vhPrefix = "virtualHost." + VIRTUAL_HOST + ".";
+    props.setProperty(vhPrefix + "root", VIRTUAL_HOST_ROOT);
+    props.setProperty(vhPrefix + "cgiTimeoutMs", "-1");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("Virtual host " + VIRTUAL_HOST + " has a negative CGI limit",
+                 e.getMessage());
+  }
+
+  @Test
+  public void testInvalidTempCertKeyType() {
+    props.setProperty("host", HOST);
+    props.setProperty("tempCertKeyType", "dsa1024");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("Unsupported tempCertKeyType dsa1024", e.getMessage());
+  }
+
   @Test
   public void testInvalidMaxLocalRedirects() {
     props.setProperty("host", HOST);
@@ -123,4 +317,42 @@ public class ServerPropertiesPropertiesLoaderTest extends ServerPropertiesTest {
 
     assertEquals("maxLocalRedirects must be non-negative", e.getMessage());
   }
+
+  @Test
+  public void testInvalidCgiWorkerPoolSize() {
+    props.setProperty("host", HOST);
+    props.setProperty("cgiWorkerPoolSize", "0");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("cgiWorkerPoolSize must be positive", e.getMessage());
+  }
+
+  @Test
+  public void testInvalidFastCgiMaxRequestsPerConnection() {
+    props.setProperty("host", HOST);
+    props.setProperty("fastCgiMaxRequestsPerConnection", "0");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("fastCgiMaxRequestsPerConnection must be between 1 and 65535",
+                 e.getMessage());
+  }
+
+  @Test
+  public void testInvalidFastCgiGatewayEndpoint() {
+    props.setProperty("host", HOST);
+    props.setProperty("fastCgiGateway./app", "localhost");
+
+    IllegalStateException e =
+        assertThrows(IllegalStateException.class,
+                     () -> loader.loadFromProperties(props));
+
+    assertEquals("Gateway endpoint localhost is not unix:<path> or <host>:<port>",
+                 e.getMessage());
+  }
 }
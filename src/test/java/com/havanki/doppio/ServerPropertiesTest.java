@@ -20,6 +20,7 @@
 package com.havanki.doppio;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 import java.nio.file.Path;
 import java.util.ArrayList;
@@ -37,9 +38,63 @@ public class ServerPropertiesTest {
   static final long SHUTDOWN_TIMEOUT_SEC =
     ServerProperties.DEFAULT_SHUTDOWN_TIMEOUT_SEC + 10L;
   static final int NUM_THREADS = ServerProperties.DEFAULT_NUM_THREADS + 2;
+  static final ServerProperties.ExecutorMode EXECUTOR =
+    ServerProperties.ExecutorMode.BOUNDED_VIRTUAL;
+  static final int MAX_CONCURRENT_REQUESTS =
+    ServerProperties.DEFAULT_MAX_CONCURRENT_REQUESTS + 500;
+  static final ServerProperties.EngineMode ENGINE =
+    ServerProperties.EngineMode.NIO;
+  static final int NUM_ACCEPTORS = ServerProperties.DEFAULT_NUM_ACCEPTORS + 3;
+  static final int HANDSHAKE_TIMEOUT_MS =
+    ServerProperties.DEFAULT_HANDSHAKE_TIMEOUT_MS + 5000;
+  static final int REQUEST_TIMEOUT_MS =
+    ServerProperties.DEFAULT_REQUEST_TIMEOUT_MS + 5000;
+  static final int NUM_HANDSHAKE_THREADS =
+    ServerProperties.DEFAULT_NUM_HANDSHAKE_THREADS + 2;
+  static final int TLS_SESSION_CACHE_SIZE =
+    ServerProperties.DEFAULT_TLS_SESSION_CACHE_SIZE * 2;
+  static final int TLS_SESSION_TIMEOUT_SEC =
+    ServerProperties.DEFAULT_TLS_SESSION_TIMEOUT_SEC / 2;
+  static final boolean TLS_SESSION_TICKETS =
+    !ServerProperties.DEFAULT_TLS_SESSION_TICKETS;
   static final String CGI_DIR = ServerProperties.DEFAULT_CGI_DIR + "/testcgi";
   static final int MAX_LOCAL_REDIRECTS =
     ServerProperties.DEFAULT_MAX_LOCAL_REDIRECTS + 1;
+  static final boolean CGI_WORKERS = !ServerProperties.DEFAULT_CGI_WORKERS;
+  static final int CGI_WORKER_POOL_SIZE =
+    ServerProperties.DEFAULT_CGI_WORKER_POOL_SIZE + 1;
+  static final int CGI_WORKER_MAX_REQUESTS =
+    ServerProperties.DEFAULT_CGI_WORKER_MAX_REQUESTS + 1;
+  static final int CGI_WORKER_IDLE_TIMEOUT_SEC =
+    ServerProperties.DEFAULT_CGI_WORKER_IDLE_TIMEOUT_SEC + 1;
+  static final long CGI_CACHE_MAX_BYTES = 8L * 1024L * 1024L;
+  static final List<String> COALESCE_PREFIXES = List.of("/cgi-bin/popular", "/gemlog");
+  static final boolean COALESCE_SECURE_DOMAINS =
+    !ServerProperties.DEFAULT_COALESCE_SECURE_DOMAINS;
+  static final int CGI_MAX_CONCURRENT = 32;
+  static final int CGI_MAX_CONCURRENT_PER_SCRIPT = 4;
+  static final int CGI_MAX_QUEUED =
+    ServerProperties.DEFAULT_CGI_MAX_QUEUED + 1;
+  static final int CGI_QUEUE_TIMEOUT_MS =
+    ServerProperties.DEFAULT_CGI_QUEUE_TIMEOUT_MS + 1;
+  static final int CGI_TIMEOUT_MS = 30000;
+  static final long CGI_MAX_OUTPUT_BYTES = 1024L * 1024L;
+  static final String HANDLER_PREFIX = "/guestbook";
+  static final String HANDLER_CLASS_NAME = "com.example.GuestbookHandler";
+  static final String FAST_CGI_GATEWAY_PREFIX = "/app";
+  static final String FAST_CGI_GATEWAY_ENDPOINT = "unix:/run/app.sock";
+  static final int FAST_CGI_MAX_CONNECTIONS =
+    ServerProperties.DEFAULT_FAST_CGI_MAX_CONNECTIONS + 1;
+  static final int FAST_CGI_MAX_REQUESTS_PER_CONNECTION =
+    ServerProperties.DEFAULT_FAST_CGI_MAX_REQUESTS_PER_CONNECTION + 1;
+  static final String SCGI_GATEWAY_PREFIX = "/wiki";
+  static final String SCGI_GATEWAY_ENDPOINT = "127.0.0.1:4000";
+  static final int SCGI_MAX_CONCURRENT_REQUESTS =
+    ServerProperties.DEFAULT_SCGI_MAX_CONCURRENT_REQUESTS + 1;
+  static final int SCGI_IDLE_CONNECTIONS =
+    ServerProperties.DEFAULT_SCGI_IDLE_CONNECTIONS + 1;
+  static final int GATEWAY_TIMEOUT_MS =
+    ServerProperties.DEFAULT_GATEWAY_TIMEOUT_MS + 1000;
   static final boolean FORCE_CANONICAL_TEXT =
     !ServerProperties.DEFAULT_FORCE_CANONICAL_TEXT;
   static final List<String> TEXT_GEMINI_SUFFIXES =
@@ -48,6 +103,13 @@ public class ServerPropertiesTest {
   static final boolean ENABLE_CHARSET_DETECTION =
     !ServerProperties.DEFAULT_ENABLE_CHARSET_DETECTION;
   static final String DEFAULT_CHARSET = "utf-8";
+  static final long STATIC_CACHE_MAX_BYTES = 64L * 1024L * 1024L;
+  static final boolean WATCH_ROOT = !ServerProperties.DEFAULT_WATCH_ROOT;
+  static final String ARCHIVE = "/var/gemini.pack";
+  static final List<String> WARM_UP_PATHS = List.of("/", "/gemlog/atom.xml");
+  static final int WARM_UP_TOP_PATHS = ServerProperties.DEFAULT_WARM_UP_TOP_PATHS + 50;
+  static final int WARM_UP_BUDGET_MS = ServerProperties.DEFAULT_WARM_UP_BUDGET_MS + 5000;
+  static final boolean WARM_UP_JIT = !ServerProperties.DEFAULT_WARM_UP_JIT;
   static final String FAVICON = "🗑";
   static final List<String> FEED_PAGES = List.of("testgemlog.gmi");
   static final String LOG_DIR = "/var/log/doppio";
@@ -56,8 +118,21 @@ public class ServerPropertiesTest {
   static final String KEYSTORE = "/etc/doppio/keystore.jks";
   static final String KEYSTORE_PASSWORD =
     ServerProperties.DEFAULT_KEYSTORE_PASSWORD + "123456";
+  static final ServerProperties.TempCertKeyType TEMP_CERT_KEY_TYPE =
+    ServerProperties.TempCertKeyType.EC_P256;
+  static final String TEMP_CERT_CACHE_DIR = "/var/cache/doppio";
+  static final int KEYSTORE_CHECK_INTERVAL_SEC =
+    ServerProperties.DEFAULT_KEYSTORE_CHECK_INTERVAL_SEC + 30;
   static final boolean SET_MOD_SSL_CGI_META_VARS =
     !ServerProperties.DEFAULT_SET_MOD_SSL_CGI_META_VARS;
+  static final String VIRTUAL_HOST = "other.example.com";
+  static final String VIRTUAL_HOST_ROOT = "/var/gemini-other";
+  static final String VIRTUAL_HOST_CGI_DIR = "scripts";
+  static final int VIRTUAL_HOST_CGI_TIMEOUT_MS = 60000;
+  static final long VIRTUAL_HOST_CGI_MAX_OUTPUT_BYTES = 2L * 1024L * 1024L;
+  static final List<String> VIRTUAL_HOST_FEED_PAGES = List.of("news.gmi");
+  static final String VIRTUAL_HOST_KEYSTORE = "/etc/doppio/other.p12";
+  static final String VIRTUAL_HOST_KEYSTORE_PASSWORD = "otherpass";
 
   protected void assertMinimal(ServerProperties sp) {
     assertEquals(HOST, sp.getHost());
@@ -68,9 +143,63 @@ public class ServerPropertiesTest {
     assertEquals(ServerProperties.DEFAULT_SHUTDOWN_TIMEOUT_SEC,
                  sp.getShutdownTimeoutSec());
     assertEquals(ServerProperties.DEFAULT_NUM_THREADS, sp.getNumThreads());
+    assertEquals(ServerProperties.DEFAULT_EXECUTOR, sp.getExecutor());
+    assertEquals(ServerProperties.DEFAULT_MAX_CONCURRENT_REQUESTS,
+                 sp.getMaxConcurrentRequests());
+    assertEquals(ServerProperties.DEFAULT_ENGINE, sp.getEngine());
+    assertEquals(ServerProperties.DEFAULT_NUM_ACCEPTORS, sp.getNumAcceptors());
+    assertEquals(ServerProperties.DEFAULT_HANDSHAKE_TIMEOUT_MS,
+                 sp.getHandshakeTimeoutMs());
+    assertEquals(ServerProperties.DEFAULT_REQUEST_TIMEOUT_MS,
+                 sp.getRequestTimeoutMs());
+    assertEquals(ServerProperties.DEFAULT_NUM_HANDSHAKE_THREADS,
+                 sp.getNumHandshakeThreads());
+    assertEquals(ServerProperties.DEFAULT_TLS_SESSION_CACHE_SIZE,
+                 sp.getTlsSessionCacheSize());
+    assertEquals(ServerProperties.DEFAULT_TLS_SESSION_TIMEOUT_SEC,
+                 sp.getTlsSessionTimeoutSec());
+    assertEquals(ServerProperties.DEFAULT_TLS_SESSION_TICKETS,
+                 sp.isTlsSessionTickets());
     assertEquals(ServerProperties.DEFAULT_CGI_DIR, sp.getCgiDir());
     assertEquals(ServerProperties.DEFAULT_MAX_LOCAL_REDIRECTS,
                  sp.getMaxLocalRedirects());
+    assertEquals(ServerProperties.DEFAULT_CGI_WORKERS, sp.isCgiWorkers());
+    assertEquals(ServerProperties.DEFAULT_CGI_WORKER_POOL_SIZE,
+                 sp.getCgiWorkerPoolSize());
+    assertEquals(ServerProperties.DEFAULT_CGI_WORKER_MAX_REQUESTS,
+                 sp.getCgiWorkerMaxRequests());
+    assertEquals(ServerProperties.DEFAULT_CGI_WORKER_IDLE_TIMEOUT_SEC,
+                 sp.getCgiWorkerIdleTimeoutSec());
+    assertEquals(ServerProperties.DEFAULT_CGI_CACHE_MAX_BYTES,
+                 sp.getCgiCacheMaxBytes());
+    assertEquals(ServerProperties.DEFAULT_COALESCE_PREFIXES,
+                 sp.getCoalescePrefixes());
+    assertEquals(ServerProperties.DEFAULT_COALESCE_SECURE_DOMAINS,
+                 sp.isCoalesceSecureDomains());
+    assertEquals(ServerProperties.DEFAULT_CGI_MAX_CONCURRENT,
+                 sp.getCgiMaxConcurrent());
+    assertEquals(ServerProperties.DEFAULT_CGI_MAX_CONCURRENT_PER_SCRIPT,
+                 sp.getCgiMaxConcurrentPerScript());
+    assertEquals(ServerProperties.DEFAULT_CGI_MAX_QUEUED,
+                 sp.getCgiMaxQueued());
+    assertEquals(ServerProperties.DEFAULT_CGI_QUEUE_TIMEOUT_MS,
+                 sp.getCgiQueueTimeoutMs());
+    assertEquals(ServerProperties.DEFAULT_CGI_TIMEOUT_MS, sp.getCgiTimeoutMs());
+    assertEquals(ServerProperties.DEFAULT_CGI_MAX_OUTPUT_BYTES,
+                 sp.getCgiMaxOutputBytes());
+    assertEquals(List.of(), sp.getHandlers());
+    assertEquals(List.of(), sp.getFastCgiGateways());
+    assertEquals(ServerProperties.DEFAULT_FAST_CGI_MAX_CONNECTIONS,
+                 sp.getFastCgiMaxConnections());
+    assertEquals(ServerProperties.DEFAULT_FAST_CGI_MAX_REQUESTS_PER_CONNECTION,
+                 sp.getFastCgiMaxRequestsPerConnection());
+    assertEquals(List.of(), sp.getScgiGateways());
+    assertEquals(ServerProperties.DEFAULT_SCGI_MAX_CONCURRENT_REQUESTS,
+                 sp.getScgiMaxConcurrentRequests());
+    assertEquals(ServerProperties.DEFAULT_SCGI_IDLE_CONNECTIONS,
+                 sp.getScgiIdleConnections());
+    assertEquals(ServerProperties.DEFAULT_GATEWAY_TIMEOUT_MS,
+                 sp.getGatewayTimeoutMs());
     assertEquals(ServerProperties.DEFAULT_FORCE_CANONICAL_TEXT,
                  sp.isForceCanonicalText());
     assertEquals(ServerProperties.DEFAULT_TEXT_GEMINI_SUFFIXES,
@@ -81,6 +210,14 @@ public class ServerPropertiesTest {
                  sp.isEnableCharsetDetection());
     assertEquals(ServerProperties.DEFAULT_DEFAULT_CHARSET,
                  sp.getDefaultCharset());
+    assertEquals(ServerProperties.DEFAULT_STATIC_CACHE_MAX_BYTES,
+                 sp.getStaticCacheMaxBytes());
+    assertEquals(ServerProperties.DEFAULT_WATCH_ROOT, sp.isWatchRoot());
+    assertEquals(ServerProperties.DEFAULT_ARCHIVE, sp.getArchive());
+    assertEquals(ServerProperties.DEFAULT_WARM_UP_PATHS, sp.getWarmUpPaths());
+    assertEquals(ServerProperties.DEFAULT_WARM_UP_TOP_PATHS, sp.getWarmUpTopPaths());
+    assertEquals(ServerProperties.DEFAULT_WARM_UP_BUDGET_MS, sp.getWarmUpBudgetMs());
+    assertEquals(ServerProperties.DEFAULT_WARM_UP_JIT, sp.isWarmUpJit());
     assertEquals(ServerProperties.DEFAULT_FAVICON,
                  sp.getFavicon());
     assertEquals(ServerProperties.DEFAULT_FEED_PAGES, sp.getFeedPages());
@@ -89,8 +226,16 @@ public class ServerPropertiesTest {
     assertEquals(ServerProperties.DEFAULT_KEYSTORE, sp.getKeystore());
     assertEquals(ServerProperties.DEFAULT_KEYSTORE_PASSWORD,
                  sp.getKeystorePassword());
+    assertEquals(ServerProperties.DEFAULT_TEMP_CERT_KEY_TYPE,
+                 sp.getTempCertKeyType());
+    assertEquals(ServerProperties.DEFAULT_TEMP_CERT_CACHE_DIR,
+                 sp.getTempCertCacheDir());
+    assertEquals(ServerProperties.DEFAULT_KEYSTORE_CHECK_INTERVAL_SEC,
+                 sp.getKeystoreCheckIntervalSec());
     assertEquals(ServerProperties.DEFAULT_SET_MOD_SSL_CGI_META_VARS,
                  sp.isSetModSslCgiMetaVars());
+    assertEquals(List.of(), sp.getVirtualHosts());
+    assertSame(sp.getDefaultVirtualHost(), sp.getVirtualHost(VIRTUAL_HOST));
   }
 
   protected void assertMaximal(ServerProperties sp) {
@@ -100,22 +245,92 @@ public class ServerPropertiesTest {
     assertEquals(CONTROL_PORT, sp.getControlPort());
     assertEquals(SHUTDOWN_TIMEOUT_SEC, sp.getShutdownTimeoutSec());
     assertEquals(NUM_THREADS, sp.getNumThreads());
+    assertEquals(EXECUTOR, sp.getExecutor());
+    assertEquals(MAX_CONCURRENT_REQUESTS, sp.getMaxConcurrentRequests());
+    assertEquals(ENGINE, sp.getEngine());
+    assertEquals(NUM_ACCEPTORS, sp.getNumAcceptors());
+    assertEquals(HANDSHAKE_TIMEOUT_MS, sp.getHandshakeTimeoutMs());
+    assertEquals(REQUEST_TIMEOUT_MS, sp.getRequestTimeoutMs());
+    assertEquals(NUM_HANDSHAKE_THREADS, sp.getNumHandshakeThreads());
+    assertEquals(TLS_SESSION_CACHE_SIZE, sp.getTlsSessionCacheSize());
+    assertEquals(TLS_SESSION_TIMEOUT_SEC, sp.getTlsSessionTimeoutSec());
+    assertEquals(TLS_SESSION_TICKETS, sp.isTlsSessionTickets());
     assertEquals(Path.of(CGI_DIR), sp.getCgiDir());
     assertEquals(MAX_LOCAL_REDIRECTS, sp.getMaxLocalRedirects());
+    assertEquals(CGI_WORKERS, sp.isCgiWorkers());
+    assertEquals(CGI_WORKER_POOL_SIZE, sp.getCgiWorkerPoolSize());
+    assertEquals(CGI_WORKER_MAX_REQUESTS, sp.getCgiWorkerMaxRequests());
+    assertEquals(CGI_WORKER_IDLE_TIMEOUT_SEC, sp.getCgiWorkerIdleTimeoutSec());
+    assertEquals(CGI_CACHE_MAX_BYTES, sp.getCgiCacheMaxBytes());
+    assertEquals(COALESCE_PREFIXES, sp.getCoalescePrefixes());
+    assertEquals(COALESCE_SECURE_DOMAINS, sp.isCoalesceSecureDomains());
+    assertEquals(CGI_MAX_CONCURRENT, sp.getCgiMaxConcurrent());
+    assertEquals(CGI_MAX_CONCURRENT_PER_SCRIPT, sp.getCgiMaxConcurrentPerScript());
+    assertEquals(CGI_MAX_QUEUED, sp.getCgiMaxQueued());
+    assertEquals(CGI_QUEUE_TIMEOUT_MS, sp.getCgiQueueTimeoutMs());
+    assertEquals(CGI_TIMEOUT_MS, sp.getCgiTimeoutMs());
+    assertEquals(CGI_MAX_OUTPUT_BYTES, sp.getCgiMaxOutputBytes());
+    assertEquals(1, sp.getHandlers().size());
+    assertEquals(HANDLER_PREFIX, sp.getHandlers().get(0).getPrefix());
+    assertEquals(HANDLER_CLASS_NAME, sp.getHandlers().get(0).getClassName());
+    assertEquals(1, sp.getFastCgiGateways().size());
+    assertEquals(FAST_CGI_GATEWAY_PREFIX,
+                 sp.getFastCgiGateways().get(0).getPrefix());
+    assertEquals(FAST_CGI_GATEWAY_ENDPOINT,
+                 sp.getFastCgiGateways().get(0).getEndpoint());
+    assertEquals(FAST_CGI_MAX_CONNECTIONS, sp.getFastCgiMaxConnections());
+    assertEquals(FAST_CGI_MAX_REQUESTS_PER_CONNECTION,
+                 sp.getFastCgiMaxRequestsPerConnection());
+    assertEquals(1, sp.getScgiGateways().size());
+    assertEquals(SCGI_GATEWAY_PREFIX, sp.getScgiGateways().get(0).getPrefix());
+    assertEquals(SCGI_GATEWAY_ENDPOINT,
+                 sp.getScgiGateways().get(0).getEndpoint());
+    assertEquals(SCGI_MAX_CONCURRENT_REQUESTS, sp.getScgiMaxConcurrentRequests());
+    assertEquals(SCGI_IDLE_CONNECTIONS, sp.getScgiIdleConnections());
+    assertEquals(GATEWAY_TIMEOUT_MS, sp.getGatewayTimeoutMs());
     assertEquals(FORCE_CANONICAL_TEXT, sp.isForceCanonicalText());
     assertEquals(TEXT_GEMINI_SUFFIXES, sp.getTextGeminiSuffixes());
     assertEquals(DEFAULT_CONTENT_TYPE, sp.getDefaultContentType());
     assertEquals(ENABLE_CHARSET_DETECTION, sp.isEnableCharsetDetection());
     assertEquals(DEFAULT_CHARSET, sp.getDefaultCharset());
+    assertEquals(STATIC_CACHE_MAX_BYTES, sp.getStaticCacheMaxBytes());
+    assertEquals(WATCH_ROOT, sp.isWatchRoot());
+    assertEquals(Path.of(ARCHIVE), sp.getArchive());
+    assertEquals(WARM_UP_PATHS, sp.getWarmUpPaths());
+    assertEquals(WARM_UP_TOP_PATHS, sp.getWarmUpTopPaths());
+    assertEquals(WARM_UP_BUDGET_MS, sp.getWarmUpBudgetMs());
+    assertEquals(WARM_UP_JIT, sp.isWarmUpJit());
     assertEquals(FAVICON, sp.getFavicon());
     assertEquals(FEED_PAGES, sp.getFeedPages());
     assertEquals(Path.of(LOG_DIR), sp.getLogDir());
     assertEquals(Path.of(KEYSTORE), sp.getKeystore());
     assertEquals(KEYSTORE_PASSWORD, sp.getKeystorePassword());
+    assertEquals(TEMP_CERT_KEY_TYPE, sp.getTempCertKeyType());
+    assertEquals(Path.of(TEMP_CERT_CACHE_DIR), sp.getTempCertCacheDir());
+    assertEquals(KEYSTORE_CHECK_INTERVAL_SEC, sp.getKeystoreCheckIntervalSec());
     assertEquals(SET_MOD_SSL_CGI_META_VARS, sp.isSetModSslCgiMetaVars());
 
     assertEquals(1, sp.getSecureDomains().size());
     assertEquals("/path1", sp.getSecureDomains().get(0).getDir().toString());
+
+    assertEquals(1, sp.getVirtualHosts().size());
+    VirtualHost vh = sp.getVirtualHosts().get(0);
+    assertEquals(VIRTUAL_HOST, vh.getHost());
+    assertEquals(Path.of(VIRTUAL_HOST_ROOT), vh.getRoot());
+    assertEquals(Path.of(VIRTUAL_HOST_CGI_DIR), vh.getCgiDir());
+    assertEquals(VIRTUAL_HOST_CGI_TIMEOUT_MS, vh.getCgiTimeoutMs());
+    assertEquals(VIRTUAL_HOST_CGI_MAX_OUTPUT_BYTES, vh.getCgiMaxOutputBytes());
+    assertEquals(VIRTUAL_HOST_FEED_PAGES, vh.getFeedPages());
+    assertEquals(Path.of(VIRTUAL_HOST_KEYSTORE), vh.getKeystore());
+    assertEquals(VIRTUAL_HOST_KEYSTORE_PASSWORD, vh.getKeystorePassword());
+    assertEquals(1, vh.getSecureDomains().size());
+    assertEquals("/private", vh.getSecureDomains().get(0).getDir().toString());
+    assertSame(vh, sp.getVirtualHost(VIRTUAL_HOST.toUpperCase()));
+    assertSame(sp.getDefaultVirtualHost(), sp.getVirtualHost(HOST));
+    assertEquals(Path.of(ROOT), sp.getDefaultVirtualHost().getRoot());
+    assertEquals(CGI_TIMEOUT_MS, sp.getDefaultVirtualHost().getCgiTimeoutMs());
+    assertEquals(CGI_MAX_OUTPUT_BYTES,
+                 sp.getDefaultVirtualHost().getCgiMaxOutputBytes());
   }
 
   @SafeVarargs
@@ -20,6 +20,7 @@
 package com.havanki.doppio;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.StringReader;
 import java.util.Optional;
@@ -57,8 +58,47 @@ public class ServerPropertiesYamlLoaderTest extends ServerPropertiesTest {
     "\ncontrolPort: " + Integer.toString(CONTROL_PORT) +
     "\nshutdownTimeoutSec: " + Long.toString(SHUTDOWN_TIMEOUT_SEC) +
     "\nnumThreads: " + Integer.toString(NUM_THREADS) +
+    "\nexecutor: " + EXECUTOR.getConfigValue() +
+    "\nmaxConcurrentRequests: " + Integer.toString(MAX_CONCURRENT_REQUESTS) +
+    "\nengine: " + ENGINE.getConfigValue() +
+    "\nnumAcceptors: " + Integer.toString(NUM_ACCEPTORS) +
+    "\nhandshakeTimeoutMs: " + Integer.toString(HANDSHAKE_TIMEOUT_MS) +
+    "\nrequestTimeoutMs: " + Integer.toString(REQUEST_TIMEOUT_MS) +
+    "\nnumHandshakeThreads: " + Integer.toString(NUM_HANDSHAKE_THREADS) +
+    "\ntlsSessionCacheSize: " + Integer.toString(TLS_SESSION_CACHE_SIZE) +
+    "\ntlsSessionTimeoutSec: " + Integer.toString(TLS_SESSION_TIMEOUT_SEC) +
+    "\ntlsSessionTickets: " + Boolean.toString(TLS_SESSION_TICKETS) +
     "\ncgiDir: " + CGI_DIR +
     "\nmaxLocalRedirects: " + Integer.toString(MAX_LOCAL_REDIRECTS) +
+    "\ncgiWorkers: " + Boolean.toString(CGI_WORKERS) +
+    "\ncgiWorkerPoolSize: " + Integer.toString(CGI_WORKER_POOL_SIZE) +
+    "\ncgiWorkerMaxRequests: " + Integer.toString(CGI_WORKER_MAX_REQUESTS) +
+    "\ncgiWorkerIdleTimeoutSec: " + Integer.toString(CGI_WORKER_IDLE_TIMEOUT_SEC) +
+    "\ncgiCacheMaxBytes: " + Long.toString(CGI_CACHE_MAX_BYTES) +
+    "\ncoalescePrefixes:" +
+    COALESCE_PREFIXES.stream()
+        .map(s -> "\n- " + s)
+        .collect(Collectors.joining()) +
+    "\ncoalesceSecureDomains: " + Boolean.toString(COALESCE_SECURE_DOMAINS) +
+    "\ncgiMaxConcurrent: " + Integer.toString(CGI_MAX_CONCURRENT) +
+    "\ncgiMaxConcurrentPerScript: " + Integer.toString(CGI_MAX_CONCURRENT_PER_SCRIPT) +
+    "\ncgiMaxQueued: " + Integer.toString(CGI_MAX_QUEUED) +
+    "\ncgiQueueTimeoutMs: " + Integer.toString(CGI_QUEUE_TIMEOUT_MS) +
+    "\ncgiTimeoutMs: " + Integer.toString(CGI_TIMEOUT_MS) +
+    "\ncgiMaxOutputBytes: " + Long.toString(CGI_MAX_OUTPUT_BYTES) +
+    "\nhandlers:" +
+    "\n  " + HANDLER_PREFIX + ": " + HANDLER_CLASS_NAME +
+    "\nfastCgiGateways:" +
+    "\n  " + FAST_CGI_GATEWAY_PREFIX + ": " + FAST_CGI_GATEWAY_ENDPOINT +
+    "\nfastCgiMaxConnections: " + Integer.toString(FAST_CGI_MAX_CONNECTIONS) +
+    "\nfastCgiMaxRequestsPerConnection: " +
+    Integer.toString(FAST_CGI_MAX_REQUESTS_PER_CONNECTION) +
+    "\nscgiGateways:" +
+    "\n  " + SCGI_GATEWAY_PREFIX + ": " + SCGI_GATEWAY_ENDPOINT +
+    "\nscgiMaxConcurrentRequests: " +
+    Integer.toString(SCGI_MAX_CONCURRENT_REQUESTS) +
+    "\nscgiIdleConnections: " + Integer.toString(SCGI_IDLE_CONNECTIONS) +
+    "\ngatewayTimeoutMs: " + Integer.toString(GATEWAY_TIMEOUT_MS) +
     "\nforceCanonicalText: " + Boolean.toString(FORCE_CANONICAL_TEXT) +
     "\ntextGeminiSuffixes:" +
     TEXT_GEMINI_SUFFIXES.stream()
@@ -67,6 +107,16 @@ public class ServerPropertiesYamlLoaderTest extends ServerPropertiesTest {
     "\ndefaultContentType: " + DEFAULT_CONTENT_TYPE +
     "\nenableCharsetDetection: " + Boolean.toString(ENABLE_CHARSET_DETECTION) +
     "\ndefaultCharset: " + DEFAULT_CHARSET +
+    "\nstaticCacheMaxBytes: " + Long.toString(STATIC_CACHE_MAX_BYTES) +
+    "\nwatchRoot: " + Boolean.toString(WATCH_ROOT) +
+    "\narchive: " + ARCHIVE +
+    "\nwarmUpPaths:" +
+    WARM_UP_PATHS.stream()
+        .map(s -> "\n- " + s)
+        .collect(Collectors.joining()) +
+    "\nwarmUpTopPaths: " + Integer.toString(WARM_UP_TOP_PATHS) +
+    "\nwarmUpBudgetMs: " + Integer.toString(WARM_UP_BUDGET_MS) +
+    "\nwarmUpJit: " + Boolean.toString(WARM_UP_JIT) +
     "\nfavicon: " + FAVICON +
     "\nfeedPages:" +
     FEED_PAGES.stream()
@@ -77,7 +127,24 @@ public class ServerPropertiesYamlLoaderTest extends ServerPropertiesTest {
     "\n  /path1: {}" +
     "\nkeystore: " + KEYSTORE +
     "\nkeystorePassword: " + KEYSTORE_PASSWORD +
-    "\nsetModSslCgiMetaVars: " + Boolean.toString(SET_MOD_SSL_CGI_META_VARS);
+    "\ntempCertKeyType: " + TEMP_CERT_KEY_TYPE.getConfigValue() +
+    "\ntempCertCacheDir: " + TEMP_CERT_CACHE_DIR +
+    "\nkeystoreCheckIntervalSec: " + Integer.toString(KEYSTORE_CHECK_INTERVAL_SEC) +
+    "\nsetModSslCgiMetaVars: " + Boolean.toString(SET_MOD_SSL_CGI_META_VARS) +
+    "\nvirtualHosts:" +
+    "\n  " + VIRTUAL_HOST + ":" +
+    "\n    root: " + VIRTUAL_HOST_ROOT +
+    "\n    cgiDir: " + VIRTUAL_HOST_CGI_DIR +
+    "\n    cgiTimeoutMs: " + Integer.toString(VIRTUAL_HOST_CGI_TIMEOUT_MS) +
+    "\n    cgiMaxOutputBytes: " + Long.toString(VIRTUAL_HOST_CGI_MAX_OUTPUT_BYTES) +
+    "\n    feedPages:" +
+    VIRTUAL_HOST_FEED_PAGES.stream()
+        .map(s -> "\n    - " + s)
+        .collect(Collectors.joining()) +
+    "\n    secureDomains:" +
+    "\n      /private: {}" +
+    "\n    keystore: " + VIRTUAL_HOST_KEYSTORE +
+    "\n    keystorePassword: " + VIRTUAL_HOST_KEYSTORE_PASSWORD;
 
   @Test
   public void testMaximalYaml() throws Exception {
@@ -88,6 +155,24 @@ public class ServerPropertiesYamlLoaderTest extends ServerPropertiesTest {
     assertMaximal(sp);
   }
 
+  private static final String VIRTUAL_HOST_WITHOUT_ROOT_YAML =
+    "host: " + HOST +
+    "\nvirtualHosts:" +
+    "\n  " + VIRTUAL_HOST + ":" +
+    "\n    cgiDir: " + VIRTUAL_HOST_CGI_DIR;
+
+  @Test
+  public void testVirtualHostWithoutRoot() {
+    IllegalStateException e;
+    try (StringReader sr = new StringReader(VIRTUAL_HOST_WITHOUT_ROOT_YAML)) {
+      e = assertThrows(IllegalStateException.class,
+                       () -> loader.loadFromYaml(sr));
+    }
+
+    assertEquals("Virtual host " + VIRTUAL_HOST + " has no root",
+                 e.getMessage());
+  }
+
   private static final String ENV_MINIMAL_YAML = "host: ${TEST_HOSTNAME}";
 
   @Test
@@ -0,0 +1,69 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class SpillingOutputStreamTest {
+
+  private ByteArrayOutputStream baos;
+  private SpillingOutputStream sos;
+
+  @BeforeEach
+  public void beforeEach() {
+    baos = new ByteArrayOutputStream();
+    sos = new SpillingOutputStream(baos, 8);
+  }
+
+  @Test
+  public void testKeepsUpToLimit() throws Exception {
+    sos.write("espr".getBytes(StandardCharsets.UTF_8));
+    sos.write('e');
+    sos.write("sso".getBytes(StandardCharsets.UTF_8));
+    sos.close();
+
+    assertFalse(sos.hasSpilled());
+    assertArrayEquals("espresso".getBytes(StandardCharsets.UTF_8),
+                      sos.toByteArray());
+    assertEquals(0, baos.size());
+  }
+
+  @Test
+  public void testSpillsPastLimit() throws Exception {
+    sos.write("two shots".getBytes(StandardCharsets.UTF_8), 0, 4);
+    sos.write("shots of ".getBytes(StandardCharsets.UTF_8));
+    sos.write('e');
+    sos.close();
+
+    assertTrue(sos.hasSpilled());
+    assertEquals("two shots of e", baos.toString(StandardCharsets.UTF_8));
+    assertThrows(IllegalStateException.class, () -> sos.toByteArray());
+  }
+}
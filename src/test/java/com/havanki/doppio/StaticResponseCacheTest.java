@@ -0,0 +1,237 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class StaticResponseCacheTest {
+
+  private static final String HEADER = "20 text/gemini\r\n";
+  private static final long MAX_BYTES = 8000L;
+
+  @TempDir
+  Path root;
+
+  private StaticResponseCache cache;
+
+  @BeforeEach
+  public void beforeEach() {
+    cache = new StaticResponseCache(MAX_BYTES);
+  }
+
+  private byte[] cacheFile(String name, String content) throws Exception {
+    Path file = root.resolve(name);
+    Files.writeString(file, content);
+    long generation = cache.getGeneration();
+    BasicFileAttributes attrs =
+      Files.readAttributes(file, BasicFileAttributes.class);
+    byte[] response = (HEADER + content).getBytes(StandardCharsets.UTF_8);
+    cache.put(file, file, attrs, response, HEADER.length(), generation);
+    return response;
+  }
+
+  @Test
+  public void testHit() throws Exception {
+    byte[] response = cacheFile("index.gmi", "# Hello\n");
+
+    StaticResponseCache.Entry entry = cache.get(root.resolve("index.gmi"));
+
+    assertNotNull(entry);
+    assertArrayEquals(response, entry.getResponse());
+    assertEquals(8L, entry.getBodySize());
+    assertEquals(1L, cache.getHits());
+    assertEquals(0L, cache.getMisses());
+  }
+
+  @Test
+  public void testMiss() {
+    assertNull(cache.get(root.resolve("index.gmi")));
+    assertEquals(0L, cache.getHits());
+    assertEquals(1L, cache.getMisses());
+  }
+
+  @Test
+  public void testModifiedFile() throws Exception {
+    cacheFile("index.gmi", "# Hello\n");
+    Path file = root.resolve("index.gmi");
+    Files.writeString(file, "# Hello again\n");
+
+    assertNull(cache.get(file));
+    assertEquals(0, cache.size());
+    assertEquals(0L, cache.getCurrentBytes());
+  }
+
+  @Test
+  public void testTouchedFile() throws Exception {
+    cacheFile("index.gmi", "# Hello\n");
+    Path file = root.resolve("index.gmi");
+    FileTime lastModifiedTime = Files.getLastModifiedTime(file);
+    Files.setLastModifiedTime(file,
+      FileTime.fromMillis(lastModifiedTime.toMillis() + 5000L));
+
+    assertNull(cache.get(file));
+  }
+
+  @Test
+  public void testDeletedFile() throws Exception {
+    cacheFile("index.gmi", "# Hello\n");
+    Path file = root.resolve("index.gmi");
+    Files.delete(file);
+
+    assertNull(cache.get(file));
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testLeastRecentlyUsedEviction() throws Exception {
+    String content = "x".repeat(900);
+    cacheFile("a.gmi", content);
+    cacheFile("b.gmi", content);
+    for (int i = 0; i < 6; i++) {
+      cacheFile("c" + i + ".gmi", content);
+    }
+    // Using a makes b the least recently used.
+    assertNotNull(cache.get(root.resolve("a.gmi")));
+
+    cacheFile("d.gmi", content);
+
+    assertEquals(1L, cache.getEvictions());
+    assertNull(cache.get(root.resolve("b.gmi")));
+    assertNotNull(cache.get(root.resolve("a.gmi")));
+    assertTrue(cache.getCurrentBytes() <= MAX_BYTES);
+  }
+
+  @Test
+  public void testLargeResponseNotCached() throws Exception {
+    assertFalse(cache.isCacheable(MAX_BYTES));
+    assertTrue(cache.isCacheable(MAX_BYTES / 8 - HEADER.length()));
+
+    cacheFile("big.gmi", "x".repeat((int) MAX_BYTES / 4));
+
+    assertEquals(0, cache.size());
+  }
+
+  @Test
+  public void testNoValidationOnHit() throws Exception {
+    byte[] response = cacheFile("index.gmi", "# Hello\n");
+    Path file = root.resolve("index.gmi");
+    Files.delete(file);
+    cache.setValidateOnHit(false);
+
+    StaticResponseCache.Entry entry = cache.get(file);
+
+    assertNotNull(entry);
+    assertArrayEquals(response, entry.getResponse());
+  }
+
+  @Test
+  public void testInvalidateFile() throws Exception {
+    cacheFile("index.gmi", "# Hello\n");
+    cacheFile("other.gmi", "# Other\n");
+    // A directory request is served from its index file.
+    Path file = root.resolve("index.gmi");
+    cache.put(root, file, Files.readAttributes(file, BasicFileAttributes.class),
+              (HEADER + "# Hello\n").getBytes(StandardCharsets.UTF_8),
+              HEADER.length(), cache.getGeneration());
+
+    cache.pathChanged(file);
+
+    assertEquals(1, cache.size());
+    assertNotNull(cache.get(root.resolve("other.gmi")));
+  }
+
+  @Test
+  public void testFileChangedWhileCaching() throws Exception {
+    Path file = root.resolve("index.gmi");
+    Files.writeString(file, "# Hello\n");
+    cache.setValidateOnHit(false);
+
+    // Start filling the cache from the file.
+    long generation = cache.getGeneration();
+    BasicFileAttributes attrs =
+      Files.readAttributes(file, BasicFileAttributes.class);
+    byte[] response = (HEADER + Files.readString(file))
+      .getBytes(StandardCharsets.UTF_8);
+
+    // The file is edited, and the change is reported, before the fill ends.
+    Files.writeString(file, "# Hello again\n");
+    cache.pathChanged(file);
+    cache.put(file, file, attrs, response, HEADER.length(), generation);
+
+    assertEquals(0, cache.size());
+    assertNull(cache.get(file));
+  }
+
+  @Test
+  public void testInvalidateDirectory() throws Exception {
+    Files.createDirectory(root.resolve("sub"));
+    cacheFile("sub/a.gmi", "# A\n");
+    cacheFile("sub/b.gmi", "# B\n");
+    cacheFile("index.gmi", "# Hello\n");
+
+    cache.pathChanged(root.resolve("sub"));
+
+    assertEquals(1, cache.size());
+    assertEquals((long) (HEADER + "# Hello\n").length(), cache.getCurrentBytes());
+  }
+
+  @Test
+  public void testInvalidateAll() throws Exception {
+    cacheFile("index.gmi", "# Hello\n");
+
+    cache.allChanged();
+
+    assertNull(cache.get(root.resolve("index.gmi")));
+    assertEquals(0L, cache.getCurrentBytes());
+  }
+
+  @Test
+  public void testAddTo() throws Exception {
+    byte[] response = cacheFile("index.gmi", "# Hello\n");
+    cache.get(root.resolve("index.gmi"));
+    cache.get(root.resolve("missing.gmi"));
+
+    Map<String, Long> stats = new LinkedHashMap<>();
+    cache.addTo(stats);
+
+    assertEquals(Long.valueOf(1L), stats.get("static.cache.hits"));
+    assertEquals(Long.valueOf(1L), stats.get("static.cache.misses"));
+    assertEquals(Long.valueOf(0L), stats.get("static.cache.evictions"));
+    assertEquals(Long.valueOf(1L), stats.get("static.cache.entries"));
+    assertEquals(Long.valueOf(response.length), stats.get("static.cache.bytes"));
+  }
+}
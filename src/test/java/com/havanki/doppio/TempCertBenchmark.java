@@ -0,0 +1,176 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import java.nio.ByteBuffer;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.concurrent.TimeUnit;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.TrustManager;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Compares the key types for temporary server certificates, both by how long
+ * generating a certificate takes at startup and by how many full TLS
+ * handshakes per second a server using the certificate can complete. The
+ * handshakes run between a client and a server engine in memory, so they
+ * measure TLS processing without any network overhead; neither side resumes
+ * sessions.
+ *
+ * Run with: mvn -P benchmark test-compile exec:exec -Dbenchmark=TempCert
+ */
+@State(Scope.Benchmark)
+@Fork(1)
+public class TempCertBenchmark {
+
+  private static final String HOST = "gemini.example.com";
+
+  @Param({ "rsa2048", "rsa4096", "ec-p256", "ed25519" })
+  public String keyType;
+
+  private SSLContext serverSslContext;
+  private SSLContext clientSslContext;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    TemporaryCertificateGenerator gen = generate();
+    KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keystore.load(null, null);
+    keystore.setKeyEntry("doppio", gen.getPrivateKey(), null,
+                         new X509Certificate[] { gen.getCertificate() });
+    KeyManagerFactory kmf =
+      KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(keystore, null);
+    TrustManager[] trustManagers = new TrustManager[] {
+      new AllowAllTrustManager()
+    };
+
+    serverSslContext = SSLContext.getInstance("TLS");
+    serverSslContext.init(kmf.getKeyManagers(), trustManagers, null);
+    clientSslContext = SSLContext.getInstance("TLS");
+    clientSslContext.init(null, trustManagers, null);
+  }
+
+  private TemporaryCertificateGenerator generate() throws Exception {
+    return new TemporaryCertificateGenerator(HOST, 60L,
+      ServerProperties.TempCertKeyType.fromConfigValue(keyType));
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  @Warmup(iterations = 3)
+  @Measurement(iterations = 10)
+  public TemporaryCertificateGenerator generateCertificate() throws Exception {
+    return generate();
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.Throughput)
+  @OutputTimeUnit(TimeUnit.SECONDS)
+  @Warmup(iterations = 3, time = 5)
+  @Measurement(iterations = 5, time = 5)
+  public SSLEngine handshake() throws SSLException {
+    // Engines created without a peer host and port never resume sessions.
+    SSLEngine client = clientSslContext.createSSLEngine();
+    client.setUseClientMode(true);
+    SSLEngine server = serverSslContext.createSSLEngine();
+    server.setUseClientMode(false);
+
+    int packetSize = client.getSession().getPacketBufferSize();
+    int appSize = client.getSession().getApplicationBufferSize();
+    ByteBuffer empty = ByteBuffer.allocate(0);
+    ByteBuffer clientToServer = ByteBuffer.allocate(packetSize * 4);
+    ByteBuffer serverToClient = ByteBuffer.allocate(packetSize * 4);
+    ByteBuffer clientApp = ByteBuffer.allocate(appSize);
+    ByteBuffer serverApp = ByteBuffer.allocate(appSize);
+
+    client.beginHandshake();
+    server.beginHandshake();
+    while (!isDone(client) || !isDone(server)) {
+      step(client, clientToServer, serverToClient, clientApp, empty);
+      step(server, serverToClient, clientToServer, serverApp, empty);
+    }
+    return server;
+  }
+
+  private static boolean isDone(SSLEngine engine) {
+    HandshakeStatus status = engine.getHandshakeStatus();
+    return status == HandshakeStatus.NOT_HANDSHAKING ||
+      status == HandshakeStatus.FINISHED;
+  }
+
+  /**
+   * Advances one side of the handshake as far as it can go with the data
+   * the other side has sent so far.
+   */
+  private static void step(SSLEngine engine, ByteBuffer out, ByteBuffer in,
+                           ByteBuffer app, ByteBuffer empty)
+    throws SSLException {
+    while (true) {
+      switch (engine.getHandshakeStatus()) {
+        case NEED_WRAP:
+          engine.wrap(empty, out);
+          break;
+        case NEED_UNWRAP:
+        case NEED_UNWRAP_AGAIN:
+          in.flip();
+          int consumed;
+          try {
+            consumed = engine.unwrap(in, app).bytesConsumed();
+          } finally {
+            in.compact();
+          }
+          if (consumed == 0 &&
+              engine.getHandshakeStatus() != HandshakeStatus.NEED_WRAP &&
+              engine.getHandshakeStatus() != HandshakeStatus.NEED_TASK) {
+            return;
+          }
+          break;
+        case NEED_TASK:
+          Runnable task;
+          while ((task = engine.getDelegatedTask()) != null) {
+            task.run();
+          }
+          break;
+        default:
+          return;
+      }
+    }
+  }
+}
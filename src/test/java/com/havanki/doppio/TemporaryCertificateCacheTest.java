@@ -0,0 +1,118 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.time.Duration;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class TemporaryCertificateCacheTest {
+
+  private static final String HOST = "gemini.example.com";
+  private static final ServerProperties.TempCertKeyType KEY_TYPE =
+    ServerProperties.TempCertKeyType.EC_P256;
+
+  @TempDir
+  Path cacheDir;
+
+  private TemporaryCertificateCache cache;
+
+  @BeforeEach
+  public void beforeEach() {
+    cache = new TemporaryCertificateCache(cacheDir);
+  }
+
+  @Test
+  public void testStoreAndLoad() throws Exception {
+    TemporaryCertificateGenerator gen =
+      new TemporaryCertificateGenerator(HOST, 3600L, KEY_TYPE);
+    cache.store(gen.getPrivateKey(), gen.getCertificate());
+
+    KeyStore.PrivateKeyEntry entry =
+      cache.load(HOST, KEY_TYPE, Duration.ofMinutes(1L));
+
+    assertNotNull(entry);
+    assertEquals(gen.getCertificate(), entry.getCertificate());
+    assertArrayEquals(gen.getPrivateKey().getEncoded(),
+                      entry.getPrivateKey().getEncoded());
+  }
+
+  @Test
+  public void testStoreAndLoadEd25519() throws Exception {
+    TemporaryCertificateGenerator gen =
+      new TemporaryCertificateGenerator(HOST, 3600L,
+                                        ServerProperties.TempCertKeyType.ED25519);
+    cache.store(gen.getPrivateKey(), gen.getCertificate());
+
+    assertNotNull(cache.load(HOST, ServerProperties.TempCertKeyType.ED25519,
+                             Duration.ofMinutes(1L)));
+  }
+
+  @Test
+  public void testLoadMissing() {
+    assertNull(cache.load(HOST, KEY_TYPE, Duration.ofMinutes(1L)));
+  }
+
+  @Test
+  public void testLoadExpiringSoon() throws Exception {
+    TemporaryCertificateGenerator gen =
+      new TemporaryCertificateGenerator(HOST, 60L, KEY_TYPE);
+    cache.store(gen.getPrivateKey(), gen.getCertificate());
+
+    assertNull(cache.load(HOST, KEY_TYPE, Duration.ofMinutes(5L)));
+  }
+
+  @Test
+  public void testLoadDifferentHost() throws Exception {
+    TemporaryCertificateGenerator gen =
+      new TemporaryCertificateGenerator(HOST, 3600L, KEY_TYPE);
+    cache.store(gen.getPrivateKey(), gen.getCertificate());
+
+    assertNull(cache.load("other.example.com", KEY_TYPE, Duration.ofMinutes(1L)));
+  }
+
+  @Test
+  public void testLoadDifferentKeyType() throws Exception {
+    TemporaryCertificateGenerator gen =
+      new TemporaryCertificateGenerator(HOST, 3600L, KEY_TYPE);
+    cache.store(gen.getPrivateKey(), gen.getCertificate());
+
+    assertNull(cache.load(HOST, ServerProperties.TempCertKeyType.ED25519,
+                          Duration.ofMinutes(1L)));
+  }
+
+  @Test
+  public void testLoadCorrupt() throws Exception {
+    Files.writeString(cacheDir.resolve(TemporaryCertificateCache.FILE_NAME),
+                      "not a keystore");
+
+    assertNull(cache.load(HOST, KEY_TYPE, Duration.ofMinutes(1L)));
+  }
+}
@@ -0,0 +1,75 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.security.cert.X509Certificate;
+
+import org.junit.jupiter.api.Test;
+
+public class TemporaryCertificateGeneratorTest {
+
+  private static final String HOST = "gemini.example.com";
+
+  @Test
+  public void testDefaultKeyType() throws Exception {
+    TemporaryCertificateGenerator gen =
+      new TemporaryCertificateGenerator(HOST, 60L);
+
+    assertGenerated(gen, "RSA");
+  }
+
+  @Test
+  public void testRsa2048() throws Exception {
+    TemporaryCertificateGenerator gen =
+      new TemporaryCertificateGenerator(HOST, 60L,
+                                        ServerProperties.TempCertKeyType.RSA_2048);
+
+    assertGenerated(gen, "RSA");
+  }
+
+  @Test
+  public void testEcP256() throws Exception {
+    TemporaryCertificateGenerator gen =
+      new TemporaryCertificateGenerator(HOST, 60L,
+                                        ServerProperties.TempCertKeyType.EC_P256);
+
+    assertGenerated(gen, "EC");
+  }
+
+  @Test
+  public void testEd25519() throws Exception {
+    TemporaryCertificateGenerator gen =
+      new TemporaryCertificateGenerator(HOST, 60L,
+                                        ServerProperties.TempCertKeyType.ED25519);
+
+    assertGenerated(gen, "EdDSA");
+  }
+
+  private static void assertGenerated(TemporaryCertificateGenerator gen,
+                                      String keyAlgorithm) throws Exception {
+    X509Certificate cert = gen.getCertificate();
+    assertEquals(keyAlgorithm, gen.getPrivateKey().getAlgorithm());
+    assertEquals("CN=" + HOST, cert.getSubjectX500Principal().getName());
+    cert.checkValidity();
+    cert.verify(cert.getPublicKey());
+  }
+}
@@ -0,0 +1,89 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.net.ssl.SSLSession;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+public class TlsSessionStatsTest {
+
+  private static final long HANDSHAKE_START = 1600000000000L;
+
+  private TlsSessionStats stats;
+  private SSLSession session;
+
+  @BeforeEach
+  public void beforeEach() {
+    stats = new TlsSessionStats();
+    session = mock(SSLSession.class);
+  }
+
+  @Test
+  public void testFullHandshake() {
+    when(session.getCreationTime()).thenReturn(HANDSHAKE_START + 5L);
+
+    stats.recordHandshake(session, HANDSHAKE_START);
+
+    assertEquals(1L, stats.getFullHandshakes());
+    assertEquals(0L, stats.getResumedHandshakes());
+  }
+
+  @Test
+  public void testFullHandshakeSameMillisecond() {
+    when(session.getCreationTime()).thenReturn(HANDSHAKE_START);
+
+    stats.recordHandshake(session, HANDSHAKE_START);
+
+    assertEquals(1L, stats.getFullHandshakes());
+    assertEquals(0L, stats.getResumedHandshakes());
+  }
+
+  @Test
+  public void testResumedHandshake() {
+    when(session.getCreationTime()).thenReturn(HANDSHAKE_START - 60000L);
+
+    stats.recordHandshake(session, HANDSHAKE_START);
+
+    assertEquals(0L, stats.getFullHandshakes());
+    assertEquals(1L, stats.getResumedHandshakes());
+  }
+
+  @Test
+  public void testAddTo() {
+    when(session.getCreationTime()).thenReturn(HANDSHAKE_START - 60000L);
+    stats.recordHandshake(session, HANDSHAKE_START);
+    stats.recordHandshake(session, HANDSHAKE_START);
+
+    Map<String, Long> map = new LinkedHashMap<>();
+    stats.addTo(map);
+
+    assertEquals(Map.of("tls.handshakes.full", 0L,
+                        "tls.handshakes.resumed", 2L), map);
+  }
+}
@@ -0,0 +1,186 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.security.cert.X509Certificate;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SNIHostName;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManager;
+import javax.net.ssl.X509ExtendedKeyManager;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class VirtualHostTest {
+
+  private static final String HOST = "gemini.example.com";
+  private static final String OTHER_HOST = "other.example.com";
+
+  private static SSLContext serverSslContext;
+  private static SSLContext clientSslContext;
+
+  @TempDir
+  Path root;
+  @TempDir
+  Path otherRoot;
+
+  private ExecutorService executorService;
+  private AccessLogger accessLogger;
+  private NioConnectionEngine engine;
+
+  @BeforeAll
+  public static void beforeAll() throws Exception {
+    X509ExtendedKeyManager keyManager =
+      new VirtualHostKeyManager(buildKeyManager(HOST),
+                                Map.of(OTHER_HOST, buildKeyManager(OTHER_HOST)));
+    TrustManager[] trustManagers = new TrustManager[] {
+      new AllowAllTrustManager()
+    };
+
+    serverSslContext = SSLContext.getInstance("TLS");
+    serverSslContext.init(new X509ExtendedKeyManager[] { keyManager },
+                          trustManagers, null);
+    clientSslContext = SSLContext.getInstance("TLS");
+    clientSslContext.init(null, trustManagers, null);
+  }
+
+  private static X509ExtendedKeyManager buildKeyManager(String host)
+    throws Exception {
+    TemporaryCertificateGenerator tempCertGen =
+      new TemporaryCertificateGenerator(host, 60L,
+                                        ServerProperties.TempCertKeyType.EC_P256);
+    KeyStore keystore = KeyStore.getInstance(KeyStore.getDefaultType());
+    keystore.load(null, null);
+    keystore.setKeyEntry("doppio", tempCertGen.getPrivateKey(), null,
+                         new X509Certificate[] { tempCertGen.getCertificate() });
+    KeyManagerFactory kmf =
+      KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+    kmf.init(keystore, null);
+    return ReloadableKeyManager.findX509KeyManager(kmf.getKeyManagers());
+  }
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    Files.writeString(root.resolve("index.gmi"), "# Hello\n");
+    Files.writeString(otherRoot.resolve("index.gmi"), "# Other\n");
+    ServerProperties serverProps = ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .virtualHosts(List.of(new VirtualHost(OTHER_HOST, otherRoot, null,
+                                            List.of(), List.of(), null,
+                                            null)))
+      .build();
+    serverProps.validate();
+
+    executorService = Executors.newFixedThreadPool(2);
+    accessLogger = new AccessLogger(null);
+
+    SSLParameters sslParameters = serverSslContext.getDefaultSSLParameters();
+    sslParameters.setProtocols(new String[] { "TLSv1.3", "TLSv1.2" });
+    engine = new NioConnectionEngine(0, serverSslContext, sslParameters,
+                                     executorService,
+                                     c -> executorService.submit(
+                                       new RequestHandler(serverProps,
+                                                          accessLogger, c)));
+    engine.start();
+  }
+
+  @AfterEach
+  public void afterEach() throws Exception {
+    engine.stopAccepting();
+    executorService.shutdown();
+    engine.close();
+    accessLogger.close();
+  }
+
+  @Test
+  public void testDefaultHost() throws Exception {
+    assertEquals("CN=" + HOST + "\n20 text/gemini\r\n# Hello\n",
+                 request(HOST, "gemini://" + HOST + "/\r\n"));
+  }
+
+  @Test
+  public void testVirtualHost() throws Exception {
+    assertEquals("CN=" + OTHER_HOST + "\n20 text/gemini\r\n# Other\n",
+                 request(OTHER_HOST, "gemini://" + OTHER_HOST + "/\r\n"));
+  }
+
+  @Test
+  public void testVirtualHostIgnoresCase() throws Exception {
+    assertEquals("CN=" + OTHER_HOST + "\n20 text/gemini\r\n# Other\n",
+                 request(OTHER_HOST.toUpperCase(),
+                         "gemini://" + OTHER_HOST + "/\r\n"));
+  }
+
+  @Test
+  public void testRequestForOtherHost() throws Exception {
+    String response = request(OTHER_HOST, "gemini://" + HOST + "/\r\n");
+
+    assertTrue(response.startsWith("CN=" + OTHER_HOST + "\n53 "));
+  }
+
+  /**
+   * Makes a request, returning the subject of the server certificate on its
+   * own line followed by the response.
+   */
+  private String request(String serverName, String request) throws Exception {
+    try (SSLSocket socket = (SSLSocket) clientSslContext.getSocketFactory()
+         .createSocket("127.0.0.1", engine.getLocalPort())) {
+      SSLParameters sslParameters = socket.getSSLParameters();
+      sslParameters.setServerNames(List.of(new SNIHostName(serverName)));
+      socket.setSSLParameters(sslParameters);
+      socket.setSoTimeout(10000);
+      socket.startHandshake();
+      X509Certificate serverCert =
+        (X509Certificate) socket.getSession().getPeerCertificates()[0];
+
+      OutputStream out = socket.getOutputStream();
+      out.write(request.getBytes(StandardCharsets.UTF_8));
+      out.flush();
+
+      InputStream in = socket.getInputStream();
+      ByteArrayOutputStream response = new ByteArrayOutputStream();
+      in.transferTo(response);
+      return serverCert.getSubjectX500Principal().getName() + "\n" +
+        response.toString(StandardCharsets.UTF_8);
+    }
+  }
+}
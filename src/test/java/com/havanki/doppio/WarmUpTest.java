@@ -0,0 +1,203 @@
+/**
+ * Copyright (C) 2026 Bill Havanki
+ *
+ * This file is part of Doppio.
+ *
+ * Doppio is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Affero General Public License as
+ * published by the Free Software Foundation, either version 3 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU Affero General Public License for more details.
+ *
+ * You should have received a copy of the GNU Affero General Public License
+ * along with this program.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package com.havanki.doppio;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class WarmUpTest {
+
+  private static final String HOST = "gemini.example.com";
+  private static final String OTHER_HOST = "other.example.com";
+
+  @TempDir
+  Path root;
+
+  @TempDir
+  Path otherRoot;
+
+  @TempDir
+  Path logDir;
+
+  private StaticResponseCache cache;
+  private RequestHandlerDependencies dependencies;
+
+  @BeforeEach
+  public void beforeEach() throws Exception {
+    Files.writeString(root.resolve("index.gmi"), "# Home\n");
+    Files.writeString(root.resolve("about.gmi"), "# About\n");
+    Files.createDirectories(root.resolve("cgi-bin"));
+    Path script = root.resolve("cgi-bin/touch.sh");
+    Files.writeString(script, "#!/bin/sh\ntouch \"" + root.resolve("ran") +
+                      "\"\necho '20 text/plain'\n");
+    Files.setPosixFilePermissions(script,
+                                  PosixFilePermissions.fromString("rwxr-xr-x"));
+    Files.writeString(otherRoot.resolve("index.gmi"), "# Other\n");
+    cache = new StaticResponseCache(1024L * 1024L);
+    dependencies = RequestHandlerDependencies.builder()
+      .staticResponseCache(cache)
+      .build();
+  }
+
+  private ServerProperties.Builder serverPropsBuilder() {
+    return ServerProperties.builder()
+      .root(root)
+      .host(HOST)
+      .cgiDir(Path.of("cgi-bin"))
+      .logDir(logDir)
+      .virtualHosts(List.of(new VirtualHost(OTHER_HOST, otherRoot, null,
+                                            List.of(), List.of(), null, null)));
+  }
+
+  private void writeAccessLog(String... lines) throws Exception {
+    Files.writeString(logDir.resolve(AccessLogger.ACCESS_LOG_FILE_NAME),
+                      String.join("\r\n", lines) + "\r\n");
+  }
+
+  private static String logLine(String request, int statusCode) {
+    return "127.0.0.1 - - [16/Oct/2026:10:00:00 +0000] \"" + request + "\" " +
+      statusCode + " 100";
+  }
+
+  @Test
+  public void testFindConfiguredRequests() {
+    ServerProperties serverProps = serverPropsBuilder()
+      .warmUpPaths(List.of("/", "about.gmi", "gemini://" + OTHER_HOST + "/"))
+      .build();
+
+    assertEquals(List.of("gemini://" + HOST + "/",
+                         "gemini://" + HOST + "/about.gmi",
+                         "gemini://" + OTHER_HOST + "/"),
+                 new WarmUp(serverProps, dependencies).findRequests());
+  }
+
+  @Test
+  public void testReadTopRequests() throws Exception {
+    String a = "gemini://" + HOST + "/a.gmi";
+    String b = "gemini://" + HOST + "/b.gmi";
+    String c = "gemini://" + HOST + "/c.gmi";
+    writeAccessLog(logLine(a, 20), logLine(b, 20), logLine(b, 20),
+                   logLine(c, 51), logLine(c, 51), logLine(c, 51),
+                   logLine(a, 20), logLine(b, 20), "garbage");
+
+    Path accessLog = logDir.resolve(AccessLogger.ACCESS_LOG_FILE_NAME);
+    assertEquals(List.of(b, a), WarmUp.readTopRequests(accessLog, 5));
+    assertEquals(List.of(b), WarmUp.readTopRequests(accessLog, 1));
+  }
+
+  @Test
+  public void testFindRequestsFromAccessLog() throws Exception {
+    String about = "gemini://" + HOST + "/about.gmi";
+    String index = "gemini://" + HOST + "/";
+    writeAccessLog(logLine(about, 20), logLine(index, 20), logLine(index, 20));
+    ServerProperties serverProps = serverPropsBuilder()
+      .warmUpPaths(List.of("about.gmi"))
+      .warmUpTopPaths(10)
+      .build();
+
+    assertEquals(List.of(about, index),
+                 new WarmUp(serverProps, dependencies).findRequests());
+  }
+
+  @Test
+  public void testRunFillsCache() throws Exception {
+    ServerProperties serverProps = serverPropsBuilder().build();
+    WarmUp warmUp = new WarmUp(serverProps, dependencies);
+
+    int numHandled = warmUp.run(List.of("gemini://" + HOST + "/about.gmi",
+                                        "gemini://" + OTHER_HOST + "/index.gmi"));
+
+    assertEquals(2, numHandled);
+    assertNotNull(cache.get(root.resolve("about.gmi")));
+    assertNotNull(cache.get(otherRoot.resolve("index.gmi")));
+  }
+
+  @Test
+  public void testRunSkipsCgiAndOtherHosts() throws Exception {
+    ServerProperties serverProps = serverPropsBuilder().build();
+    WarmUp warmUp = new WarmUp(serverProps, dependencies);
+
+    int numHandled = warmUp.run(List.of("gemini://" + HOST + "/cgi-bin/touch.sh",
+                                        "gemini://elsewhere.example.com/",
+                                        "not a uri"));
+
+    assertEquals(0, numHandled);
+    assertFalse(Files.exists(root.resolve("ran")));
+  }
+
+  @Test
+  public void testRunRepeatsForJit() throws Exception {
+    ServerProperties serverProps = serverPropsBuilder()
+      .warmUpJit(true)
+      .build();
+    WarmUp warmUp = new WarmUp(serverProps, dependencies);
+
+    int numHandled = warmUp.run(List.of("gemini://" + HOST + "/about.gmi"));
+
+    assertEquals(WarmUp.JIT_WARM_UP_REQUESTS, numHandled);
+    Map<String, Long> stats = new LinkedHashMap<>();
+    cache.addTo(stats);
+    assertEquals(WarmUp.JIT_WARM_UP_REQUESTS - 1L, stats.get("static.cache.hits"));
+  }
+
+  @Test
+  public void testRunStopsAtBudget() throws Exception {
+    ServerProperties serverProps = serverPropsBuilder()
+      .warmUpJit(true)
+      .warmUpBudgetMs(1)
+      .build();
+    WarmUp warmUp = new WarmUp(serverProps, dependencies);
+
+    int numHandled = warmUp.run(List.of("gemini://" + HOST + "/about.gmi"));
+
+    assertTrue(numHandled < WarmUp.JIT_WARM_UP_REQUESTS);
+  }
+
+  @Test
+  public void testInMemoryConnectionStatusCode() throws Exception {
+    ServerProperties serverProps = serverPropsBuilder().build();
+    try (AccessLogger accessLogger = new AccessLogger(null)) {
+      InMemoryClientConnection found =
+        new InMemoryClientConnection("gemini://" + HOST + "/about.gmi", HOST);
+      new RequestHandler(serverProps, accessLogger, found).run();
+      assertEquals(StatusCodes.SUCCESS, found.getStatusCode());
+      assertEquals("20 text/gemini\r\n# About\n".length(),
+                   found.getBytesWritten());
+
+      InMemoryClientConnection missing =
+        new InMemoryClientConnection("gemini://" + HOST + "/missing.gmi", HOST);
+      new RequestHandler(serverProps, accessLogger, missing).run();
+      assertEquals(StatusCodes.NOT_FOUND, missing.getStatusCode());
+    }
+  }
+}